@@ -0,0 +1,284 @@
+package com.hadoop.corpus;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.reduce.IntSumReducer;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+import com.hadoop.coursework1.util.ParagrapghInputFormat;
+import com.hadoop.examples.wordcount.WordCountMapper;
+import com.hadoop.util.TextTokenizer;
+import com.hadoop.util.WordCountMap;
+
+/**
+ * One-time conversion of a text corpus into a dictionary encoded one, read
+ * back with {@link EncodedCorpusInputFormat}. <br>
+ * <br>
+ * <b>The first job</b> tokenizes the corpus and counts its terms. The driver
+ * numbers them by decreasing count into the <i>dictionary</i> file (see
+ * {@link TermDictionary}). <b>The second job</b>, map only, tokenizes the
+ * corpus again and writes each paragraph as the VInt ids of its tokens
+ * ({@link TermIdsWritable}) into the <i>corpus</i> SequenceFiles, keyed by
+ * its offset in the text. <br>
+ * <br>
+ * The paragraphs are the ones {@link ParagrapghInputFormat} reads, or the
+ * lines with <b>-l</b>. The tokenizer is given with <b>-k</b> and has to be
+ * the one of the text job the corpus stands in for: <i>alphanumeric</i>
+ * (default, coursework 1 jobs), <i>alphabetic</i> (design patterns jobs) or
+ * <i>wordcount</i> ({@link WordCountMapper}). <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class EncodeCorpus extends Configured implements Tool {
+
+	private static final String REDUCER_PARAM = "-r";
+	private static final String TOKENIZER_PARAM = "-k";
+	private static final String LINES_PARAM = "-l";
+	public static final String TOKENIZER = "corpus.tokenizer";
+	public static final String TOKENIZER_DEFAULT_VALUE = "alphanumeric";
+	/** output folder of the encoded paragraphs */
+	public static final String CORPUS = "corpus";
+	/** output file of the dictionary */
+	public static final String DICTIONARY = "dictionary";
+	private static final String TERMS_OUTPUT = "_terms";
+
+	private static Logger _log = Logger.getLogger(EncodeCorpus.class.getName());
+
+	/**
+	 * @return the tokenizer of the given name, see the class comment
+	 */
+	public static TextTokenizer tokenizer(String name) {
+		if ("alphanumeric".equals(name)) {
+			return TextTokenizer.alphanumeric();
+		} else if ("alphabetic".equals(name)) {
+			return TextTokenizer.alphabetic();
+		} else if ("wordcount".equals(name)) {
+			return TextTokenizer.delimited(WordCountMapper.DELIMITERS);
+		}
+		throw new IllegalArgumentException("Unknown tokenizer " + name);
+	}
+
+	/**
+	 * Counts the terms of the split in memory and emits them in cleanup(), or
+	 * earlier when the split has too many distinct terms.
+	 */
+	public static class CountMap extends Mapper<LongWritable, Text, Text, IntWritable> {
+
+		private static final int MAX_TERMS = 1 << 20;
+
+		private TextTokenizer tokenizer;
+		private WordCountMap terms = new WordCountMap();
+		private Text term = new Text();
+		private IntWritable count = new IntWritable();
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			tokenizer = tokenizer(context.getConfiguration().get(TOKENIZER, TOKENIZER_DEFAULT_VALUE));
+		}
+
+		public void map(LongWritable offset, Text paragraph, Context context) throws IOException,
+				InterruptedException {
+			int words = tokenizer.tokenize(paragraph);
+			byte[] bytes = tokenizer.getBytes();
+			for (int i = 0; i < words; i++) {
+				terms.increment(bytes, tokenizer.getStart(i), tokenizer.getLength(i), 1);
+			}
+			if (terms.size() >= MAX_TERMS) {
+				flush(context);
+			}
+		}
+
+		@Override
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			flush(context);
+		}
+
+		private void flush(Context context) throws IOException, InterruptedException {
+			byte[] bytes = terms.getBytes();
+			for (int i = 0; i < terms.size(); i++) {
+				term.set(bytes, terms.getOffset(i), terms.getLength(i));
+				count.set(terms.getCount(i));
+				context.write(term, count);
+			}
+			terms.clear();
+		}
+	}
+
+	public static class EncodeMap extends Mapper<LongWritable, Text, LongWritable, TermIdsWritable> {
+
+		private TextTokenizer tokenizer;
+		private TermDictionary dictionary;
+		private TermIdsWritable ids = new TermIdsWritable();
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			tokenizer = tokenizer(context.getConfiguration().get(TOKENIZER, TOKENIZER_DEFAULT_VALUE));
+			dictionary = TermDictionary.load(context.getConfiguration());
+		}
+
+		public void map(LongWritable offset, Text paragraph, Context context) throws IOException,
+				InterruptedException {
+			int words = tokenizer.tokenize(paragraph);
+			byte[] bytes = tokenizer.getBytes();
+			ids.clear();
+			for (int i = 0; i < words; i++) {
+				int id = dictionary.getId(bytes, tokenizer.getStart(i), tokenizer.getLength(i));
+				if (id < 0) {
+					throw new IllegalStateException("Term " + tokenizer.getString(i) + " not in the dictionary");
+				}
+				ids.add(id);
+			}
+			context.write(offset, ids);
+		}
+	}
+
+	public int run(String[] args) throws Exception {
+		Configuration conf = getConf();
+		boolean lines = false;
+		int reducers = 1;
+		List<String> other_args = new ArrayList<String>();
+		for (int i = 0; i < args.length; ++i) {
+			try {
+				if (REDUCER_PARAM.equals(args[i])) {
+					reducers = Integer.parseInt(args[++i]);
+				} else if (TOKENIZER_PARAM.equals(args[i])) {
+					conf.set(TOKENIZER, args[++i]);
+				} else if (LINES_PARAM.equals(args[i])) {
+					lines = true;
+				} else {
+					other_args.add(args[i]);
+				}
+			} catch (NumberFormatException except) {
+				System.out.println("ERROR: Integer expected instead of " + args[i]);
+				return printUsage();
+			} catch (ArrayIndexOutOfBoundsException except) {
+				System.out.println("ERROR: Required parameter missing from " + args[i - 1]);
+				return printUsage();
+			}
+		}
+		// Make sure there are exactly 2 parameters left.
+		if (other_args.size() != 2) {
+			System.out.println("ERROR: Wrong number of parameters: " + other_args.size() + " instead of 2.");
+			return printUsage();
+		}
+		// fails early on an unknown tokenizer
+		tokenizer(conf.get(TOKENIZER, TOKENIZER_DEFAULT_VALUE));
+
+		Path in = new Path(other_args.get(0));
+		Path out = new Path(other_args.get(1));
+		FileSystem fs = FileSystem.get(conf);
+		fs.delete(out, true);
+		Path terms = new Path(out, TERMS_OUTPUT);
+
+		@SuppressWarnings("deprecation")
+		Job count = new Job(conf, "Encode corpus - terms");
+		count.setJarByClass(EncodeCorpus.class);
+		count.setInputFormatClass(lines ? TextInputFormat.class : ParagrapghInputFormat.class);
+		count.setMapperClass(CountMap.class);
+		count.setCombinerClass(IntSumReducer.class);
+		count.setReducerClass(IntSumReducer.class);
+		count.setNumReduceTasks(reducers);
+		count.setOutputKeyClass(Text.class);
+		count.setOutputValueClass(IntWritable.class);
+		count.setOutputFormatClass(SequenceFileOutputFormat.class);
+		FileInputFormat.setInputPaths(count, in);
+		FileOutputFormat.setOutputPath(count, terms);
+		if (!count.waitForCompletion(true)) {
+			System.exit(1);
+		}
+
+		Path dictionary = new Path(out, DICTIONARY);
+		writeDictionary(conf, fs, terms, dictionary);
+		fs.delete(terms, true);
+
+		@SuppressWarnings("deprecation")
+		Job encode = new Job(conf, "Encode corpus - paragraphs");
+		encode.setJarByClass(EncodeCorpus.class);
+		encode.setInputFormatClass(lines ? TextInputFormat.class : ParagrapghInputFormat.class);
+		encode.setMapperClass(EncodeMap.class);
+		encode.setNumReduceTasks(0);
+		encode.setOutputKeyClass(LongWritable.class);
+		encode.setOutputValueClass(TermIdsWritable.class);
+		encode.setOutputFormatClass(SequenceFileOutputFormat.class);
+		TermDictionary.setDictionary(encode.getConfiguration(), fs.makeQualified(dictionary));
+		FileInputFormat.setInputPaths(encode, in);
+		FileOutputFormat.setOutputPath(encode, new Path(out, CORPUS));
+
+		System.exit(encode.waitForCompletion(true) ? 0 : 1);
+		return 0;
+	}
+
+	/**
+	 * Numbers the counted terms by decreasing count, then by their bytes.
+	 */
+	public static void writeDictionary(Configuration conf, FileSystem fs, Path terms, Path dictionary)
+			throws IOException {
+		final WordCountMap counts = new WordCountMap();
+		Text term = new Text();
+		IntWritable count = new IntWritable();
+		for (FileStatus part : fs.globStatus(new Path(terms, "part-r-*"))) {
+			SequenceFile.Reader reader = new SequenceFile.Reader(fs, part.getPath(), conf);
+			try {
+				while (reader.next(term, count)) {
+					counts.increment(term.getBytes(), 0, term.getLength(), count.get());
+				}
+			} finally {
+				reader.close();
+			}
+		}
+		int[] sorted = counts.sort();
+		Integer[] order = new Integer[counts.size()];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = sorted[i];
+		}
+		// stable, so equal counts stay in byte order
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer entry1, Integer entry2) {
+				return Integer.compare(counts.getCount(entry2), counts.getCount(entry1));
+			}
+		});
+		for (int i = 0; i < order.length; i++) {
+			sorted[i] = order[i];
+		}
+		TermDictionary.write(fs, dictionary, counts, sorted);
+		_log.info("Dictionary of " + counts.size() + " terms written to " + dictionary);
+	}
+
+	private static int printUsage() {
+		System.out.println("encodeCorpus [-r <reduces>] [-k alphanumeric|alphabetic|wordcount] [-l] <input> <output>");
+		ToolRunner.printGenericCommandUsage(System.out);
+		return -1;
+	}
+
+	public static void main(String[] args) throws Exception {
+		String[] parameters = { "assets/jane_austen/input", "assets/jane_austen/encoded" };
+		if (args != null && args.length >= 2) {
+			parameters = args;
+		}
+		int res = ToolRunner.run(new Configuration(), new EncodeCorpus(), parameters);
+		System.exit(res);
+	}
+}
@@ -0,0 +1,37 @@
+package com.hadoop.corpus;
+
+import java.io.IOException;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+
+/**
+ * Feeds the paragraphs (or lines) of a corpus encoded by {@link EncodeCorpus}
+ * to the mappers: the key is the offset of the paragraph in the original
+ * text, the value the ids of its tokens. <br>
+ * The corpus is a SequenceFile, so it is split on its sync marks like any
+ * other one. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class EncodedCorpusInputFormat extends SequenceFileInputFormat<LongWritable, TermIdsWritable> {
+
+	/**
+	 * Reads the corpus of the output of {@link EncodeCorpus} and sets its
+	 * dictionary for the tasks of the job.
+	 *
+	 * @param encoded
+	 *            output folder of {@link EncodeCorpus}
+	 */
+	public static void setInput(Job job, Path encoded) throws IOException {
+		job.setInputFormatClass(EncodedCorpusInputFormat.class);
+		FileInputFormat.setInputPaths(job, new Path(encoded, EncodeCorpus.CORPUS));
+		Path dictionary = new Path(encoded, EncodeCorpus.DICTIONARY);
+		TermDictionary.setDictionary(job.getConfiguration(),
+				dictionary.getFileSystem(job.getConfiguration()).makeQualified(dictionary));
+	}
+}
@@ -0,0 +1,181 @@
+package com.hadoop.corpus;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.LineReader;
+
+import com.hadoop.util.WordCountMap;
+
+/**
+ * Dictionary of the terms of an encoded corpus (see {@link EncodeCorpus}). <br>
+ * The file is a text file with a <i>term TAB count</i> line per term, the id
+ * of a term being its line number: terms are numbered by decreasing count
+ * (then by their bytes), so the most frequent ones have the shortest VInts.
+ * <br>
+ * The terms are kept as UTF-8 bytes in a single buffer. A term is decoded to a
+ * String once, the first time it is asked for, and the bytes to id map used
+ * to encode is only built by {@link #getId(byte[], int, int)}. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class TermDictionary {
+
+	/** path of the dictionary of the encoded input of a job */
+	public static final String DICTIONARY = "corpus.dictionary";
+
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final byte TAB = '\t';
+
+	private byte[] bytes = new byte[INITIAL_CAPACITY * 8];
+	private int bytesLength;
+	private int[] offsets = new int[INITIAL_CAPACITY];
+	private int[] lengths = new int[INITIAL_CAPACITY];
+	private long[] counts = new long[INITIAL_CAPACITY];
+	private String[] terms = new String[INITIAL_CAPACITY];
+	private int size;
+	/** term bytes to id + 1 */
+	private WordCountMap ids;
+
+	/**
+	 * Loads the dictionary set in the configuration with
+	 * {@link #setDictionary(Configuration, Path)}.
+	 */
+	public static TermDictionary load(Configuration conf) throws IOException {
+		String dictionary = conf.get(DICTIONARY);
+		if (dictionary == null) {
+			throw new IllegalStateException("No term dictionary set in " + DICTIONARY);
+		}
+		Path path = new Path(dictionary);
+		return read(path.getFileSystem(conf), path);
+	}
+
+	public static void setDictionary(Configuration conf, Path dictionary) {
+		conf.set(DICTIONARY, dictionary.toString());
+	}
+
+	public static TermDictionary read(FileSystem fs, Path path) throws IOException {
+		TermDictionary dictionary = new TermDictionary();
+		FSDataInputStream in = fs.open(path);
+		try {
+			LineReader reader = new LineReader(in);
+			Text line = new Text();
+			while (reader.readLine(line) > 0) {
+				dictionary.add(line);
+			}
+		} finally {
+			in.close();
+		}
+		return dictionary;
+	}
+
+	/**
+	 * Writes a dictionary: the terms are given by the entries of the map, in
+	 * id order.
+	 *
+	 * @param order
+	 *            entry indexes of the map, in id order
+	 */
+	public static void write(FileSystem fs, Path path, WordCountMap terms, int[] order) throws IOException {
+		FSDataOutputStream out = fs.create(path, true);
+		try {
+			byte[] bytes = terms.getBytes();
+			for (int i = 0; i < terms.size(); i++) {
+				int entry = order[i];
+				out.write(bytes, terms.getOffset(entry), terms.getLength(entry));
+				out.write(TAB);
+				out.write(Integer.toString(terms.getCount(entry)).getBytes());
+				out.write('\n');
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * @return number of terms
+	 */
+	public int size() {
+		return size;
+	}
+
+	public String getTerm(int id) {
+		if (terms[id] == null) {
+			try {
+				terms[id] = Text.decode(bytes, offsets[id], lengths[id]);
+			} catch (IOException e) {
+				throw new IllegalStateException("Malformed term " + id + " in dictionary", e);
+			}
+		}
+		return terms[id];
+	}
+
+	/**
+	 * Copies the bytes of the term into the given text.
+	 */
+	public void getTerm(int id, Text text) {
+		text.set(bytes, offsets[id], lengths[id]);
+	}
+
+	/**
+	 * Appends the bytes of the term to the given text.
+	 */
+	public void appendTerm(int id, Text text) {
+		text.append(bytes, offsets[id], lengths[id]);
+	}
+
+	/**
+	 * @return the number of occurrences of the term in the corpus
+	 */
+	public long getCount(int id) {
+		return counts[id];
+	}
+
+	/**
+	 * @return the id of the term given by its UTF-8 bytes, -1 when it is not
+	 *         in the dictionary
+	 */
+	public int getId(byte[] b, int s, int l) {
+		if (ids == null) {
+			ids = new WordCountMap();
+			for (int id = 0; id < size; id++) {
+				ids.increment(bytes, offsets[id], lengths[id], id + 1);
+			}
+		}
+		return ids.get(b, s, l) - 1;
+	}
+
+	private void add(Text line) {
+		byte[] b = line.getBytes();
+		int tab = line.getLength() - 1;
+		while (tab >= 0 && b[tab] != TAB) {
+			tab--;
+		}
+		if (tab < 0) {
+			throw new IllegalStateException("Malformed dictionary line " + size + ": " + line);
+		}
+		if (size == offsets.length) {
+			int capacity = size * 2;
+			offsets = Arrays.copyOf(offsets, capacity);
+			lengths = Arrays.copyOf(lengths, capacity);
+			counts = Arrays.copyOf(counts, capacity);
+			terms = Arrays.copyOf(terms, capacity);
+		}
+		if (bytesLength + tab > bytes.length) {
+			bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, bytesLength + tab));
+		}
+		System.arraycopy(b, 0, bytes, bytesLength, tab);
+		offsets[size] = bytesLength;
+		lengths[size] = tab;
+		counts[size] = Long.parseLong(new String(b, tab + 1, line.getLength() - tab - 1));
+		bytesLength += tab;
+		size++;
+	}
+}
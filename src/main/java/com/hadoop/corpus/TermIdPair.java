@@ -0,0 +1,33 @@
+package com.hadoop.corpus;
+
+/**
+ * Packs a pair of term ids into a long, for the <b>LongWritable</b> keys of
+ * the encoded pairs jobs: the term in the high int and the word + 1 in the low
+ * one, 0 standing for the {@link #TOTAL} marginal of the term. <br>
+ * Ids are positive, so the natural order of the longs sorts the pairs by term,
+ * the marginal first and then the words, and the first 4 bytes of a serialized
+ * key are the term. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public final class TermIdPair {
+
+	/** word id of the marginal of a term */
+	public static final int TOTAL = -1;
+
+	private TermIdPair() {
+	}
+
+	public static long pack(int term, int word) {
+		return ((long) term << 32) | (word + 1L);
+	}
+
+	public static int term(long pair) {
+		return (int) (pair >>> 32);
+	}
+
+	public static int word(long pair) {
+		return (int) pair - 1;
+	}
+}
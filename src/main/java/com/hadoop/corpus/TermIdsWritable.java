@@ -0,0 +1,79 @@
+package com.hadoop.corpus;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Tokens of a paragraph (or line) of an encoded corpus, as the ids of their
+ * terms in the {@link TermDictionary}. <br>
+ * The serialized form is the VInt number of tokens followed by the VInt id of
+ * each one. The array is reused from one record to the next. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class TermIdsWritable implements Writable {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private int[] ids = new int[INITIAL_CAPACITY];
+	private int size;
+
+	public void add(int id) {
+		if (size == ids.length) {
+			ids = Arrays.copyOf(ids, size * 2);
+		}
+		ids[size++] = id;
+	}
+
+	/**
+	 * @return number of tokens
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the term id of the token
+	 */
+	public int get(int token) {
+		return ids[token];
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		WritableUtils.writeVInt(out, size);
+		for (int i = 0; i < size; i++) {
+			WritableUtils.writeVInt(out, ids[i]);
+		}
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		size = WritableUtils.readVInt(in);
+		if (ids.length < size) {
+			ids = new int[Math.max(size, ids.length * 2)];
+		}
+		for (int i = 0; i < size; i++) {
+			ids[i] = WritableUtils.readVInt(in);
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < size; i++) {
+			sb.append(ids[i]).append(" ");
+		}
+		return sb.toString();
+	}
+}
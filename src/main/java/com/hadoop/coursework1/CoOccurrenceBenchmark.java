@@ -0,0 +1,163 @@
+package com.hadoop.coursework1;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+import com.hadoop.coursework1.pairs.PairsApproach;
+import com.hadoop.coursework1.stripes.HybridApproach;
+import com.hadoop.coursework1.stripes.StripesApproach;
+
+/**
+ * Runs the {@link PairsApproach}, the {@link StripesApproach} and the
+ * {@link HybridApproach} over each input and compares them. <br>
+ * <br>
+ * Each job runs <b>-n</b> times (3 by default) and the best wall time is
+ * reported with the map output records and bytes, the materialized bytes of
+ * the shuffle and the reduce input records of its last run. The sorted output
+ * lines of the three jobs are checked to be the same. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class CoOccurrenceBenchmark extends Configured implements Tool {
+
+	private static final String REDUCER_PARAM = "-r";
+	private static final String RUNS_PARAM = "-n";
+	private static final String TASK_COUNTERS = "org.apache.hadoop.mapred.Task$Counter";
+	private static final String[] COUNTERS = { "MAP_OUTPUT_RECORDS", "MAP_OUTPUT_BYTES",
+			"MAP_OUTPUT_MATERIALIZED_BYTES", "REDUCE_INPUT_RECORDS" };
+
+	private static Logger _log = Logger.getLogger(CoOccurrenceBenchmark.class.getName());
+
+	public int run(String[] args) throws Exception {
+		int runs = 3;
+		String reducers = null;
+		List<String> other_args = new ArrayList<String>();
+		for (int i = 0; i < args.length; ++i) {
+			try {
+				if (REDUCER_PARAM.equals(args[i])) {
+					reducers = Integer.toString(Integer.parseInt(args[++i]));
+				} else if (RUNS_PARAM.equals(args[i])) {
+					runs = Integer.parseInt(args[++i]);
+				} else {
+					other_args.add(args[i]);
+				}
+			} catch (NumberFormatException except) {
+				System.out.println("ERROR: Integer expected instead of " + args[i]);
+				return printUsage();
+			} catch (ArrayIndexOutOfBoundsException except) {
+				System.out.println("ERROR: Required parameter missing from " + args[i - 1]);
+				return printUsage();
+			}
+		}
+		if (other_args.size() < 2) {
+			System.out.println("ERROR: Wrong number of parameters: " + other_args.size() + " instead of 2 or more.");
+			return printUsage();
+		}
+
+		Path out = new Path(other_args.get(0));
+		StringBuilder report = new StringBuilder(String.format("%n%-28s %-9s %9s %12s %12s %12s %12s", "input",
+				"job", "best (ms)", "map records", "map bytes", "shuffled", "reduce in"));
+		boolean same = true;
+		for (String input : other_args.subList(1, other_args.size())) {
+			Tool[] jobs = { new PairsApproach(), new StripesApproach(), new HybridApproach() };
+			String[] names = { "pairs", "stripes", "hybrid" };
+			List<String> expected = null;
+			for (int j = 0; j < jobs.length; j++) {
+				Path output = new Path(out, names[j] + "-" + new Path(input).getParent().getName());
+				List<String> jobArgs = new ArrayList<String>();
+				if (reducers != null) {
+					jobArgs.add(REDUCER_PARAM);
+					jobArgs.add(reducers);
+				}
+				jobArgs.add(input);
+				jobArgs.add(output.toString());
+
+				long best = Long.MAX_VALUE;
+				for (int run = 0; run < runs; run++) {
+					long start = System.currentTimeMillis();
+					if (ToolRunner.run(new Configuration(getConf()), jobs[j], jobArgs.toArray(new String[0])) != 0) {
+						_log.error(names[j] + " failed on " + input);
+						return 1;
+					}
+					best = Math.min(best, System.currentTimeMillis() - start);
+				}
+
+				Counters counters = getJob(jobs[j]).getCounters();
+				report.append(String.format("%n%-28s %-9s %9d", input, names[j], best));
+				for (String counter : COUNTERS) {
+					report.append(String.format(" %12d", counters.findCounter(TASK_COUNTERS, counter).getValue()));
+				}
+
+				List<String> lines = readSorted(output);
+				if (expected == null) {
+					expected = lines;
+				} else if (!expected.equals(lines)) {
+					report.append("  OUTPUT DIFFERS FROM PAIRS");
+					same = false;
+				}
+			}
+		}
+		System.out.println(report);
+		return same ? 0 : 1;
+	}
+
+	private static Job getJob(Tool tool) {
+		if (tool instanceof PairsApproach) {
+			return ((PairsApproach) tool).getJob();
+		} else if (tool instanceof StripesApproach) {
+			return ((StripesApproach) tool).getJob();
+		}
+		return ((HybridApproach) tool).getJob();
+	}
+
+	/**
+	 * @return the lines of the part files of the output, sorted
+	 */
+	private List<String> readSorted(Path output) throws IOException {
+		FileSystem fs = output.getFileSystem(getConf());
+		List<String> lines = new ArrayList<String>();
+		for (FileStatus part : fs.globStatus(new Path(output, "part-*"))) {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(fs.open(part.getPath()), "UTF-8"));
+			try {
+				for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+					lines.add(line);
+				}
+			} finally {
+				reader.close();
+			}
+		}
+		Collections.sort(lines);
+		return lines;
+	}
+
+	private static int printUsage() {
+		System.out.println("coOccurrenceBenchmark [-r <reduces>] [-n <runs>] <output> <input> [<input>...]");
+		ToolRunner.printGenericCommandUsage(System.out);
+		return -1;
+	}
+
+	public static void main(String[] args) throws Exception {
+		String[] parameters = { "assets/benchmark", "assets/jane_austen/input", "assets/mlk_speech/input" };
+		if (args != null && args.length >= 2) {
+			parameters = args;
+		}
+		int res = ToolRunner.run(new Configuration(), new CoOccurrenceBenchmark(), parameters);
+		System.exit(res);
+	}
+}
@@ -23,6 +23,9 @@ public @Data class Pair implements Comparable<Pair>, WritableComparable<Pair> {
 
 	public static final String TOTAL = "*";
 	public static final String WHITESPACE = " ";
+	private static final long SCALE = 100000;
+	/** largest count scaled without overflowing a long */
+	private static final long MAX_SCALED = Long.MAX_VALUE / (2 * SCALE + 1);
 	
 	private String term;
 	private Integer termCount = 0;
@@ -42,7 +45,39 @@ public @Data class Pair implements Comparable<Pair>, WritableComparable<Pair> {
 	}
 
 	public Double getConditionalProbability() {
-		return new BigDecimal(wordCount).divide(new BigDecimal(termCount), 5, RoundingMode.HALF_UP).doubleValue();
+		return conditionalProbability(wordCount, termCount);
+	}
+
+	/**
+	 * Conditional probability rounded half up to 5 decimal places, computed
+	 * with integer arithmetic. Same value as
+	 * <code>new BigDecimal(wordCount).divide(new BigDecimal(termCount), 5, RoundingMode.HALF_UP).doubleValue()</code>
+	 * without allocating.
+	 *
+	 * @param wordCount
+	 * @param termCount
+	 * @return P(word|term)
+	 */
+	public static double conditionalProbability(int wordCount, int termCount) {
+		return conditionalProbability((long) wordCount, (long) termCount);
+	}
+
+	/**
+	 * {@link #conditionalProbability(int, int)} of counts past an int, such
+	 * as the merged estimates of a sketch. Counts too large to scale in a
+	 * long are divided with a {@link BigDecimal}.
+	 *
+	 * @param wordCount
+	 * @param termCount
+	 * @return P(word|term)
+	 */
+	public static double conditionalProbability(long wordCount, long termCount) {
+		if (wordCount > MAX_SCALED || termCount > MAX_SCALED) {
+			return BigDecimal.valueOf(wordCount).divide(BigDecimal.valueOf(termCount), 5, RoundingMode.HALF_UP)
+					.doubleValue();
+		}
+		long scaled = (2 * wordCount * SCALE + termCount) / (2 * termCount);
+		return scaled / (double) SCALE;
 	}
 
 	@Override
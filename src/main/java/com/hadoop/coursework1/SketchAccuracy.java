@@ -0,0 +1,233 @@
+package com.hadoop.coursework1;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+import com.hadoop.coursework1.stripes.SketchStripesApproach;
+import com.hadoop.coursework1.stripes.SketchStripesApproach.Sketches;
+import com.hadoop.coursework1.stripes.StripesApproach;
+
+/**
+ * Runs the exact {@link StripesApproach} and the approximate
+ * {@link SketchStripesApproach} over an input and compares them. <br>
+ * <br>
+ * Each job runs <b>-n</b> times (3 by default) and the best wall time is
+ * reported with the map output bytes and the materialized bytes of the
+ * shuffle of its last run. Every pair of the exact output is then estimated
+ * from the sketches: the report gives the share of exact counts, the mean
+ * absolute error of the Count-Min and Count-Mean-Min counts and of
+ * P(word|term), the share of counts within their error bound and the share of
+ * terms whose most frequent neighbour is still the one with the largest
+ * estimate. The sketch options (<b>-b</b>, <b>-d</b>, <b>-w</b>) are passed to
+ * the {@link SketchStripesApproach}. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class SketchAccuracy extends Configured implements Tool {
+
+	private static final String REDUCER_PARAM = "-r";
+	private static final String RUNS_PARAM = "-n";
+	private static final String BUCKETS_PARAM = "-b";
+	private static final String DEPTH_PARAM = "-d";
+	private static final String WIDTH_PARAM = "-w";
+	private static final String TASK_COUNTERS = "org.apache.hadoop.mapred.Task$Counter";
+	private static final String[] COUNTERS = { "MAP_OUTPUT_BYTES", "MAP_OUTPUT_MATERIALIZED_BYTES" };
+
+	private static Logger _log = Logger.getLogger(SketchAccuracy.class.getName());
+
+	public int run(String[] args) throws Exception {
+		int runs = 3;
+		List<String> jobArgs = new ArrayList<String>();
+		List<String> sketchArgs = new ArrayList<String>();
+		List<String> other_args = new ArrayList<String>();
+		for (int i = 0; i < args.length; ++i) {
+			try {
+				if (REDUCER_PARAM.equals(args[i])) {
+					jobArgs.add(args[i]);
+					jobArgs.add(Integer.toString(Integer.parseInt(args[++i])));
+				} else if (RUNS_PARAM.equals(args[i])) {
+					runs = Integer.parseInt(args[++i]);
+				} else if (BUCKETS_PARAM.equals(args[i]) || DEPTH_PARAM.equals(args[i])
+						|| WIDTH_PARAM.equals(args[i])) {
+					sketchArgs.add(args[i]);
+					sketchArgs.add(Integer.toString(Integer.parseInt(args[++i])));
+				} else {
+					other_args.add(args[i]);
+				}
+			} catch (NumberFormatException except) {
+				System.out.println("ERROR: Integer expected instead of " + args[i]);
+				return printUsage();
+			} catch (ArrayIndexOutOfBoundsException except) {
+				System.out.println("ERROR: Required parameter missing from " + args[i - 1]);
+				return printUsage();
+			}
+		}
+		if (other_args.size() != 2) {
+			System.out.println("ERROR: Wrong number of parameters: " + other_args.size() + " instead of 2.");
+			return printUsage();
+		}
+
+		Path out = new Path(other_args.get(0));
+		String input = other_args.get(1);
+		Path exact = new Path(out, "exact");
+		Path approximate = new Path(out, "sketch");
+		StripesApproach stripes = new StripesApproach();
+		SketchStripesApproach sketch = new SketchStripesApproach();
+		Configuration sketchConf = new Configuration(getConf());
+
+		StringBuilder report = new StringBuilder(String.format("%n%-9s %9s %12s %12s", "job", "best (ms)",
+				"map bytes", "shuffled"));
+		List<String> exactArgs = new ArrayList<String>(jobArgs);
+		exactArgs.add(input);
+		exactArgs.add(exact.toString());
+		long best = run(stripes, getConf(), exactArgs, runs);
+		if (best < 0) {
+			return 1;
+		}
+		report.append(line("exact", best, stripes.getJob()));
+
+		List<String> approximateArgs = new ArrayList<String>(jobArgs);
+		approximateArgs.addAll(sketchArgs);
+		approximateArgs.add(input);
+		approximateArgs.add(approximate.toString());
+		best = run(sketch, sketchConf, approximateArgs, runs);
+		if (best < 0) {
+			return 1;
+		}
+		report.append(line("sketch", best, sketch.getJob()));
+
+		compare(exact, Sketches.load(sketch.getJob().getConfiguration(), approximate), report);
+		_log.info(report);
+		return 0;
+	}
+
+	/**
+	 * @return the best wall time of the runs, -1 if one failed
+	 */
+	private static long run(Tool tool, Configuration conf, List<String> args, int runs) throws Exception {
+		long best = Long.MAX_VALUE;
+		for (int run = 0; run < runs; run++) {
+			long start = System.currentTimeMillis();
+			if (ToolRunner.run(new Configuration(conf), tool, args.toArray(new String[0])) != 0) {
+				_log.error(tool.getClass().getSimpleName() + " failed with " + args);
+				return -1;
+			}
+			best = Math.min(best, System.currentTimeMillis() - start);
+		}
+		return best;
+	}
+
+	private static String line(String name, long best, Job job) throws IOException {
+		Counters counters = job.getCounters();
+		StringBuilder line = new StringBuilder(String.format("%n%-9s %9d", name, best));
+		for (String counter : COUNTERS) {
+			line.append(String.format(" %12d", counters.findCounter(TASK_COUNTERS, counter).getValue()));
+		}
+		return line.toString();
+	}
+
+	/**
+	 * Estimates every pair of the exact output (<i>term word (n/m)</i> and
+	 * P(word|term), the neighbours of a term together and the most frequent
+	 * first) from the sketches.
+	 */
+	private void compare(Path exact, Sketches sketches, StringBuilder report) throws IOException {
+		FileSystem fs = exact.getFileSystem(getConf());
+		long pairs = 0;
+		long exactCounts = 0;
+		long withinBound = 0;
+		double countError = 0;
+		double meanMinError = 0;
+		double probabilityError = 0;
+		long terms = 0;
+		long topAgreements = 0;
+
+		String term = null;
+		long topCount = 0;
+		long bestEstimate = -1;
+		long bestCount = 0;
+		for (FileStatus part : fs.globStatus(new Path(exact, "part-*"))) {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(fs.open(part.getPath()), "UTF-8"));
+			try {
+				for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+					int space = line.indexOf(Pair.WHITESPACE);
+					int open = line.lastIndexOf(" (");
+					int slash = line.lastIndexOf('/');
+					String lineTerm = line.substring(0, space);
+					String word = line.substring(space + 1, open);
+					long count = Long.parseLong(line.substring(open + 2, slash));
+					double probability = Double.parseDouble(line.substring(line.lastIndexOf('\t') + 1));
+
+					if (!lineTerm.equals(term)) {
+						if (term != null) {
+							terms++;
+							topAgreements += bestCount == topCount ? 1 : 0;
+						}
+						term = lineTerm;
+						topCount = count;
+						bestEstimate = -1;
+					}
+					long estimate = sketches.getCount(term, word);
+					if (estimate > bestEstimate) {
+						bestEstimate = estimate;
+						bestCount = count;
+					}
+					pairs++;
+					exactCounts += estimate == count ? 1 : 0;
+					withinBound += estimate - count <= sketches.getErrorBound(term) ? 1 : 0;
+					countError += estimate - count;
+					meanMinError += Math.abs(sketches.getMeanMinCount(term, word) - count);
+					probabilityError += Math.abs(sketches.getProbability(term, word) - probability);
+				}
+			} finally {
+				reader.close();
+			}
+		}
+		if (term != null) {
+			terms++;
+			topAgreements += bestCount == topCount ? 1 : 0;
+		}
+		if (pairs == 0) {
+			report.append(String.format("%nNo pairs in %s", exact));
+			return;
+		}
+		report.append(String.format("%n%d pairs of %d terms", pairs, terms));
+		report.append(String.format("%nexact counts %.1f%%, within bound %.2f%%", 100.0 * exactCounts / pairs,
+				100.0 * withinBound / pairs));
+		report.append(String.format("%nmean count error: count-min %.3f, count-mean-min %.3f", countError / pairs,
+				meanMinError / pairs));
+		report.append(String.format("%nmean P(word|term) error %.5f, top neighbour kept for %.1f%% of the terms",
+				probabilityError / pairs, 100.0 * topAgreements / terms));
+	}
+
+	private static int printUsage() {
+		System.out.println("sketchAccuracy [-r <reduces>] [-n <runs>] [-b <buckets>] [-d <depth>] [-w <width>] "
+				+ "<output> <input>");
+		ToolRunner.printGenericCommandUsage(System.out);
+		return -1;
+	}
+
+	public static void main(String[] args) throws Exception {
+		String[] parameters = { "assets/benchmark", "assets/jane_austen/input" };
+		if (args != null && args.length >= 2) {
+			parameters = args;
+		}
+		int res = ToolRunner.run(new Configuration(), new SketchAccuracy(), parameters);
+		System.exit(res);
+	}
+}
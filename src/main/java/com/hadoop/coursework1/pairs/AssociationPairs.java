@@ -0,0 +1,360 @@
+package com.hadoop.coursework1.pairs;
+
+import static com.hadoop.coursework1.Pair.TOTAL;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+import com.hadoop.coursework1.Pair;
+import com.hadoop.coursework1.util.InMapperCombiner;
+import com.hadoop.coursework1.util.ParagrapghInputFormat;
+import com.hadoop.util.TextTokenizer;
+import com.hadoop.util.WordCountMap;
+
+/**
+ * Symmetric association scores of the word pairs in a single job, with the
+ * order inversion of the {@link PairsApproach} extended to both marginals and
+ * the number of pairs. <br>
+ * <br>
+ * Besides the pairs and the <i>term *</i> marginals of the
+ * {@link PairsApproach}, the mapper counts how often each word is the second
+ * word of a pair and the number of pairs N. Those counts are sent to every
+ * reducer under the {@link #MARGINALS} term, which sorts before any token, with
+ * the reducer in the term count of the key ({@link AssociationPartitioner}).
+ * Each reducer so first receives N (<i>MARGINALS *</i>) and the word
+ * marginals, keeps the latter in memory, and then the terms as usual: for each
+ * pair c(term, word), c(term), c(word) and N are known when it is reached. <br>
+ * <br>
+ * Each pair with at least <b>association.min.count</b> occurrences (1 by
+ * default) is written as <i>term word</i> with its count, its pointwise mutual
+ * information log(c(t,w) N / c(t) c(w)), its Dice coefficient 2 c(t,w) / (c(t) +
+ * c(w)) and its log likelihood ratio (Dunning's G2 over the 2x2 contingency
+ * table), separated by tabs. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class AssociationPairs extends Configured implements Tool {
+
+	/** term of the word marginals and N, sorted before any token */
+	public static final String MARGINALS = "\u0001";
+	public static final String MIN_COUNT = "association.min.count";
+	private static final String REDUCER_PARAM = "-r";
+	private static final String MIN_COUNT_PARAM = "-m";
+	private static final String NEIGHBOURS = "neighbours";
+	private static final String NEIGHBOURS_DEFAULT_VALUE = "1";
+
+	private static Logger _log = Logger.getLogger(AssociationPairs.class.getName());
+
+	public static class MapClass extends Mapper<LongWritable, Text, Pair, IntWritable> {
+
+		/** rough heap bytes of a new entry on top of its UTF bytes */
+		private static final int PAIR_FOOTPRINT = 48;
+		private static final byte[] TOTAL_BYTES = TOTAL.getBytes();
+		private static final byte SEPARATOR = ' ';
+
+		private TextTokenizer tokenizer = TextTokenizer.alphanumeric();
+		/** counts keyed by the UTF bytes of "term word" */
+		private WordCountMap pairs = new WordCountMap();
+		/** counts of the words as second word of a pair */
+		private WordCountMap words = new WordCountMap();
+		private int total;
+		private byte[] keyBytes = new byte[64];
+		private Pair pair = new Pair();
+		private IntWritable value = new IntWritable(1);
+		private InMapperCombiner combiner;
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			combiner = new InMapperCombiner(context.getConfiguration());
+		}
+
+		public void map(LongWritable lineNumber, Text line, Context context) throws IOException, InterruptedException {
+			int neighbours = context.getConfiguration().getInt(NEIGHBOURS, Integer.valueOf(NEIGHBOURS_DEFAULT_VALUE));
+			int tokens = tokenizer.tokenize(line);
+			byte[] bytes = tokenizer.getBytes();
+
+			for (int i = 0; i + neighbours < tokens; i++) {
+				int j = i + neighbours;
+				count(bytes, tokenizer.getStart(i), tokenizer.getLength(i), bytes, tokenizer.getStart(j),
+						tokenizer.getLength(j));
+				count(bytes, tokenizer.getStart(i), tokenizer.getLength(i), TOTAL_BYTES, 0, TOTAL_BYTES.length);
+				if (words.increment(bytes, tokenizer.getStart(j), tokenizer.getLength(j), 1) == 1) {
+					combiner.add(1, PAIR_FOOTPRINT + tokenizer.getLength(j));
+				}
+				total++;
+			}
+
+			if (combiner.shouldFlush()) {
+				flush(context);
+			}
+		}
+
+		@Override
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			flush(context);
+		}
+
+		private void count(byte[] term, int termStart, int termLength, byte[] word, int wordStart, int wordLength) {
+			int length = termLength + 1 + wordLength;
+			if (keyBytes.length < length) {
+				keyBytes = new byte[length * 2];
+			}
+			System.arraycopy(term, termStart, keyBytes, 0, termLength);
+			keyBytes[termLength] = SEPARATOR;
+			System.arraycopy(word, wordStart, keyBytes, termLength + 1, wordLength);
+			if (pairs.increment(keyBytes, 0, length, 1) == 1) {
+				combiner.add(1, PAIR_FOOTPRINT + length);
+			}
+		}
+
+		private void flush(Context context) throws IOException, InterruptedException {
+			byte[] bytes = pairs.getBytes();
+			for (int i = 0; i < pairs.size(); i++) {
+				int start = pairs.getOffset(i);
+				int end = start + pairs.getLength(i);
+				int separator = start;
+				while (bytes[separator] != SEPARATOR) {
+					separator++;
+				}
+				pair.setTerm(Text.decode(bytes, start, separator - start));
+				pair.setTermCount(0);
+				pair.setWord(Text.decode(bytes, separator + 1, end - separator - 1));
+				pair.setWordCount(pairs.getCount(i));
+				value.set(pairs.getCount(i));
+				context.write(pair, value);
+			}
+
+			// N and the word marginals, once for every reducer
+			if (total > 0) {
+				pair.setTerm(MARGINALS);
+				for (int reducer = 0; reducer < context.getNumReduceTasks(); reducer++) {
+					pair.setTermCount(reducer);
+					pair.setWord(TOTAL);
+					pair.setWordCount(total);
+					value.set(total);
+					context.write(pair, value);
+					for (int i = 0; i < words.size(); i++) {
+						pair.setWord(words.getWord(i));
+						pair.setWordCount(words.getCount(i));
+						value.set(words.getCount(i));
+						context.write(pair, value);
+					}
+				}
+			}
+			combiner.flushed(context, pairs.size() + words.size());
+			pairs.clear();
+			words.clear();
+			total = 0;
+		}
+	}
+
+	/**
+	 * Sends the {@link AssociationPairs#MARGINALS} keys to the reducer in
+	 * their term count and the pairs on the hash of their term, as the
+	 * {@link PairPartitioner}.
+	 */
+	public static class AssociationPartitioner extends PairPartitioner {
+
+		@Override
+		public int getPartition(Pair key, IntWritable value, int numReduceTasks) {
+			if (MARGINALS.equals(key.getTerm())) {
+				return key.getTermCount() % numReduceTasks;
+			}
+			return super.getPartition(key, value, numReduceTasks);
+		}
+	}
+
+	public static class Reduce extends Reducer<Pair, IntWritable, Text, Text> {
+		private static Logger _log = Logger.getLogger(Reduce.class.getName());
+		/** counts of the words as second word of a pair */
+		private WordCountMap words = new WordCountMap();
+		private long total;
+		private int minCount;
+		private Text pair = new Text();
+		private Text scores = new Text();
+		private StringBuilder builder = new StringBuilder();
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			minCount = context.getConfiguration().getInt(MIN_COUNT, 1);
+		}
+
+		/**
+		 * The {@link AssociationPairs#MARGINALS} group comes first, then each
+		 * term with its {@link Pair#TOTAL} marginal before its words.
+		 */
+		public void reduce(Pair key, Iterable<IntWritable> values, Context context) throws IOException,
+				InterruptedException {
+			if (MARGINALS.equals(key.getTerm())) {
+				for (IntWritable val : values) {
+					if (TOTAL.equals(key.getWord())) {
+						total += val.get();
+					} else {
+						words.increment(key.getWord(), val.get());
+					}
+				}
+				_log.info("Marginals of " + words.size() + " words over " + total + " pairs");
+				return;
+			}
+
+			long termCount = 0;
+			String term = key.getTerm();
+			String word = null;
+			long wordCount = 0;
+			for (IntWritable val : values) {
+				if (TOTAL.equals(key.getWord())) {
+					termCount += val.get();
+					continue;
+				}
+				if (word != null && !word.equals(key.getWord())) {
+					emit(term, termCount, word, wordCount, context);
+					wordCount = 0;
+				}
+				word = key.getWord();
+				wordCount += val.get();
+			}
+			if (word != null) {
+				emit(term, termCount, word, wordCount, context);
+			}
+		}
+
+		private void emit(String term, long termCount, String word, long count, Context context)
+				throws IOException, InterruptedException {
+			if (count < minCount) {
+				return;
+			}
+			long wordCount = words.get(word);
+			builder.setLength(0);
+			builder.append(count).append('\t').append(pmi(count, termCount, wordCount, total)).append('\t')
+					.append(dice(count, termCount, wordCount)).append('\t')
+					.append(llr(count, termCount, wordCount, total));
+			pair.set(term + Pair.WHITESPACE + word);
+			scores.set(builder.toString());
+			context.write(pair, scores);
+		}
+	}
+
+	/**
+	 * @return log(c(t,w) N / c(t) c(w))
+	 */
+	static double pmi(long count, long termCount, long wordCount, long total) {
+		return Math.log((double) count * total / ((double) termCount * wordCount));
+	}
+
+	/**
+	 * @return 2 c(t,w) / (c(t) + c(w))
+	 */
+	static double dice(long count, long termCount, long wordCount) {
+		return 2.0 * count / (termCount + wordCount);
+	}
+
+	/**
+	 * Dunning's log likelihood ratio: G2 = 2 sum k log(k N / row col) over the
+	 * four cells of the contingency table of the term and the word.
+	 */
+	static double llr(long count, long termCount, long wordCount, long total) {
+		long k11 = count;
+		long k12 = termCount - count;
+		long k21 = wordCount - count;
+		long k22 = total - termCount - wordCount + count;
+		return 2 * (cell(k11, termCount, wordCount, total) + cell(k12, termCount, total - wordCount, total)
+				+ cell(k21, total - termCount, wordCount, total) + cell(k22, total - termCount, total - wordCount,
+				total));
+	}
+
+	private static double cell(long k, long row, long column, long total) {
+		return k == 0 ? 0 : k * Math.log((double) k * total / ((double) row * column));
+	}
+
+	public int run(String[] args) throws Exception {
+		Configuration conf = getConf();
+		@SuppressWarnings("deprecation")
+		Job job = new Job(conf, "Coursework 1 - Association Pairs");
+		job.setInputFormatClass(ParagrapghInputFormat.class);
+		job.setJarByClass(AssociationPairs.class);
+		if (job.getConfiguration().get(NEIGHBOURS) == null) {
+			job.getConfiguration().set(NEIGHBOURS, NEIGHBOURS_DEFAULT_VALUE);
+		}
+
+		job.setMapperClass(MapClass.class);
+		job.setCombinerClass(PairsApproach.Combiner.class);
+		job.setReducerClass(Reduce.class);
+
+		job.setMapOutputKeyClass(Pair.class);
+		job.setMapOutputValueClass(IntWritable.class);
+		job.setOutputKeyClass(Text.class);
+		job.setOutputValueClass(Text.class);
+		job.setPartitionerClass(AssociationPartitioner.class);
+		job.setSortComparatorClass(PairSortComparator.class);
+		job.setGroupingComparatorClass(PairGroupingComparator.class);
+
+		List<String> other_args = new ArrayList<String>();
+		for (int i = 0; i < args.length; ++i) {
+			try {
+				if (REDUCER_PARAM.equals(args[i])) {
+					job.setNumReduceTasks(Integer.parseInt(args[++i]));
+				} else if (MIN_COUNT_PARAM.equals(args[i])) {
+					job.getConfiguration().setInt(MIN_COUNT, Integer.parseInt(args[++i]));
+				} else {
+					other_args.add(args[i]);
+				}
+			} catch (NumberFormatException except) {
+				System.out.println("ERROR: Integer expected instead of " + args[i]);
+				return printUsage();
+			} catch (ArrayIndexOutOfBoundsException except) {
+				System.out.println("ERROR: Required parameter missing from " + args[i - 1]);
+				return printUsage();
+			}
+		}
+		// Make sure there are exactly 2 parameters left.
+		if (other_args.size() != 2) {
+			System.out.println("ERROR: Wrong number of parameters: " + other_args.size() + " instead of 2.");
+			return printUsage();
+		}
+
+		Path in = new Path(other_args.get(0));
+		FileInputFormat.setInputPaths(job, in);
+
+		Path out = new Path(other_args.get(1));
+		FileSystem fs = FileSystem.get(conf);
+		fs.delete(out, true);
+		FileOutputFormat.setOutputPath(job, out);
+
+		boolean success = job.waitForCompletion(true);
+		_log.info("Association scores written to " + out);
+		return success ? 0 : 1;
+	}
+
+	private static int printUsage() {
+		System.out.println("associationPairs [-r <reduces>] [-m <min count>] <input> <output>");
+		ToolRunner.printGenericCommandUsage(System.out);
+		return -1;
+	}
+
+	public static void main(String[] args) throws Exception {
+		String[] parameters = { "assets/jane_austen/input", "assets/jane_austen/output" };
+		if (args != null && args.length >= 2) {
+			parameters = args;
+		}
+		int res = ToolRunner.run(new Configuration(), new AssociationPairs(), parameters);
+		System.exit(res);
+	}
+}
@@ -0,0 +1,253 @@
+package com.hadoop.coursework1.pairs;
+
+import static com.hadoop.coursework1.util.TopNeighbours.TOP_K;
+import static com.hadoop.coursework1.util.TopNeighbours.TOP_K_DEFAULT_VALUE;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.reduce.IntSumReducer;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+import com.hadoop.corpus.EncodeCorpus;
+import com.hadoop.corpus.EncodedCorpusInputFormat;
+import com.hadoop.corpus.TermDictionary;
+import com.hadoop.corpus.TermIdPair;
+import com.hadoop.corpus.TermIdsWritable;
+import com.hadoop.coursework1.Pair;
+import com.hadoop.coursework1.util.InMapperCombiner;
+import com.hadoop.coursework1.util.ReducerLoad;
+import com.hadoop.coursework1.util.TopNeighbours;
+import com.hadoop.util.IdCountMap;
+
+/**
+ * Cloud Computing Cousework 1 - {@link PairsApproach} over a corpus encoded by
+ * {@link EncodeCorpus} (default tokenizer and paragraphs)<br>
+ * <br>
+ * The pairs are counted, combined and shuffled as term ids packed in a long
+ * ({@link TermIdPair}), the marginal of a term being sorted first by its 0
+ * word. The reducer decodes the term and its neighbours from the dictionary
+ * only to compute and write the conditional probabilities, so the output
+ * lines are the ones of {@link PairsApproach}, ordered by term id. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class EncodedPairsApproach extends Configured implements Tool {
+
+	private static final String REDUCER_PARAM = "-r";
+	private static final String NEIGHBOURS = "neighbours";
+	private static final String NEIGHBOURS_DEFAULT_VALUE = "1";
+
+	private static Logger _log = Logger.getLogger(EncodedPairsApproach.class.getName());
+
+	public static class MapClass extends Mapper<LongWritable, TermIdsWritable, LongWritable, IntWritable> {
+
+		/** rough heap bytes of a new entry: id, count and table slots */
+		private static final int PAIR_FOOTPRINT = 20;
+
+		private IdCountMap pairs = new IdCountMap();
+		private LongWritable pair = new LongWritable();
+		private IntWritable value = new IntWritable(1);
+		private InMapperCombiner combiner;
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			combiner = new InMapperCombiner(context.getConfiguration());
+		}
+
+		public void map(LongWritable offset, TermIdsWritable paragraph, Context context) throws IOException,
+				InterruptedException {
+			int neighbours = context.getConfiguration().getInt(NEIGHBOURS, Integer.valueOf(NEIGHBOURS_DEFAULT_VALUE));
+			int words = paragraph.size();
+
+			for (int i = 0; i + neighbours < words; i++) {
+				int term = paragraph.get(i);
+				count(TermIdPair.pack(term, paragraph.get(i + neighbours)));
+				count(TermIdPair.pack(term, TermIdPair.TOTAL));
+			}
+
+			if (combiner.shouldFlush()) {
+				flush(context);
+			}
+		}
+
+		@Override
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			flush(context);
+		}
+
+		private void count(long key) {
+			if (pairs.increment(key, 1) == 1) {
+				combiner.add(1, PAIR_FOOTPRINT);
+			}
+		}
+
+		private void flush(Context context) throws IOException, InterruptedException {
+			for (int i = 0; i < pairs.size(); i++) {
+				pair.set(pairs.getId(i));
+				value.set(pairs.getCount(i));
+				context.write(pair, value);
+			}
+			combiner.flushed(context, pairs.size());
+			pairs.clear();
+		}
+	}
+
+	public static class Reduce extends Reducer<LongWritable, IntWritable, Pair, DoubleWritable> {
+		/** counter groups of the values received by each reducer and its time */
+		public static final String LOAD = "EncodedPairsApproach reducer";
+
+		private static Logger _log = Logger.getLogger(Reduce.class.getName());
+		private TermDictionary dictionary;
+		private TopNeighbours neighbours = new TopNeighbours();
+		private Pair pair = new Pair();
+		private DoubleWritable value = new DoubleWritable(0);
+		private ReducerLoad load;
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			dictionary = TermDictionary.load(context.getConfiguration());
+			neighbours.setLimit(context.getConfiguration().getInt(TOP_K, TOP_K_DEFAULT_VALUE));
+			load = new ReducerLoad(context, LOAD);
+		}
+
+		@Override
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			load.done();
+		}
+
+		/**
+		 * Keys are grouped on the term, so each call receives all the pairs of
+		 * a term. The key is updated while iterating the values: the marginal
+		 * comes first and then each word in id order.
+		 */
+		public void reduce(LongWritable key, Iterable<IntWritable> values, Context context) throws IOException,
+				InterruptedException {
+
+			int term = TermIdPair.term(key.get());
+			int termCount = 0;
+			int word = TermIdPair.TOTAL;
+			int wordCount = 0;
+			for (IntWritable val : values) {
+				load.add(1);
+				int current = TermIdPair.word(key.get());
+				if (current == TermIdPair.TOTAL) {
+					termCount += val.get();
+					continue;
+				}
+				if (word != TermIdPair.TOTAL && word != current) {
+					neighbours.add(dictionary.getTerm(word), wordCount, termCount);
+					wordCount = 0;
+				}
+				word = current;
+				wordCount += val.get();
+			}
+			if (word != TermIdPair.TOTAL) {
+				neighbours.add(dictionary.getTerm(word), wordCount, termCount);
+			}
+			emit(dictionary.getTerm(term), termCount, context);
+		}
+
+		private void emit(String term, int termCount, Context context) throws IOException, InterruptedException {
+			int size = neighbours.sort();
+			pair.setTerm(term);
+			pair.setTermCount(termCount);
+			for (int i = 0; i < size; i++) {
+				pair.setWord(neighbours.getWord(i));
+				pair.setWordCount(neighbours.getWordCount(i));
+				value.set(neighbours.getProbability(i));
+				if (_log.isDebugEnabled()) {
+					_log.debug("Emiting: " + pair.toString());
+				}
+				context.write(pair, value);
+			}
+			neighbours.clear();
+		}
+	}
+
+	public int run(String[] args) throws Exception {
+		Configuration conf = getConf();
+		@SuppressWarnings("deprecation")
+		Job job = new Job(conf, "Coursework 1 - Encoded Pairs Approach");
+		job.setJarByClass(EncodedPairsApproach.class);
+
+		if (job.getConfiguration().get(NEIGHBOURS) == null) {
+			job.getConfiguration().set(NEIGHBOURS, NEIGHBOURS_DEFAULT_VALUE);
+		}
+
+		job.setMapperClass(MapClass.class);
+		job.setCombinerClass(IntSumReducer.class);
+		job.setReducerClass(Reduce.class);
+
+		job.setMapOutputKeyClass(LongWritable.class);
+		job.setMapOutputValueClass(IntWritable.class);
+		job.setOutputKeyClass(Pair.class);
+		job.setOutputValueClass(DoubleWritable.class);
+		job.setPartitionerClass(TermIdPairPartitioner.class);
+		job.setGroupingComparatorClass(TermIdPairGroupingComparator.class);
+
+		List<String> other_args = new ArrayList<String>();
+		for (int i = 0; i < args.length; ++i) {
+			try {
+				if (REDUCER_PARAM.equals(args[i])) {
+					job.setNumReduceTasks(Integer.parseInt(args[++i]));
+				} else {
+					other_args.add(args[i]);
+				}
+			} catch (NumberFormatException except) {
+				System.out.println("ERROR: Integer expected instead of " + args[i]);
+				return printUsage();
+			} catch (ArrayIndexOutOfBoundsException except) {
+				System.out.println("ERROR: Required parameter missing from " + args[i - 1]);
+				return printUsage();
+			}
+		}
+		// Make sure there are exactly 2 parameters left.
+		if (other_args.size() != 2) {
+			System.out.println("ERROR: Wrong number of parameters: " + other_args.size() + " instead of 2.");
+			return printUsage();
+		}
+
+		EncodedCorpusInputFormat.setInput(job, new Path(other_args.get(0)));
+
+		Path out = new Path(other_args.get(1));
+		FileSystem fs = FileSystem.get(conf);
+		fs.delete(out, true);
+		FileOutputFormat.setOutputPath(job, out);
+
+		boolean success = job.waitForCompletion(true);
+		_log.info("Reducers: " + ReducerLoad.report(job, Reduce.LOAD));
+		System.exit(success ? 0 : 1);
+		return 0;
+	}
+
+	private static int printUsage() {
+		System.out.println("encodedPairsApproach [-r <reduces>] <encoded input> <output>");
+		ToolRunner.printGenericCommandUsage(System.out);
+		return -1;
+	}
+
+	public static void main(String[] args) throws Exception {
+		String[] parameters = { "assets/jane_austen/encoded", "assets/jane_austen/output" };
+		if (args != null && args.length >= 2) {
+			parameters = args;
+		}
+		int res = ToolRunner.run(new Configuration(), new EncodedPairsApproach(), parameters);
+		System.exit(res);
+	}
+}
@@ -0,0 +1,296 @@
+package com.hadoop.coursework1.pairs;
+
+import static com.hadoop.coursework1.Pair.TOTAL;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.LazyOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+import com.hadoop.coursework1.Pair;
+import com.hadoop.coursework1.util.InMapperCombiner;
+import com.hadoop.coursework1.util.ParagrapghInputFormat;
+import com.hadoop.util.TextTokenizer;
+import com.hadoop.util.WordCountMap;
+
+/**
+ * Pairs approach for several window sizes in a single scan of the input. <br>
+ * <br>
+ * For every window size d of <b>windows</b> (1,2,3 by default) the mapper
+ * pairs each token with the token d positions before it, as
+ * {@link PairsApproach} does with <b>neighbours</b> = d. The input is read and
+ * tokenized once: the tokens of a paragraph stay in the tokenizer buffer,
+ * which is walked as a window over the last max(d) tokens. <br>
+ * The window travels in front of the term of the key (<i>d|term</i>), so the
+ * {@link PairsApproach.Reduce} computes the conditional probabilities of each
+ * (window, term) group, which are written without the prefix to the
+ * <i>window&lt;d&gt;</i> named output (<i>window2-r-00000</i>...). <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class MultiWindowPairs extends Configured implements Tool {
+
+	public static final String WINDOWS = "windows";
+	private static final String WINDOWS_DEFAULT_VALUE = "1,2,3";
+	public static final String WINDOWS_PARAM = "-w";
+	private static final String REDUCER_PARAM = "-r";
+	public static final String OUTPUT_PREFIX = "window";
+	public static final char WINDOW_SEPARATOR = '|';
+
+	public static class MapClass extends Mapper<LongWritable, Text, Pair, IntWritable> {
+
+		/** rough heap bytes of a new entry on top of its UTF bytes */
+		private static final int PAIR_FOOTPRINT = 48;
+		private static final byte[] TOTAL_BYTES = TOTAL.getBytes();
+		private static final byte SEPARATOR = ' ';
+
+		private static Logger _log = Logger.getLogger(MapClass.class.getName());
+		private TextTokenizer tokenizer = TextTokenizer.alphanumeric();
+		/** counts keyed by the UTF bytes of "d|term word" */
+		private WordCountMap pairs = new WordCountMap();
+		private int[] windows;
+		private byte[][] prefixes;
+		private byte[] keyBytes = new byte[64];
+		private Pair pair = new Pair();
+		private IntWritable value = new IntWritable(1);
+		private InMapperCombiner combiner;
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			combiner = new InMapperCombiner(context.getConfiguration());
+			windows = getWindows(context.getConfiguration());
+			prefixes = new byte[windows.length][];
+			for (int w = 0; w < windows.length; w++) {
+				prefixes[w] = (Integer.toString(windows[w]) + WINDOW_SEPARATOR).getBytes();
+			}
+		}
+
+		public void map(LongWritable lineNumber, Text line, Context context) throws IOException, InterruptedException {
+			int words = tokenizer.tokenize(line);
+			byte[] bytes = tokenizer.getBytes();
+
+			// each token is the word of the terms 1..max(d) tokens before it
+			for (int j = 1; j < words; j++) {
+				for (int w = 0; w < windows.length; w++) {
+					int i = j - windows[w];
+					if (i < 0) {
+						continue;
+					}
+					count(prefixes[w], bytes, tokenizer.getStart(i), tokenizer.getLength(i), bytes,
+							tokenizer.getStart(j), tokenizer.getLength(j));
+					count(prefixes[w], bytes, tokenizer.getStart(i), tokenizer.getLength(i), TOTAL_BYTES, 0,
+							TOTAL_BYTES.length);
+				}
+			}
+
+			if (combiner.shouldFlush()) {
+				flush(context);
+			}
+		}
+
+		@Override
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			flush(context);
+		}
+
+		private void count(byte[] prefix, byte[] term, int termStart, int termLength, byte[] word, int wordStart,
+				int wordLength) {
+			int length = prefix.length + termLength + 1 + wordLength;
+			if (keyBytes.length < length) {
+				keyBytes = new byte[length * 2];
+			}
+			System.arraycopy(prefix, 0, keyBytes, 0, prefix.length);
+			System.arraycopy(term, termStart, keyBytes, prefix.length, termLength);
+			keyBytes[prefix.length + termLength] = SEPARATOR;
+			System.arraycopy(word, wordStart, keyBytes, prefix.length + termLength + 1, wordLength);
+			if (pairs.increment(keyBytes, 0, length, 1) == 1) {
+				combiner.add(1, PAIR_FOOTPRINT + length);
+			}
+		}
+
+		private void flush(Context context) throws IOException, InterruptedException {
+			byte[] bytes = pairs.getBytes();
+			for (int i = 0; i < pairs.size(); i++) {
+				int start = pairs.getOffset(i);
+				int end = start + pairs.getLength(i);
+				int separator = start;
+				while (bytes[separator] != SEPARATOR) {
+					separator++;
+				}
+				pair.setTerm(Text.decode(bytes, start, separator - start));
+				pair.setWord(Text.decode(bytes, separator + 1, end - separator - 1));
+				pair.setWordCount(pairs.getCount(i));
+				value.set(pairs.getCount(i));
+				_log.debug("Emiting: " + pair);
+				context.write(pair, value);
+			}
+			combiner.flushed(context, pairs.size());
+			pairs.clear();
+		}
+	}
+
+	/**
+	 * {@link PairsApproach.Reduce} writing each window to its named output.
+	 */
+	public static class Reduce extends PairsApproach.Reduce {
+		private MultipleOutputs<Pair, DoubleWritable> outputs;
+		private String output;
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			super.setup(context);
+			outputs = new MultipleOutputs<Pair, DoubleWritable>(context);
+		}
+
+		@Override
+		protected String term(Pair key) {
+			String term = key.getTerm();
+			int separator = term.indexOf(WINDOW_SEPARATOR);
+			output = OUTPUT_PREFIX + term.substring(0, separator);
+			return term.substring(separator + 1);
+		}
+
+		@Override
+		protected void write(Pair pair, DoubleWritable value, Context context) throws IOException,
+				InterruptedException {
+			outputs.write(output, pair, value);
+		}
+
+		@Override
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			outputs.close();
+			super.cleanup(context);
+		}
+	}
+
+	/**
+	 * @return the window sizes of <b>windows</b>
+	 * @throws IllegalArgumentException
+	 *             when a size is not a positive integer or is given twice, as
+	 *             its counts would be summed twice under the same keys
+	 */
+	public static int[] getWindows(Configuration conf) {
+		String[] values = conf.get(WINDOWS, WINDOWS_DEFAULT_VALUE).split(",");
+		int[] windows = new int[values.length];
+		for (int w = 0; w < values.length; w++) {
+			try {
+				windows[w] = Integer.parseInt(values[w].trim());
+			} catch (NumberFormatException except) {
+				throw new IllegalArgumentException("Window sizes have to be integers: " + values[w]);
+			}
+			if (windows[w] < 1) {
+				throw new IllegalArgumentException("Window sizes have to be positive: " + values[w]);
+			}
+			for (int other = 0; other < w; other++) {
+				if (windows[other] == windows[w]) {
+					throw new IllegalArgumentException("Window size given twice: " + windows[w]);
+				}
+			}
+		}
+		return windows;
+	}
+
+	public int run(String[] args) throws Exception {
+		Configuration conf = getConf();
+		@SuppressWarnings("deprecation")
+		Job job = new Job(conf, "Coursework 1 - Multi Window Pairs");
+		job.setInputFormatClass(ParagrapghInputFormat.class);
+		job.setJarByClass(MultiWindowPairs.class);
+
+		job.setMapperClass(MapClass.class);
+		job.setCombinerClass(PairsApproach.Combiner.class);
+		job.setReducerClass(Reduce.class);
+
+		job.setMapOutputKeyClass(Pair.class);
+		job.setMapOutputValueClass(IntWritable.class);
+		job.setOutputKeyClass(Pair.class);
+		job.setOutputValueClass(DoubleWritable.class);
+		job.setPartitionerClass(PairPartitioner.class);
+		job.setSortComparatorClass(PairSortComparator.class);
+		job.setGroupingComparatorClass(PairGroupingComparator.class);
+
+		List<String> other_args = new ArrayList<String>();
+		for (int i = 0; i < args.length; ++i) {
+			try {
+				if (REDUCER_PARAM.equals(args[i])) {
+					job.setNumReduceTasks(Integer.parseInt(args[++i]));
+				} else if (WINDOWS_PARAM.equals(args[i])) {
+					job.getConfiguration().set(WINDOWS, args[++i]);
+				} else {
+					other_args.add(args[i]);
+				}
+			} catch (NumberFormatException except) {
+				System.out.println("ERROR: Integer expected instead of " + args[i]);
+				return printUsage();
+			} catch (ArrayIndexOutOfBoundsException except) {
+				System.out.println("ERROR: Required parameter missing from " + args[i - 1]);
+				return printUsage();
+			}
+		}
+		// Make sure there are exactly 2 parameters left.
+		if (other_args.size() != 2) {
+			System.out.println("ERROR: Wrong number of parameters: " + other_args.size() + " instead of 2.");
+			return printUsage();
+		}
+
+		int[] windows;
+		try {
+			windows = getWindows(job.getConfiguration());
+		} catch (IllegalArgumentException except) {
+			System.out.println("ERROR: " + except.getMessage());
+			return printUsage();
+		}
+
+		// only the named outputs are written
+		LazyOutputFormat.setOutputFormatClass(job, TextOutputFormat.class);
+		for (int window : windows) {
+			MultipleOutputs.addNamedOutput(job, OUTPUT_PREFIX + window, TextOutputFormat.class, Pair.class,
+					DoubleWritable.class);
+		}
+
+		Path in = new Path(other_args.get(0));
+		FileInputFormat.setInputPaths(job, in);
+
+		Path out = new Path(other_args.get(1));
+		FileSystem fs = FileSystem.get(conf);
+		fs.delete(out, true);
+		FileOutputFormat.setOutputPath(job, out);
+
+		System.exit(job.waitForCompletion(true) ? 0 : 1);
+		return 0;
+	}
+
+	private static int printUsage() {
+		System.out.println("multiWindowPairs [-r <reduces>] [-w <d1,d2,...>] <input> <output>");
+		ToolRunner.printGenericCommandUsage(System.out);
+		return -1;
+	}
+
+	public static void main(String[] args) throws Exception {
+		String[] parameters = { "assets/jane_austen/input", "assets/jane_austen/output" };
+		if (args != null && args.length >= 2) {
+			parameters = args;
+		}
+		int res = ToolRunner.run(new Configuration(), new MultiWindowPairs(), parameters);
+		System.exit(res);
+	}
+}
@@ -1,12 +1,20 @@
 package com.hadoop.coursework1.pairs;
 
+import static com.hadoop.coursework1.pairs.PairSortComparator.termLength;
+import static com.hadoop.coursework1.pairs.PairSortComparator.termStart;
+
 import org.apache.hadoop.io.WritableComparable;
 import org.apache.hadoop.io.WritableComparator;
 
 import com.hadoop.coursework1.Pair;
 
 /**
- * 
+ * Groups the composite keys on the term only, so all the pairs of a term
+ * (starting with its {@link Pair#TOTAL} marginal) reach a single reduce()
+ * call. <br>
+ * The term is compared on its UTF bytes, straight from the serialized
+ * {@link Pair}. <br>
+ *
  * @author pmonteiro
  *
  */
@@ -16,12 +24,17 @@ public class PairGroupingComparator extends WritableComparator {
 		super(Pair.class, true);
 	}
 
+	@Override
+	public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+		return compareBytes(b1, termStart(s1), termLength(b1, s1), b2, termStart(s2), termLength(b2, s2));
+	}
+
 	@Override
 	@SuppressWarnings("rawtypes")
 	public int compare(WritableComparable w1, WritableComparable w2) {
 		Pair k1 = (Pair) w1;
 		Pair k2 = (Pair) w2;
 
-		return k1.getWordPair().compareTo(k2.getWordPair());
+		return k1.getTerm().compareTo(k2.getTerm());
 	}
-}
\ No newline at end of file
+}
@@ -1,6 +1,7 @@
 package com.hadoop.coursework1.pairs;
 
 import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.WritableComparator;
 import org.apache.hadoop.mapreduce.Partitioner;
 
 import com.hadoop.coursework1.Pair;
@@ -12,7 +13,11 @@ import com.hadoop.coursework1.Pair;
  * the same reducer (partition). <br>
  * In this scenario the partitioner needs to consider the original key part
  * while deciding on the partition for the record.<br>
- * 
+ * <br>
+ * The partition is taken from a hash of the UTF bytes of the term, the same
+ * bytes the {@link PairGroupingComparator} groups on, computed without
+ * encoding the term into a new buffer.<br>
+ *
  * @author pmonteiro
  * @since 29-11-2014
  *
@@ -21,8 +26,34 @@ public class PairPartitioner extends Partitioner<Pair, IntWritable> {
 
 	@Override
 	public int getPartition(Pair key, IntWritable value, int numReduceTasks) {
-		// the return value needs to be positive, so we use Math.abs(...)
-		return Math.abs(key.getTerm().hashCode()) % numReduceTasks;
+		// the return value needs to be positive, so we clear the sign bit
+		return (hashTerm(key.getTerm()) & Integer.MAX_VALUE) % numReduceTasks;
 	}
 
+	/**
+	 * Hashes the (modified) UTF-8 bytes {@link java.io.DataOutput#writeUTF}
+	 * would write for the term. Gives the same value as
+	 * {@link WritableComparator#hashBytes(byte[], int, int)} over the
+	 * serialized term.
+	 *
+	 * @param term
+	 * @return hash of the term bytes
+	 */
+	public static int hashTerm(String term) {
+		int hash = 1;
+		for (int i = 0; i < term.length(); i++) {
+			char c = term.charAt(i);
+			if (c >= 0x0001 && c <= 0x007F) {
+				hash = 31 * hash + (byte) c;
+			} else if (c > 0x07FF) {
+				hash = 31 * hash + (byte) (0xE0 | ((c >> 12) & 0x0F));
+				hash = 31 * hash + (byte) (0x80 | ((c >> 6) & 0x3F));
+				hash = 31 * hash + (byte) (0x80 | (c & 0x3F));
+			} else {
+				hash = 31 * hash + (byte) (0xC0 | ((c >> 6) & 0x1F));
+				hash = 31 * hash + (byte) (0x80 | (c & 0x3F));
+			}
+		}
+		return hash;
+	}
 }
@@ -0,0 +1,59 @@
+package com.hadoop.coursework1.pairs;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.mapreduce.Partitioner;
+
+import com.hadoop.coursework1.Pair;
+
+/**
+ * Total order partitioner for the composite keys. <br>
+ * Terms are sent to reducers by ranges, so part-r-00000 holds the smallest
+ * terms, part-r-00001 the next ones and so on: the output is globally sorted
+ * by term. <br>
+ * The ranges are given by the sorted split points stored in
+ * <b>pairs.partition.split.points</b> (see {@link TermRangeSampler}), a term
+ * goes to the partition of the number of split points smaller or equal to
+ * it. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class PairRangePartitioner extends Partitioner<Pair, IntWritable> implements Configurable {
+
+	public static final String SPLIT_POINTS = "pairs.partition.split.points";
+
+	private Configuration conf;
+	private String[] splitPoints = new String[0];
+
+	@Override
+	public int getPartition(Pair key, IntWritable value, int numReduceTasks) {
+		return Math.min(getPartition(splitPoints, key.getTerm()), numReduceTasks - 1);
+	}
+
+	/**
+	 * @return the partition of the term for the given sorted split points
+	 */
+	public static int getPartition(String[] splitPoints, String term) {
+		int position = Arrays.binarySearch(splitPoints, term);
+		return position >= 0 ? position + 1 : -position - 1;
+	}
+
+	public static void setSplitPoints(Configuration conf, String[] splitPoints) {
+		conf.setStrings(SPLIT_POINTS, splitPoints);
+	}
+
+	@Override
+	public void setConf(Configuration conf) {
+		this.conf = conf;
+		splitPoints = conf.getStrings(SPLIT_POINTS, new String[0]);
+	}
+
+	@Override
+	public Configuration getConf() {
+		return conf;
+	}
+}
@@ -6,20 +6,59 @@ import org.apache.hadoop.io.WritableComparator;
 import com.hadoop.coursework1.Pair;
 
 /**
- * 
+ *
  * To guarantee that all of them composite keys will come in the same input
  * group (i.e. in a single reduce() call) as the list of values. <br>
  * TO ensure that we compare on the original key. <br>
- * 
+ * <br>
+ * The comparison is done straight on the serialized form of the {@link Pair}
+ * (<i>term, termCount, word, wordCount</i>), comparing the UTF bytes of the
+ * term and then the ones of the word, so no keys are deserialized during the
+ * shuffle sort. The resulting order is the same as comparing
+ * {@link Pair#getWordPair()}, which means the {@link Pair#TOTAL} marginal key
+ * of a term is sorted before any of its words. <br>
+ *
  * @author pmonteiro
  *
  */
 public class PairSortComparator extends WritableComparator {
 
+	private static final int SEPARATOR = Pair.WHITESPACE.charAt(0);
+	private static final int UTF_LENGTH = 2;
+	private static final int COUNT_LENGTH = 4;
+
 	protected PairSortComparator() {
 		super(Pair.class, true);
 	}
 
+	@Override
+	public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+		int termLength1 = termLength(b1, s1);
+		int termLength2 = termLength(b2, s2);
+		int length = Math.min(termLength1, termLength2);
+
+		int result = compareBytes(b1, termStart(s1), length, b2, termStart(s2), length);
+		if (result != 0) {
+			return result;
+		}
+
+		if (termLength1 == termLength2) {
+			int wordOffset1 = wordOffset(b1, s1);
+			int wordOffset2 = wordOffset(b2, s2);
+			return compareBytes(b1, wordOffset1 + UTF_LENGTH, readUnsignedShort(b1, wordOffset1), b2, wordOffset2
+					+ UTF_LENGTH, readUnsignedShort(b2, wordOffset2));
+		}
+
+		// one term is a prefix of the other, in the word pair the shorter one
+		// is followed by the whitespace separator
+		if (termLength1 < termLength2) {
+			result = SEPARATOR - (b2[termStart(s2) + length] & 0xff);
+		} else {
+			result = (b1[termStart(s1) + length] & 0xff) - SEPARATOR;
+		}
+		return result != 0 ? result : super.compare(b1, s1, l1, b2, s2, l2);
+	}
+
 	@Override
 	@SuppressWarnings("rawtypes")
 	public int compare(WritableComparable w1, WritableComparable w2) {
@@ -29,4 +68,23 @@ public class PairSortComparator extends WritableComparator {
 		int result = p1.getWordPair().compareTo(p2.getWordPair());
 		return result;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * @return the number of UTF bytes of the term of a serialized {@link Pair}
+	 */
+	static int termLength(byte[] b, int s) {
+		return readUnsignedShort(b, s);
+	}
+
+	/**
+	 * @return the offset of the first UTF byte of the term of a serialized
+	 *         {@link Pair}
+	 */
+	static int termStart(int s) {
+		return s + UTF_LENGTH;
+	}
+
+	private static int wordOffset(byte[] b, int s) {
+		return termStart(s) + termLength(b, s) + COUNT_LENGTH;
+	}
+}
@@ -1,16 +1,13 @@
 package com.hadoop.coursework1.pairs;
 
 import static com.hadoop.coursework1.Pair.TOTAL;
+import static com.hadoop.coursework1.util.TopNeighbours.TOP_K;
+import static com.hadoop.coursework1.util.TopNeighbours.TOP_K_DEFAULT_VALUE;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
 
-import org.apache.commons.lang.StringUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.conf.Configured;
 import org.apache.hadoop.fs.FileSystem;
@@ -29,12 +26,32 @@ import org.apache.hadoop.util.ToolRunner;
 import org.apache.log4j.Logger;
 
 import com.hadoop.coursework1.Pair;
+import com.hadoop.coursework1.store.ProbabilityStore;
+import com.hadoop.coursework1.store.ProbabilityStoreOutputFormat;
+import com.hadoop.coursework1.util.InMapperCombiner;
 import com.hadoop.coursework1.util.ParagrapghInputFormat;
+import com.hadoop.coursework1.util.ReducerLoad;
+import com.hadoop.coursework1.util.TopNeighbours;
+import com.hadoop.coursework1.util.VocabularyFilter;
+import com.hadoop.util.TextTokenizer;
+import com.hadoop.util.WordCountMap;
 
 /**
  * Cloud Computing Cousework 1 - Implementation of the Hadoop Pairs design
  * pattern<br>
  * <br>
+ * With <b>-t</b> and more than one reducer the terms are range partitioned on
+ * split points sampled from the input ({@link TermRangeSampler}), so the
+ * reducers get about the same number of pairs and the part files are globally
+ * sorted by term. The values each reducer received and its time are reported
+ * in the <i>PairsApproach reducer</i> counters ({@link ReducerLoad}). <br>
+ * With <b>-p</b> the rare terms and the stopwords are pruned by the mappers
+ * ({@link VocabularyFilter}): no pair of a pruned term or with a pruned word is
+ * built, while the marginals still count them, so the probabilities of the
+ * pairs kept are the ones of the full run. <br>
+ * With <b>-i</b> the probabilities are written as block indexed binary
+ * <i>.store</i> files ({@link ProbabilityStoreOutputFormat}) to be looked up
+ * with the {@link ProbabilityStore}. <br>
  * 
  * @author pmonteiro
  *
@@ -42,60 +59,107 @@ import com.hadoop.coursework1.util.ParagrapghInputFormat;
 public class PairsApproach extends Configured implements Tool {
 
 	private static final String REDUCER_PARAM = "-r";
+	private static final String TOTAL_ORDER_PARAM = "-t";
+	private static final String PRUNE_PARAM = "-p";
+	private static final String STORE_PARAM = "-i";
 	private static final String KEYWORD = "KEYWORD";
 	private static final String KEYWORD_DEFAULT_VALUE = "for";
 	private static final String NEIGHBOURS = "neighbours";
 	private static final String NEIGHBOURS_DEFAULT_VALUE = "1";
 
+	private static Logger _log = Logger.getLogger(PairsApproach.class.getName());
+
+	private Job job;
+
 	public static class MapClass extends Mapper<LongWritable, Text, Pair, IntWritable> {
 
+		/** rough heap bytes of a new entry on top of its UTF bytes */
+		private static final int PAIR_FOOTPRINT = 48;
+		private static final byte[] TOTAL_BYTES = TOTAL.getBytes();
+		private static final byte SEPARATOR = ' ';
+
 		private static Logger _log = Logger.getLogger(MapClass.class.getName());
-		private Map<String, Pair> pairs = new HashMap<>();
+		private TextTokenizer tokenizer = TextTokenizer.alphanumeric();
+		/** counts keyed by the UTF bytes of "term word" */
+		private WordCountMap pairs = new WordCountMap();
+		private byte[] keyBytes = new byte[64];
+		private Pair pair = new Pair();
 		private IntWritable value = new IntWritable(1);
+		private InMapperCombiner combiner;
+		private VocabularyFilter vocabulary;
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			combiner = new InMapperCombiner(context.getConfiguration());
+			vocabulary = VocabularyFilter.load(context.getConfiguration());
+		}
 
 		public void map(LongWritable lineNumber, Text line, Context context) throws IOException, InterruptedException {
 			int neighbours = context.getConfiguration().getInt(NEIGHBOURS, Integer.valueOf(NEIGHBOURS_DEFAULT_VALUE));
-			String[] words = line.toString().toLowerCase()
-					.replaceAll("[^a-zA-Z0-9 \\-]", "").replaceAll("-", " ").split("\\s+");
-
-			for (int i = 0; i < words.length; i++) {
+			int words = tokenizer.tokenize(line);
+			byte[] bytes = tokenizer.getBytes();
+			boolean[] kept = vocabulary == null ? null : vocabulary.keep(tokenizer, context);
+			int pruned = 0;
 
-				if (words[i].trim().length() == 0) {
+			for (int i = 0; i + neighbours < words; i++) {
+				int j = i + neighbours;
+				if (kept != null && !kept[i]) {
+					pruned++;
 					continue;
 				}
-
-				if ((i + neighbours) >= words.length) {
-					break;
-				}
-
-				String keyStrPair = words[i] + " " + words[i + neighbours];
-				String relativeStrPair = words[i] + " " + TOTAL;
-				if (pairs.containsKey(keyStrPair)) {
-					pairs.get(keyStrPair).setWordCount(pairs.get(keyStrPair).getWordCount()+1);
-					pairs.get(relativeStrPair).setWordCount(pairs.get(relativeStrPair).getWordCount()+1);
+				if (kept == null || kept[j]) {
+					count(bytes, tokenizer.getStart(i), tokenizer.getLength(i), bytes, tokenizer.getStart(j),
+							tokenizer.getLength(j));
 				} else {
-					Pair cKey = new Pair();
-					cKey.setTerm(words[i]);
-					cKey.setWord(words[i + neighbours]);
-					cKey.setWordCount(1);
-					pairs.put(cKey.getWordPair(), cKey);
-					if (pairs.containsKey(relativeStrPair)) {
-						pairs.get(relativeStrPair).setWordCount(pairs.get(relativeStrPair).getWordCount()+1);
-					} else {
-						Pair relativePair = new Pair();
-						relativePair.setTerm(words[i]);
-						relativePair.setWord(TOTAL);
-						relativePair.setWordCount(1);
-						pairs.put(relativePair.getWordPair(), relativePair);
-					}
+					pruned++;
 				}
+				// the marginal still counts the pruned words
+				count(bytes, tokenizer.getStart(i), tokenizer.getLength(i), TOTAL_BYTES, 0, TOTAL_BYTES.length);
 			}
-			
-			for (String key : pairs.keySet()) {
-				value.set(pairs.get(key).getWordCount());
-				_log.debug("Emiting: " + pairs.get(key));
-				context.write(pairs.get(key), value);
+			if (pruned > 0) {
+				context.getCounter(VocabularyFilter.Counters.PAIRS_PRUNED).increment(pruned);
 			}
+
+			if (combiner.shouldFlush()) {
+				flush(context);
+			}
+		}
+
+		@Override
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			flush(context);
+		}
+
+		private void count(byte[] term, int termStart, int termLength, byte[] word, int wordStart, int wordLength) {
+			int length = termLength + 1 + wordLength;
+			if (keyBytes.length < length) {
+				keyBytes = new byte[length * 2];
+			}
+			System.arraycopy(term, termStart, keyBytes, 0, termLength);
+			keyBytes[termLength] = SEPARATOR;
+			System.arraycopy(word, wordStart, keyBytes, termLength + 1, wordLength);
+			if (pairs.increment(keyBytes, 0, length, 1) == 1) {
+				combiner.add(1, PAIR_FOOTPRINT + length);
+			}
+		}
+
+		private void flush(Context context) throws IOException, InterruptedException {
+			byte[] bytes = pairs.getBytes();
+			for (int i = 0; i < pairs.size(); i++) {
+				int start = pairs.getOffset(i);
+				int end = start + pairs.getLength(i);
+				int separator = start;
+				while (bytes[separator] != SEPARATOR) {
+					separator++;
+				}
+				pair.setTerm(Text.decode(bytes, start, separator - start));
+				pair.setWord(Text.decode(bytes, separator + 1, end - separator - 1));
+				pair.setWordCount(pairs.getCount(i));
+				value.set(pairs.getCount(i));
+				_log.debug("Emiting: " + pair);
+				context.write(pair, value);
+			}
+			combiner.flushed(context, pairs.size());
 			pairs.clear();
 		}
 	}
@@ -119,61 +183,103 @@ public class PairsApproach extends Configured implements Tool {
 	}
 
 	public static class Reduce extends Reducer<Pair, IntWritable, Pair, DoubleWritable> {
+		/** counter groups of the values received by each reducer and its time */
+		public static final String LOAD = "PairsApproach reducer";
+
 		private static Logger _log = Logger.getLogger(Reduce.class.getName());
-		private Queue<Pair> queue = new PriorityQueue<>();
+		private TopNeighbours neighbours = new TopNeighbours();
 		private Integer termCount = 0;
-		private String term;
+		private Pair pair = new Pair();
 		private DoubleWritable value = new DoubleWritable(0);
+		private ReducerLoad load;
 
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			neighbours.setLimit(context.getConfiguration().getInt(TOP_K, TOP_K_DEFAULT_VALUE));
+			load = new ReducerLoad(context, LOAD);
+		}
+
+		@Override
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			load.done();
+		}
+
+		/**
+		 * Keys are grouped on the term, so each call receives all the pairs of
+		 * a term. The key is updated while iterating the values: the
+		 * {@link Pair#TOTAL} marginal comes first and then each word in order.
+		 */
 		public void reduce(Pair key, Iterable<IntWritable> values, Context context) throws IOException,
 				InterruptedException {
 
-			if(StringUtils.isNotBlank(term) && !term.equals(key.getTerm())) {
-				emit(context);
-			}
-			
+			termCount = 0;
+			String word = null;
 			int wordCount = 0;
 			for (IntWritable val : values) {
+				load.add(1);
+				if (TOTAL.equals(key.getWord())) {
+					termCount += val.get();
+					continue;
+				}
+				if (word != null && !word.equals(key.getWord())) {
+					neighbours.add(word, wordCount, termCount);
+					wordCount = 0;
+				}
+				word = key.getWord();
 				wordCount += val.get();
 			}
-			
-			if (key.getWordPair().matches(".*\\*")) {
-				term = key.getTerm();
-				termCount = wordCount;
-			} else {
-				Pair p = new Pair();
-				p.setTerm(key.getTerm());
-				p.setTermCount(termCount);
-				p.setWord(key.getWord());
-				p.setWordCount(wordCount);
-				queue.add(p);
+			if (word != null) {
+				neighbours.add(word, wordCount, termCount);
 			}
+			emit(term(key), context);
 		}
-		
-		@Override
-		protected void cleanup(Context context) throws IOException, InterruptedException {
-			 emit(context);
-        }
 
-		private void emit(Context context) throws IOException, InterruptedException {
-			while (!queue.isEmpty()) {
-				Pair pair = queue.poll();
-				value.set(pair.getConditionalProbability());
+		/**
+		 * @return the term written in the output for the key of a group
+		 */
+		protected String term(Pair key) {
+			return key.getTerm();
+		}
+
+		protected void write(Pair pair, DoubleWritable value, Context context) throws IOException,
+				InterruptedException {
+			context.write(pair, value);
+		}
+
+		private void emit(String term, Context context) throws IOException, InterruptedException {
+			int size = neighbours.sort();
+			pair.setTerm(term);
+			pair.setTermCount(termCount);
+			for (int i = 0; i < size; i++) {
+				pair.setWord(neighbours.getWord(i));
+				pair.setWordCount(neighbours.getWordCount(i));
+				value.set(neighbours.getProbability(i));
 				_log.debug("Emiting: " + pair.toString());
-				context.write(pair, value);
+				write(pair, value, context);
 			}
+			neighbours.clear();
 		}
 	}
 
+	/**
+	 * @return the main job of the last run, for its counters
+	 */
+	public Job getJob() {
+		return job;
+	}
+
 	public int run(String[] args) throws Exception {
-		Configuration conf = new Configuration();
+		Configuration conf = getConf();
 		@SuppressWarnings("deprecation")
 		Job job = new Job(conf, "Coursework 1 - Pairs Approach");
+		this.job = job;
 		job.setInputFormatClass(ParagrapghInputFormat.class);
 		job.setJarByClass(PairsApproach.class);
 		
 		job.getConfiguration().set(KEYWORD, KEYWORD_DEFAULT_VALUE);
-		job.getConfiguration().set(NEIGHBOURS, NEIGHBOURS_DEFAULT_VALUE);
+		if (job.getConfiguration().get(NEIGHBOURS) == null) {
+			job.getConfiguration().set(NEIGHBOURS, NEIGHBOURS_DEFAULT_VALUE);
+		}
 
 		job.setMapperClass(MapClass.class);
 		job.setCombinerClass(Combiner.class);
@@ -185,11 +291,19 @@ public class PairsApproach extends Configured implements Tool {
 		job.setSortComparatorClass(PairSortComparator.class);
 		job.setGroupingComparatorClass(PairGroupingComparator.class);
 
+		boolean totalOrder = false;
+		boolean prune = false;
 		List<String> other_args = new ArrayList<String>();
 		for (int i = 0; i < args.length; ++i) {
 			try {
 				if (REDUCER_PARAM.equals(args[i])) {
 					job.setNumReduceTasks(Integer.parseInt(args[++i]));
+				} else if (TOTAL_ORDER_PARAM.equals(args[i])) {
+					totalOrder = true;
+				} else if (PRUNE_PARAM.equals(args[i])) {
+					prune = true;
+				} else if (STORE_PARAM.equals(args[i])) {
+					job.setOutputFormatClass(ProbabilityStoreOutputFormat.class);
 				} else {
 					other_args.add(args[i]);
 				}
@@ -207,20 +321,33 @@ public class PairsApproach extends Configured implements Tool {
 			return printUsage();
 		}
 		
-		Path in = new Path(args[0]);
+		Path in = new Path(other_args.get(0));
 		FileInputFormat.setInputPaths(job, in);
 
-		Path out = new Path(args[1]);
+		if (totalOrder && job.getNumReduceTasks() > 1) {
+			// term ranges balanced on a sample instead of the term hash
+			job.setPartitionerClass(PairRangePartitioner.class);
+			TermRangeSampler.writeSplitPoints(job, job.getConfiguration().getInt(NEIGHBOURS,
+					Integer.valueOf(NEIGHBOURS_DEFAULT_VALUE)));
+		}
+
+		Path out = new Path(other_args.get(1));
 		FileSystem fs = FileSystem.get(conf);
 		fs.delete(out, true);
 		FileOutputFormat.setOutputPath(job, out);
 
-		System.exit(job.waitForCompletion(true) ? 0 : 1);
-		return 0;
+		Path vocabulary = prune ? VocabularyFilter.prepare(job) : null;
+
+		boolean success = job.waitForCompletion(true);
+		_log.info("Reducers: " + ReducerLoad.report(job, Reduce.LOAD));
+		if (vocabulary != null) {
+			fs.delete(vocabulary, true);
+		}
+		return success ? 0 : 1;
 	}
 	
 	private static int printUsage() {
-		System.out.println("stripesApproach [-r <reduces>] <input> <output>");
+		System.out.println("pairsApproach [-r <reduces>] [-t] [-p] [-i] <input> <output>");
 		ToolRunner.printGenericCommandUsage(System.out);
 		return -1;
 	}
@@ -229,7 +356,7 @@ public class PairsApproach extends Configured implements Tool {
 //		String[] parameters = { "assets/mlk_speech/input/I_have_a_dream2.txt", "assets/mlk_speech/output" };
 //		String[] parameters = { "assets/mlk_speech/input", "assets/mlk_speech/output" };
 		String[] parameters = { "assets/jane_austen/input", "assets/jane_austen/output" };
-		if (args != null && (args.length == 2 || args.length == 3)) {
+		if (args != null && args.length >= 2) {
 			parameters = args;
 		}
 		int res = ToolRunner.run(new Configuration(), new PairsApproach(), parameters);
@@ -0,0 +1,37 @@
+package com.hadoop.coursework1.pairs;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+
+import com.hadoop.corpus.TermIdPair;
+
+/**
+ * {@link PairGroupingComparator} of the packed term id pairs of
+ * {@link EncodedPairsApproach}: groups the keys on the term, the first 4
+ * bytes of the serialized long. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class TermIdPairGroupingComparator extends WritableComparator {
+
+	private static final int TERM_LENGTH = 4;
+
+	protected TermIdPairGroupingComparator() {
+		super(LongWritable.class, true);
+	}
+
+	@Override
+	public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+		return compareBytes(b1, s1, TERM_LENGTH, b2, s2, TERM_LENGTH);
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public int compare(WritableComparable w1, WritableComparable w2) {
+		int term1 = TermIdPair.term(((LongWritable) w1).get());
+		int term2 = TermIdPair.term(((LongWritable) w2).get());
+		return term1 < term2 ? -1 : (term1 == term2 ? 0 : 1);
+	}
+}
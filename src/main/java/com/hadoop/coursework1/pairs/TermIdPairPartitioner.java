@@ -0,0 +1,25 @@
+package com.hadoop.coursework1.pairs;
+
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.Partitioner;
+
+import com.hadoop.corpus.TermIdPair;
+
+/**
+ * {@link PairPartitioner} of the packed term id pairs of
+ * {@link EncodedPairsApproach}: all the pairs of a term go to the same
+ * reducer. <br>
+ * The partition is the term id modulo the number of reducers: ids are ranks
+ * by decreasing count, so the heaviest terms are dealt round robin.<br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class TermIdPairPartitioner extends Partitioner<LongWritable, IntWritable> {
+
+	@Override
+	public int getPartition(LongWritable key, IntWritable value, int numReduceTasks) {
+		return TermIdPair.term(key.get()) % numReduceTasks;
+	}
+}
@@ -0,0 +1,99 @@
+package com.hadoop.coursework1.pairs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.log4j.Logger;
+
+import com.hadoop.coursework1.util.TermSampler;
+
+/**
+ * Pre-pass building the split points of the {@link PairRangePartitioner}. <br>
+ * <br>
+ * The input is sampled with {@link TermSampler}, which weights every term with
+ * the number of pairs the mapper would emit for it. The sorted terms are cut into
+ * ranges of about the same weight, one per reducer, so a Zipf-heavy term does
+ * not share its reducer with a fair share of the others. <br>
+ * The estimated load of each reducer with the hash and with the range
+ * partitioning is logged. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class TermRangeSampler {
+
+	private static Logger _log = Logger.getLogger(TermRangeSampler.class.getName());
+
+	private TermRangeSampler() {
+	}
+
+	/**
+	 * Samples the input of the job and stores the split points of its reducers
+	 * in its configuration.
+	 *
+	 * @param neighbours
+	 *            distance of the pairs counted by the mapper
+	 * @return the split points
+	 */
+	public static String[] writeSplitPoints(Job job, int neighbours) throws IOException, InterruptedException {
+		Map<String, Long> weights = TermSampler.sample(job, neighbours);
+		String[] splitPoints = splitPoints(weights, job.getNumReduceTasks());
+		report(weights, splitPoints, job.getNumReduceTasks());
+		PairRangePartitioner.setSplitPoints(job.getConfiguration(), splitPoints);
+		return splitPoints;
+	}
+
+	/**
+	 * Greedy cut of the sorted terms: each range takes terms until it reaches
+	 * the weight left divided by the ranges left.
+	 */
+	static String[] splitPoints(Map<String, Long> weights, int partitions) {
+		long remaining = 0;
+		for (long weight : weights.values()) {
+			remaining += weight;
+		}
+		List<String> splitPoints = new ArrayList<String>();
+		long load = 0;
+		for (Map.Entry<String, Long> entry : weights.entrySet()) {
+			if (splitPoints.size() == partitions - 1) {
+				break;
+			}
+			if (load > 0 && load + entry.getValue() / 2 > remaining / (partitions - splitPoints.size())) {
+				// this term starts the next range
+				splitPoints.add(entry.getKey());
+				remaining -= load;
+				load = 0;
+			}
+			load += entry.getValue();
+		}
+		return splitPoints.toArray(new String[splitPoints.size()]);
+	}
+
+	private static void report(Map<String, Long> weights, String[] splitPoints, int partitions) {
+		long[] hash = new long[partitions];
+		long[] range = new long[partitions];
+		for (Map.Entry<String, Long> entry : weights.entrySet()) {
+			hash[(PairPartitioner.hashTerm(entry.getKey()) & Integer.MAX_VALUE) % partitions] += entry.getValue();
+			range[Math.min(PairRangePartitioner.getPartition(splitPoints, entry.getKey()), partitions - 1)] += entry
+					.getValue();
+		}
+		_log.info("Sampled " + weights.size() + " terms, split points: " + Arrays.toString(splitPoints));
+		_log.info("Estimated reducer load with hash partitioning:  " + describe(hash));
+		_log.info("Estimated reducer load with range partitioning: " + describe(range));
+	}
+
+	private static String describe(long[] loads) {
+		long total = 0;
+		long max = 0;
+		for (long load : loads) {
+			total += load;
+			max = Math.max(max, load);
+		}
+		double mean = (double) total / loads.length;
+		return Arrays.toString(loads) + String.format(" max/mean %.2f", mean == 0 ? 0 : max / mean);
+	}
+}
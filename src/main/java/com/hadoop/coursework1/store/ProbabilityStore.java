@@ -0,0 +1,526 @@
+package com.hadoop.coursework1.store;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.log4j.Logger;
+
+/**
+ * Serves the conditional probabilities written by the
+ * {@link ProbabilityStoreOutputFormat} from the <i>.store</i> part files of a
+ * local directory. <br>
+ * <br>
+ * The part files are memory mapped read only and only their sparse index, the
+ * first term of each block, is kept in the heap. A lookup binary searches the
+ * index for the block that may hold the term and then the terms of that
+ * block, whose offsets are decoded once and kept in a small LRU cache of
+ * <b>cacheBlocks</b> blocks. The neighbours themselves are read straight from
+ * the mapped file. <br>
+ * <br>
+ * A lookup only searches the part files that may hold the term: the one of
+ * its partition when the terms were hash partitioned between the reducers,
+ * and otherwise the ones whose first and last terms surround it. A store can
+ * be shared by several threads. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class ProbabilityStore implements Closeable {
+
+	public static final int CACHE_BLOCKS_DEFAULT_VALUE = 1024;
+	private static final int FOOTER_LENGTH = 12;
+	private static final int DOUBLE_LENGTH = 8;
+
+	private static Logger _log = Logger.getLogger(ProbabilityStore.class.getName());
+
+	private final List<Part> parts = new ArrayList<Part>();
+	private final BlockCache cache;
+	private long hits;
+	private long misses;
+
+	/**
+	 * @param dir
+	 *            directory with the <i>.store</i> part files, or one of them
+	 * @param cacheBlocks
+	 *            number of decoded blocks kept in the cache
+	 */
+	public ProbabilityStore(File dir, int cacheBlocks) throws IOException {
+		File[] files = dir.isDirectory() ? dir.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				return file.isFile() && file.getName().endsWith(ProbabilityStoreOutputFormat.EXTENSION);
+			}
+		}) : new File[] { dir };
+		if (files == null || files.length == 0) {
+			throw new IOException("No " + ProbabilityStoreOutputFormat.EXTENSION + " files in " + dir);
+		}
+		Arrays.sort(files);
+		try {
+			for (File file : files) {
+				parts.add(new Part(parts.size(), file));
+			}
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+		cache = new BlockCache(cacheBlocks);
+		_log.info("Opened " + parts.size() + " store files with " + getBlocks() + " blocks");
+	}
+
+	public ProbabilityStore(File dir) throws IOException {
+		this(dir, CACHE_BLOCKS_DEFAULT_VALUE);
+	}
+
+	/**
+	 * @return P(word|term), 0 if the pair is not in the store
+	 */
+	public double getProbability(String term, String word) throws IOException {
+		Location location = find(term);
+		if (location == null) {
+			return 0;
+		}
+		byte[] key = Text.encode(word).array();
+		int keyLength = Text.utf8Length(word);
+		ByteBuffer buffer = location.buffer;
+		int position = location.neighbours;
+		for (int i = 0; i < location.count; i++) {
+			int length = (int) readVLong(buffer, position);
+			position += WritableUtils.decodeVIntSize(buffer.get(position));
+			boolean found = equals(buffer, position, length, key, keyLength);
+			position += length;
+			position += WritableUtils.decodeVIntSize(buffer.get(position));
+			if (found) {
+				return buffer.getDouble(position);
+			}
+			position += DOUBLE_LENGTH;
+		}
+		return 0;
+	}
+
+	/**
+	 * @return number of times the term was seen with a neighbour, 0 if it is
+	 *         not in the store
+	 */
+	public int getTermCount(String term) throws IOException {
+		Location location = find(term);
+		return location == null ? 0 : location.termCount;
+	}
+
+	/**
+	 * @return the <b>k</b> most probable neighbours of the term, the first
+	 *         ones of its group
+	 */
+	public List<Neighbour> getTopNeighbours(String term, int k) throws IOException {
+		Location location = find(term);
+		if (location == null) {
+			return Collections.emptyList();
+		}
+		int count = Math.min(k, location.count);
+		List<Neighbour> neighbours = new ArrayList<Neighbour>(count);
+		ByteBuffer buffer = location.buffer;
+		int position = location.neighbours;
+		for (int i = 0; i < count; i++) {
+			int length = (int) readVLong(buffer, position);
+			position += WritableUtils.decodeVIntSize(buffer.get(position));
+			String word = decode(buffer, position, length);
+			position += length;
+			int wordCount = (int) readVLong(buffer, position);
+			position += WritableUtils.decodeVIntSize(buffer.get(position));
+			neighbours.add(new Neighbour(word, wordCount, buffer.getDouble(position)));
+			position += DOUBLE_LENGTH;
+		}
+		return neighbours;
+	}
+
+	/**
+	 * @return all the terms of the store, reading every block
+	 */
+	public List<String> getTerms() throws IOException {
+		List<String> terms = new ArrayList<String>();
+		for (Part part : parts) {
+			for (int b = 0; b < part.offsets.length; b++) {
+				ByteBuffer buffer = part.buffers[b];
+				int position = part.starts[b];
+				int end = part.ends[b];
+				while (position < end) {
+					int length = (int) readVLong(buffer, position);
+					position += WritableUtils.decodeVIntSize(buffer.get(position));
+					terms.add(decode(buffer, position, length));
+					position = skipTerm(buffer, position + length);
+				}
+			}
+		}
+		return terms;
+	}
+
+	public int getBlocks() {
+		int blocks = 0;
+		for (Part part : parts) {
+			blocks += part.offsets.length;
+		}
+		return blocks;
+	}
+
+	public synchronized long getCacheHits() {
+		return hits;
+	}
+
+	public synchronized long getCacheMisses() {
+		return misses;
+	}
+
+	public synchronized void clearCache() {
+		cache.clear();
+		hits = 0;
+		misses = 0;
+	}
+
+	@Override
+	public void close() throws IOException {
+		// the mappings are released with the buffers
+		parts.clear();
+	}
+
+	/**
+	 * @return where the term is, null if it is not in any of the parts
+	 */
+	private Location find(String term) throws IOException {
+		byte[] key = Text.encode(term).array();
+		int keyLength = Text.utf8Length(term);
+		int hash = WritableComparator.hashBytes(key, keyLength) & Integer.MAX_VALUE;
+		for (Part part : parts) {
+			if (!part.mayHold(key, keyLength, hash)) {
+				continue;
+			}
+			int b = part.findBlock(key, keyLength);
+			if (b < 0) {
+				continue;
+			}
+			Block block = getBlock(part, b);
+			int t = block.find(key, keyLength);
+			if (t < 0) {
+				continue;
+			}
+			ByteBuffer buffer = part.buffers[b];
+			int position = block.groups[t];
+			Location location = new Location();
+			location.buffer = buffer;
+			location.termCount = (int) readVLong(buffer, position);
+			position += WritableUtils.decodeVIntSize(buffer.get(position));
+			location.count = (int) readVLong(buffer, position);
+			location.neighbours = position + WritableUtils.decodeVIntSize(buffer.get(position));
+			return location;
+		}
+		return null;
+	}
+
+	private Block getBlock(Part part, int b) throws IOException {
+		long id = ((long) part.id << 32) | b;
+		synchronized (this) {
+			Block block = cache.get(id);
+			if (block != null) {
+				hits++;
+				return block;
+			}
+			misses++;
+		}
+		Block block = new Block(part.buffers[b], part.starts[b], part.ends[b]);
+		synchronized (this) {
+			cache.put(id, block);
+		}
+		return block;
+	}
+
+	/**
+	 * @return the position after the counts and the neighbours of a term
+	 */
+	private static int skipTerm(ByteBuffer buffer, int position) {
+		position += WritableUtils.decodeVIntSize(buffer.get(position));
+		int count = (int) readVLong(buffer, position);
+		position += WritableUtils.decodeVIntSize(buffer.get(position));
+		for (int i = 0; i < count; i++) {
+			int length = (int) readVLong(buffer, position);
+			position += WritableUtils.decodeVIntSize(buffer.get(position)) + length;
+			position += WritableUtils.decodeVIntSize(buffer.get(position)) + DOUBLE_LENGTH;
+		}
+		return position;
+	}
+
+	/**
+	 * Same as {@link WritableUtils#readVLong(java.io.DataInput)} at an
+	 * absolute position, so the buffers can be shared between threads.
+	 */
+	static long readVLong(ByteBuffer buffer, int position) {
+		byte first = buffer.get(position);
+		int length = WritableUtils.decodeVIntSize(first);
+		if (length == 1) {
+			return first;
+		}
+		long value = 0;
+		for (int i = 1; i < length; i++) {
+			value = (value << 8) | (buffer.get(position + i) & 0xff);
+		}
+		return WritableUtils.isNegativeVInt(first) ? (value ^ -1L) : value;
+	}
+
+	private static int compare(ByteBuffer buffer, int position, int length, byte[] key, int keyLength) {
+		int n = Math.min(length, keyLength);
+		for (int i = 0; i < n; i++) {
+			int a = buffer.get(position + i) & 0xff;
+			int b = key[i] & 0xff;
+			if (a != b) {
+				return a - b;
+			}
+		}
+		return length - keyLength;
+	}
+
+	private static boolean equals(ByteBuffer buffer, int position, int length, byte[] key, int keyLength) {
+		return length == keyLength && compare(buffer, position, length, key, keyLength) == 0;
+	}
+
+	private static String decode(ByteBuffer buffer, int position, int length) throws IOException {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = buffer.get(position + i);
+		}
+		return Text.decode(bytes);
+	}
+
+	/**
+	 * A neighbour of a term with its count and P(word|term).
+	 */
+	@AllArgsConstructor
+	public static @Data class Neighbour {
+		private String word;
+		private int wordCount;
+		private double probability;
+	}
+
+	private static class Location {
+		ByteBuffer buffer;
+		int termCount;
+		int count;
+		int neighbours;
+	}
+
+	/**
+	 * A mapped part file and its index. The file is mapped in segments of at
+	 * most 2GB, each one holding whole blocks.
+	 */
+	private static class Part {
+		final int id;
+		/** last term, 0 partitions when the terms are not hash partitioned */
+		final byte[] lastTerm;
+		final int partitions;
+		final int partition;
+		/** first term, offset, segment and position within it of each block */
+		final byte[][] firstTerms;
+		final long[] offsets;
+		final ByteBuffer[] buffers;
+		final int[] starts;
+		final int[] ends;
+
+		Part(int id, File file) throws IOException {
+			this.id = id;
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				FileChannel channel = raf.getChannel();
+				long size = channel.size();
+				if (size < FOOTER_LENGTH) {
+					throw new IOException("Not a store file: " + file);
+				}
+				ByteBuffer footer = ByteBuffer.allocate(FOOTER_LENGTH);
+				channel.read(footer, size - FOOTER_LENGTH);
+				footer.flip();
+				long indexOffset = footer.getLong();
+				if (footer.getInt() != ProbabilityStoreOutputFormat.MAGIC) {
+					throw new IOException("Not a store file: " + file);
+				}
+				ByteBuffer index = channel.map(MapMode.READ_ONLY, indexOffset, size - FOOTER_LENGTH - indexOffset);
+				int blocks = (int) readVLong(index, 0);
+				int position = WritableUtils.decodeVIntSize(index.get(0));
+				firstTerms = new byte[blocks][];
+				offsets = new long[blocks];
+				for (int b = 0; b < blocks; b++) {
+					int length = (int) readVLong(index, position);
+					position += WritableUtils.decodeVIntSize(index.get(position));
+					firstTerms[b] = new byte[length];
+					for (int i = 0; i < length; i++) {
+						firstTerms[b][i] = index.get(position + i);
+					}
+					position += length;
+					offsets[b] = readVLong(index, position);
+					position += WritableUtils.decodeVIntSize(index.get(position));
+				}
+				int length = (int) readVLong(index, position);
+				position += WritableUtils.decodeVIntSize(index.get(position));
+				lastTerm = new byte[length];
+				for (int i = 0; i < length; i++) {
+					lastTerm[i] = index.get(position + i);
+				}
+				position += length;
+				partitions = (int) readVLong(index, position);
+				position += WritableUtils.decodeVIntSize(index.get(position));
+				partition = (int) readVLong(index, position);
+
+				buffers = new ByteBuffer[blocks];
+				starts = new int[blocks];
+				ends = new int[blocks];
+				int first = 0;
+				while (first < blocks) {
+					long start = offsets[first];
+					int last = first;
+					while (last + 1 < blocks && end(last + 1, indexOffset) - start <= Integer.MAX_VALUE) {
+						last++;
+					}
+					long end = end(last, indexOffset);
+					if (end - start > Integer.MAX_VALUE) {
+						throw new IOException("Block larger than 2GB in " + file);
+					}
+					MappedByteBuffer segment = channel.map(MapMode.READ_ONLY, start, end - start);
+					for (int b = first; b <= last; b++) {
+						buffers[b] = segment;
+						starts[b] = (int) (offsets[b] - start);
+						ends[b] = (int) (end(b, indexOffset) - start);
+					}
+					first = last + 1;
+				}
+			} finally {
+				raf.close();
+			}
+		}
+
+		private long end(int b, long indexOffset) {
+			return b + 1 < offsets.length ? offsets[b + 1] : indexOffset;
+		}
+
+		/**
+		 * @return false if the term cannot be in the file: another partition
+		 *         or out of the range of its terms
+		 */
+		boolean mayHold(byte[] key, int keyLength, int hash) {
+			if (firstTerms.length == 0 || (partitions > 0 && hash % partitions != partition)) {
+				return false;
+			}
+			byte[] first = firstTerms[0];
+			return ProbabilityStoreOutputFormat.compare(first, 0, first.length, key, 0, keyLength) <= 0
+					&& ProbabilityStoreOutputFormat.compare(lastTerm, 0, lastTerm.length, key, 0, keyLength) >= 0;
+		}
+
+		/**
+		 * @return the last block whose first term is not after the key, -1 if
+		 *         the key is before the first term of the file
+		 */
+		int findBlock(byte[] key, int keyLength) {
+			int low = 0;
+			int high = firstTerms.length - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				byte[] term = firstTerms[mid];
+				int result = ProbabilityStoreOutputFormat.compare(term, 0, term.length, key, 0, keyLength);
+				if (result < 0) {
+					low = mid + 1;
+				} else if (result > 0) {
+					high = mid - 1;
+				} else {
+					return mid;
+				}
+			}
+			return high;
+		}
+	}
+
+	/**
+	 * The decoded offsets of the terms of a block: the position of the bytes
+	 * of each term and of the counts that follow them.
+	 */
+	private static class Block {
+		final ByteBuffer buffer;
+		final int[] terms;
+		final int[] lengths;
+		final int[] groups;
+
+		Block(ByteBuffer buffer, int position, int end) {
+			this.buffer = buffer;
+			int[] terms = new int[16];
+			int[] lengths = new int[16];
+			int[] groups = new int[16];
+			int n = 0;
+			while (position < end) {
+				if (n == terms.length) {
+					terms = Arrays.copyOf(terms, n * 2);
+					lengths = Arrays.copyOf(lengths, n * 2);
+					groups = Arrays.copyOf(groups, n * 2);
+				}
+				int length = (int) readVLong(buffer, position);
+				position += WritableUtils.decodeVIntSize(buffer.get(position));
+				terms[n] = position;
+				lengths[n] = length;
+				groups[n] = position + length;
+				position = skipTerm(buffer, position + length);
+				n++;
+			}
+			this.terms = Arrays.copyOf(terms, n);
+			this.lengths = Arrays.copyOf(lengths, n);
+			this.groups = Arrays.copyOf(groups, n);
+		}
+
+		/**
+		 * @return the index of the term in the block, -1 if it is not there
+		 */
+		int find(byte[] key, int keyLength) {
+			int low = 0;
+			int high = terms.length - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				int result = compare(buffer, terms[mid], lengths[mid], key, keyLength);
+				if (result < 0) {
+					low = mid + 1;
+				} else if (result > 0) {
+					high = mid - 1;
+				} else {
+					return mid;
+				}
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * Least recently used decoded blocks.
+	 */
+	@SuppressWarnings("serial")
+	private static class BlockCache extends LinkedHashMap<Long, Block> {
+		private final int capacity;
+
+		BlockCache(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, Block> eldest) {
+			return size() > capacity;
+		}
+	}
+}
@@ -0,0 +1,250 @@
+package com.hadoop.coursework1.store;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+
+import com.hadoop.coursework1.Pair;
+import com.hadoop.coursework1.store.ProbabilityStore.Neighbour;
+
+/**
+ * Random lookups against a {@link ProbabilityStore}. <br>
+ * <br>
+ * <b>-n</b> lookups (100000 by default) of P(word|term) for pairs picked at
+ * random from the store, and as many top <b>-k</b> (10 by default) lookups of
+ * random terms, are timed one by one with a cache of <b>-c</b> blocks. Each
+ * run reports the throughput, the 50th and 99th percentiles and the maximum
+ * latency, and the hit ratio of the cache. With <b>-w</b> the terms are
+ * picked in proportion to their counts instead of uniformly, closer to real
+ * query logs. <br>
+ * <br>
+ * Given the text output of the same job, the probabilities are loaded into a
+ * heap map as a baseline, timed with the same lookups, and every pair of the
+ * text output is checked against the store. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class ProbabilityStoreBenchmark {
+
+	private static final String LOOKUPS_PARAM = "-n";
+	private static final String TOP_K_PARAM = "-k";
+	private static final String CACHE_PARAM = "-c";
+	private static final String WEIGHTED_PARAM = "-w";
+	private static final long SEED = 42;
+
+	private static Logger _log = Logger.getLogger(ProbabilityStoreBenchmark.class.getName());
+	private static long hits;
+	private static long misses;
+
+	public static void main(String[] args) throws Exception {
+		System.exit(run(args));
+	}
+
+	public static int run(String[] args) throws Exception {
+		int lookups = 100000;
+		int k = 10;
+		int cacheBlocks = ProbabilityStore.CACHE_BLOCKS_DEFAULT_VALUE;
+		boolean weighted = false;
+		List<String> other_args = new ArrayList<String>();
+		for (int i = 0; i < args.length; ++i) {
+			try {
+				if (LOOKUPS_PARAM.equals(args[i])) {
+					lookups = Integer.parseInt(args[++i]);
+				} else if (TOP_K_PARAM.equals(args[i])) {
+					k = Integer.parseInt(args[++i]);
+				} else if (CACHE_PARAM.equals(args[i])) {
+					cacheBlocks = Integer.parseInt(args[++i]);
+				} else if (WEIGHTED_PARAM.equals(args[i])) {
+					weighted = true;
+				} else {
+					other_args.add(args[i]);
+				}
+			} catch (NumberFormatException except) {
+				System.out.println("ERROR: Integer expected instead of " + args[i]);
+				return printUsage();
+			} catch (ArrayIndexOutOfBoundsException except) {
+				System.out.println("ERROR: Required parameter missing from " + args[i - 1]);
+				return printUsage();
+			}
+		}
+		if (other_args.size() < 1 || other_args.size() > 2) {
+			System.out.println("ERROR: Wrong number of parameters: " + other_args.size() + " instead of 1 or 2.");
+			return printUsage();
+		}
+
+		long start = System.nanoTime();
+		ProbabilityStore store = new ProbabilityStore(new File(other_args.get(0)), cacheBlocks);
+		long open = System.nanoTime() - start;
+		try {
+			// queries picked before timing, then the cache is emptied
+			Random random = new Random(SEED);
+			List<String> terms = store.getTerms();
+			long[] cumulative = new long[terms.size()];
+			long sum = 0;
+			for (int i = 0; i < terms.size(); i++) {
+				sum += weighted ? store.getTermCount(terms.get(i)) : 1;
+				cumulative[i] = sum;
+			}
+			String[] queryTerms = new String[lookups];
+			String[] queryWords = new String[lookups];
+			for (int i = 0; i < lookups; i++) {
+				long pick = (long) (random.nextDouble() * sum);
+				int t = Arrays.binarySearch(cumulative, pick + 1);
+				queryTerms[i] = terms.get(t < 0 ? -t - 1 : t);
+				List<Neighbour> neighbours = store.getTopNeighbours(queryTerms[i], Integer.MAX_VALUE);
+				queryWords[i] = neighbours.get(random.nextInt(neighbours.size())).getWord();
+			}
+			store.clearCache();
+			hits = 0;
+			misses = 0;
+
+			StringBuilder report = new StringBuilder(String.format("%n%d terms in %d blocks, opened in %.1f ms",
+					terms.size(), store.getBlocks(), open / 1e6));
+			report.append(String.format("%n%-22s %12s %10s %10s %10s %8s", "lookup", "ops/s", "p50 (us)",
+					"p99 (us)", "max (us)", "cache"));
+			long[] latencies = new long[lookups];
+			for (String pass : new String[] { "cold", "warm" }) {
+				double check = 0;
+				long total = System.nanoTime();
+				for (int i = 0; i < lookups; i++) {
+					long begin = System.nanoTime();
+					check += store.getProbability(queryTerms[i], queryWords[i]);
+					latencies[i] = System.nanoTime() - begin;
+				}
+				total = System.nanoTime() - total;
+				report.append(line("P(word|term) " + pass, latencies, total, store));
+				_log.debug("Checksum: " + check);
+			}
+			store.clearCache();
+			hits = 0;
+			misses = 0;
+			for (String pass : new String[] { "cold", "warm" }) {
+				long total = System.nanoTime();
+				for (int i = 0; i < lookups; i++) {
+					long begin = System.nanoTime();
+					store.getTopNeighbours(queryTerms[i], k);
+					latencies[i] = System.nanoTime() - begin;
+				}
+				total = System.nanoTime() - total;
+				report.append(line("top " + k + " " + pass, latencies, total, store));
+			}
+
+			if (other_args.size() == 2) {
+				long used = usedMemory();
+				start = System.nanoTime();
+				Map<String, Double> baseline = load(new File(other_args.get(1)));
+				long load = System.nanoTime() - start;
+				used = usedMemory() - used;
+				double check = 0;
+				long total = System.nanoTime();
+				for (int i = 0; i < lookups; i++) {
+					long begin = System.nanoTime();
+					Double probability = baseline.get(queryTerms[i] + Pair.WHITESPACE + queryWords[i]);
+					check += probability == null ? 0 : probability;
+					latencies[i] = System.nanoTime() - begin;
+				}
+				total = System.nanoTime() - total;
+				report.append(line("heap map baseline", latencies, total, null));
+				report.append(String.format("%nBaseline: %d pairs loaded in %.1f ms, about %d MB of heap",
+						baseline.size(), load / 1e6, used >> 20));
+				_log.debug("Checksum: " + check);
+
+				int mismatches = 0;
+				for (Map.Entry<String, Double> entry : baseline.entrySet()) {
+					String pair = entry.getKey();
+					int space = pair.indexOf(Pair.WHITESPACE);
+					if (store.getProbability(pair.substring(0, space), pair.substring(space + 1)) != entry
+							.getValue()) {
+						if (mismatches++ < 10) {
+							_log.warn("Mismatch for " + pair);
+						}
+					}
+				}
+				report.append(String.format("%nStore check: %d of %d pairs mismatched", mismatches, baseline.size()));
+				if (mismatches > 0) {
+					_log.info(report);
+					return 1;
+				}
+			}
+			_log.info(report);
+		} finally {
+			store.close();
+		}
+		return 0;
+	}
+
+	private static String line(String name, long[] latencies, long total, ProbabilityStore store) {
+		long[] sorted = latencies.clone();
+		Arrays.sort(sorted);
+		String cache = "";
+		if (store != null) {
+			// hit ratio of this run only
+			long runHits = store.getCacheHits() - hits;
+			long runMisses = store.getCacheMisses() - misses;
+			hits = store.getCacheHits();
+			misses = store.getCacheMisses();
+			cache = String.format("%.1f%%", 100.0 * runHits / Math.max(1, runHits + runMisses));
+		}
+		return String.format("%n%-22s %12.0f %10.1f %10.1f %10.1f %8s", name, sorted.length / (total / 1e9),
+				sorted[sorted.length / 2] / 1e3, sorted[(int) (sorted.length * 0.99)] / 1e3,
+				sorted[sorted.length - 1] / 1e3, cache);
+	}
+
+	/**
+	 * @return the probabilities of the <i>part-r-NNNNN</i> text files of a
+	 *         pairs or stripes output, keyed on <i>term word</i>
+	 */
+	private static Map<String, Double> load(File dir) throws IOException {
+		File[] files = dir.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				return file.isFile() && file.getName().startsWith("part-");
+			}
+		});
+		if (files == null) {
+			throw new IOException("No part files in " + dir);
+		}
+		Map<String, Double> probabilities = new HashMap<String, Double>();
+		for (File file : files) {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					// term word (n/m)\tprobability
+					int tab = line.lastIndexOf('\t');
+					String pair = line.substring(0, line.lastIndexOf(" (", tab));
+					probabilities.put(pair, Double.valueOf(line.substring(tab + 1)));
+				}
+			} finally {
+				reader.close();
+			}
+		}
+		return probabilities;
+	}
+
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static int printUsage() {
+		System.out.println("probabilityStoreBenchmark [-n <lookups>] [-k <top>] [-c <cache blocks>] [-w] "
+				+ "<store dir> [<text output dir>]");
+		return -1;
+	}
+}
@@ -0,0 +1,273 @@
+package com.hadoop.coursework1.store;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+
+import com.hadoop.coursework1.Pair;
+
+/**
+ * Writes the conditional probabilities of a reducer as a sorted, block
+ * indexed binary file (<i>part-r-NNNNN.store</i>), read back with
+ * {@link ProbabilityStore}. <br>
+ * <br>
+ * The keys are {@link Pair}s or their text form (<i>term word (n/m)</i>, the
+ * keys of the {@link com.hadoop.coursework1.stripes.StripesApproach}), the
+ * values the probabilities. The records of a term have to come together,
+ * terms in ascending bytes order, which is the order the reducers write them
+ * in. The neighbours of a term are written most probable first, in the order
+ * of {@link com.hadoop.coursework1.util.TopNeighbours}, so the first K are its
+ * top K even when the reducer wrote them in word order (a spilled stripe).
+ * <br>
+ * <br>
+ * The file is a sequence of blocks of whole terms, a new block being started
+ * once the current one holds <b>store.block.size</b> bytes (4KB by default).
+ * A term is its VInt length and UTF-8 bytes, its VInt count, its VInt number
+ * of neighbours and, for each one, the VInt length and bytes of the word, its
+ * VInt count and its probability as a double. After the blocks comes the
+ * sparse index, the VInt number of blocks and for each one the first term
+ * (VInt length and bytes) and its VLong offset, the last term of the file
+ * (VInt length and bytes), the VInt number of partitions and the VInt
+ * partition of the file, and then the footer: the long offset of the index and
+ * the {@link #MAGIC} int. The number of partitions is the one of the reducers
+ * when every term of the file hashes to the partition of its reducer, as the
+ * {@link org.apache.hadoop.mapreduce.lib.partition.HashPartitioner} of a
+ * {@link Text} and the {@link com.hadoop.coursework1.pairs.PairPartitioner}
+ * send them, and 0 otherwise (a range partitioned job). <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class ProbabilityStoreOutputFormat extends FileOutputFormat<Object, DoubleWritable> {
+
+	public static final String BLOCK_SIZE = "store.block.size";
+	public static final int BLOCK_SIZE_DEFAULT_VALUE = 4096;
+	public static final String EXTENSION = ".store";
+	/** "PST2" */
+	public static final int MAGIC = 0x50535432;
+	private static final int INITIAL_NEIGHBOURS = 16;
+
+	@Override
+	public RecordWriter<Object, DoubleWritable> getRecordWriter(TaskAttemptContext context) throws IOException,
+			InterruptedException {
+		Configuration conf = context.getConfiguration();
+		Path file = getDefaultWorkFile(context, EXTENSION);
+		FileSystem fs = file.getFileSystem(conf);
+		return new StoreWriter(fs.create(file, false), conf.getInt(BLOCK_SIZE, BLOCK_SIZE_DEFAULT_VALUE), context
+				.getTaskAttemptID().getTaskID().getId(), context.getNumReduceTasks());
+	}
+
+	static class StoreWriter extends RecordWriter<Object, DoubleWritable> {
+		private final FSDataOutputStream out;
+		private final int blockSize;
+		private final int partition;
+		private final int partitions;
+		/** whether all the terms so far hash to the partition */
+		private boolean hashPartitioned = true;
+
+		/** blocks already written and the first term of each one */
+		private DataOutputBuffer index = new DataOutputBuffer();
+		private int blocks;
+		private DataOutputBuffer block = new DataOutputBuffer();
+		private Text blockFirstTerm = new Text();
+
+		/** term being written and its neighbours */
+		private Text term = new Text();
+		private int termCount;
+		private int neighbours;
+		private DataOutputBuffer group = new DataOutputBuffer();
+		/** offset in the group, word length, count and probability of each neighbour */
+		private int[] offsets = new int[INITIAL_NEIGHBOURS];
+		private int[] wordLengths = new int[INITIAL_NEIGHBOURS];
+		private int[] wordCounts = new int[INITIAL_NEIGHBOURS];
+		private double[] probabilities = new double[INITIAL_NEIGHBOURS];
+		private boolean ordered;
+
+		private Text recordTerm = new Text();
+		private Text word = new Text();
+
+		StoreWriter(FSDataOutputStream out, int blockSize, int partition, int partitions) {
+			this.out = out;
+			this.blockSize = blockSize;
+			this.partition = partition;
+			this.partitions = Math.max(1, partitions);
+		}
+
+		@Override
+		public void write(Object key, DoubleWritable value) throws IOException {
+			int wordCount;
+			int recordTermCount;
+			if (key instanceof Pair) {
+				Pair pair = (Pair) key;
+				recordTerm.set(pair.getTerm());
+				word.set(pair.getWord());
+				wordCount = pair.getWordCount();
+				recordTermCount = pair.getTermCount();
+			} else {
+				// term word (n/m)
+				String line = key.toString();
+				int space = line.indexOf(Pair.WHITESPACE);
+				int open = line.lastIndexOf(" (");
+				int slash = line.lastIndexOf('/');
+				recordTerm.set(line.substring(0, space));
+				word.set(line.substring(space + 1, open));
+				wordCount = Integer.parseInt(line.substring(open + 2, slash));
+				recordTermCount = Integer.parseInt(line.substring(slash + 1, line.length() - 1));
+			}
+
+			if (neighbours == 0 || !recordTerm.equals(term)) {
+				if (neighbours > 0) {
+					if (recordTerm.compareTo(term) < 0) {
+						throw new IOException("Terms out of order: " + recordTerm + " after " + term);
+					}
+					endTerm();
+				}
+				term.set(recordTerm);
+				termCount = recordTermCount;
+				ordered = true;
+				if (hashPartitioned && getPartition(term.getBytes(), term.getLength(), partitions) != partition) {
+					hashPartitioned = false;
+				}
+			}
+			if (neighbours == offsets.length) {
+				offsets = Arrays.copyOf(offsets, neighbours * 2);
+				wordLengths = Arrays.copyOf(wordLengths, neighbours * 2);
+				wordCounts = Arrays.copyOf(wordCounts, neighbours * 2);
+				probabilities = Arrays.copyOf(probabilities, neighbours * 2);
+			}
+			offsets[neighbours] = group.getLength();
+			wordLengths[neighbours] = word.getLength();
+			wordCounts[neighbours] = wordCount;
+			probabilities[neighbours] = value.get();
+			if (ordered && neighbours > 0 && before(neighbours, neighbours - 1)) {
+				ordered = false;
+			}
+			WritableUtils.writeVInt(group, word.getLength());
+			group.write(word.getBytes(), 0, word.getLength());
+			WritableUtils.writeVInt(group, wordCount);
+			group.writeDouble(value.get());
+			neighbours++;
+		}
+
+		/**
+		 * Adds the term to the current block, ending it once it is full.
+		 */
+		private void endTerm() throws IOException {
+			if (block.getLength() == 0) {
+				blockFirstTerm.set(term);
+			}
+			WritableUtils.writeVInt(block, term.getLength());
+			block.write(term.getBytes(), 0, term.getLength());
+			WritableUtils.writeVInt(block, termCount);
+			WritableUtils.writeVInt(block, neighbours);
+			if (ordered) {
+				block.write(group.getData(), 0, group.getLength());
+			} else {
+				for (int i : order()) {
+					int end = i + 1 < neighbours ? offsets[i + 1] : group.getLength();
+					block.write(group.getData(), offsets[i], end - offsets[i]);
+				}
+			}
+			group.reset();
+			neighbours = 0;
+			if (block.getLength() >= blockSize) {
+				endBlock();
+			}
+		}
+
+		/**
+		 * @return the neighbours of the term, most probable first
+		 */
+		private Integer[] order() {
+			Integer[] order = new Integer[neighbours];
+			for (int i = 0; i < neighbours; i++) {
+				order[i] = i;
+			}
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer i, Integer j) {
+					return before(i, j) ? -1 : before(j, i) ? 1 : 0;
+				}
+			});
+			return order;
+		}
+
+		/**
+		 * @return true if the neighbour i goes before the neighbour j: higher
+		 *         probability, then lower word count, then word bytes
+		 */
+		private boolean before(int i, int j) {
+			if (probabilities[i] != probabilities[j]) {
+				return probabilities[i] > probabilities[j];
+			}
+			if (wordCounts[i] != wordCounts[j]) {
+				return wordCounts[i] < wordCounts[j];
+			}
+			byte[] data = group.getData();
+			return compare(data, wordStart(i), wordLengths[i], data, wordStart(j), wordLengths[j]) < 0;
+		}
+
+		private int wordStart(int i) {
+			return offsets[i] + WritableUtils.getVIntSize(wordLengths[i]);
+		}
+
+		private void endBlock() throws IOException {
+			WritableUtils.writeVInt(index, blockFirstTerm.getLength());
+			index.write(blockFirstTerm.getBytes(), 0, blockFirstTerm.getLength());
+			WritableUtils.writeVLong(index, out.getPos());
+			blocks++;
+			out.write(block.getData(), 0, block.getLength());
+			block.reset();
+		}
+
+		@Override
+		public void close(TaskAttemptContext context) throws IOException {
+			if (neighbours > 0) {
+				endTerm();
+			}
+			if (block.getLength() > 0) {
+				endBlock();
+			}
+			long indexOffset = out.getPos();
+			DataOutputStream stream = out;
+			WritableUtils.writeVInt(stream, blocks);
+			stream.write(index.getData(), 0, index.getLength());
+			// the last term written, empty if none
+			WritableUtils.writeVInt(stream, term.getLength());
+			stream.write(term.getBytes(), 0, term.getLength());
+			WritableUtils.writeVInt(stream, hashPartitioned ? partitions : 0);
+			WritableUtils.writeVInt(stream, partition);
+			stream.writeLong(indexOffset);
+			stream.writeInt(MAGIC);
+			out.close();
+		}
+	}
+
+	/**
+	 * @return the partition the hash partitioners send the term to
+	 */
+	static int getPartition(byte[] term, int length, int partitions) {
+		return (WritableComparator.hashBytes(term, length) & Integer.MAX_VALUE) % partitions;
+	}
+
+	/**
+	 * @return the bytes order of the terms in the store
+	 */
+	static int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+		return WritableComparator.compareBytes(b1, s1, l1, b2, s2, l2);
+	}
+}
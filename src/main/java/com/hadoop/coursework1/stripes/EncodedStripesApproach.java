@@ -0,0 +1,277 @@
+package com.hadoop.coursework1.stripes;
+
+import static com.hadoop.coursework1.util.TopNeighbours.TOP_K;
+import static com.hadoop.coursework1.util.TopNeighbours.TOP_K_DEFAULT_VALUE;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+import com.hadoop.corpus.EncodeCorpus;
+import com.hadoop.corpus.EncodedCorpusInputFormat;
+import com.hadoop.corpus.TermDictionary;
+import com.hadoop.corpus.TermIdsWritable;
+import com.hadoop.coursework1.Pair;
+import com.hadoop.coursework1.util.InMapperCombiner;
+import com.hadoop.coursework1.util.ReducerLoad;
+import com.hadoop.coursework1.util.TopNeighbours;
+import com.hadoop.util.IdCountMap;
+
+/**
+ * Cloud Computing Cousework 1 - {@link StripesApproach} over a corpus encoded
+ * by {@link EncodeCorpus} (default tokenizer and paragraphs)<br>
+ * <br>
+ * Stripes are keyed by term id and hold the ids of the neighbours
+ * ({@link IdCountMap}, delta encoded when serialized). As ids are dense the
+ * mapper keeps its stripes in an array indexed by term id instead of a hash
+ * map. The reducer decodes the term and its neighbours from the dictionary
+ * only to compute and write the conditional probabilities, so the output
+ * lines are the ones of {@link StripesApproach}, ordered by term id. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class EncodedStripesApproach extends Configured implements Tool {
+
+	private static final String REDUCER_PARAM = "-r";
+	private static final String NEIGHBOURS = "neighbours";
+	private static final String NEIGHBOURS_DEFAULT_VALUE = "1";
+
+	private static Logger _log = Logger.getLogger(EncodedStripesApproach.class.getName());
+
+	public static class MapClass extends Mapper<LongWritable, TermIdsWritable, IntWritable, IdCountMap> {
+
+		/** rough heap bytes of a new stripe */
+		private static final int STRIPE_FOOTPRINT = 400;
+		/** rough heap bytes of a new neighbour in a stripe */
+		private static final int NEIGHBOUR_FOOTPRINT = 20;
+		/** stripes with more neighbours are released after a flush */
+		private static final int MAX_KEPT_NEIGHBOURS = 256;
+
+		/** stripe of each term id, kept empty for reuse after a flush */
+		private IdCountMap[] stripes = new IdCountMap[1024];
+		/** ids of the terms with a non empty stripe */
+		private int[] terms = new int[1024];
+		private int size;
+		private IntWritable term = new IntWritable();
+		private InMapperCombiner combiner;
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			combiner = new InMapperCombiner(context.getConfiguration());
+		}
+
+		public void map(LongWritable offset, TermIdsWritable paragraph, Context context) throws IOException,
+				InterruptedException {
+
+			int neighbours = context.getConfiguration().getInt(NEIGHBOURS, Integer.valueOf(NEIGHBOURS_DEFAULT_VALUE));
+			int words = paragraph.size();
+
+			for (int i = 0; i + neighbours < words; i++) {
+				IdCountMap stripe = stripe(paragraph.get(i));
+				if (stripe.increment(paragraph.get(i + neighbours), 1) == 1) {
+					combiner.add(1, NEIGHBOUR_FOOTPRINT);
+				}
+			}
+
+			if (combiner.shouldFlush()) {
+				flush(context);
+			}
+		}
+
+		@Override
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			flush(context);
+		}
+
+		private IdCountMap stripe(int id) {
+			if (id >= stripes.length) {
+				stripes = Arrays.copyOf(stripes, Math.max(id + 1, stripes.length * 2));
+			}
+			if (stripes[id] == null) {
+				stripes[id] = new IdCountMap();
+			}
+			if (stripes[id].isEmpty()) {
+				if (size == terms.length) {
+					terms = Arrays.copyOf(terms, size * 2);
+				}
+				terms[size++] = id;
+				combiner.add(0, STRIPE_FOOTPRINT);
+			}
+			return stripes[id];
+		}
+
+		private void flush(Context context) throws IOException, InterruptedException {
+			for (int i = 0; i < size; i++) {
+				IdCountMap stripe = stripes[terms[i]];
+				term.set(terms[i]);
+				context.write(term, stripe);
+				if (stripe.size() > MAX_KEPT_NEIGHBOURS) {
+					stripes[terms[i]] = null;
+				} else {
+					stripe.clear();
+				}
+			}
+			combiner.flushed(context, size);
+			size = 0;
+		}
+	}
+
+	public static class Combine extends Reducer<IntWritable, IdCountMap, IntWritable, IdCountMap> {
+		private IdCountMap stripeFreq = new IdCountMap();
+
+		public void reduce(IntWritable term, Iterable<IdCountMap> stripes, Context context) throws IOException,
+				InterruptedException {
+			stripeFreq.clear();
+			for (IdCountMap stripe : stripes) {
+				stripeFreq.merge(stripe);
+			}
+			context.write(term, stripeFreq);
+		}
+	}
+
+	public static class Reduce extends Reducer<IntWritable, IdCountMap, Text, DoubleWritable> {
+		/** counter groups of the stripe entries merged by each reducer and its time */
+		public static final String LOAD = "EncodedStripesApproach reducer";
+
+		private static Logger _log = Logger.getLogger(Reduce.class.getName());
+		private TermDictionary dictionary;
+		private IdCountMap stripeFreq = new IdCountMap();
+		private TopNeighbours neighbours = new TopNeighbours();
+		private Pair pair = new Pair();
+		private Text key = new Text();
+		private DoubleWritable value = new DoubleWritable();
+		private ReducerLoad load;
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			dictionary = TermDictionary.load(context.getConfiguration());
+			neighbours.setLimit(context.getConfiguration().getInt(TOP_K, TOP_K_DEFAULT_VALUE));
+			load = new ReducerLoad(context, LOAD);
+		}
+
+		@Override
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			load.done();
+		}
+
+		public void reduce(IntWritable term, Iterable<IdCountMap> stripes, Context context) throws IOException,
+				InterruptedException {
+
+			stripeFreq.clear();
+			// the marginal of the term is the sum of all its counts
+			int total = 0;
+			for (IdCountMap stripe : stripes) {
+				load.add(stripe.size());
+				total += stripeFreq.merge(stripe);
+			}
+			for (int i = 0; i < stripeFreq.size(); i++) {
+				neighbours.add(dictionary.getTerm((int) stripeFreq.getId(i)), stripeFreq.getCount(i), total);
+			}
+			emitFrequencies(dictionary.getTerm(term.get()), total, context);
+		}
+
+		private void emitFrequencies(String term, int total, Context context) throws IOException,
+				InterruptedException {
+			int size = neighbours.sort();
+			pair.setTerm(term);
+			pair.setTermCount(total);
+			for (int i = 0; i < size; i++) {
+				pair.setWord(neighbours.getWord(i));
+				pair.setWordCount(neighbours.getWordCount(i));
+				key.set(pair.toString());
+				value.set(neighbours.getProbability(i));
+				if (_log.isDebugEnabled()) {
+					_log.debug("Emiting: " + pair.toString());
+				}
+				context.write(key, value);
+			}
+			neighbours.clear();
+		}
+	}
+
+	public int run(String[] args) throws Exception {
+		Configuration conf = getConf();
+
+		@SuppressWarnings("deprecation")
+		Job job = new Job(conf, "Coursework 1 - Encoded Stripes Approach");
+		job.setJarByClass(EncodedStripesApproach.class);
+
+		job.getConfiguration().set(NEIGHBOURS, NEIGHBOURS_DEFAULT_VALUE);
+
+		job.setMapperClass(MapClass.class);
+		job.setCombinerClass(Combine.class);
+		job.setReducerClass(Reduce.class);
+
+		job.setMapOutputKeyClass(IntWritable.class);
+		job.setMapOutputValueClass(IdCountMap.class);
+		job.setOutputKeyClass(Text.class);
+		job.setOutputValueClass(DoubleWritable.class);
+
+		List<String> other_args = new ArrayList<String>();
+		for (int i = 0; i < args.length; ++i) {
+			try {
+				if (REDUCER_PARAM.equals(args[i])) {
+					job.setNumReduceTasks(Integer.parseInt(args[++i]));
+				} else {
+					other_args.add(args[i]);
+				}
+			} catch (NumberFormatException except) {
+				System.out.println("ERROR: Integer expected instead of " + args[i]);
+				return printUsage();
+			} catch (ArrayIndexOutOfBoundsException except) {
+				System.out.println("ERROR: Required parameter missing from " + args[i - 1]);
+				return printUsage();
+			}
+		}
+		// Make sure there are exactly 2 parameters left.
+		if (other_args.size() != 2) {
+			System.out.println("ERROR: Wrong number of parameters: " + other_args.size() + " instead of 2.");
+			return printUsage();
+		}
+
+		EncodedCorpusInputFormat.setInput(job, new Path(other_args.get(0)));
+
+		Path out = new Path(other_args.get(1));
+		FileSystem fs = FileSystem.get(conf);
+		fs.delete(out, true);
+		FileOutputFormat.setOutputPath(job, out);
+
+		boolean success = job.waitForCompletion(true);
+		_log.info("Reducers: " + ReducerLoad.report(job, Reduce.LOAD));
+		System.exit(success ? 0 : 1);
+		return 0;
+	}
+
+	private static int printUsage() {
+		System.out.println("encodedStripesApproach [-r <reduces>] <encoded input> <output>");
+		ToolRunner.printGenericCommandUsage(System.out);
+		return -1;
+	}
+
+	public static void main(String[] args) throws Exception {
+		String[] parameters = { "assets/jane_austen/encoded", "assets/jane_austen/output" };
+		if (args != null && args.length >= 2) {
+			parameters = args;
+		}
+		int res = ToolRunner.run(new Configuration(), new EncodedStripesApproach(), parameters);
+		System.exit(res);
+	}
+}
@@ -0,0 +1,477 @@
+package com.hadoop.coursework1.stripes;
+
+import static com.hadoop.coursework1.util.TopNeighbours.TOP_K;
+import static com.hadoop.coursework1.util.TopNeighbours.TOP_K_DEFAULT_VALUE;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Partitioner;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+import com.hadoop.coursework1.Pair;
+import com.hadoop.coursework1.pairs.PairsApproach;
+import com.hadoop.coursework1.util.InMapperCombiner;
+import com.hadoop.coursework1.util.ParagrapghInputFormat;
+import com.hadoop.coursework1.util.ReducerLoad;
+import com.hadoop.coursework1.util.TermSampler;
+import com.hadoop.coursework1.util.TopNeighbours;
+import com.hadoop.util.TextTokenizer;
+import com.hadoop.util.WordCountMap;
+
+/**
+ * Cloud Computing Cousework 1 - Hybrid of the {@link PairsApproach} and the
+ * {@link StripesApproach}<br>
+ * <br>
+ * The encoding is picked per term: the long tail is shuffled as stripes,
+ * which save the key of every pair, and the heavy terms as pairs, so their
+ * neighbours reach the reducer sorted and are never held in a single stripe.
+ * A term is emitted as pairs when it is one of the
+ * <b>hybrid.pair.terms.count</b> heaviest terms of a sample of the input (100
+ * by default, or the <b>hybrid.pair.terms</b> list), or when its stripe in the
+ * mapper holds more than <b>hybrid.stripe.max.size</b> neighbours (1000 by
+ * default, which matters with <b>combiner.split.wide</b>). <br>
+ * <br>
+ * Keys are <b>Text</b>: the term alone for a stripe, <i>term\0word</i> for a
+ * pair and <i>term\0</i> for the marginal of the pairs of a term. Values are
+ * {@link StripeWritable}, a single entry one holding the count for a pair. The
+ * bytes order of the keys sorts, for each term, the stripes first, then the
+ * marginals and then the pairs by word, and the keys are partitioned and
+ * grouped on the term. The reducer merges the stripes, adds the marginals and
+ * then streams the pairs against the merged stripe, both sorted by word. A
+ * term may come in both encodings (it is picked per mapper), the output is
+ * the one of the two other approaches. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class HybridApproach extends Configured implements Tool {
+
+	private static final String REDUCER_PARAM = "-r";
+	private static final String NEIGHBOURS = "neighbours";
+	private static final String NEIGHBOURS_DEFAULT_VALUE = "1";
+	public static final String PAIR_TERMS = "hybrid.pair.terms";
+	public static final String PAIR_TERMS_COUNT = "hybrid.pair.terms.count";
+	public static final int PAIR_TERMS_COUNT_DEFAULT_VALUE = 100;
+	public static final String STRIPE_MAX_SIZE = "hybrid.stripe.max.size";
+	public static final int STRIPE_MAX_SIZE_DEFAULT_VALUE = 1000;
+	private static final byte SEPARATOR = 0;
+
+	private static Logger _log = Logger.getLogger(HybridApproach.class.getName());
+
+	private Job job;
+
+	public static class MapClass extends Mapper<LongWritable, Text, Text, StripeWritable> {
+
+		/** rough heap bytes of a new stripe: map entry, term String and empty stripe */
+		private static final int STRIPE_FOOTPRINT = 800;
+		/** rough heap bytes of a new neighbour in a stripe, on top of its UTF bytes */
+		private static final int NEIGHBOUR_FOOTPRINT = 48;
+		private static final byte[] SEPARATOR_BYTES = { SEPARATOR };
+
+		private TextTokenizer tokenizer = TextTokenizer.alphanumeric();
+		private Map<Text, StripeWritable> stripes = new HashMap<Text, StripeWritable>();
+		private Set<Text> pairTerms = new HashSet<Text>();
+		private int stripeMaxSize;
+		private Text term = new Text();
+		private Text pair = new Text();
+		private StripeWritable count = new StripeWritable();
+		private InMapperCombiner combiner;
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			Configuration conf = context.getConfiguration();
+			combiner = new InMapperCombiner(conf);
+			stripeMaxSize = conf.getInt(STRIPE_MAX_SIZE, STRIPE_MAX_SIZE_DEFAULT_VALUE);
+			for (String pairTerm : conf.getStrings(PAIR_TERMS, new String[0])) {
+				pairTerms.add(new Text(pairTerm));
+			}
+		}
+
+		public void map(LongWritable offset, Text paragraph, Context context) throws IOException,
+				InterruptedException {
+			int neighbours = context.getConfiguration().getInt(NEIGHBOURS, Integer.valueOf(NEIGHBOURS_DEFAULT_VALUE));
+			int words = tokenizer.tokenize(paragraph);
+			byte[] bytes = tokenizer.getBytes();
+
+			for (int i = 0; i + neighbours < words; i++) {
+				int j = i + neighbours;
+				tokenizer.get(i, term);
+				StripeWritable stripe = stripes.get(term);
+				if (stripe == null) {
+					stripe = new StripeWritable();
+					stripes.put(new Text(term), stripe);
+					combiner.add(0, STRIPE_FOOTPRINT + term.getLength());
+				}
+				if (stripe.getStripe().increment(bytes, tokenizer.getStart(j), tokenizer.getLength(j), 1) == 1) {
+					combiner.add(1, NEIGHBOUR_FOOTPRINT + tokenizer.getLength(j));
+				}
+			}
+
+			if (combiner.shouldFlush()) {
+				flush(context);
+			}
+		}
+
+		@Override
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			flush(context);
+		}
+
+		private void flush(Context context) throws IOException, InterruptedException {
+			int emitted = 0;
+			for (Map.Entry<Text, StripeWritable> entry : stripes.entrySet()) {
+				StripeWritable stripe = entry.getValue();
+				if (stripe.size() > stripeMaxSize || pairTerms.contains(entry.getKey())) {
+					emitted += writePairs(entry.getKey(), stripe, context);
+				} else {
+					context.write(entry.getKey(), stripe);
+					emitted++;
+				}
+			}
+			combiner.flushed(context, emitted);
+			stripes.clear();
+		}
+
+		/**
+		 * Writes the marginal of the term and a pair per neighbour.
+		 *
+		 * @return number of records written
+		 */
+		private int writePairs(Text term, StripeWritable stripe, Context context) throws IOException,
+				InterruptedException {
+			pair.set(term);
+			pair.append(SEPARATOR_BYTES, 0, 1);
+			count.setCount((int) stripe.sum());
+			context.write(pair, count);
+
+			WordCountMap neighbours = stripe.getStripe();
+			byte[] bytes = neighbours.getBytes();
+			for (int i = 0; i < neighbours.size(); i++) {
+				pair.set(term);
+				pair.append(SEPARATOR_BYTES, 0, 1);
+				pair.append(bytes, neighbours.getOffset(i), neighbours.getLength(i));
+				count.setCount(neighbours.getCount(i));
+				context.write(pair, count);
+			}
+			return neighbours.size() + 1;
+		}
+	}
+
+	public static class Reduce extends Reducer<Text, StripeWritable, Text, DoubleWritable> {
+		/** counter groups of the records received by each reducer and its time */
+		public static final String LOAD = "HybridApproach reducer";
+
+		private static Logger _log = Logger.getLogger(Reduce.class.getName());
+		private StripeWritable merged = new StripeWritable();
+		private StripeMerger merger = new StripeMerger();
+		private TopNeighbours neighbours = new TopNeighbours();
+		private Pair pair = new Pair();
+		private Text key = new Text();
+		private DoubleWritable value = new DoubleWritable();
+		private ReducerLoad load;
+
+		/** stripes added to the merger for the current term */
+		private int stripes;
+		/** cursor in the entries of the merged stripe */
+		private int position;
+		/** pair being summed: its word in the key bytes and its count */
+		private Text word = new Text();
+		private int wordCount;
+		private int total;
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			neighbours.setLimit(context.getConfiguration().getInt(TOP_K, TOP_K_DEFAULT_VALUE));
+			load = new ReducerLoad(context, LOAD);
+		}
+
+		@Override
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			load.done();
+		}
+
+		/**
+		 * Keys are grouped on the term and updated while iterating the values:
+		 * the stripes come first, then the marginals of the pairs and then
+		 * the pairs, by word.
+		 */
+		public void reduce(Text term, Iterable<StripeWritable> values, Context context) throws IOException,
+				InterruptedException {
+			String termString = Text.decode(term.getBytes(), 0, termLength(term.getBytes(), 0, term.getLength()));
+			boolean merging = true;
+			stripes = 0;
+			total = 0;
+			word.clear();
+			wordCount = 0;
+			for (StripeWritable stripe : values) {
+				int separator = termLength(term.getBytes(), 0, term.getLength());
+				if (separator == term.getLength()) {
+					load.add(stripe.size());
+					merger.add(stripe);
+					stripes++;
+					continue;
+				}
+				load.add(1);
+				if (merging) {
+					// all the stripes are in, the marginals come next
+					mergeStripes();
+					merging = false;
+				}
+				if (separator + 1 == term.getLength()) {
+					total += stripe.sum();
+					continue;
+				}
+				int start = separator + 1;
+				int length = term.getLength() - start;
+				if (wordCount > 0
+						&& WritableComparator.compareBytes(word.getBytes(), 0, word.getLength(), term.getBytes(),
+								start, length) != 0) {
+					addStripeEntries(word.getBytes(), 0, word.getLength());
+					addNeighbour(word.getBytes(), 0, word.getLength(), wordCount);
+					wordCount = 0;
+				}
+				word.set(term.getBytes(), start, length);
+				wordCount += stripe.sum();
+			}
+			if (merging) {
+				mergeStripes();
+			}
+			if (wordCount > 0) {
+				addStripeEntries(word.getBytes(), 0, word.getLength());
+				addNeighbour(word.getBytes(), 0, word.getLength(), wordCount);
+			}
+			addStripeEntries(null, 0, 0);
+			emitFrequencies(termString, context);
+		}
+
+		private void mergeStripes() throws IOException {
+			if (stripes > 0) {
+				total += merger.merge(merged);
+			} else {
+				merged.getEntries().reset();
+				merged.setSerialized(0);
+			}
+			position = 0;
+		}
+
+		/**
+		 * Adds the entries of the merged stripe before the given word, all of
+		 * them when the word is null, and the count of its entry to the word
+		 * when there is one.
+		 */
+		private void addStripeEntries(byte[] b, int s, int l) throws IOException {
+			byte[] bytes = merged.getEntries().getData();
+			while (position < merged.getEntries().getLength()) {
+				int length = StripeWritable.readVInt(bytes, position);
+				int start = position + WritableUtils.decodeVIntSize(bytes[position]);
+				int compare = b == null ? -1 : WritableComparator.compareBytes(bytes, start, length, b, s, l);
+				if (compare > 0) {
+					return;
+				}
+				int countPosition = start + length;
+				int count = StripeWritable.readVInt(bytes, countPosition);
+				position = countPosition + WritableUtils.decodeVIntSize(bytes[countPosition]);
+				if (compare == 0) {
+					wordCount += count;
+					return;
+				}
+				addNeighbour(bytes, start, length, count);
+			}
+		}
+
+		private void addNeighbour(byte[] b, int s, int l, int count) throws IOException {
+			neighbours.add(Text.decode(b, s, l), count, total);
+		}
+
+		private void emitFrequencies(String term, Context context) throws IOException, InterruptedException {
+			int size = neighbours.sort();
+			pair.setTerm(term);
+			pair.setTermCount(total);
+			for (int i = 0; i < size; i++) {
+				pair.setWord(neighbours.getWord(i));
+				pair.setWordCount(neighbours.getWordCount(i));
+				key.set(pair.toString());
+				value.set(neighbours.getProbability(i));
+				if (_log.isDebugEnabled()) {
+					_log.debug("Emiting: " + pair.toString());
+				}
+				context.write(key, value);
+			}
+			neighbours.clear();
+			merged.clear();
+		}
+	}
+
+	/**
+	 * Partitions the keys on the hash of the bytes of their term.
+	 */
+	public static class TermPartitioner extends Partitioner<Text, StripeWritable> {
+
+		@Override
+		public int getPartition(Text key, StripeWritable value, int numReduceTasks) {
+			int hash = WritableComparator.hashBytes(key.getBytes(), termLength(key.getBytes(), 0, key.getLength()));
+			return (hash & Integer.MAX_VALUE) % numReduceTasks;
+		}
+	}
+
+	/**
+	 * Groups the keys on their term, compared on the serialized bytes.
+	 */
+	public static class TermGroupingComparator extends WritableComparator {
+
+		protected TermGroupingComparator() {
+			super(Text.class, true);
+		}
+
+		@Override
+		public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+			int start1 = s1 + WritableUtils.decodeVIntSize(b1[s1]);
+			int start2 = s2 + WritableUtils.decodeVIntSize(b2[s2]);
+			return compareBytes(b1, start1, termLength(b1, start1, s1 + l1 - start1), b2, start2,
+					termLength(b2, start2, s2 + l2 - start2));
+		}
+
+		@Override
+		@SuppressWarnings("rawtypes")
+		public int compare(WritableComparable w1, WritableComparable w2) {
+			Text t1 = (Text) w1;
+			Text t2 = (Text) w2;
+			return compareBytes(t1.getBytes(), 0, termLength(t1.getBytes(), 0, t1.getLength()), t2.getBytes(), 0,
+					termLength(t2.getBytes(), 0, t2.getLength()));
+		}
+	}
+
+	/**
+	 * @return the length of the term of a key, up to the separator
+	 */
+	static int termLength(byte[] b, int s, int l) {
+		for (int i = s; i < s + l; i++) {
+			if (b[i] == SEPARATOR) {
+				return i - s;
+			}
+		}
+		return l;
+	}
+
+	/**
+	 * @return the main job of the last run, for its counters
+	 */
+	public Job getJob() {
+		return job;
+	}
+
+	public int run(String[] args) throws Exception {
+		Configuration conf = getConf();
+
+		@SuppressWarnings("deprecation")
+		Job job = new Job(conf, "Coursework 1 - Hybrid Approach");
+		this.job = job;
+		job.setInputFormatClass(ParagrapghInputFormat.class);
+		job.setJarByClass(HybridApproach.class);
+
+		job.getConfiguration().set(NEIGHBOURS, NEIGHBOURS_DEFAULT_VALUE);
+
+		job.setMapperClass(MapClass.class);
+		job.setCombinerClass(StripesApproach.Combine.class);
+		job.setReducerClass(Reduce.class);
+
+		job.setMapOutputKeyClass(Text.class);
+		job.setMapOutputValueClass(StripeWritable.class);
+		job.setOutputKeyClass(Text.class);
+		job.setOutputValueClass(DoubleWritable.class);
+		job.setPartitionerClass(TermPartitioner.class);
+		job.setGroupingComparatorClass(TermGroupingComparator.class);
+
+		List<String> other_args = new ArrayList<String>();
+		for (int i = 0; i < args.length; ++i) {
+			try {
+				if (REDUCER_PARAM.equals(args[i])) {
+					job.setNumReduceTasks(Integer.parseInt(args[++i]));
+				} else {
+					other_args.add(args[i]);
+				}
+			} catch (NumberFormatException except) {
+				System.out.println("ERROR: Integer expected instead of " + args[i]);
+				return printUsage();
+			} catch (ArrayIndexOutOfBoundsException except) {
+				System.out.println("ERROR: Required parameter missing from " + args[i - 1]);
+				return printUsage();
+			}
+		}
+		// Make sure there are exactly 2 parameters left.
+		if (other_args.size() != 2) {
+			System.out.println("ERROR: Wrong number of parameters: " + other_args.size() + " instead of 2.");
+			return printUsage();
+		}
+
+		Path in = new Path(other_args.get(0));
+		FileInputFormat.setInputPaths(job, in);
+
+		Path out = new Path(other_args.get(1));
+		FileSystem fs = FileSystem.get(conf);
+		fs.delete(out, true);
+		FileOutputFormat.setOutputPath(job, out);
+
+		setPairTerms(job);
+
+		boolean success = job.waitForCompletion(true);
+		_log.info("Reducers: " + ReducerLoad.report(job, Reduce.LOAD));
+		return success ? 0 : 1;
+	}
+
+	/**
+	 * Stores the terms emitted as pairs in the configuration, from
+	 * <b>hybrid.pair.terms</b> or else the <b>hybrid.pair.terms.count</b>
+	 * heaviest terms of a sample of the input.
+	 */
+	private void setPairTerms(Job job) throws IOException, InterruptedException {
+		Configuration conf = job.getConfiguration();
+		String[] pairTerms = conf.getStrings(PAIR_TERMS);
+		int count = conf.getInt(PAIR_TERMS_COUNT, PAIR_TERMS_COUNT_DEFAULT_VALUE);
+		if (pairTerms == null && count > 0) {
+			Map<String, Long> weights = TermSampler.sample(job,
+					conf.getInt(NEIGHBOURS, Integer.valueOf(NEIGHBOURS_DEFAULT_VALUE)));
+			pairTerms = TermSampler.hottest(weights, count);
+			conf.setStrings(PAIR_TERMS, pairTerms);
+		}
+		_log.info("Emitting " + (pairTerms == null ? 0 : pairTerms.length) + " terms as pairs");
+	}
+
+	private static int printUsage() {
+		System.out.println("hybridApproach [-r <reduces>] <input> <output>");
+		ToolRunner.printGenericCommandUsage(System.out);
+		return -1;
+	}
+
+	public static void main(String[] args) throws Exception {
+		String[] parameters = { "assets/jane_austen/input", "assets/jane_austen/output" };
+		if (args != null && args.length >= 2) {
+			parameters = args;
+		}
+		int res = ToolRunner.run(new Configuration(), new HybridApproach(), parameters);
+		System.exit(res);
+	}
+}
@@ -0,0 +1,426 @@
+package com.hadoop.coursework1.stripes;
+
+import static com.hadoop.coursework1.util.TopNeighbours.TOP_K;
+import static com.hadoop.coursework1.util.TopNeighbours.TOP_K_DEFAULT_VALUE;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.LazyOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+import com.hadoop.coursework1.Pair;
+import com.hadoop.coursework1.util.ParagrapghInputFormat;
+import com.hadoop.coursework1.util.TopNeighbours;
+
+/**
+ * {@link StripesApproach} that updates the output of a previous run with the
+ * new files of its input only. <br>
+ * <br>
+ * Next to the conditional probabilities (<i>part-r-NNNNN</i>) the output keeps
+ * the raw stripe of each term (<i>counts/part-r-NNNNN</i>, SequenceFiles of
+ * {@link StripeWritable} sorted by term, the marginal being the sum of the
+ * counts) and the list of the input files it covers with their length and
+ * modification time (<i>_inputs</i>). <br>
+ * With <b>-u &lt;previous output&gt;</b> only the files not in its
+ * <i>_inputs</i> are read: <b>the delta job</b> counts their stripes, with the
+ * partitions of the previous run, and <b>the merge job</b> runs one map per
+ * partition that walks the sorted delta and the previous counts side by side.
+ * The stripes and probabilities of the terms without new counts are copied as
+ * they are, only the terms of the delta are merged and have their
+ * probabilities computed again. Without <b>-u</b> the whole input is the
+ * delta. <br>
+ * Files modified or removed since the previous run cannot be subtracted from
+ * the counts and fail the run; the vocabulary pruning and the salting of
+ * {@link StripesApproach} are not available in this mode. The top K limit
+ * (<b>top.k</b>) has to be the one of the previous run. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class IncrementalStripesApproach extends Configured implements Tool {
+
+	private static final String REDUCER_PARAM = "-r";
+	private static final String PREVIOUS_PARAM = "-u";
+	private static final String KEYWORD = "KEYWORD";
+	private static final String KEYWORD_DEFAULT_VALUE = "for";
+	private static final String NEIGHBOURS = "neighbours";
+	private static final String NEIGHBOURS_DEFAULT_VALUE = "1";
+	/** previous output, merged by the {@link MergeMap} */
+	public static final String PREVIOUS = "incremental.previous";
+	public static final String COUNTS = "counts";
+	public static final String INPUTS = "_inputs";
+
+	public static enum Counters {
+		TERMS_COPIED, TERMS_UPDATED
+	}
+
+	private static Logger _log = Logger.getLogger(IncrementalStripesApproach.class.getName());
+
+	/**
+	 * One split per delta partition.
+	 */
+	public static class PartitionInputFormat extends SequenceFileInputFormat<Text, StripeWritable> {
+
+		@Override
+		protected boolean isSplitable(JobContext context, Path filename) {
+			return false;
+		}
+	}
+
+	/**
+	 * Merges the delta of a partition, its input, with the counts and
+	 * probabilities of the same partition of the previous run into the files
+	 * of the partition in the output.
+	 */
+	public static class MergeMap extends Mapper<Text, StripeWritable, Text, StripeWritable> {
+
+		private StripeWritable stripeFreq = new StripeWritable();
+		private StripeMerger merger = new StripeMerger();
+		private Pair pair = new Pair();
+
+		private SequenceFile.Reader previousCounts;
+		private BufferedReader previousLines;
+		private Text previousTerm = new Text();
+		private StripeWritable previousStripe = new StripeWritable();
+		private String pendingLine;
+
+		private SequenceFile.Writer counts;
+		private Writer lines;
+
+		@Override
+		public void run(Context context) throws IOException, InterruptedException {
+			Configuration conf = context.getConfiguration();
+			stripeFreq.getNeighbours().setLimit(conf.getInt(TOP_K, TOP_K_DEFAULT_VALUE));
+			String name = ((FileSplit) context.getInputSplit()).getPath().getName();
+			open(context, name);
+			try {
+				boolean previous = nextPrevious();
+				while (context.nextKeyValue()) {
+					Text term = context.getCurrentKey();
+					while (previous && previousTerm.compareTo(term) < 0) {
+						copyPrevious(context);
+						previous = nextPrevious();
+					}
+					merger.add(context.getCurrentValue());
+					if (previous && previousTerm.equals(term)) {
+						merger.add(previousStripe);
+						skipLines(previousTerm.toString());
+						previous = nextPrevious();
+					}
+					// the marginal of the term is the sum of all its counts
+					int total = (int) merger.merge(stripeFreq);
+					counts.append(term, stripeFreq);
+					emitFrequencies(term.toString(), total);
+					context.getCounter(Counters.TERMS_UPDATED).increment(1);
+				}
+				while (previous) {
+					copyPrevious(context);
+					previous = nextPrevious();
+				}
+			} finally {
+				close();
+			}
+		}
+
+		private void open(Context context, String name) throws IOException, InterruptedException {
+			Configuration conf = context.getConfiguration();
+			Path work = FileOutputFormat.getWorkOutputPath(context);
+			FileSystem fs = work.getFileSystem(conf);
+			counts = SequenceFile.createWriter(fs, conf, new Path(new Path(work, COUNTS), name), Text.class,
+					StripeWritable.class, CompressionType.NONE);
+			lines = new BufferedWriter(new OutputStreamWriter(fs.create(new Path(work, name)), "UTF-8"));
+
+			String previous = conf.get(PREVIOUS);
+			if (previous != null) {
+				Path previousCountsPath = new Path(new Path(previous, COUNTS), name);
+				FileSystem previousFs = previousCountsPath.getFileSystem(conf);
+				if (previousFs.exists(previousCountsPath)) {
+					previousCounts = new SequenceFile.Reader(previousFs, previousCountsPath, conf);
+					previousLines = new BufferedReader(new InputStreamReader(previousFs.open(new Path(previous,
+							name)), "UTF-8"));
+					pendingLine = previousLines.readLine();
+				}
+			}
+		}
+
+		private void close() throws IOException {
+			try {
+				counts.close();
+				lines.close();
+			} finally {
+				if (previousCounts != null) {
+					previousCounts.close();
+					previousLines.close();
+				}
+			}
+		}
+
+		private boolean nextPrevious() throws IOException {
+			return previousCounts != null && previousCounts.next(previousTerm, previousStripe);
+		}
+
+		/**
+		 * Copies a term with no new counts: its stripe, serialized as it was
+		 * read, and its lines of probabilities.
+		 */
+		private void copyPrevious(Context context) throws IOException {
+			counts.append(previousTerm, previousStripe);
+			String term = previousTerm.toString();
+			while (pendingLine != null && term.equals(lineTerm(pendingLine))) {
+				lines.write(pendingLine);
+				lines.write('\n');
+				pendingLine = previousLines.readLine();
+			}
+			context.getCounter(Counters.TERMS_COPIED).increment(1);
+		}
+
+		private void skipLines(String term) throws IOException {
+			while (pendingLine != null && term.equals(lineTerm(pendingLine))) {
+				pendingLine = previousLines.readLine();
+			}
+		}
+
+		private static String lineTerm(String line) {
+			int end = line.indexOf(Pair.WHITESPACE);
+			return end < 0 ? line : line.substring(0, end);
+		}
+
+		/**
+		 * Writes the lines of the term, the ones {@link StripesApproach.Reduce}
+		 * writes through the TextOutputFormat.
+		 */
+		private void emitFrequencies(String term, int total) throws IOException {
+			TopNeighbours neighbours = stripeFreq.calculateFrequencies(total).getNeighbours();
+			pair.setTerm(term);
+			pair.setTermCount(total);
+			for (int i = 0; i < neighbours.size(); i++) {
+				pair.setWord(neighbours.getWord(i));
+				pair.setWordCount(neighbours.getWordCount(i));
+				lines.write(pair.toString());
+				lines.write('\t');
+				lines.write(Double.toString(neighbours.getProbability(i)));
+				lines.write('\n');
+			}
+			stripeFreq.clear();
+		}
+	}
+
+	public int run(String[] args) throws Exception {
+		Configuration conf = getConf();
+		int reducers = 1;
+		Path previous = null;
+		List<String> other_args = new ArrayList<String>();
+		for (int i = 0; i < args.length; ++i) {
+			try {
+				if (REDUCER_PARAM.equals(args[i])) {
+					reducers = Integer.parseInt(args[++i]);
+				} else if (PREVIOUS_PARAM.equals(args[i])) {
+					previous = new Path(args[++i]);
+				} else {
+					other_args.add(args[i]);
+				}
+			} catch (NumberFormatException except) {
+				System.out.println("ERROR: Integer expected instead of " + args[i]);
+				return printUsage();
+			} catch (ArrayIndexOutOfBoundsException except) {
+				System.out.println("ERROR: Required parameter missing from " + args[i - 1]);
+				return printUsage();
+			}
+		}
+		// Make sure there are exactly 2 parameters left.
+		if (other_args.size() != 2) {
+			System.out.println("ERROR: Wrong number of parameters: " + other_args.size() + " instead of 2.");
+			return printUsage();
+		}
+
+		FileSystem fs = FileSystem.get(conf);
+		Path in = new Path(other_args.get(0));
+		Path out = fs.makeQualified(new Path(other_args.get(1)));
+		if (previous != null) {
+			previous = fs.makeQualified(previous);
+			if (previous.equals(out)) {
+				System.out.println("ERROR: The output has to be a new folder, not the previous output.");
+				return printUsage();
+			}
+			// the partitions of the counts are the ones of the previous run
+			reducers = fs.globStatus(new Path(new Path(previous, COUNTS), "part-r-*")).length;
+		}
+
+		Map<String, String> inputs = listInputs(fs, in);
+		List<Path> added = newInputs(fs, inputs, previous);
+		if (added.isEmpty()) {
+			_log.info("No new input since " + previous + ", nothing to update");
+			return 0;
+		}
+		_log.info("Counting " + added.size() + " new files of " + inputs.size() + " into " + reducers + " partitions");
+		fs.delete(out, true);
+		Path delta = fs.makeQualified(new Path(conf.get("hadoop.tmp.dir"), "incremental-" + System.currentTimeMillis()));
+
+		boolean success = false;
+		try {
+			success = countDelta(conf, added, delta, reducers) && merge(conf, delta, previous, out);
+		} finally {
+			fs.delete(delta, true);
+		}
+		if (success) {
+			writeInputs(fs, inputs, new Path(out, INPUTS));
+		}
+		return success ? 0 : 1;
+	}
+
+	/**
+	 * Counts the stripes of the new files, one SequenceFile per partition.
+	 */
+	private boolean countDelta(Configuration conf, List<Path> added, Path delta, int reducers) throws Exception {
+		@SuppressWarnings("deprecation")
+		Job job = new Job(conf, "Coursework 1 - Incremental Stripes Approach (delta)");
+		job.setInputFormatClass(ParagrapghInputFormat.class);
+		job.setJarByClass(IncrementalStripesApproach.class);
+		job.getConfiguration().set(KEYWORD, KEYWORD_DEFAULT_VALUE);
+		job.getConfiguration().set(NEIGHBOURS, NEIGHBOURS_DEFAULT_VALUE);
+
+		job.setMapperClass(StripesApproach.MapClass.class);
+		job.setCombinerClass(StripesApproach.Combine.class);
+		job.setReducerClass(StripesApproach.Combine.class);
+		job.setNumReduceTasks(reducers);
+
+		job.setOutputKeyClass(Text.class);
+		job.setOutputValueClass(StripeWritable.class);
+		job.setOutputFormatClass(SequenceFileOutputFormat.class);
+		FileInputFormat.setInputPaths(job, added.toArray(new Path[added.size()]));
+		FileOutputFormat.setOutputPath(job, delta);
+		return job.waitForCompletion(true);
+	}
+
+	/**
+	 * Merges each partition of the delta with the one of the previous run.
+	 */
+	private boolean merge(Configuration conf, Path delta, Path previous, Path out) throws Exception {
+		@SuppressWarnings("deprecation")
+		Job job = new Job(conf, "Coursework 1 - Incremental Stripes Approach (merge)");
+		job.setJarByClass(IncrementalStripesApproach.class);
+		if (previous != null) {
+			job.getConfiguration().set(PREVIOUS, previous.toString());
+		}
+		job.setInputFormatClass(PartitionInputFormat.class);
+		job.setMapperClass(MergeMap.class);
+		job.setNumReduceTasks(0);
+		// the map writes the files of its partition itself
+		LazyOutputFormat.setOutputFormatClass(job, TextOutputFormat.class);
+		FileInputFormat.setInputPaths(job, new Path(delta, "part-r-*"));
+		FileOutputFormat.setOutputPath(job, out);
+		return job.waitForCompletion(true);
+	}
+
+	/**
+	 * @return path to "length modification time" of each file of the input
+	 */
+	private static Map<String, String> listInputs(FileSystem fs, Path in) throws IOException {
+		Map<String, String> inputs = new HashMap<String, String>();
+		FileStatus[] matches = fs.globStatus(in);
+		if (matches == null) {
+			throw new IOException("Input " + in + " does not exist");
+		}
+		for (FileStatus match : matches) {
+			FileStatus[] files = match.isDir() ? fs.listStatus(match.getPath()) : new FileStatus[] { match };
+			for (FileStatus file : files) {
+				String name = file.getPath().getName();
+				if (!file.isDir() && !name.startsWith("_") && !name.startsWith(".")) {
+					inputs.put(fs.makeQualified(file.getPath()).toString(), file.getLen() + "\t"
+							+ file.getModificationTime());
+				}
+			}
+		}
+		return inputs;
+	}
+
+	/**
+	 * @return the input files not covered by the previous run
+	 * @throws IOException
+	 *             when a file of the previous run was modified or removed
+	 */
+	private static List<Path> newInputs(FileSystem fs, Map<String, String> inputs, Path previous)
+			throws IOException {
+		Map<String, String> processed = new HashMap<String, String>();
+		if (previous != null) {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(fs.open(new Path(previous, INPUTS)),
+					"UTF-8"));
+			try {
+				for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+					int tab = line.indexOf('\t');
+					processed.put(line.substring(0, tab), line.substring(tab + 1));
+				}
+			} finally {
+				reader.close();
+			}
+		}
+		for (Map.Entry<String, String> file : processed.entrySet()) {
+			if (!file.getValue().equals(inputs.get(file.getKey()))) {
+				throw new IOException(file.getKey() + " was modified or removed since " + previous
+						+ ", run again without " + PREVIOUS_PARAM);
+			}
+		}
+		List<Path> added = new ArrayList<Path>();
+		for (String file : inputs.keySet()) {
+			if (!processed.containsKey(file)) {
+				added.add(new Path(file));
+			}
+		}
+		return added;
+	}
+
+	private static void writeInputs(FileSystem fs, Map<String, String> inputs, Path path) throws IOException {
+		FSDataOutputStream out = fs.create(path, true);
+		try {
+			for (Map.Entry<String, String> file : inputs.entrySet()) {
+				out.write((file.getKey() + "\t" + file.getValue() + "\n").getBytes("UTF-8"));
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private static int printUsage() {
+		System.out.println("incrementalStripesApproach [-r <reduces>] [-u <previous output>] <input> <output>");
+		ToolRunner.printGenericCommandUsage(System.out);
+		return -1;
+	}
+
+	public static void main(String[] args) throws Exception {
+		String[] parameters = { "assets/jane_austen/input", "assets/jane_austen/output" };
+		if (args != null && args.length >= 2) {
+			parameters = args;
+		}
+		int res = ToolRunner.run(new Configuration(), new IncrementalStripesApproach(), parameters);
+		System.exit(res);
+	}
+}
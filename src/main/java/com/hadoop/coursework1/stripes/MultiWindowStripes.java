@@ -0,0 +1,244 @@
+package com.hadoop.coursework1.stripes;
+
+import static com.hadoop.coursework1.pairs.MultiWindowPairs.OUTPUT_PREFIX;
+import static com.hadoop.coursework1.pairs.MultiWindowPairs.WINDOWS;
+import static com.hadoop.coursework1.pairs.MultiWindowPairs.WINDOWS_PARAM;
+import static com.hadoop.coursework1.pairs.MultiWindowPairs.WINDOW_SEPARATOR;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.LazyOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+import com.hadoop.coursework1.pairs.MultiWindowPairs;
+import com.hadoop.coursework1.util.InMapperCombiner;
+import com.hadoop.coursework1.util.ParagrapghInputFormat;
+import com.hadoop.util.TextTokenizer;
+
+/**
+ * Stripes approach for several window sizes in a single scan of the input,
+ * the stripes counterpart of {@link MultiWindowPairs}. <br>
+ * <br>
+ * For every window size d of <b>windows</b> (1,2,3 by default) the mapper
+ * adds to the stripe of each token the token d positions after it, as
+ * {@link StripesApproach} does with <b>neighbours</b> = d. The input is read
+ * and tokenized once. <br>
+ * The stripes are keyed by the window and the term (<i>d|term</i>), so the
+ * {@link StripesApproach} combiner and reducer merge the stripes of each
+ * (window, term) and compute its conditional probabilities, which are
+ * written without the prefix to the <i>window&lt;d&gt;</i> named output
+ * (<i>window2-r-00000</i>...). <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class MultiWindowStripes extends Configured implements Tool {
+
+	private static final String REDUCER_PARAM = "-r";
+
+	public static class MapClass extends Mapper<LongWritable, Text, Text, StripeWritable> {
+
+		/** rough heap bytes of a new stripe: map entry, term String and empty stripe */
+		private static final int STRIPE_FOOTPRINT = 800;
+		/** rough heap bytes of a new neighbour in a stripe, on top of its UTF bytes */
+		private static final int NEIGHBOUR_FOOTPRINT = 48;
+
+		private static Logger _log = Logger.getLogger(MapClass.class.getName());
+		private TextTokenizer tokenizer = TextTokenizer.alphanumeric();
+		/** stripes keyed by "d|term" */
+		private Map<Text, StripeWritable> stripes = new HashMap<Text, StripeWritable>();
+		private Text key = new Text();
+		private int[] windows;
+		private byte[][] prefixes;
+		private InMapperCombiner combiner;
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			combiner = new InMapperCombiner(context.getConfiguration());
+			windows = MultiWindowPairs.getWindows(context.getConfiguration());
+			prefixes = new byte[windows.length][];
+			for (int w = 0; w < windows.length; w++) {
+				prefixes[w] = (Integer.toString(windows[w]) + WINDOW_SEPARATOR).getBytes();
+			}
+		}
+
+		public void map(LongWritable lineNumber, Text line, Context context) throws IOException, InterruptedException {
+			int words = tokenizer.tokenize(line);
+			byte[] bytes = tokenizer.getBytes();
+
+			for (int i = 0; i < words; i++) {
+				for (int w = 0; w < windows.length; w++) {
+					int j = i + windows[w];
+					if (j >= words) {
+						continue;
+					}
+					key.set(prefixes[w]);
+					key.append(bytes, tokenizer.getStart(i), tokenizer.getLength(i));
+					StripeWritable stripe = stripes.get(key);
+					if (stripe == null) {
+						stripe = new StripeWritable();
+						stripes.put(new Text(key), stripe);
+						combiner.add(0, STRIPE_FOOTPRINT + key.getLength());
+					}
+					if (stripe.getStripe().increment(bytes, tokenizer.getStart(j), tokenizer.getLength(j), 1) == 1) {
+						combiner.add(1, NEIGHBOUR_FOOTPRINT + tokenizer.getLength(j));
+					}
+				}
+			}
+
+			if (combiner.shouldFlush()) {
+				flush(context);
+			}
+		}
+
+		@Override
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			flush(context);
+		}
+
+		private void flush(Context context) throws IOException, InterruptedException {
+			for (Map.Entry<Text, StripeWritable> stripe : stripes.entrySet()) {
+				if (_log.isDebugEnabled()) {
+					_log.debug("Emiting: " + stripe.getKey() + " => " + stripe.getValue());
+				}
+				context.write(stripe.getKey(), stripe.getValue());
+			}
+			combiner.flushed(context, stripes.size());
+			stripes.clear();
+		}
+	}
+
+	/**
+	 * {@link StripesApproach.Reduce} writing each window to its named output.
+	 */
+	public static class Reduce extends StripesApproach.Reduce {
+		private MultipleOutputs<Text, DoubleWritable> outputs;
+		private String output;
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			super.setup(context);
+			outputs = new MultipleOutputs<Text, DoubleWritable>(context);
+		}
+
+		@Override
+		protected String term(Text key) {
+			String term = key.toString();
+			int separator = term.indexOf(WINDOW_SEPARATOR);
+			output = OUTPUT_PREFIX + term.substring(0, separator);
+			return term.substring(separator + 1);
+		}
+
+		@Override
+		protected void write(Text key, DoubleWritable value, Context context) throws IOException,
+				InterruptedException {
+			outputs.write(output, key, value);
+		}
+
+		@Override
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			outputs.close();
+			super.cleanup(context);
+		}
+	}
+
+	public int run(String[] args) throws Exception {
+		Configuration conf = getConf();
+		@SuppressWarnings("deprecation")
+		Job job = new Job(conf, "Coursework 1 - Multi Window Stripes");
+		job.setInputFormatClass(ParagrapghInputFormat.class);
+		job.setJarByClass(MultiWindowStripes.class);
+
+		job.setMapperClass(MapClass.class);
+		job.setCombinerClass(StripesApproach.Combine.class);
+		job.setReducerClass(Reduce.class);
+
+		job.setMapOutputKeyClass(Text.class);
+		job.setMapOutputValueClass(StripeWritable.class);
+		job.setOutputKeyClass(Text.class);
+		job.setOutputValueClass(DoubleWritable.class);
+
+		List<String> other_args = new ArrayList<String>();
+		for (int i = 0; i < args.length; ++i) {
+			try {
+				if (REDUCER_PARAM.equals(args[i])) {
+					job.setNumReduceTasks(Integer.parseInt(args[++i]));
+				} else if (WINDOWS_PARAM.equals(args[i])) {
+					job.getConfiguration().set(WINDOWS, args[++i]);
+				} else {
+					other_args.add(args[i]);
+				}
+			} catch (NumberFormatException except) {
+				System.out.println("ERROR: Integer expected instead of " + args[i]);
+				return printUsage();
+			} catch (ArrayIndexOutOfBoundsException except) {
+				System.out.println("ERROR: Required parameter missing from " + args[i - 1]);
+				return printUsage();
+			}
+		}
+		// Make sure there are exactly 2 parameters left.
+		if (other_args.size() != 2) {
+			System.out.println("ERROR: Wrong number of parameters: " + other_args.size() + " instead of 2.");
+			return printUsage();
+		}
+
+		int[] windows;
+		try {
+			windows = MultiWindowPairs.getWindows(job.getConfiguration());
+		} catch (IllegalArgumentException except) {
+			System.out.println("ERROR: " + except.getMessage());
+			return printUsage();
+		}
+
+		// only the named outputs are written
+		LazyOutputFormat.setOutputFormatClass(job, TextOutputFormat.class);
+		for (int window : windows) {
+			MultipleOutputs.addNamedOutput(job, OUTPUT_PREFIX + window, TextOutputFormat.class, Text.class,
+					DoubleWritable.class);
+		}
+
+		Path in = new Path(other_args.get(0));
+		FileInputFormat.setInputPaths(job, in);
+
+		Path out = new Path(other_args.get(1));
+		FileSystem fs = FileSystem.get(conf);
+		fs.delete(out, true);
+		FileOutputFormat.setOutputPath(job, out);
+
+		return job.waitForCompletion(true) ? 0 : 1;
+	}
+
+	private static int printUsage() {
+		System.out.println("multiWindowStripes [-r <reduces>] [-w <d1,d2,...>] <input> <output>");
+		ToolRunner.printGenericCommandUsage(System.out);
+		return -1;
+	}
+
+	public static void main(String[] args) throws Exception {
+		String[] parameters = { "assets/jane_austen/input", "assets/jane_austen/output" };
+		if (args != null && args.length >= 2) {
+			parameters = args;
+		}
+		int res = ToolRunner.run(new Configuration(), new MultiWindowStripes(), parameters);
+		System.exit(res);
+	}
+}
@@ -0,0 +1,357 @@
+package com.hadoop.coursework1.stripes;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+import com.hadoop.coursework1.Pair;
+import com.hadoop.coursework1.util.ParagrapghInputFormat;
+import com.hadoop.util.CountMinSketch;
+import com.hadoop.util.TextTokenizer;
+
+/**
+ * Approximate co-occurrence counts of the {@link StripesApproach}, in memory
+ * and shuffle sizes fixed up front. <br>
+ * <br>
+ * The terms are hashed into <b>sketch.buckets</b> buckets (16 by default),
+ * each one with a {@link CountMinSketch} of <b>sketch.depth</b> x
+ * <b>sketch.width</b> counters (4 x 32768 by default). The mapper counts every
+ * pair <i>term word</i> and the marginal <i>term *</i> in the sketch of the
+ * bucket of the term, and writes the sketches it used once its input is read,
+ * so its memory is that of the sketches whatever the vocabulary, and its
+ * output at most the same size. The sketches of a bucket are merged by adding
+ * their cells, in the combiner and the reducer, and written to SequenceFiles
+ * of bucket and sketch. <br>
+ * <br>
+ * The counts and P(word|term) are then estimated with the {@link Sketches},
+ * each count with its error bound: with a probability of 1 - e^-depth it is
+ * over the true one by at most e / width of the total of its bucket. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class SketchStripesApproach extends Configured implements Tool {
+
+	public static final String BUCKETS = "sketch.buckets";
+	public static final int BUCKETS_DEFAULT_VALUE = 16;
+	public static final String DEPTH = "sketch.depth";
+	public static final int DEPTH_DEFAULT_VALUE = 4;
+	public static final String WIDTH = "sketch.width";
+	public static final int WIDTH_DEFAULT_VALUE = 1 << 15;
+	private static final String REDUCER_PARAM = "-r";
+	private static final String BUCKETS_PARAM = "-b";
+	private static final String DEPTH_PARAM = "-d";
+	private static final String WIDTH_PARAM = "-w";
+	private static final String NEIGHBOURS = "neighbours";
+	private static final String NEIGHBOURS_DEFAULT_VALUE = "1";
+	private static final byte SEPARATOR = ' ';
+	private static final byte[] TOTAL_BYTES = StripeWritable.TOTAL.getBytes();
+
+	private static Logger _log = Logger.getLogger(SketchStripesApproach.class.getName());
+
+	private Job job;
+
+	public static class MapClass extends Mapper<LongWritable, Text, IntWritable, CountMinSketch> {
+		private TextTokenizer tokenizer = TextTokenizer.alphanumeric();
+		private CountMinSketch[] sketches;
+		private int depth;
+		private int width;
+		private byte[] keyBytes = new byte[64];
+		private IntWritable bucket = new IntWritable();
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			Configuration conf = context.getConfiguration();
+			sketches = new CountMinSketch[conf.getInt(BUCKETS, BUCKETS_DEFAULT_VALUE)];
+			depth = conf.getInt(DEPTH, DEPTH_DEFAULT_VALUE);
+			width = conf.getInt(WIDTH, WIDTH_DEFAULT_VALUE);
+		}
+
+		public void map(LongWritable lineNumber, Text line, Context context) throws IOException, InterruptedException {
+			int neighbours = context.getConfiguration().getInt(NEIGHBOURS, Integer.valueOf(NEIGHBOURS_DEFAULT_VALUE));
+			int words = tokenizer.tokenize(line);
+			byte[] bytes = tokenizer.getBytes();
+
+			for (int i = 0; i + neighbours < words; i++) {
+				int j = i + neighbours;
+				int b = bucket(bytes, tokenizer.getStart(i), tokenizer.getLength(i), sketches.length);
+				CountMinSketch sketch = sketches[b];
+				if (sketch == null) {
+					sketch = new CountMinSketch(depth, width);
+					sketches[b] = sketch;
+				}
+				sketch.add(keyBytes, key(bytes, tokenizer.getStart(i), tokenizer.getLength(i), bytes,
+						tokenizer.getStart(j), tokenizer.getLength(j)), 1);
+				sketch.add(keyBytes, key(bytes, tokenizer.getStart(i), tokenizer.getLength(i), TOTAL_BYTES, 0,
+						TOTAL_BYTES.length), 1);
+			}
+		}
+
+		@Override
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			for (int b = 0; b < sketches.length; b++) {
+				if (sketches[b] != null) {
+					bucket.set(b);
+					context.write(bucket, sketches[b]);
+				}
+			}
+		}
+
+		/**
+		 * Writes <i>term word</i> at the start of the key buffer.
+		 *
+		 * @return the length of the key
+		 */
+		private int key(byte[] term, int termStart, int termLength, byte[] word, int wordStart, int wordLength) {
+			int length = termLength + 1 + wordLength;
+			if (keyBytes.length < length) {
+				keyBytes = new byte[length * 2];
+			}
+			System.arraycopy(term, termStart, keyBytes, 0, termLength);
+			keyBytes[termLength] = SEPARATOR;
+			System.arraycopy(word, wordStart, keyBytes, termLength + 1, wordLength);
+			return length;
+		}
+	}
+
+	/**
+	 * Merges the sketches of a bucket, as combiner and reducer.
+	 */
+	public static class Merge extends Reducer<IntWritable, CountMinSketch, IntWritable, CountMinSketch> {
+		private static Logger _log = Logger.getLogger(Merge.class.getName());
+		private CountMinSketch merged;
+
+		public void reduce(IntWritable bucket, Iterable<CountMinSketch> sketches, Context context)
+				throws IOException, InterruptedException {
+			for (CountMinSketch sketch : sketches) {
+				if (merged == null || merged.getDepth() != sketch.getDepth()
+						|| merged.getWidth() != sketch.getWidth()) {
+					merged = new CountMinSketch(sketch.getDepth(), sketch.getWidth());
+				}
+				merged.merge(sketch);
+			}
+			_log.debug("Bucket " + bucket + ": " + merged);
+			context.write(bucket, merged);
+			merged.clear();
+		}
+	}
+
+	/**
+	 * @return the bucket of the UTF-8 bytes of a term
+	 */
+	static int bucket(byte[] bytes, int start, int length, int buckets) {
+		return (WritableComparator.hashBytes(bytes, start, length) & Integer.MAX_VALUE) % buckets;
+	}
+
+	/**
+	 * The merged sketches of an output, for the estimates of the counts and
+	 * P(word|term) of the pairs.
+	 */
+	public static class Sketches {
+		private final Map<Integer, CountMinSketch> sketches;
+		private final int buckets;
+
+		private Sketches(Map<Integer, CountMinSketch> sketches, int buckets) {
+			this.sketches = sketches;
+			this.buckets = buckets;
+		}
+
+		/**
+		 * Reads the sketches of the <i>part-r-NNNNN</i> files of an output,
+		 * written with the <b>sketch.buckets</b> of the configuration.
+		 */
+		public static Sketches load(Configuration conf, Path output) throws IOException {
+			FileSystem fs = output.getFileSystem(conf);
+			Map<Integer, CountMinSketch> sketches = new HashMap<Integer, CountMinSketch>();
+			for (FileStatus part : fs.globStatus(new Path(output, "part-r-*"))) {
+				SequenceFile.Reader reader = new SequenceFile.Reader(fs, part.getPath(), conf);
+				try {
+					IntWritable bucket = new IntWritable();
+					CountMinSketch sketch = new CountMinSketch();
+					while (reader.next(bucket, sketch)) {
+						sketches.put(bucket.get(), sketch);
+						sketch = new CountMinSketch();
+					}
+				} finally {
+					reader.close();
+				}
+			}
+			return new Sketches(sketches, conf.getInt(BUCKETS, BUCKETS_DEFAULT_VALUE));
+		}
+
+		/**
+		 * @return the estimated count of the pair, never below the true one
+		 */
+		public long getCount(String term, String word) throws IOException {
+			return estimate(term, word, false);
+		}
+
+		/**
+		 * @return the Count-Mean-Min estimate of the count of the pair
+		 */
+		public long getMeanMinCount(String term, String word) throws IOException {
+			return estimate(term, word, true);
+		}
+
+		/**
+		 * @return the estimated number of times the term was seen with a
+		 *         neighbour
+		 */
+		public long getTermCount(String term) throws IOException {
+			return estimate(term, StripeWritable.TOTAL, false);
+		}
+
+		/**
+		 * @return P(word|term) of the estimated counts, 0 for an unknown term
+		 */
+		public double getProbability(String term, String word) throws IOException {
+			long termCount = getTermCount(term);
+			if (termCount == 0) {
+				return 0;
+			}
+			return Pair.conditionalProbability(Math.min(getCount(term, word), termCount), termCount);
+		}
+
+		/**
+		 * @return the most the estimated counts of the pairs of the term are
+		 *         over the true ones, with a probability of 1 - e^-depth
+		 */
+		public long getErrorBound(String term) throws IOException {
+			CountMinSketch sketch = getSketch(term);
+			return sketch == null ? 0 : sketch.getErrorBound();
+		}
+
+		private long estimate(String term, String word, boolean meanMin) throws IOException {
+			CountMinSketch sketch = getSketch(term);
+			if (sketch == null) {
+				return 0;
+			}
+			byte[] key = encode(term + Pair.WHITESPACE + word);
+			return meanMin ? sketch.estimateMeanMin(key, key.length) : sketch.estimate(key, key.length);
+		}
+
+		private CountMinSketch getSketch(String term) throws IOException {
+			byte[] bytes = encode(term);
+			return sketches.get(bucket(bytes, 0, bytes.length, buckets));
+		}
+
+		private static byte[] encode(String value) throws IOException {
+			ByteBuffer buffer = Text.encode(value);
+			return Arrays.copyOf(buffer.array(), buffer.limit());
+		}
+	}
+
+	/**
+	 * @return the job of the last run, for its counters
+	 */
+	public Job getJob() {
+		return job;
+	}
+
+	public int run(String[] args) throws Exception {
+		Configuration conf = getConf();
+
+		@SuppressWarnings("deprecation")
+		Job job = new Job(conf, "Coursework 1 - Sketch Stripes Approach");
+		this.job = job;
+		job.setInputFormatClass(ParagrapghInputFormat.class);
+		job.setJarByClass(SketchStripesApproach.class);
+		if (job.getConfiguration().get(NEIGHBOURS) == null) {
+			job.getConfiguration().set(NEIGHBOURS, NEIGHBOURS_DEFAULT_VALUE);
+		}
+
+		job.setMapperClass(MapClass.class);
+		job.setCombinerClass(Merge.class);
+		job.setReducerClass(Merge.class);
+
+		job.setOutputKeyClass(IntWritable.class);
+		job.setOutputValueClass(CountMinSketch.class);
+		job.setOutputFormatClass(SequenceFileOutputFormat.class);
+
+		List<String> other_args = new ArrayList<String>();
+		for (int i = 0; i < args.length; ++i) {
+			try {
+				if (REDUCER_PARAM.equals(args[i])) {
+					job.setNumReduceTasks(Integer.parseInt(args[++i]));
+				} else if (BUCKETS_PARAM.equals(args[i])) {
+					job.getConfiguration().setInt(BUCKETS, Integer.parseInt(args[++i]));
+				} else if (DEPTH_PARAM.equals(args[i])) {
+					job.getConfiguration().setInt(DEPTH, Integer.parseInt(args[++i]));
+				} else if (WIDTH_PARAM.equals(args[i])) {
+					job.getConfiguration().setInt(WIDTH, Integer.parseInt(args[++i]));
+				} else {
+					other_args.add(args[i]);
+				}
+			} catch (NumberFormatException except) {
+				System.out.println("ERROR: Integer expected instead of " + args[i]);
+				return printUsage();
+			} catch (ArrayIndexOutOfBoundsException except) {
+				System.out.println("ERROR: Required parameter missing from " + args[i - 1]);
+				return printUsage();
+			}
+		}
+		// Make sure there are exactly 2 parameters left.
+		if (other_args.size() != 2) {
+			System.out.println("ERROR: Wrong number of parameters: " + other_args.size() + " instead of 2.");
+			return printUsage();
+		}
+
+		Configuration jobConf = job.getConfiguration();
+		long bytes = jobConf.getInt(BUCKETS, BUCKETS_DEFAULT_VALUE)
+				* CountMinSketch.getTableBytes(jobConf.getInt(DEPTH, DEPTH_DEFAULT_VALUE), jobConf.getInt(WIDTH,
+						WIDTH_DEFAULT_VALUE));
+		_log.info("Sketches of at most " + (bytes >> 10) + " KB per mapper, error e / "
+				+ jobConf.getInt(WIDTH, WIDTH_DEFAULT_VALUE) + " of the bucket totals at "
+				+ (1 - Math.exp(-jobConf.getInt(DEPTH, DEPTH_DEFAULT_VALUE))));
+
+		Path in = new Path(other_args.get(0));
+		FileInputFormat.setInputPaths(job, in);
+
+		Path out = new Path(other_args.get(1));
+		FileSystem fs = FileSystem.get(conf);
+		fs.delete(out, true);
+		FileOutputFormat.setOutputPath(job, out);
+
+		return job.waitForCompletion(true) ? 0 : 1;
+	}
+
+	private static int printUsage() {
+		System.out.println("sketchStripesApproach [-r <reduces>] [-b <buckets>] [-d <depth>] [-w <width>] "
+				+ "<input> <output>");
+		ToolRunner.printGenericCommandUsage(System.out);
+		return -1;
+	}
+
+	public static void main(String[] args) throws Exception {
+		String[] parameters = { "assets/jane_austen/input", "assets/jane_austen/output" };
+		if (args != null && args.length >= 2) {
+			parameters = args;
+		}
+		int res = ToolRunner.run(new Configuration(), new SketchStripesApproach(), parameters);
+		System.exit(res);
+	}
+}
@@ -0,0 +1,208 @@
+package com.hadoop.coursework1.stripes;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Streaming k-way merge of serialized stripes. <br>
+ * The entries of each stripe added are copied as they are into a single
+ * buffer and, as they are ordered by word, merged with a loser tree of cursors
+ * (one per stripe) into the serialized entries of the result: the counts of a word
+ * are summed on the fly and no map nor per entry object is built. The first 8
+ * bytes of the current word of each cursor are kept in a long, so most
+ * comparisons in the tree are a single long comparison. <br>
+ * The buffers are reused from one merge to the next. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class StripeMerger {
+
+	private static final int INITIAL_STRIPES = 16;
+
+	private DataOutputBuffer input = new DataOutputBuffer();
+	private int stripes;
+	/** per stripe cursor: position of the next entry and end of its entries */
+	private int[] positions = new int[INITIAL_STRIPES];
+	private int[] ends = new int[INITIAL_STRIPES];
+	/** per stripe cursor: current entry */
+	private int[] wordStarts = new int[INITIAL_STRIPES];
+	private int[] wordLengths = new int[INITIAL_STRIPES];
+	private int[] counts = new int[INITIAL_STRIPES];
+	/** first 8 bytes of the word, big endian and zero padded, unsigned order */
+	private long[] prefixes = new long[INITIAL_STRIPES];
+	private boolean[] exhausted = new boolean[INITIAL_STRIPES + 1];
+	/** loser tree of the cursors, see {@link #buildTree()} */
+	private int[] tree = new int[INITIAL_STRIPES];
+
+	/**
+	 * Adds a stripe to the next merge.
+	 */
+	public void add(StripeWritable stripe) throws IOException {
+		if (stripes == positions.length) {
+			grow();
+		}
+		positions[stripes] = input.getLength();
+		if (stripe.isSerialized()) {
+			DataOutputBuffer entries = stripe.getEntries();
+			input.write(entries.getData(), 0, entries.getLength());
+		} else {
+			stripe.writeEntries(input);
+		}
+		ends[stripes] = input.getLength();
+		stripes++;
+	}
+
+	/**
+	 * @return bytes of the entries added since the last merge
+	 */
+	public int getBufferedBytes() {
+		return input.getLength();
+	}
+
+	/**
+	 * Merges the stripes added since the last call into the given one and
+	 * forgets them.
+	 *
+	 * @return the sum of all the counts
+	 */
+	public long merge(StripeWritable result) throws IOException {
+		DataOutputBuffer output = result.getEntries();
+		output.reset();
+		long total = 0;
+		int size = 0;
+		byte[] bytes = input.getData();
+		if (stripes == 0) {
+			// nothing added since the last merge
+		} else if (stripes == 1) {
+			// nothing to merge, only the total to count
+			output.write(bytes, 0, input.getLength());
+			while (next(0)) {
+				total += counts[0];
+				size++;
+			}
+		} else {
+			buildTree();
+			while (!exhausted[tree[0]]) {
+				int first = tree[0];
+				long prefix = prefixes[first];
+				int wordStart = wordStarts[first];
+				int wordLength = wordLengths[first];
+				int count = 0;
+				// pops every cursor on the same word
+				do {
+					int winner = tree[0];
+					count += counts[winner];
+					exhausted[winner] = !next(winner);
+					replay(winner);
+				} while (!exhausted[tree[0]] && compare(tree[0], prefix, wordStart, wordLength) == 0);
+				WritableUtils.writeVInt(output, wordLength);
+				output.write(bytes, wordStart, wordLength);
+				WritableUtils.writeVInt(output, count);
+				total += count;
+				size++;
+			}
+		}
+		result.setSerialized(size);
+		input.reset();
+		stripes = 0;
+		return total;
+	}
+
+	/**
+	 * Moves the cursor to its next entry.
+	 *
+	 * @return false when the stripe has no more entries
+	 */
+	private boolean next(int cursor) {
+		int position = positions[cursor];
+		if (position >= ends[cursor]) {
+			return false;
+		}
+		byte[] bytes = input.getData();
+		wordLengths[cursor] = StripeWritable.readVInt(bytes, position);
+		wordStarts[cursor] = position + WritableUtils.decodeVIntSize(bytes[position]);
+		position = wordStarts[cursor] + wordLengths[cursor];
+		counts[cursor] = StripeWritable.readVInt(bytes, position);
+		positions[cursor] = position + WritableUtils.decodeVIntSize(bytes[position]);
+		long prefix = 0;
+		int wordEnd = wordStarts[cursor] + Math.min(8, wordLengths[cursor]);
+		for (int i = wordStarts[cursor]; i < wordEnd; i++) {
+			prefix = (prefix << 8) | (bytes[i] & 0xFF);
+		}
+		if (wordLengths[cursor] < 8) {
+			prefix <<= 8 * (8 - wordLengths[cursor]);
+		}
+		prefixes[cursor] = prefix ^ Long.MIN_VALUE;
+		return true;
+	}
+
+	private int compare(int cursor, long prefix, int wordStart, int wordLength) {
+		if (prefixes[cursor] != prefix) {
+			return prefixes[cursor] < prefix ? -1 : 1;
+		}
+		byte[] bytes = input.getData();
+		return WritableComparator.compareBytes(bytes, wordStarts[cursor], wordLengths[cursor], bytes, wordStart,
+				wordLength);
+	}
+
+	/**
+	 * Loser tree over the cursors: tree[0] is the cursor with the smallest
+	 * word, each other node the loser of the match played there. A match costs
+	 * one comparison per level.
+	 */
+	private void buildTree() {
+		// the extra cursor, before any word, makes every node start empty
+		exhausted[stripes] = false;
+		Arrays.fill(tree, 0, stripes, stripes);
+		for (int cursor = stripes - 1; cursor >= 0; cursor--) {
+			exhausted[cursor] = !next(cursor);
+			replay(cursor);
+		}
+	}
+
+	/**
+	 * Plays the matches from the leaf of the cursor up to the root.
+	 */
+	private void replay(int cursor) {
+		int winner = cursor;
+		for (int node = (cursor + stripes) >> 1; node > 0; node >>= 1) {
+			if (beats(tree[node], winner)) {
+				int loser = winner;
+				winner = tree[node];
+				tree[node] = loser;
+			}
+		}
+		tree[0] = winner;
+	}
+
+	/**
+	 * @return true when the word of the first cursor comes before the one of
+	 *         the second cursor
+	 */
+	private boolean beats(int cursor1, int cursor2) {
+		if (cursor1 == stripes || exhausted[cursor2]) {
+			return !exhausted[cursor1];
+		}
+		if (cursor2 == stripes || exhausted[cursor1]) {
+			return false;
+		}
+		return compare(cursor1, prefixes[cursor2], wordStarts[cursor2], wordLengths[cursor2]) < 0;
+	}
+
+	private void grow() {
+		int capacity = positions.length * 2;
+		positions = Arrays.copyOf(positions, capacity);
+		ends = Arrays.copyOf(ends, capacity);
+		wordStarts = Arrays.copyOf(wordStarts, capacity);
+		wordLengths = Arrays.copyOf(wordLengths, capacity);
+		counts = Arrays.copyOf(counts, capacity);
+		prefixes = Arrays.copyOf(prefixes, capacity);
+		exhausted = Arrays.copyOf(exhausted, capacity + 1);
+		tree = Arrays.copyOf(tree, capacity);
+	}
+}
@@ -3,22 +3,36 @@ package com.hadoop.coursework1.stripes;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
 
 import lombok.Getter;
 import lombok.Setter;
 
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
 
-import com.hadoop.coursework1.Pair;
+import com.hadoop.coursework1.util.TopNeighbours;
+import com.hadoop.util.SpillableStripe;
+import com.hadoop.util.WordCountMap;
 
 /**
- * Wrapper class to the MapWritable. Overriding the toString() method in order
- * to print into the file.
- * 
+ * Stripe of the neighbours of a term and their counts. <br>
+ * The neighbours are kept in a {@link WordCountMap}, so counts are primitive
+ * ints and stripes are merged in place. <br>
+ * Only the stripe is serialized, the term travels as the key of the record
+ * and has to be set with {@link #setTerm(String)} before
+ * {@link #calculateFrequencies()}. <br>
+ * <br>
+ * The serialized form is the VInt number of entries and the VInt length of
+ * the entries, each one being the VInt length of the word, its UTF-8 bytes
+ * and the VInt count, <b>ordered by word bytes</b>. {@link #readFields(DataInput)}
+ * only copies the entries into a reused buffer: a {@link StripeMerger} merges
+ * the serialized stripes as they are, and the map is only decoded from them
+ * when it is read through {@link #getStripe()}. <br>
+ * Overriding the toString() method in order to print into the file.
+ *
  * @author pmonteiro
  *
  */
@@ -26,78 +40,260 @@ import com.hadoop.coursework1.Pair;
 public class StripeWritable implements WritableComparable<StripeWritable> {
 
 	public static final String TOTAL = "*";
-	
+	static final byte TOTAL_BYTE = '*';
+
 	private @Getter @Setter String term;
-	private @Getter @Setter Map<String, Integer> stripe = new HashMap<>();
-	private @Getter @Setter Queue<Pair> queue = new PriorityQueue<>();
+	private WordCountMap stripe = new WordCountMap();
+	private @Getter TopNeighbours neighbours = new TopNeighbours();
+	/** serialized entries, when the stripe has not been decoded */
+	private DataOutputBuffer entries = new DataOutputBuffer();
+	private int serializedSize = -1;
 
 
 	public StripeWritable add(String term, String word, Integer count) {
 		this.term =term;
-		stripe.put(word, count);
+		getStripe().put(word, count);
 		return this;
 	}
-	
-	public Integer get(String word) {
-		Integer value = (Integer) stripe.get(word);
-		if (value == null) {
-			return 0;
-		} else {
-			return value;
+
+	/**
+	 * @return the neighbours, decoded from the serialized form if needed
+	 */
+	public WordCountMap getStripe() {
+		if (isSerialized()) {
+			decode();
 		}
+		return stripe;
+	}
+
+	/**
+	 * Adds the count to the word, in place.
+	 */
+	public StripeWritable increment(String word, int count) {
+		getStripe().increment(word, count);
+		return this;
+	}
+
+	/**
+	 * Adds all the counts of the other stripe into this one, in place.
+	 *
+	 * @return the sum of the counts added
+	 */
+	public long merge(StripeWritable other) {
+		return getStripe().merge(other.getStripe());
+	}
+
+	public Integer get(String word) {
+		return getStripe().get(word);
 	}
 
 	public boolean containsKey(String word) {
-		return this.getStripe().containsKey(word);
+		return getStripe().containsKey(word);
+	}
+
+	/**
+	 * @return number of neighbours
+	 */
+	public int size() {
+		return isSerialized() ? serializedSize : stripe.size();
 	}
-	
+
+	/**
+	 * Orders the neighbours of the term by conditional probability into
+	 * {@link #getNeighbours()}, keeping only the top K of them when a limit is
+	 * set there.
+	 */
 	public StripeWritable calculateFrequencies() {
-		for (String word : stripe.keySet()) {
-			if (word != null && !TOTAL.equals(word)) {
-				Pair pair = new Pair(term, stripe.get(TOTAL), word, stripe.get(word));
-				queue.add(pair);
+		return calculateFrequencies(getStripe().get(TOTAL));
+	}
+
+	/**
+	 * Same as {@link #calculateFrequencies()} with the given count of the
+	 * term, reading the serialized entries directly when the stripe was not
+	 * decoded.
+	 */
+	public StripeWritable calculateFrequencies(int total) {
+		if (isSerialized()) {
+			byte[] bytes = entries.getData();
+			for (int position = 0; position < entries.getLength();) {
+				int length = readVInt(bytes, position);
+				int start = position + WritableUtils.decodeVIntSize(bytes[position]);
+				position = start + length;
+				int count = readVInt(bytes, position);
+				position += WritableUtils.decodeVIntSize(bytes[position]);
+				if (length == 1 && bytes[start] == TOTAL_BYTE) {
+					// pruned neighbours, only part of the total
+					continue;
+				}
+				neighbours.add(decode(bytes, start, length), count, total);
 			}
-		}		
+		} else {
+			for (int i = 0; i < stripe.size(); i++) {
+				String word = stripe.getWord(i);
+				if (!TOTAL.equals(word)) {
+					neighbours.add(word, stripe.getCount(i), total);
+				}
+			}
+		}
+		neighbours.sort();
 		return this;
 	}
 
 	public void clear() {
 		stripe.clear();
-		queue.clear();
+		neighbours.clear();
+		entries.reset();
+		serializedSize = -1;
 	}
 
 	@Override
 	public void readFields(DataInput in) throws IOException {
-		term = in.readUTF();
-
-		int stripesSize = in.readInt();
 		stripe.clear();
-		for (int i = 0; i < stripesSize; i++) {
-			stripe.put(in.readUTF(), in.readInt());
-		}
+		entries.reset();
+		serializedSize = WritableUtils.readVInt(in);
+		entries.write(in, WritableUtils.readVInt(in));
 	}
 
 	@Override
 	public void write(DataOutput out) throws IOException {
-		out.writeUTF(this.term);
-
-		out.writeInt(stripe.size());
-		for (String word : stripe.keySet()) {
-			out.writeUTF(word);
-			out.writeInt(stripe.get(word));
+		if (isSerialized()) {
+			write(out, serializedSize);
+		} else {
+			write(out, writeEntries(entries));
+			entries.reset();
 		}
 	}
 
+	private void write(DataOutput out, int size) throws IOException {
+		WritableUtils.writeVInt(out, size);
+		WritableUtils.writeVInt(out, entries.getLength());
+		out.write(entries.getData(), 0, entries.getLength());
+	}
+
 	@Override
 	public String toString() {
-		StringBuilder sb = new StringBuilder();
-		for (String word : stripe.keySet()) {
-			sb.append(word.toString() + ":" + stripe.get(word));
-			if (stripe.size() > 0) {
-				sb.append(" ");
+		return getStripe().toString();
+	}
+
+	/**
+	 * @return true when the stripe is held as serialized entries
+	 */
+	boolean isSerialized() {
+		return serializedSize >= 0;
+	}
+
+	/**
+	 * @return the buffer of the serialized entries, see {@link #isSerialized()}
+	 */
+	DataOutputBuffer getEntries() {
+		return entries;
+	}
+
+	/**
+	 * Replaces the stripe by the entries written in {@link #getEntries()}.
+	 */
+	void setSerialized(int size) {
+		stripe.clear();
+		serializedSize = size;
+	}
+
+	/**
+	 * Replaces the stripe by a single entry, with an empty word, holding the
+	 * count: the value of a pair record of {@link HybridApproach}.
+	 */
+	void setCount(int count) throws IOException {
+		stripe.clear();
+		entries.reset();
+		WritableUtils.writeVInt(entries, 0);
+		WritableUtils.writeVInt(entries, count);
+		serializedSize = 1;
+	}
+
+	/**
+	 * @return the sum of the counts of the stripe
+	 */
+	long sum() {
+		long sum = 0;
+		if (isSerialized()) {
+			byte[] bytes = entries.getData();
+			for (int position = 0; position < entries.getLength();) {
+				position += WritableUtils.decodeVIntSize(bytes[position]) + readVInt(bytes, position);
+				sum += readVInt(bytes, position);
+				position += WritableUtils.decodeVIntSize(bytes[position]);
+			}
+		} else {
+			for (int i = 0; i < stripe.size(); i++) {
+				sum += stripe.getCount(i);
 			}
 		}
-		return sb.toString();
+		return sum;
+	}
+
+	/**
+	 * Adds all the counts of the stripe to the accumulator, reading the
+	 * serialized entries directly when the stripe was not decoded.
+	 */
+	void addTo(SpillableStripe accumulator) throws IOException {
+		if (isSerialized()) {
+			byte[] bytes = entries.getData();
+			for (int position = 0; position < entries.getLength();) {
+				int length = readVInt(bytes, position);
+				int start = position + WritableUtils.decodeVIntSize(bytes[position]);
+				position = start + length;
+				int count = readVInt(bytes, position);
+				position += WritableUtils.decodeVIntSize(bytes[position]);
+				accumulator.add(bytes, start, length, count);
+			}
+		} else {
+			accumulator.add(stripe);
+		}
+	}
+
+	/**
+	 * Writes the entries of the map in word order.
+	 *
+	 * @return the number of entries
+	 */
+	int writeEntries(DataOutput out) throws IOException {
+		int[] sorted = stripe.sort();
+		byte[] bytes = stripe.getBytes();
+		for (int i = 0; i < stripe.size(); i++) {
+			int entry = sorted[i];
+			WritableUtils.writeVInt(out, stripe.getLength(entry));
+			out.write(bytes, stripe.getOffset(entry), stripe.getLength(entry));
+			WritableUtils.writeVInt(out, stripe.getCount(entry));
+		}
+		return stripe.size();
+	}
+
+	private void decode() {
+		byte[] bytes = entries.getData();
+		for (int position = 0; position < entries.getLength();) {
+			int length = readVInt(bytes, position);
+			int start = position + WritableUtils.decodeVIntSize(bytes[position]);
+			position = start + length;
+			int count = readVInt(bytes, position);
+			position += WritableUtils.decodeVIntSize(bytes[position]);
+			stripe.increment(bytes, start, length, count);
+		}
+		entries.reset();
+		serializedSize = -1;
+	}
+
+	static int readVInt(byte[] bytes, int position) {
+		try {
+			return WritableComparator.readVInt(bytes, position);
+		} catch (IOException e) {
+			throw new IllegalStateException("Malformed stripe", e);
+		}
+	}
+
+	private static String decode(byte[] bytes, int start, int length) {
+		try {
+			return Text.decode(bytes, start, length);
+		} catch (IOException e) {
+			throw new IllegalStateException("Malformed word in stripe", e);
+		}
 	}
 
 	@Override
@@ -126,9 +322,9 @@ public class StripeWritable implements WritableComparable<StripeWritable> {
 			if (other.term != null)
 				return false;
 		}
-		if (other.term == null) 
+		if (other.term == null)
 			return false;
-		if (term.equalsIgnoreCase(other.getTerm())) 
+		if (term.equalsIgnoreCase(other.getTerm()))
 			return true;
 		return false;
 	}
@@ -1,15 +1,19 @@
 package com.hadoop.coursework1.stripes;
 
-import static com.hadoop.coursework1.stripes.StripeWritable.TOTAL;
+import static com.hadoop.coursework1.util.TopNeighbours.TOP_K;
+import static com.hadoop.coursework1.util.TopNeighbours.TOP_K_DEFAULT_VALUE;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.DoubleWritable;
@@ -19,13 +23,25 @@ import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.log4j.Logger;
 
 import com.hadoop.coursework1.Pair;
+import com.hadoop.coursework1.store.ProbabilityStore;
+import com.hadoop.coursework1.store.ProbabilityStoreOutputFormat;
+import com.hadoop.coursework1.util.InMapperCombiner;
 import com.hadoop.coursework1.util.ParagrapghInputFormat;
+import com.hadoop.coursework1.util.ReducerLoad;
+import com.hadoop.coursework1.util.TermSampler;
+import com.hadoop.coursework1.util.TopNeighbours;
+import com.hadoop.coursework1.util.VocabularyFilter;
+import com.hadoop.util.SpillableStripe;
+import com.hadoop.util.TextTokenizer;
 
 /**
  * <b>Implementation of the Hadoop 'Stripes' design pattern</b><br>
@@ -42,7 +58,27 @@ import com.hadoop.coursework1.util.ParagrapghInputFormat;
  * 
  * <i>(https://chandramanitiwary.wordpress.com/2012/08/19/map-reduce-design-
  * patterns-pairs-stripes/)</i> <br>
- * 
+ * <br>
+ * <b>Hot terms</b>: with <b>-s N</b> the stripes of the hot terms (the
+ * <b>stripes.hot.terms</b> list, or the <b>stripes.hot.terms.count</b>
+ * heaviest terms of a sample of the input) are spread over N salted keys
+ * <i>term#salt</i>, so no single reducer has to merge all of them. The
+ * partial stripes of the salted keys are merged by a second, small job whose
+ * part files (<i>part-hot-r-NNNNN</i>) are moved into the output. The load and
+ * time of the reducers of both stages are logged ({@link ReducerLoad}). <br>
+ * <b>Pruning</b>: with <b>-p</b> the rare terms and the stopwords are pruned
+ * by the mappers ({@link VocabularyFilter}). Pruned terms get no stripe and
+ * pruned words are counted under {@link StripeWritable#TOTAL} only, so the
+ * marginals, and the probabilities of the words kept, are the ones of the full
+ * run. <br>
+ * <b>Large terms</b>: once the stripes of a term buffered by the reducer pass
+ * half of <b>stripe.spill.memory</b> (64MB by default) they are summed off
+ * the heap and spilled to local disk ({@link SpillableStripe}). A spilled
+ * term without a top K limit has its pairs written in word order. <br>
+ * <b>Store</b>: with <b>-i</b> the probabilities are written as block indexed
+ * binary <i>.store</i> files ({@link ProbabilityStoreOutputFormat}) to be
+ * looked up with the {@link ProbabilityStore}. <br>
+ *
  * @author pmonteiro
  *
  */
@@ -53,129 +89,283 @@ public class StripesApproach extends Configured implements Tool {
 	private static final String KEYWORD_DEFAULT_VALUE = "for";
 	private static final String NEIGHBOURS = "neighbours";
 	private static final String NEIGHBOURS_DEFAULT_VALUE = "1";
+	private static final String SALTS_PARAM = "-s";
+	private static final String PRUNE_PARAM = "-p";
+	private static final String STORE_PARAM = "-i";
+	public static final String SALTS = "stripes.salts";
+	public static final String HOT_TERMS = "stripes.hot.terms";
+	public static final String HOT_TERMS_COUNT = "stripes.hot.terms.count";
+	public static final int HOT_TERMS_COUNT_DEFAULT_VALUE = 200;
+	private static final char SALT_SEPARATOR = '#';
+	private static final String PARTIAL = "partial";
+	private static final String HOT_OUTPUT = "_hot";
+
+	private static Logger _log = Logger.getLogger(StripesApproach.class.getName());
+
+	private Job job;
 
 	public static class MapClass extends Mapper<LongWritable, Text, Text, StripeWritable> {
 
+		/** rough heap bytes of a new stripe: map entry, term String and empty stripe */
+		private static final int STRIPE_FOOTPRINT = 800;
+		/** rough heap bytes of a new neighbour in a stripe, on top of its UTF bytes */
+		private static final int NEIGHBOUR_FOOTPRINT = 48;
+		private static final byte[] TOTAL_BYTES = StripeWritable.TOTAL.getBytes();
+
 		private static Logger _log = Logger.getLogger(MapClass.class.getName());
-		private Map<String, StripeWritable> stripes = new HashMap<String, StripeWritable>();
+		private TextTokenizer tokenizer = TextTokenizer.alphanumeric();
+		private Map<Text, StripeWritable> stripes = new HashMap<Text, StripeWritable>();
+		private Text term = new Text();
+		private Text saltedTerm = new Text();
+		private InMapperCombiner combiner;
+		private Set<Text> hotTerms = new HashSet<Text>();
+		private int salts;
+		private int salt;
+		private VocabularyFilter vocabulary;
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			combiner = new InMapperCombiner(context.getConfiguration());
+			vocabulary = VocabularyFilter.load(context.getConfiguration());
+			salts = context.getConfiguration().getInt(SALTS, 1);
+			if (salts > 1) {
+				for (String hotTerm : context.getConfiguration().getStrings(HOT_TERMS, new String[0])) {
+					hotTerms.add(new Text(hotTerm));
+				}
+			}
+			salt = context.getTaskAttemptID().getTaskID().getId() % salts;
+		}
 
 		public void map(LongWritable lineNumber, Text line, Context context) throws IOException, InterruptedException {
 
 			int neighbours = context.getConfiguration().getInt(NEIGHBOURS, Integer.valueOf(NEIGHBOURS_DEFAULT_VALUE));
-			String[] words = line.toString().toLowerCase().replaceAll("[^a-zA-Z0-9 \\-]", "").replaceAll("-", " ")
-					.split("\\s+");
-
-			for (int i = 0; i < words.length; i++) {
-
-				if (words[i].trim().length() == 0) {
+			int words = tokenizer.tokenize(line);
+			byte[] bytes = tokenizer.getBytes();
+			boolean[] kept = vocabulary == null ? null : vocabulary.keep(tokenizer, context);
+			int pruned = 0;
+
+			for (int i = 0; i + neighbours < words; i++) {
+				int j = i + neighbours;
+				if (kept != null && !kept[i]) {
+					pruned++;
 					continue;
 				}
-
-				if ((i + neighbours) >= words.length) {
-					break;
+				tokenizer.get(i, term);
+				StripeWritable stripe = stripes.get(term);
+				if (stripe == null) {
+					stripe = new StripeWritable();
+					stripes.put(new Text(term), stripe);
+					combiner.add(0, STRIPE_FOOTPRINT + term.getLength());
 				}
-
-				if (stripes.containsKey(words[i])) {
-					StripeWritable stripe = stripes.get(words[i]);
-					stripes.put(words[i],
-							stripe.add(words[i], words[i + neighbours], 1 + stripe.get(words[i + neighbours])));
+				int count;
+				if (kept == null || kept[j]) {
+					count = stripe.getStripe().increment(bytes, tokenizer.getStart(j), tokenizer.getLength(j), 1);
 				} else {
-					stripes.put(words[i], new StripeWritable().add(words[i], words[i + neighbours], 1));
+					// the marginal still counts the pruned words
+					count = stripe.getStripe().increment(TOTAL_BYTES, 0, TOTAL_BYTES.length, 1);
+					pruned++;
 				}
+				if (count == 1) {
+					combiner.add(1, NEIGHBOUR_FOOTPRINT + tokenizer.getLength(j));
+				}
+			}
+			if (pruned > 0) {
+				context.getCounter(VocabularyFilter.Counters.PAIRS_PRUNED).increment(pruned);
 			}
 
-			if (stripes.size() > 0) {
-				for (String term : stripes.keySet()) {
-					log(context, term);
-					context.write(new Text(term), stripes.get(term));
-				}
-				stripes.clear();
+			if (combiner.shouldFlush()) {
+				flush(context);
 			}
 		}
 
-		private void log(Context context, String term) {
-			if (context.getConfiguration().get(KEYWORD, KEYWORD_DEFAULT_VALUE).equals(term)) {
-				_log.info("Emiting: " + term + " => " + stripes.get(term));
-			} else {
-				_log.debug("Emiting: " + term + " => " + stripes.get(term));
+		@Override
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			flush(context);
+		}
+
+		private void flush(Context context) throws IOException, InterruptedException {
+			for (Map.Entry<Text, StripeWritable> stripe : stripes.entrySet()) {
+				log(context, stripe.getKey(), stripe.getValue());
+				context.write(salt(stripe.getKey()), stripe.getValue());
+			}
+			combiner.flushed(context, stripes.size());
+			stripes.clear();
+		}
+
+		/**
+		 * @return the term, or one of its salted keys (round robin) when it is
+		 *         a hot term
+		 */
+		private Text salt(Text term) {
+			if (!hotTerms.contains(term)) {
+				return term;
+			}
+			salt = (salt + 1) % salts;
+			saltedTerm.set(term);
+			byte[] suffix = (SALT_SEPARATOR + Integer.toString(salt)).getBytes();
+			saltedTerm.append(suffix, 0, suffix.length);
+			return saltedTerm;
+		}
+
+		private void log(Context context, Text term, StripeWritable stripe) {
+			if (context.getConfiguration().get(KEYWORD, KEYWORD_DEFAULT_VALUE).equals(term.toString())) {
+				_log.info("Emiting: " + term + " => " + stripe);
+			} else if (_log.isDebugEnabled()) {
+				_log.debug("Emiting: " + term + " => " + stripe);
 			}
 		}
 	}
 
-	private static class Combine extends Reducer<Text, StripeWritable, Text, StripeWritable> {
+	static class Combine extends Reducer<Text, StripeWritable, Text, StripeWritable> {
 		private static Logger _log = Logger.getLogger(Combine.class.getName());
+		private StripeWritable stripeFreq = new StripeWritable();
+		private StripeMerger merger = new StripeMerger();
 
 		public void reduce(Text term, Iterable<StripeWritable> stripes, Context context) throws IOException,
 				InterruptedException {
 
-			StripeWritable stripeFreq = new StripeWritable();
 			for (StripeWritable stripe : stripes) {
-				sumKeyValues(term, stripe, stripeFreq);
+				merger.add(stripe);
 			}
+			merger.merge(stripeFreq);
 			log(context, term, stripeFreq);
 			context.write(term, stripeFreq);
 		}
 
-		private void sumKeyValues(Text term, StripeWritable stripe, StripeWritable stripeFreq) {
-			for (String word : stripe.getStripe().keySet()) {
-				if (stripeFreq.containsKey(word)) {
-					stripeFreq.add(term.toString(), word, stripeFreq.get(word) + stripe.get(word));
-				} else {
-					stripeFreq.add(term.toString(), word, stripe.get(word));
-				}
-			}
-		}
-
 		private void log(Context context, Text term, StripeWritable stripeFreq) {
 			if (context.getConfiguration().get(KEYWORD, KEYWORD_DEFAULT_VALUE).equals(term.toString())) {
 				_log.info("Emiting: " + term.toString() + " => " + stripeFreq);
-			} else {
+			} else if (_log.isDebugEnabled()) {
 				_log.debug("Emiting: " + term.toString() + " => " + stripeFreq);
 			}
 		}
 	}
 
 	public static class Reduce extends Reducer<Text, StripeWritable, Text, DoubleWritable> {
+		/** counter groups of the stripe entries merged by each reducer and its time */
+		public static final String LOAD = "StripesApproach reducer";
+
 		private static Logger _log = Logger.getLogger(Reduce.class.getName());
+		private StripeWritable stripeFreq = new StripeWritable();
+		private StripeMerger merger = new StripeMerger();
+		private SpillableStripe spillable;
+		private long maxBuffered;
+		private int limit;
+		private Pair pair = new Pair();
+		private Text key = new Text();
+		private DoubleWritable value = new DoubleWritable();
+		protected ReducerLoad load;
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			Configuration conf = context.getConfiguration();
+			limit = conf.getInt(TOP_K, TOP_K_DEFAULT_VALUE);
+			stripeFreq.getNeighbours().setLimit(limit);
+			// half of the budget for the merger, half for the spillable stripe
+			long memory = conf.getLong(SpillableStripe.MEMORY, SpillableStripe.MEMORY_DEFAULT_VALUE);
+			maxBuffered = memory / 2;
+			spillable = new SpillableStripe(conf, memory / 2);
+			load = new ReducerLoad(context, LOAD);
+		}
+
+		@Override
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			load.done();
+		}
 
 		public void reduce(Text term, Iterable<StripeWritable> stripes, Context context) throws IOException,
 				InterruptedException {
 
-			StripeWritable stripeFreq = new StripeWritable();
+			stripeFreq.clear();
+			stripeFreq.setTerm(term(term));
+			// the marginal of the term is the sum of all its counts
+			long total = 0;
 			for (StripeWritable stripe : stripes) {
-				sumKeyValues(term, stripe, stripeFreq);
+				load.add(stripe.size());
+				merger.add(stripe);
+				if (merger.getBufferedBytes() > maxBuffered) {
+					// a very large term, its stripe goes off the heap
+					total += merger.merge(stripeFreq);
+					stripeFreq.addTo(spillable);
+				}
+			}
+			total += merger.merge(stripeFreq);
+			if (spillable.isEmpty()) {
+				emitFrequencies(stripeFreq, (int) total, context);
+			} else {
+				stripeFreq.addTo(spillable);
+				emitSpillable(stripeFreq.getTerm(), (int) total, context);
 			}
-			emitFrequencies(term, stripeFreq, context);
 		}
 
-		private void sumKeyValues(Text term, StripeWritable stripe, StripeWritable stripeFreq) {
-			for (String word : stripe.getStripe().keySet()) {
-				if (stripeFreq.containsKey(word.toString())) {
-					stripeFreq.add(term.toString(), word, stripeFreq.get(word) + stripe.get(word));
+		private void emitFrequencies(StripeWritable stripe, int total, Context context) throws IOException,
+				InterruptedException {
+			emit(stripe.getTerm(), stripe.calculateFrequencies(total).getNeighbours(), total, context);
+			stripe.clear();
+		}
+
+		/**
+		 * Emits the stripe of the spillable stripe. Once it was spilled, and
+		 * without a top K limit, the neighbours are written in word order
+		 * instead of being ordered in memory.
+		 */
+		private void emitSpillable(String term, int total, Context context) throws IOException,
+				InterruptedException {
+			spillable.finish();
+			boolean ordered = limit > 0 || !spillable.hasSpilled();
+			TopNeighbours neighbours = stripeFreq.getNeighbours();
+			neighbours.clear();
+			pair.setTerm(term);
+			pair.setTermCount(total);
+			while (spillable.next()) {
+				if (spillable.getLength() == 1 && spillable.getBytes()[0] == StripeWritable.TOTAL_BYTE) {
+					// pruned neighbours, only part of the total
+					continue;
+				}
+				if (ordered) {
+					neighbours.add(spillable.getWord(), spillable.getCount(), total);
 				} else {
-					stripeFreq.add(term.toString(), word, stripe.get(word));
+					pair.setWord(spillable.getWord());
+					pair.setWordCount(spillable.getCount());
+					write(Pair.conditionalProbability(spillable.getCount(), total), context);
 				}
-				stripeFreq.add(
-						term.toString(),
-						TOTAL,
-						((stripeFreq.get(TOTAL) == null || stripeFreq.get(TOTAL) == 0) ? stripe.get(word) : (stripeFreq
-								.get(TOTAL) + stripe.get(word))));
 			}
+			if (ordered) {
+				neighbours.sort();
+				emit(term, neighbours, total, context);
+			}
+			spillable.clear();
+			stripeFreq.clear();
 		}
 
-		private void emitFrequencies(Text term, StripeWritable stripe, Context context) throws IOException,
+		private void emit(String term, TopNeighbours neighbours, int total, Context context) throws IOException,
 				InterruptedException {
-			Text key = new Text();
-			DoubleWritable value = new DoubleWritable();
-			stripe.calculateFrequencies();
-			while (!stripe.getQueue().isEmpty()) {
-				Pair pair = stripe.getQueue().poll();
-				key.set(pair.toString());
-				value.set(pair.getConditionalProbability());
-				log(context, pair);
-				context.write(key, value);
+			pair.setTerm(term);
+			pair.setTermCount(total);
+			for (int i = 0; i < neighbours.size(); i++) {
+				pair.setWord(neighbours.getWord(i));
+				pair.setWordCount(neighbours.getWordCount(i));
+				write(neighbours.getProbability(i), context);
 			}
-			stripe.clear();
+		}
+
+		private void write(double probability, Context context) throws IOException, InterruptedException {
+			key.set(pair.toString());
+			value.set(probability);
+			log(context, pair);
+			write(key, value, context);
+		}
+
+		/**
+		 * @return the term written in the output for the key of a group
+		 */
+		protected String term(Text key) {
+			return key.toString();
+		}
+
+		protected void write(Text key, DoubleWritable value, Context context) throws IOException,
+				InterruptedException {
+			context.write(key, value);
 		}
 
 		private void log(Context context, Pair pair) {
@@ -187,11 +377,84 @@ public class StripesApproach extends Configured implements Tool {
 		}
 	}
 
+	/**
+	 * First stage of the salted mode: the stripes of the salted keys of the hot
+	 * terms are only merged, into partial stripes written to the <i>partial</i>
+	 * named output, while the other terms are reduced as usual.
+	 */
+	public static class SaltedReduce extends Reduce {
+		private StripeWritable partial = new StripeWritable();
+		private StripeMerger partialMerger = new StripeMerger();
+		private MultipleOutputs<Text, DoubleWritable> outputs;
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			super.setup(context);
+			outputs = new MultipleOutputs<Text, DoubleWritable>(context);
+		}
+
+		@Override
+		public void reduce(Text term, Iterable<StripeWritable> stripes, Context context) throws IOException,
+				InterruptedException {
+			if (unsalted(term) == term.getLength()) {
+				super.reduce(term, stripes, context);
+				return;
+			}
+			for (StripeWritable stripe : stripes) {
+				load.add(stripe.size());
+				partialMerger.add(stripe);
+			}
+			partialMerger.merge(partial);
+			outputs.write(PARTIAL, term, partial);
+		}
+
+		@Override
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			outputs.close();
+			super.cleanup(context);
+		}
+	}
+
+	/**
+	 * Second stage of the salted mode: gives the partial stripes of the hot
+	 * terms their term back, so the {@link Reduce} merges at most
+	 * <b>stripes.salts</b> stripes per term.
+	 */
+	public static class UnsaltMap extends Mapper<Text, StripeWritable, Text, StripeWritable> {
+
+		public void map(Text saltedTerm, StripeWritable stripe, Context context) throws IOException,
+				InterruptedException {
+			saltedTerm.set(saltedTerm.getBytes(), 0, unsalted(saltedTerm));
+			context.write(saltedTerm, stripe);
+		}
+	}
+
+	/**
+	 * @return the length of the term without its salt
+	 */
+	private static int unsalted(Text term) {
+		byte[] bytes = term.getBytes();
+		for (int i = term.getLength() - 1; i >= 0; i--) {
+			if (bytes[i] == SALT_SEPARATOR) {
+				return i;
+			}
+		}
+		return term.getLength();
+	}
+
+	/**
+	 * @return the main job of the last run, for its counters
+	 */
+	public Job getJob() {
+		return job;
+	}
+
 	public int run(String[] args) throws Exception {
-		Configuration conf = new Configuration();
+		Configuration conf = getConf();
 
 		@SuppressWarnings("deprecation")
 		Job job = new Job(conf, "Coursework 1 - Stripes Approach");
+		this.job = job;
 		job.setInputFormatClass(ParagrapghInputFormat.class);
 		job.setJarByClass(StripesApproach.class);
 
@@ -205,11 +468,19 @@ public class StripesApproach extends Configured implements Tool {
 		job.setOutputKeyClass(Text.class);
 		job.setOutputValueClass(StripeWritable.class);
 
+		int salts = 1;
+		boolean prune = false;
 		List<String> other_args = new ArrayList<String>();
 		for (int i = 0; i < args.length; ++i) {
 			try {
 				if (REDUCER_PARAM.equals(args[i])) {
 					job.setNumReduceTasks(Integer.parseInt(args[++i]));
+				} else if (SALTS_PARAM.equals(args[i])) {
+					salts = Integer.parseInt(args[++i]);
+				} else if (PRUNE_PARAM.equals(args[i])) {
+					prune = true;
+				} else if (STORE_PARAM.equals(args[i])) {
+					job.setOutputFormatClass(ProbabilityStoreOutputFormat.class);
 				} else {
 					other_args.add(args[i]);
 				}
@@ -227,20 +498,94 @@ public class StripesApproach extends Configured implements Tool {
 			return printUsage();
 		}
 
-		Path in = new Path(args[0]);
+		Path in = new Path(other_args.get(0));
 		FileInputFormat.setInputPaths(job, in);
 
-		Path out = new Path(args[1]);
+		Path out = new Path(other_args.get(1));
 		FileSystem fs = FileSystem.get(conf);
 		fs.delete(out, true);
 		FileOutputFormat.setOutputPath(job, out);
 
-		System.exit(job.waitForCompletion(true) ? 0 : 1);
-		return 0;
+		if (salts > 1) {
+			setHotTerms(job, salts);
+			job.setReducerClass(SaltedReduce.class);
+			MultipleOutputs.addNamedOutput(job, PARTIAL, SequenceFileOutputFormat.class, Text.class,
+					StripeWritable.class);
+		}
+
+		Path vocabulary = prune ? VocabularyFilter.prepare(job) : null;
+
+		boolean success = job.waitForCompletion(true);
+		_log.info("Reducers: " + ReducerLoad.report(job, Reduce.LOAD));
+		if (success && salts > 1) {
+			success = mergeHotTerms(conf, job, out);
+		}
+		if (vocabulary != null) {
+			fs.delete(vocabulary, true);
+		}
+		return success ? 0 : 1;
+	}
+
+	/**
+	 * Stores the hot terms in the configuration, from <b>stripes.hot.terms</b>
+	 * or else the <b>stripes.hot.terms.count</b> heaviest terms of a sample of
+	 * the input.
+	 */
+	private void setHotTerms(Job job, int salts) throws IOException, InterruptedException {
+		Configuration conf = job.getConfiguration();
+		conf.setInt(SALTS, salts);
+		String[] hotTerms = conf.getStrings(HOT_TERMS);
+		if (hotTerms == null) {
+			Map<String, Long> weights = TermSampler.sample(job,
+					conf.getInt(NEIGHBOURS, Integer.valueOf(NEIGHBOURS_DEFAULT_VALUE)));
+			hotTerms = TermSampler.hottest(weights, conf.getInt(HOT_TERMS_COUNT, HOT_TERMS_COUNT_DEFAULT_VALUE));
+			conf.setStrings(HOT_TERMS, hotTerms);
+		}
+		_log.info("Salting " + hotTerms.length + " hot terms into " + salts + " keys");
+	}
+
+	/**
+	 * Runs the second stage of the salted mode over the partial stripes and
+	 * moves its part files next to the ones of the first stage.
+	 */
+	private boolean mergeHotTerms(Configuration conf, Job first, Path out) throws Exception {
+		@SuppressWarnings("deprecation")
+		Job job = new Job(conf, "Coursework 1 - Stripes Approach (hot terms)");
+		job.setJarByClass(StripesApproach.class);
+		job.getConfiguration().set(KEYWORD, KEYWORD_DEFAULT_VALUE);
+		job.getConfiguration().set(NEIGHBOURS, NEIGHBOURS_DEFAULT_VALUE);
+		job.setNumReduceTasks(first.getNumReduceTasks());
+		job.setOutputFormatClass(first.getOutputFormatClass());
+
+		job.setInputFormatClass(SequenceFileInputFormat.class);
+		job.setMapperClass(UnsaltMap.class);
+		job.setCombinerClass(Combine.class);
+		job.setReducerClass(Reduce.class);
+
+		job.setOutputKeyClass(Text.class);
+		job.setOutputValueClass(StripeWritable.class);
+
+		FileSystem fs = FileSystem.get(conf);
+		Path hot = new Path(out, HOT_OUTPUT);
+		FileInputFormat.setInputPaths(job, new Path(out, PARTIAL + "-r-*"));
+		FileOutputFormat.setOutputPath(job, hot);
+
+		boolean success = job.waitForCompletion(true);
+		_log.info("Hot term reducers: " + ReducerLoad.report(job, Reduce.LOAD));
+		if (success) {
+			for (FileStatus part : fs.globStatus(new Path(hot, "part-r-*"))) {
+				fs.rename(part.getPath(), new Path(out, part.getPath().getName().replace("part-", "part-hot-")));
+			}
+			for (FileStatus partial : fs.globStatus(new Path(out, PARTIAL + "-r-*"))) {
+				fs.delete(partial.getPath(), false);
+			}
+			fs.delete(hot, true);
+		}
+		return success;
 	}
 
 	private static int printUsage() {
-		System.out.println("stripesApproach [-r <reduces>] <input> <output>");
+		System.out.println("stripesApproach [-r <reduces>] [-s <salts>] [-p] [-i] <input> <output>");
 		ToolRunner.printGenericCommandUsage(System.out);
 		return -1;
 	}
@@ -249,7 +594,7 @@ public class StripesApproach extends Configured implements Tool {
 		// String[] parameters = { "assets/mlk_speech/input/I_have_a_dream2.txt", "assets/mlk_speech/output" };
 		// String[] parameters = { "assets/mlk_speech/input", "assets/mlk_speech/output" };
 		String[] parameters = { "assets/jane_austen/input", "assets/jane_austen/output"};
-		if (args != null && (args.length == 2 || args.length == 3)) {
+		if (args != null && args.length >= 2) {
 			parameters = args;
 		}
 		int res = ToolRunner.run(new Configuration(), new StripesApproach(), parameters);
@@ -0,0 +1,90 @@
+package com.hadoop.coursework1.util;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+
+/**
+ * Flush policy for the in-mapper combining of the co-occurrence mappers. <br>
+ * <br>
+ * By default the mappers emit (and clear) their local map at the end of every
+ * map() call, i.e. per paragraph. With <b>combiner.split.wide</b> set to true
+ * the map is kept across the whole input split and emitted in cleanup(). It
+ * is flushed earlier when it holds <b>combiner.max.entries</b> entries or its
+ * estimated heap footprint reaches <b>combiner.max.bytes</b> (a quarter of the
+ * max heap by default). <br>
+ * <br>
+ * The {@link Counters} report the early (memory bound) flushes and the number
+ * of entries emitted, to tune the limits per cluster. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class InMapperCombiner {
+
+	public static final String SPLIT_WIDE = "combiner.split.wide";
+	public static final String MAX_ENTRIES = "combiner.max.entries";
+	public static final String MAX_BYTES = "combiner.max.bytes";
+	public static final int MAX_ENTRIES_DEFAULT_VALUE = 1000000;
+
+	public static enum Counters {
+		FLUSHES, ENTRIES_EMITTED
+	}
+
+	private final boolean splitWide;
+	private final int maxEntries;
+	private final long maxBytes;
+
+	private int entries;
+	private long bytes;
+
+	public InMapperCombiner(Configuration conf) {
+		splitWide = conf.getBoolean(SPLIT_WIDE, false);
+		maxEntries = conf.getInt(MAX_ENTRIES, MAX_ENTRIES_DEFAULT_VALUE);
+		maxBytes = conf.getLong(MAX_BYTES, Runtime.getRuntime().maxMemory() / 4);
+	}
+
+	public boolean isSplitWide() {
+		return splitWide;
+	}
+
+	/**
+	 * Records new entries added to the local map.
+	 *
+	 * @param entries
+	 *            number of new entries
+	 * @param bytes
+	 *            estimated heap bytes taken by them
+	 */
+	public void add(int entries, long bytes) {
+		this.entries += entries;
+		this.bytes += bytes;
+	}
+
+	/**
+	 * @return true when the local map has to be emitted at the end of the
+	 *         current map() call
+	 */
+	public boolean shouldFlush() {
+		return !splitWide || isFull();
+	}
+
+	/**
+	 * Records the emission of the local map and resets the estimates.
+	 *
+	 * @param context
+	 * @param emitted
+	 *            number of records written
+	 */
+	public void flushed(TaskInputOutputContext<?, ?, ?, ?> context, int emitted) {
+		if (splitWide && isFull()) {
+			context.getCounter(Counters.FLUSHES).increment(1);
+		}
+		context.getCounter(Counters.ENTRIES_EMITTED).increment(emitted);
+		entries = 0;
+		bytes = 0;
+	}
+
+	private boolean isFull() {
+		return entries >= maxEntries || bytes >= maxBytes;
+	}
+}
@@ -12,6 +12,6 @@ public class ParagrapghInputFormat extends TextInputFormat {
 	
 	@Override
 	public RecordReader<LongWritable,Text>	createRecordReader(InputSplit split, TaskAttemptContext context) {
-		return new ParagraphRecordReader(split, context);
+		return new ParagraphRecordReader();
 	}
 }
\ No newline at end of file
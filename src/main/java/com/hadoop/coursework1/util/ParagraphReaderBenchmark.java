@@ -0,0 +1,261 @@
+package com.hadoop.coursework1.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.LineRecordReader;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+/**
+ * Reads the files of an input with the {@link ParagraphRecordReader} and with
+ * the reader it replaced, built on a {@link LineRecordReader}, and compares
+ * them. <br>
+ * <br>
+ * Each reader reads every file as a single split <b>-n</b> times (3 by
+ * default), after a first untimed run to warm up the JIT, and the best wall
+ * time is reported with the records and value bytes read. The
+ * {@link ParagraphRecordReader} is also timed over splits of <b>-s</b> bytes
+ * (64KB by default) to cross the split boundaries. <br>
+ * The paragraphs are checked to be the same, their trailing whitespace
+ * aside: the old reader ended each value with the blank line after the
+ * paragraph and read the runs of blank lines as blank records, which are
+ * skipped, and it dropped the last paragraph of a file not ending in a blank
+ * line. The keys are not compared: the old one was the offset of the blank
+ * line, the new one is the offset of the first line of the paragraph. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class ParagraphReaderBenchmark extends Configured implements Tool {
+
+	private static final String RUNS_PARAM = "-n";
+	private static final String SPLIT_PARAM = "-s";
+
+	private static Logger _log = Logger.getLogger(ParagraphReaderBenchmark.class.getName());
+
+	/**
+	 * The paragraph reader as it was before it scanned the bytes itself:
+	 * every line through a {@link LineRecordReader} and a
+	 * {@link StringBuffer}, a paragraph ending at the first blank line.
+	 */
+	private static class LineParagraphReader extends RecordReader<LongWritable, Text> {
+
+		private static final String WHITESPACE = " ";
+
+		private RecordReader<LongWritable, Text> lineRecord = new LineRecordReader();
+		private LongWritable key = new LongWritable();
+		private Text value = new Text();
+
+		@Override
+		public void close() throws IOException {
+			lineRecord.close();
+		}
+
+		@Override
+		public LongWritable getCurrentKey() throws IOException, InterruptedException {
+			return key;
+		}
+
+		@Override
+		public Text getCurrentValue() throws IOException, InterruptedException {
+			return value;
+		}
+
+		@Override
+		public float getProgress() throws IOException, InterruptedException {
+			return lineRecord.getProgress();
+		}
+
+		@Override
+		public void initialize(InputSplit split, TaskAttemptContext context) throws IOException,
+				InterruptedException {
+			lineRecord.initialize(split, context);
+		}
+
+		@Override
+		public boolean nextKeyValue() throws IOException, InterruptedException {
+			StringBuffer sb = new StringBuffer();
+			while (lineRecord.nextKeyValue()) {
+				sb.append(lineRecord.getCurrentValue());
+				sb.append(WHITESPACE);
+				if (StringUtils.isBlank(lineRecord.getCurrentValue().toString())) {
+					key = lineRecord.getCurrentKey();
+					value.set(sb.toString());
+					sb.append(WHITESPACE);
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	public int run(String[] args) throws Exception {
+		int runs = 3;
+		long splitSize = 64 * 1024;
+		List<String> other_args = new ArrayList<String>();
+		for (int i = 0; i < args.length; ++i) {
+			try {
+				if (RUNS_PARAM.equals(args[i])) {
+					runs = Integer.parseInt(args[++i]);
+				} else if (SPLIT_PARAM.equals(args[i])) {
+					splitSize = Long.parseLong(args[++i]);
+				} else {
+					other_args.add(args[i]);
+				}
+			} catch (NumberFormatException except) {
+				System.out.println("ERROR: Integer expected instead of " + args[i]);
+				return printUsage();
+			} catch (ArrayIndexOutOfBoundsException except) {
+				System.out.println("ERROR: Required parameter missing from " + args[i - 1]);
+				return printUsage();
+			}
+		}
+		if (other_args.size() != 1) {
+			System.out.println("ERROR: Wrong number of parameters: " + other_args.size() + " instead of 1.");
+			return printUsage();
+		}
+
+		Path in = new Path(other_args.get(0));
+		FileSystem fs = in.getFileSystem(getConf());
+		List<FileSplit> files = new ArrayList<FileSplit>();
+		List<FileSplit> splits = new ArrayList<FileSplit>();
+		for (FileStatus file : fs.listStatus(in)) {
+			if (file.isDir()) {
+				continue;
+			}
+			files.add(new FileSplit(file.getPath(), 0, file.getLen(), null));
+			for (long start = 0; start < file.getLen(); start += splitSize) {
+				splits.add(new FileSplit(file.getPath(), start, Math.min(splitSize, file.getLen() - start), null));
+			}
+		}
+
+		StringBuilder report = new StringBuilder(String.format("%n%d files, %d splits of %d bytes%n%-24s %9s %9s %12s",
+				files.size(), splits.size(), splitSize, "reader", "best (ms)", "records", "value bytes"));
+		report.append(time("line reader", files, false, runs));
+		report.append(time("paragraph reader", files, true, runs));
+		report.append(time("paragraph reader split", splits, true, runs));
+
+		boolean same = true;
+		int dropped = 0;
+		for (FileSplit file : files) {
+			List<String> expected = read(file, false);
+			List<String> paragraphs = read(file, true);
+			if (paragraphs.size() == expected.size() + 1) {
+				// the old reader drops the paragraph after the last blank line
+				dropped++;
+				paragraphs.remove(paragraphs.size() - 1);
+			}
+			if (!expected.equals(paragraphs)) {
+				report.append(String.format("%n%s: PARAGRAPHS DIFFER FROM THE LINE READER", file.getPath()));
+				same = false;
+			}
+		}
+		List<String> whole = new ArrayList<String>();
+		for (FileSplit file : files) {
+			whole.addAll(read(file, true));
+		}
+		List<String> split = new ArrayList<String>();
+		for (FileSplit part : splits) {
+			split.addAll(read(part, true));
+		}
+		if (!whole.equals(split)) {
+			report.append(String.format("%nPARAGRAPHS OF THE SPLITS DIFFER FROM THE ONES OF THE FILES"));
+			same = false;
+		}
+		report.append(String.format("%n%d paragraphs, %d at the end of a file only read by the paragraph reader",
+				whole.size(), dropped));
+		System.out.println(report);
+		return same ? 0 : 1;
+	}
+
+	/**
+	 * @return the report line of the best of the runs over the splits
+	 */
+	private String time(String name, List<FileSplit> splits, boolean paragraphReader, int runs) throws IOException,
+			InterruptedException {
+		long best = Long.MAX_VALUE;
+		long records = 0;
+		long bytes = 0;
+		for (int run = 0; run <= runs; run++) {
+			records = 0;
+			bytes = 0;
+			long start = System.nanoTime();
+			for (FileSplit split : splits) {
+				RecordReader<LongWritable, Text> reader = open(split, paragraphReader);
+				try {
+					while (reader.nextKeyValue()) {
+						records++;
+						bytes += reader.getCurrentValue().getLength();
+					}
+				} finally {
+					reader.close();
+				}
+			}
+			// the first run warms up the JIT
+			if (run > 0) {
+				best = Math.min(best, System.nanoTime() - start);
+			}
+		}
+		_log.debug(name + ": " + records + " records of " + bytes + " bytes");
+		return String.format("%n%-24s %9.1f %9d %12d", name, best / 1e6, records, bytes);
+	}
+
+	/**
+	 * @return the paragraphs of the split, less their trailing whitespace,
+	 *         without the blank ones
+	 */
+	private List<String> read(FileSplit split, boolean paragraphReader) throws IOException, InterruptedException {
+		List<String> paragraphs = new ArrayList<String>();
+		RecordReader<LongWritable, Text> reader = open(split, paragraphReader);
+		try {
+			while (reader.nextKeyValue()) {
+				String paragraph = StringUtils.stripEnd(reader.getCurrentValue().toString(), null);
+				if (paragraph.length() > 0) {
+					paragraphs.add(paragraph);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return paragraphs;
+	}
+
+	private RecordReader<LongWritable, Text> open(FileSplit split, boolean paragraphReader) throws IOException,
+			InterruptedException {
+		RecordReader<LongWritable, Text> reader = paragraphReader ? new ParagraphRecordReader()
+				: new LineParagraphReader();
+		reader.initialize(split, new TaskAttemptContext(getConf(), new TaskAttemptID()));
+		return reader;
+	}
+
+	private static int printUsage() {
+		System.out.println("paragraphReaderBenchmark [-n <runs>] [-s <split bytes>] <input>");
+		ToolRunner.printGenericCommandUsage(System.out);
+		return -1;
+	}
+
+	public static void main(String[] args) throws Exception {
+		String[] parameters = { "assets/jane_austen/input" };
+		if (args != null && args.length >= 1) {
+			parameters = args;
+		}
+		int res = ToolRunner.run(new Configuration(), new ParagraphReaderBenchmark(), parameters);
+		System.exit(res);
+	}
+}
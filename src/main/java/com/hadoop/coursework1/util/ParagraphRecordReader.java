@@ -1,39 +1,206 @@
 package com.hadoop.coursework1.util;
 
 import java.io.IOException;
+import java.io.InputStream;
 
-import org.apache.commons.lang.StringUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
-import org.apache.hadoop.mapreduce.lib.input.LineRecordReader;
-import org.apache.log4j.Logger;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
 
+/**
+ * Reads paragraphs: runs of non blank lines separated by blank (empty or
+ * ASCII whitespace only) lines. <br>
+ * The value is the lines of the paragraph joined by a space, the key the
+ * offset of its first line. The bytes of the split are scanned directly, lines
+ * ending in LF, CR or CRLF as for {@link org.apache.hadoop.util.LineReader},
+ * and appended into a reused {@link Text}. The last paragraph of a file is
+ * read even when it does not end in a blank line. <br>
+ * <br>
+ * <b>Split boundaries</b>: as {@link org.apache.hadoop.mapreduce.lib.input.LineRecordReader}
+ * does with lines, a paragraph belongs to a single split and is read whole,
+ * past the end of the split if needed. A paragraph belongs to the split
+ * holding the start of the blank line right before it (the first paragraph
+ * of a file to the first split). A split other than the first one skips its
+ * first, partial, line and the end of any paragraph it finds in there. <br>
+ *
+ * @author pmonteiro
+ *
+ */
 public class ParagraphRecordReader extends RecordReader<LongWritable, Text> {
-	
-	private static Logger _log = Logger.getLogger(ParagraphRecordReader.class.getName());
-	
-	private static final String WHITESPACE = " ";
-	
-	private RecordReader<LongWritable, Text> lineRecord = new LineRecordReader();
-    private LongWritable key = new LongWritable();
-    private Text value = new Text();
-
-	public ParagraphRecordReader(InputSplit split, TaskAttemptContext context) {
-		try {
-			initialize(split, context);
-		} catch (IOException e) {
-			_log.error("Error while initializing " + this.getClass().getSimpleName(), e);
-		} catch (InterruptedException e) {
-			_log.error("Error while initializing " + this.getClass().getSimpleName(), e);
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final byte LF = '\n';
+	private static final byte CR = '\r';
+	private static final byte[] SEPARATOR = { ' ' };
+
+	private long start;
+	private long end;
+	private InputStream in;
+	private byte[] buffer = new byte[BUFFER_SIZE];
+	/** offset in the file of the first byte of the buffer */
+	private long bufferStart;
+	private int bufferLength;
+	private int bufferPosition;
+	/** leading whitespace of the current line, kept until it is known not blank */
+	private byte[] whitespace = new byte[64];
+	private int whitespaceLength;
+	/** offset of the last blank line read, -1 when the last line was not blank */
+	private long blankStart = -1;
+	private boolean done;
+
+	private LongWritable key = new LongWritable();
+	private Text value = new Text();
+
+	@Override
+	public void initialize(InputSplit genericSplit, TaskAttemptContext context) throws IOException,
+			InterruptedException {
+		FileSplit split = (FileSplit) genericSplit;
+		Configuration conf = context.getConfiguration();
+		start = split.getStart();
+		end = start + split.getLength();
+		Path file = split.getPath();
+		FileSystem fs = file.getFileSystem(conf);
+		FSDataInputStream fileIn = fs.open(file);
+		CompressionCodec codec = new CompressionCodecFactory(conf).getCodec(file);
+		boolean skipFirstLine = false;
+		if (codec != null) {
+			// not splittable, read as a whole
+			in = codec.createInputStream(fileIn);
+			end = Long.MAX_VALUE;
+		} else {
+			if (start != 0) {
+				skipFirstLine = true;
+				start--;
+				fileIn.seek(start);
+			}
+			in = fileIn;
+		}
+		bufferStart = start;
+		if (skipFirstLine) {
+			// partial line, owned by the previous split
+			readLine();
+			value.clear();
+		} else {
+			// the first paragraph of the file belongs to the first split
+			blankStart = 0;
 		}
 	}
 
 	@Override
-	public void close() throws IOException {
-		lineRecord.close();
+	public boolean nextKeyValue() throws IOException, InterruptedException {
+		value.clear();
+		if (done) {
+			return false;
+		}
+		// start of the next paragraph owned by this split
+		while (true) {
+			long lineStart = position();
+			if (!hasMore() || blankStart >= end) {
+				// the paragraphs after a blank line past the end belong to
+				// the next splits
+				done = true;
+				return false;
+			}
+			if (!readLine()) {
+				blankStart = lineStart;
+			} else if (blankStart >= 0) {
+				key.set(lineStart);
+				break;
+			} else {
+				// end of a paragraph of the previous split
+				value.clear();
+			}
+		}
+		blankStart = -1;
+		// the rest of the paragraph
+		while (hasMore()) {
+			long lineStart = position();
+			if (!readLine()) {
+				blankStart = lineStart;
+				break;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads a line and appends it to the value, after a separator, unless it
+	 * is blank.
+	 *
+	 * @return false if the line is blank
+	 */
+	private boolean readLine() throws IOException {
+		boolean notBlank = false;
+		whitespaceLength = 0;
+		while (hasMore()) {
+			int p = bufferPosition;
+			while (p < bufferLength && buffer[p] != LF && buffer[p] != CR) {
+				if (!notBlank) {
+					if (isWhitespace(buffer[p])) {
+						addWhitespace(buffer[p]);
+						bufferPosition = p + 1;
+					} else {
+						notBlank = true;
+						if (value.getLength() > 0) {
+							value.append(SEPARATOR, 0, SEPARATOR.length);
+						}
+						value.append(whitespace, 0, whitespaceLength);
+					}
+				}
+				p++;
+			}
+			if (notBlank) {
+				value.append(buffer, bufferPosition, p - bufferPosition);
+			}
+			bufferPosition = p;
+			if (p < bufferLength) {
+				bufferPosition++;
+				if (buffer[p] == CR && hasMore() && buffer[bufferPosition] == LF) {
+					bufferPosition++;
+				}
+				return notBlank;
+			}
+		}
+		return notBlank;
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || (b >= 0x09 && b <= 0x0D) || (b >= 0x1C && b <= 0x1F);
+	}
+
+	private void addWhitespace(byte b) {
+		if (whitespaceLength == whitespace.length) {
+			byte[] grown = new byte[whitespaceLength * 2];
+			System.arraycopy(whitespace, 0, grown, 0, whitespaceLength);
+			whitespace = grown;
+		}
+		whitespace[whitespaceLength++] = b;
+	}
+
+	/**
+	 * @return false at the end of the stream
+	 */
+	private boolean hasMore() throws IOException {
+		if (bufferPosition < bufferLength) {
+			return true;
+		}
+		bufferStart += bufferLength;
+		bufferPosition = 0;
+		bufferLength = Math.max(0, in.read(buffer));
+		return bufferLength > 0;
+	}
+
+	private long position() {
+		return bufferStart + bufferPosition;
 	}
 
 	@Override
@@ -48,27 +215,16 @@ public class ParagraphRecordReader extends RecordReader<LongWritable, Text> {
 
 	@Override
 	public float getProgress() throws IOException, InterruptedException {
-		return lineRecord.getProgress();
-	}
-
-	@Override
-	public void initialize(InputSplit split, TaskAttemptContext context) throws IOException, InterruptedException {
-		lineRecord.initialize(split,context);
+		if (done || start == end) {
+			return 1.0f;
+		}
+		return Math.min(1.0f, (position() - start) / (float) (end - start));
 	}
 
 	@Override
-	public boolean nextKeyValue() throws IOException, InterruptedException {
-		StringBuffer sb = new StringBuffer();
-        while (lineRecord.nextKeyValue()) {
-        	sb.append(lineRecord.getCurrentValue());
-        	sb.append(WHITESPACE);
-        	if (StringUtils.isBlank(lineRecord.getCurrentValue().toString())) {
-        		key = lineRecord.getCurrentKey();
-        		value.set(sb.toString());
-        		sb.append(WHITESPACE);
-        		return true;
-        	}
-        }
-        return false;
+	public void close() throws IOException {
+		if (in != null) {
+			in.close();
+		}
 	}
 }
@@ -0,0 +1,77 @@
+package com.hadoop.coursework1.util;
+
+import java.io.IOException;
+
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.CounterGroup;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+
+/**
+ * Per reducer load and time counters, to see the skew of a job. <br>
+ * <br>
+ * Each reducer counts its work units (values, stripe entries...) in the
+ * <i>&lt;name&gt; load</i> counter group and the milliseconds between its
+ * setup and cleanup in the <i>&lt;name&gt; time (ms)</i> group, under
+ * <i>partition-NNNNN</i>. {@link #report(Job, String)} summarizes both groups
+ * once the job is done. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class ReducerLoad {
+
+	private final Counter load;
+	private final Counter time;
+	private final long start = System.currentTimeMillis();
+
+	/**
+	 * To be created in the setup() of the reducer.
+	 */
+	public ReducerLoad(TaskInputOutputContext<?, ?, ?, ?> context, String name) {
+		String partition = String.format("partition-%05d", context.getTaskAttemptID().getTaskID().getId());
+		load = context.getCounter(loadGroup(name), partition);
+		time = context.getCounter(timeGroup(name), partition);
+	}
+
+	public void add(long units) {
+		load.increment(units);
+	}
+
+	/**
+	 * To be called in the cleanup() of the reducer.
+	 */
+	public void done() {
+		time.increment(System.currentTimeMillis() - start);
+	}
+
+	/**
+	 * @return the load and time of each reducer of the finished job, with
+	 *         their max/mean ratio
+	 */
+	public static String report(Job job, String name) throws IOException {
+		return "load " + describe(job.getCounters().getGroup(loadGroup(name))) + ", time (ms) "
+				+ describe(job.getCounters().getGroup(timeGroup(name)));
+	}
+
+	private static String describe(CounterGroup group) {
+		StringBuilder values = new StringBuilder("[");
+		long total = 0;
+		long max = 0;
+		for (Counter counter : group) {
+			values.append(values.length() > 1 ? ", " : "").append(counter.getValue());
+			total += counter.getValue();
+			max = Math.max(max, counter.getValue());
+		}
+		double mean = group.size() == 0 ? 0 : (double) total / group.size();
+		return values.append("]").append(String.format(" max/mean %.2f", mean == 0 ? 0 : max / mean)).toString();
+	}
+
+	private static String loadGroup(String name) {
+		return name + " load";
+	}
+
+	private static String timeGroup(String name) {
+		return name + " time (ms)";
+	}
+}
@@ -0,0 +1,101 @@
+package com.hadoop.coursework1.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import com.hadoop.util.TextTokenizer;
+
+/**
+ * Samples the term distribution of the input of a co-occurrence job. <br>
+ * <br>
+ * It reads the first <b>sample.records</b> records (1000 by default) of up to
+ * <b>sample.splits</b> input splits (10 by default) evenly spread over the
+ * input and tokenizes them as the mappers do, weighting every term with the
+ * number of records the pairs mapper emits for it (the pair and the
+ * marginal). <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class TermSampler {
+
+	public static final String SAMPLE_SPLITS = "sample.splits";
+	public static final String SAMPLE_RECORDS = "sample.records";
+	public static final int SAMPLE_SPLITS_DEFAULT_VALUE = 10;
+	public static final int SAMPLE_RECORDS_DEFAULT_VALUE = 1000;
+
+	private TermSampler() {
+	}
+
+	/**
+	 * @param neighbours
+	 *            distance of the pairs counted by the mapper
+	 * @return weight of each term in the sample, ordered by term
+	 */
+	@SuppressWarnings("unchecked")
+	public static Map<String, Long> sample(Job job, int neighbours) throws IOException, InterruptedException {
+		Configuration conf = job.getConfiguration();
+		int maxSplits = conf.getInt(SAMPLE_SPLITS, SAMPLE_SPLITS_DEFAULT_VALUE);
+		int maxRecords = conf.getInt(SAMPLE_RECORDS, SAMPLE_RECORDS_DEFAULT_VALUE);
+		InputFormat<?, Text> inputFormat;
+		try {
+			inputFormat = (InputFormat<?, Text>) ReflectionUtils.newInstance(job.getInputFormatClass(), conf);
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Input format not found", e);
+		}
+
+		List<InputSplit> splits = inputFormat.getSplits(job);
+		int step = Math.max(1, splits.size() / maxSplits);
+		TextTokenizer tokenizer = TextTokenizer.alphanumeric();
+		Map<String, Long> weights = new TreeMap<String, Long>();
+		for (int s = 0; s < splits.size() && s / step < maxSplits; s += step) {
+			TaskAttemptContext context = new TaskAttemptContext(conf, new TaskAttemptID());
+			RecordReader<?, Text> reader = inputFormat.createRecordReader(splits.get(s), context);
+			try {
+				reader.initialize(splits.get(s), context);
+				for (int records = 0; records < maxRecords && reader.nextKeyValue(); records++) {
+					int words = tokenizer.tokenize(reader.getCurrentValue());
+					for (int i = 0; i + neighbours < words; i++) {
+						String term = tokenizer.getString(i);
+						Long weight = weights.get(term);
+						// the word and the marginal
+						weights.put(term, weight == null ? 2 : weight + 2);
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		}
+		return weights;
+	}
+
+	/**
+	 * @return the given number of heaviest terms of the sample, heaviest first
+	 */
+	public static String[] hottest(final Map<String, Long> weights, int count) {
+		List<String> terms = new ArrayList<String>(weights.keySet());
+		Collections.sort(terms, new Comparator<String>() {
+			@Override
+			public int compare(String term1, String term2) {
+				return weights.get(term2).compareTo(weights.get(term1));
+			}
+		});
+		terms = terms.subList(0, Math.min(count, terms.size()));
+		return terms.toArray(new String[terms.size()]);
+	}
+}
@@ -0,0 +1,167 @@
+package com.hadoop.coursework1.util;
+
+import java.util.Arrays;
+
+import com.hadoop.coursework1.Pair;
+
+/**
+ * Neighbours of a term ordered the way {@link Pair#compareTo(Pair)} orders the
+ * pairs of a term: by conditional probability (descending), then word count
+ * and then word. <br>
+ * The probability is computed once per neighbour, as a primitive double, so
+ * ordering two neighbours is a double compare. <br>
+ * <br>
+ * With <b>top.k</b> set to K &gt; 0 only the K first neighbours are kept, in a
+ * bounded heap whose root is the worst one kept: memory stays O(K) per term
+ * whatever the number of neighbours. By default (0) all of them are kept. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class TopNeighbours {
+
+	public static final String TOP_K = "top.k";
+	public static final int TOP_K_DEFAULT_VALUE = 0;
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private int limit;
+	private String[] words = new String[INITIAL_CAPACITY];
+	private int[] counts = new int[INITIAL_CAPACITY];
+	private double[] probabilities = new double[INITIAL_CAPACITY];
+	private int size;
+
+	/**
+	 * @param limit
+	 *            max number of neighbours kept, 0 keeps all of them
+	 */
+	public void setLimit(int limit) {
+		this.limit = limit;
+	}
+
+	/**
+	 * Offers a neighbour of the term.
+	 *
+	 * @return false when it was not kept (it falls out of the top K)
+	 */
+	public boolean add(String word, int wordCount, int termCount) {
+		double probability = Pair.conditionalProbability(wordCount, termCount);
+		if (limit <= 0 || size < limit) {
+			if (size == words.length) {
+				grow();
+			}
+			set(size, word, wordCount, probability);
+			siftUp(size++);
+			return true;
+		}
+		if (!before(probability, wordCount, word, 0)) {
+			return false;
+		}
+		set(0, word, wordCount, probability);
+		siftDown(0, size);
+		return true;
+	}
+
+	/**
+	 * Orders the neighbours kept, first one first. After this call the
+	 * neighbours are read by index and no more can be added until
+	 * {@link #clear()}.
+	 *
+	 * @return number of neighbours
+	 */
+	public int sort() {
+		for (int end = size - 1; end > 0; end--) {
+			swap(0, end);
+			siftDown(0, end);
+		}
+		return size;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public String getWord(int index) {
+		return words[index];
+	}
+
+	public int getWordCount(int index) {
+		return counts[index];
+	}
+
+	public double getProbability(int index) {
+		return probabilities[index];
+	}
+
+	public void clear() {
+		Arrays.fill(words, 0, size, null);
+		size = 0;
+	}
+
+	/**
+	 * @return true when the neighbour comes before the one at the index
+	 */
+	private boolean before(double probability, int wordCount, String word, int index) {
+		if (probability != probabilities[index]) {
+			return probability > probabilities[index];
+		}
+		if (wordCount != counts[index]) {
+			return wordCount < counts[index];
+		}
+		return word.compareTo(words[index]) < 0;
+	}
+
+	private boolean before(int i, int j) {
+		return before(probabilities[i], counts[i], words[i], j);
+	}
+
+	/** the heap root is the last neighbour in order */
+	private void siftUp(int index) {
+		while (index > 0) {
+			int parent = (index - 1) / 2;
+			if (!before(parent, index)) {
+				return;
+			}
+			swap(parent, index);
+			index = parent;
+		}
+	}
+
+	private void siftDown(int index, int end) {
+		while (true) {
+			int child = 2 * index + 1;
+			if (child >= end) {
+				return;
+			}
+			if (child + 1 < end && before(child, child + 1)) {
+				child++;
+			}
+			if (!before(index, child)) {
+				return;
+			}
+			swap(index, child);
+			index = child;
+		}
+	}
+
+	private void set(int index, String word, int wordCount, double probability) {
+		words[index] = word;
+		counts[index] = wordCount;
+		probabilities[index] = probability;
+	}
+
+	private void swap(int i, int j) {
+		String word = words[i];
+		int count = counts[i];
+		double probability = probabilities[i];
+		set(i, words[j], counts[j], probabilities[j]);
+		set(j, word, count, probability);
+	}
+
+	private void grow() {
+		int capacity = words.length * 2;
+		words = Arrays.copyOf(words, capacity);
+		counts = Arrays.copyOf(counts, capacity);
+		probabilities = Arrays.copyOf(probabilities, capacity);
+	}
+}
@@ -0,0 +1,253 @@
+package com.hadoop.coursework1.util;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.filecache.DistributedCache;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.partition.HashPartitioner;
+import org.apache.hadoop.mapreduce.lib.reduce.IntSumReducer;
+import org.apache.hadoop.util.bloom.BloomFilter;
+import org.apache.hadoop.util.bloom.Key;
+import org.apache.hadoop.util.hash.Hash;
+import org.apache.log4j.Logger;
+
+import com.hadoop.corpus.EncodeCorpus;
+import com.hadoop.util.TextTokenizer;
+import com.hadoop.util.WordCountMap;
+
+/**
+ * Vocabulary pruning of the co-occurrence jobs. <br>
+ * <br>
+ * <b>The pre-pass</b> ({@link #prepare(Job)}) counts the terms of the input
+ * of the job and keeps the ones seen at least <b>prune.min.count</b> times
+ * (2 by default) and at most <b>prune.max.count</b> times (no limit by
+ * default) that are not in the <b>prune.stopwords</b> list. The kept terms
+ * are added to a Bloom filter, sized for a <b>prune.false.positive.rate</b>
+ * of 1% by default, shipped to the tasks through the distributed cache. <br>
+ * <b>The mappers</b> test each distinct term once ({@link #keep(byte[], int, int)})
+ * and skip the pruned tokens before building any pair or stripe. A false
+ * positive only lets a pruned term through, a kept term is never dropped.
+ * The decisions are remembered for at most <b>prune.memo.entries</b> terms
+ * (100000 by default): the memo is cleared once it is full, so a mapper does
+ * not end up holding the whole vocabulary. <br>
+ * The {@link Counters} report the pruned tokens and the co-occurrences that
+ * were not built. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class VocabularyFilter {
+
+	public static final String MIN_COUNT = "prune.min.count";
+	public static final String MAX_COUNT = "prune.max.count";
+	public static final String STOPWORDS = "prune.stopwords";
+	public static final String FALSE_POSITIVE_RATE = "prune.false.positive.rate";
+	public static final String MEMO_ENTRIES = "prune.memo.entries";
+	public static final int MIN_COUNT_DEFAULT_VALUE = 2;
+	public static final float FALSE_POSITIVE_RATE_DEFAULT_VALUE = 0.01f;
+	public static final int MEMO_ENTRIES_DEFAULT_VALUE = 100000;
+	/** path of the filter, also added to the distributed cache */
+	private static final String FILTER = "prune.filter";
+	private static final String FILTER_FILE = "vocabulary.bloom";
+	private static final byte KEEP = 1;
+	private static final byte DROP = 2;
+
+	public static enum Counters {
+		TOKENS_PRUNED, PAIRS_PRUNED
+	}
+
+	private static Logger _log = Logger.getLogger(VocabularyFilter.class.getName());
+
+	private final BloomFilter filter;
+	/** term bytes to {@link #KEEP} or {@link #DROP} */
+	private final WordCountMap tested = new WordCountMap();
+	private final int maxTested;
+	private boolean[] kept = new boolean[64];
+
+	private VocabularyFilter(BloomFilter filter, int maxTested) {
+		this.filter = filter;
+		this.maxTested = Math.max(1, maxTested);
+	}
+
+	/**
+	 * Runs the pre-pass over the input of the job and adds the filter to its
+	 * distributed cache.
+	 *
+	 * @return the folder of the filter, to delete once the job is done
+	 */
+	public static Path prepare(Job job) throws IOException, InterruptedException, ClassNotFoundException {
+		Configuration conf = job.getConfiguration();
+		FileSystem fs = FileSystem.get(conf);
+		Path folder = fs.makeQualified(new Path(conf.get("hadoop.tmp.dir"), "vocabulary-"
+				+ System.currentTimeMillis()));
+		Path terms = new Path(folder, "terms");
+
+		@SuppressWarnings("deprecation")
+		Job count = new Job(conf, job.getJobName() + " - vocabulary");
+		count.setJarByClass(VocabularyFilter.class);
+		count.setInputFormatClass(job.getInputFormatClass());
+		count.setMapperClass(EncodeCorpus.CountMap.class);
+		count.setCombinerClass(IntSumReducer.class);
+		count.setReducerClass(IntSumReducer.class);
+		count.setNumReduceTasks(job.getNumReduceTasks());
+		// the configuration of the job may set the ones of its composite keys
+		count.setPartitionerClass(HashPartitioner.class);
+		count.setSortComparatorClass(Text.Comparator.class);
+		count.setGroupingComparatorClass(Text.Comparator.class);
+		count.setMapOutputKeyClass(Text.class);
+		count.setMapOutputValueClass(IntWritable.class);
+		count.setOutputKeyClass(Text.class);
+		count.setOutputValueClass(IntWritable.class);
+		count.setOutputFormatClass(SequenceFileOutputFormat.class);
+		FileInputFormat.setInputPaths(count, FileInputFormat.getInputPaths(job));
+		FileOutputFormat.setOutputPath(count, terms);
+		if (!count.waitForCompletion(true)) {
+			throw new IOException("Vocabulary pre-pass failed");
+		}
+
+		Path filter = new Path(folder, FILTER_FILE);
+		writeFilter(conf, fs, terms, filter);
+		conf.set(FILTER, filter.toString());
+		DistributedCache.addCacheFile(filter.toUri(), conf);
+		return folder;
+	}
+
+	private static void writeFilter(Configuration conf, FileSystem fs, Path terms, Path path) throws IOException {
+		int minCount = conf.getInt(MIN_COUNT, MIN_COUNT_DEFAULT_VALUE);
+		int maxCount = conf.getInt(MAX_COUNT, Integer.MAX_VALUE);
+		Set<String> stopwords = new HashSet<String>(Arrays.asList(conf.getStrings(STOPWORDS, new String[0])));
+
+		WordCountMap kept = new WordCountMap();
+		int pruned = 0;
+		long keptTokens = 0;
+		long prunedTokens = 0;
+		Text term = new Text();
+		IntWritable count = new IntWritable();
+		for (FileStatus part : fs.globStatus(new Path(terms, "part-r-*"))) {
+			SequenceFile.Reader reader = new SequenceFile.Reader(fs, part.getPath(), conf);
+			try {
+				while (reader.next(term, count)) {
+					if (count.get() >= minCount && count.get() <= maxCount && !stopwords.contains(term.toString())) {
+						kept.increment(term.getBytes(), 0, term.getLength(), count.get());
+						keptTokens += count.get();
+					} else {
+						pruned++;
+						prunedTokens += count.get();
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		}
+
+		// optimal size and number of hash functions for the false positive rate
+		double rate = conf.getFloat(FALSE_POSITIVE_RATE, FALSE_POSITIVE_RATE_DEFAULT_VALUE);
+		int entries = Math.max(1, kept.size());
+		int vectorSize = (int) Math.ceil(-entries * Math.log(rate) / (Math.log(2) * Math.log(2)));
+		int hashes = Math.max(1, (int) Math.round((double) vectorSize / entries * Math.log(2)));
+		BloomFilter filter = new BloomFilter(vectorSize, hashes, Hash.MURMUR_HASH);
+		byte[] bytes = kept.getBytes();
+		for (int i = 0; i < kept.size(); i++) {
+			int start = kept.getOffset(i);
+			filter.add(new Key(Arrays.copyOfRange(bytes, start, start + kept.getLength(i))));
+		}
+		FSDataOutputStream out = fs.create(path, true);
+		try {
+			filter.write(out);
+		} finally {
+			out.close();
+		}
+		_log.info("Vocabulary: keeping " + kept.size() + " terms (" + keptTokens + " tokens), pruning " + pruned
+				+ " terms (" + prunedTokens + " tokens), filter of " + (vectorSize / 8) + " bytes with " + hashes
+				+ " hashes");
+	}
+
+	/**
+	 * Loads the filter of the job from the distributed cache.
+	 *
+	 * @return null when the job does not prune its vocabulary
+	 */
+	public static VocabularyFilter load(Configuration conf) throws IOException {
+		String path = conf.get(FILTER);
+		if (path == null) {
+			return null;
+		}
+		Path filterPath = new Path(path);
+		FileSystem fs = filterPath.getFileSystem(conf);
+		Path[] cached = DistributedCache.getLocalCacheFiles(conf);
+		if (cached != null) {
+			for (Path file : cached) {
+				if (file.getName().equals(filterPath.getName())) {
+					filterPath = file;
+					fs = FileSystem.getLocal(conf);
+					break;
+				}
+			}
+		}
+		BloomFilter filter = new BloomFilter();
+		DataInputStream in = fs.open(filterPath);
+		try {
+			filter.readFields(in);
+		} finally {
+			in.close();
+		}
+		return new VocabularyFilter(filter, conf.getInt(MEMO_ENTRIES, MEMO_ENTRIES_DEFAULT_VALUE));
+	}
+
+	/**
+	 * Tests the tokens of the last call to
+	 * {@link TextTokenizer#tokenize(org.apache.hadoop.io.Text)} and counts the
+	 * pruned ones.
+	 *
+	 * @return per token, false when it is pruned; reused by the next call
+	 */
+	public boolean[] keep(TextTokenizer tokenizer, TaskInputOutputContext<?, ?, ?, ?> context) {
+		int words = tokenizer.size();
+		if (kept.length < words) {
+			kept = new boolean[Math.max(words, kept.length * 2)];
+		}
+		byte[] bytes = tokenizer.getBytes();
+		int pruned = 0;
+		for (int i = 0; i < words; i++) {
+			kept[i] = keep(bytes, tokenizer.getStart(i), tokenizer.getLength(i));
+			if (!kept[i]) {
+				pruned++;
+			}
+		}
+		if (pruned > 0) {
+			context.getCounter(Counters.TOKENS_PRUNED).increment(pruned);
+		}
+		return kept;
+	}
+
+	/**
+	 * @return false when the term, given by its UTF-8 bytes, is pruned
+	 */
+	public boolean keep(byte[] b, int s, int l) {
+		int decision = tested.get(b, s, l);
+		if (decision == 0) {
+			decision = filter.membershipTest(new Key(Arrays.copyOfRange(b, s, s + l))) ? KEEP : DROP;
+			if (tested.size() >= maxTested) {
+				tested.clear();
+			}
+			tested.increment(b, s, l, decision);
+		}
+		return decision == KEEP;
+	}
+}
@@ -0,0 +1,297 @@
+package com.hadoop.coursework2;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+import com.hadoop.coursework2.util.CsrGraph;
+
+/**
+ * PageRank of a graph that fits in memory, computed on a single node: the
+ * same ranks as {@link IterativePageRank} without a job per iteration. <br>
+ * <br>
+ * The edge list is loaded into a {@link CsrGraph} of the in-links and the
+ * ranks into <b>double</b> arrays. Each iteration is two passes run by a
+ * {@link ForkJoinPool} of <b>pagerank.parallelism</b> threads (the number of
+ * cores by default) over ranges of nodes: the first one divides the rank of
+ * each node among its out-links and sums the rank of the dangling nodes, the
+ * second one pulls into each node the shares of its in-links and sums the L1
+ * residual. The ranges of the second pass are split on nodes plus in-links,
+ * so that the hubs do not leave a thread with most of the work. <br>
+ * Iterations stop as in {@link IterativePageRank}, and the ranks are written
+ * as <i>node \t rank</i> in a part file of the output, sorted by node. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class InMemoryPageRank extends Configured implements Tool {
+
+	public static final String PARALLELISM = "pagerank.parallelism";
+	/** nodes, plus in-links for the second pass, ranked by a task */
+	private static final int SPLIT_THRESHOLD = 1 << 14;
+	private static final String PARALLELISM_PARAM = "-p";
+	private static final String ITERATIONS_PARAM = "-i";
+	private static final String TOLERANCE_PARAM = "-t";
+
+	private static Logger _log = Logger.getLogger(InMemoryPageRank.class.getName());
+
+	private int[] offsets;
+	private int[] sources;
+	private int[] outDegrees;
+	private double[] ranks;
+	private double[] next;
+	private double[] contributions;
+	private int iterations;
+
+	/**
+	 * Divides the rank of the nodes of the range among their out-links.
+	 *
+	 * @return the rank of the dangling nodes of the range
+	 */
+	private class Contributions extends RecursiveTask<Double> {
+		private static final long serialVersionUID = 1L;
+		private final int from;
+		private final int to;
+
+		Contributions(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Double compute() {
+			if (to - from <= SPLIT_THRESHOLD) {
+				double dangling = 0;
+				for (int v = from; v < to; v++) {
+					if (outDegrees[v] == 0) {
+						dangling += ranks[v];
+						contributions[v] = 0;
+					} else {
+						contributions[v] = ranks[v] / outDegrees[v];
+					}
+				}
+				return dangling;
+			}
+			int middle = (from + to) >>> 1;
+			Contributions left = new Contributions(from, middle);
+			left.fork();
+			double right = new Contributions(middle, to).compute();
+			return right + left.join();
+		}
+	}
+
+	/**
+	 * Pulls into the nodes of the range the shares of their in-links.
+	 *
+	 * @return the L1 residual of the range
+	 */
+	private class Pull extends RecursiveTask<Double> {
+		private static final long serialVersionUID = 1L;
+		private final double base;
+		private final int from;
+		private final int to;
+
+		Pull(double base, int from, int to) {
+			this.base = base;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Double compute() {
+			if (to - from < 2 || work(from, to) <= SPLIT_THRESHOLD) {
+				double residual = 0;
+				for (int v = from; v < to; v++) {
+					double sum = 0;
+					for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+						sum += contributions[sources[e]];
+					}
+					next[v] = base + IterativePageRank.DAMPING_FACTOR * sum;
+					residual += Math.abs(next[v] - ranks[v]);
+				}
+				return residual;
+			}
+			int middle = split(from, to);
+			Pull left = new Pull(base, from, middle);
+			left.fork();
+			double right = new Pull(base, middle, to).compute();
+			return right + left.join();
+		}
+
+		private long work(int from, int to) {
+			return (long) offsets[to] - offsets[from] + to - from;
+		}
+
+		/**
+		 * @return the node in (from, to) halving the nodes plus in-links of
+		 *         the range
+		 */
+		private int split(int from, int to) {
+			long half = work(from, to) / 2;
+			int low = from + 1;
+			int high = to - 1;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (work(from, middle) < half) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+	}
+
+	/**
+	 * Ranks the graph until the L1 residual is below the tolerance or for the
+	 * iterations given.
+	 *
+	 * @return the rank of each node
+	 */
+	public double[] rank(CsrGraph graph, ForkJoinPool pool, double tolerance, int maxIterations) {
+		int nodes = graph.getNodes();
+		offsets = graph.getOffsets();
+		sources = graph.getSources();
+		outDegrees = graph.getOutDegrees();
+		ranks = new double[nodes];
+		next = new double[nodes];
+		contributions = new double[nodes];
+		Arrays.fill(ranks, 1.0 / nodes);
+		double damping = IterativePageRank.DAMPING_FACTOR;
+		for (iterations = 1; iterations <= maxIterations; iterations++) {
+			long start = System.nanoTime();
+			double dangling = pool.invoke(new Contributions(0, nodes));
+			double base = (1 - damping) / nodes + damping * dangling / nodes;
+			double residual = pool.invoke(new Pull(base, 0, nodes));
+			double[] swap = ranks;
+			ranks = next;
+			next = swap;
+			_log.debug(String.format("Iteration %d: %.2f ms, residual %.3e, dangling mass %.6f", iterations,
+					(System.nanoTime() - start) / 1e6, residual, dangling));
+			if (residual < tolerance) {
+				break;
+			}
+		}
+		iterations = Math.min(iterations, maxIterations);
+		return ranks;
+	}
+
+	/**
+	 * @return the iterations of the last {@link #rank}
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * Writes the ranks as <i>node \t rank</i>, sorted by node, into a part
+	 * file of the output.
+	 */
+	public static void write(FileSystem fs, Path out, final CsrGraph graph, double[] ranks) throws IOException {
+		Integer[] order = new Integer[graph.getNodes()];
+		for (int v = 0; v < order.length; v++) {
+			order[v] = v;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return graph.getName(a).compareTo(graph.getName(b));
+			}
+		});
+		Writer writer = new BufferedWriter(new OutputStreamWriter(fs.create(new Path(out, "part-r-00000"), true),
+				"UTF-8"));
+		try {
+			for (int v : order) {
+				writer.write(graph.getName(v));
+				writer.write('\t');
+				writer.write(Double.toString(ranks[v]));
+				writer.write('\n');
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	public int run(String[] args) throws Exception {
+		Configuration conf = new Configuration(getConf());
+		List<String> other_args = new ArrayList<String>();
+		for (int i = 0; i < args.length; ++i) {
+			try {
+				if (PARALLELISM_PARAM.equals(args[i])) {
+					conf.setInt(PARALLELISM, Integer.parseInt(args[++i]));
+				} else if (ITERATIONS_PARAM.equals(args[i])) {
+					conf.setInt(IterativePageRank.MAX_ITERATIONS, Integer.parseInt(args[++i]));
+				} else if (TOLERANCE_PARAM.equals(args[i])) {
+					conf.setFloat(IterativePageRank.TOLERANCE, Float.parseFloat(args[++i]));
+				} else {
+					other_args.add(args[i]);
+				}
+			} catch (NumberFormatException except) {
+				System.out.println("ERROR: Number expected instead of " + args[i]);
+				return printUsage();
+			} catch (ArrayIndexOutOfBoundsException except) {
+				System.out.println("ERROR: Required parameter missing from " + args[i - 1]);
+				return printUsage();
+			}
+		}
+		// Make sure there are exactly 2 parameters left.
+		if (other_args.size() != 2) {
+			System.out.println("ERROR: Wrong number of parameters: " + other_args.size() + " instead of 2.");
+			return printUsage();
+		}
+
+		Path in = new Path(other_args.get(0));
+		Path out = new Path(other_args.get(1));
+		FileSystem fs = in.getFileSystem(conf);
+		long start = System.currentTimeMillis();
+		CsrGraph graph = CsrGraph.load(fs, in);
+		long load = System.currentTimeMillis() - start;
+
+		ForkJoinPool pool = new ForkJoinPool(conf.getInt(PARALLELISM, Runtime.getRuntime().availableProcessors()));
+		try {
+			start = System.currentTimeMillis();
+			double[] ranks = rank(graph, pool, conf.getFloat(IterativePageRank.TOLERANCE,
+					IterativePageRank.TOLERANCE_DEFAULT_VALUE), conf.getInt(IterativePageRank.MAX_ITERATIONS,
+					IterativePageRank.MAX_ITERATIONS_DEFAULT_VALUE));
+			long time = System.currentTimeMillis() - start;
+			FileSystem outFs = out.getFileSystem(conf);
+			outFs.delete(out, true);
+			write(outFs, out, graph, ranks);
+			_log.info(String.format("%d nodes, %d edges loaded in %d ms, %d iterations in %d ms on %d threads",
+					graph.getNodes(), graph.getEdges(), load, iterations, time, pool.getParallelism()));
+		} finally {
+			pool.shutdown();
+		}
+		return 0;
+	}
+
+	private static int printUsage() {
+		System.out.println("inMemoryPageRank [-p <threads>] [-i <max iterations>] [-t <tolerance>] <input> <output>");
+		ToolRunner.printGenericCommandUsage(System.out);
+		return -1;
+	}
+
+	public static void main(String[] args) throws Exception {
+		String[] parameters = { "assets/epinions_social_network/input", "assets/epinions_social_network/output" };
+		if (args != null && args.length >= 2) {
+			parameters = args;
+		}
+		int res = ToolRunner.run(new Configuration(), new InMemoryPageRank(), parameters);
+		System.exit(res);
+	}
+}
@@ -0,0 +1,546 @@
+package com.hadoop.coursework2;
+
+import static com.hadoop.coursework2.util.MultiLineRecordReader.TAB;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.partition.HashPartitioner;
+import org.apache.hadoop.util.LineReader;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+import com.hadoop.coursework2.model.VertexWritable;
+
+/**
+ * PageRank computed by one MapReduce job per iteration, until the L1 distance
+ * between two rank vectors is below <b>pagerank.tolerance</b> (1e-6 by
+ * default) or after <b>pagerank.max.iterations</b> (30 by default). <br>
+ * <br>
+ * <b>Graph</b>: a first job reads the edge list (<i>from \t to</i>) into lines
+ * of <i>node \t rank \t out-links</i>, with every node, a rank of 0 standing
+ * for the initial 1/N, and counts the nodes and the dangling ones. <br>
+ * <b>Iterations</b>: each one reads the lines of the previous one and writes
+ * them back with the new ranks: the mapper sends the structure of a node to
+ * itself and its rank divided among its out-links, the reducer sums them into
+ * <i>(1-d)/N + d (sum + m/N)</i>, where m is the rank of the dangling nodes
+ * spread over all of them. The reducers add the L1 residual and the dangling
+ * mass of the ranks they write to the {@link Counters}; the driver reads them
+ * to stop and hands the mass to the next iteration. <br>
+ * <b>Schimmy</b> (<b>-s</b>): the structure of the nodes is not shuffled. As
+ * every job writes its lines through the same hash partitioner and number of
+ * reducers, reducer k of an iteration finds the nodes of its partition,
+ * sorted as its keys, in part k of the previous one: the mapper only sends
+ * the shares of rank, summed by the {@link PageRank.Combine} combiner, and
+ * the reducer merges them with that part, read from the file system. <br>
+ * <b>Ranks</b>: a map only job writes the last ranks as <i>node \t rank</i>.
+ * <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class IterativePageRank extends Configured implements Tool {
+
+	public static final String TOLERANCE = "pagerank.tolerance";
+	public static final float TOLERANCE_DEFAULT_VALUE = 1e-6f;
+	public static final String MAX_ITERATIONS = "pagerank.max.iterations";
+	public static final int MAX_ITERATIONS_DEFAULT_VALUE = 30;
+	static final String NODES = "pagerank.nodes";
+	static final String DANGLING_MASS = "pagerank.dangling.mass";
+	private static final String STRUCTURE = "pagerank.structure";
+	public static final double DAMPING_FACTOR = 0.85;
+	/** counters are longs: ranks are added to them as multiples of 1e-15 */
+	static final double COUNTER_SCALE = 1e15;
+	private static final String REDUCER_PARAM = "-r";
+	private static final String ITERATIONS_PARAM = "-i";
+	private static final String TOLERANCE_PARAM = "-t";
+	private static final String SCHIMMY_PARAM = "-s";
+	static final String TASK_COUNTERS = "org.apache.hadoop.mapred.Task$Counter";
+	private static final char LINK_SEPARATOR = ',';
+	private static final String TAB_CHAR = "\t";
+
+	private static Logger _log = Logger.getLogger(IterativePageRank.class.getName());
+
+	public static enum Counters {
+		/** nodes of the graph */
+		NODES,
+		/** nodes without out-links */
+		DANGLING_NODES,
+		/** L1 distance to the previous ranks, times 1e15 */
+		RESIDUAL,
+		/** rank of the nodes without out-links, times 1e15 */
+		DANGLING_MASS
+	}
+
+	/**
+	 * Sends each edge to its source, and its target to itself so that nodes
+	 * without out-links are not lost.
+	 */
+	public static class GraphMap extends Mapper<LongWritable, Text, Text, Text> {
+		private Text from = new Text();
+		private Text to = new Text();
+		private Text none = new Text();
+
+		public void map(LongWritable offset, Text line, Context context) throws IOException, InterruptedException {
+			String edge = line.toString();
+			if (edge.isEmpty() || edge.startsWith("#")) {
+				return;
+			}
+			String[] nodes = edge.split(TAB);
+			from.set(nodes[0]);
+			to.set(nodes[1]);
+			context.write(from, to);
+			context.write(to, none);
+		}
+	}
+
+	/**
+	 * Writes a node with the initial rank and its out-links.
+	 */
+	public static class GraphReduce extends Reducer<Text, Text, Text, Text> {
+		private StringBuilder links = new StringBuilder();
+		private Text value = new Text();
+
+		public void reduce(Text node, Iterable<Text> targets, Context context) throws IOException,
+				InterruptedException {
+			links.setLength(0);
+			for (Text target : targets) {
+				if (target.getLength() == 0) {
+					continue;
+				}
+				if (links.length() > 0) {
+					links.append(LINK_SEPARATOR);
+				}
+				links.append(target.toString());
+			}
+			context.getCounter(Counters.NODES).increment(1);
+			if (links.length() == 0) {
+				context.getCounter(Counters.DANGLING_NODES).increment(1);
+			}
+			value.set("0" + TAB_CHAR + links);
+			context.write(node, value);
+		}
+	}
+
+	/**
+	 * Sends a node its structure and its out-links their share of its rank.
+	 */
+	public static class RankMap extends Mapper<LongWritable, Text, Text, VertexWritable> {
+		private double initialRank;
+		private Text node = new Text();
+		private Text links = new Text();
+		private Text target = new Text();
+		private VertexWritable vertex = new VertexWritable();
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			initialRank = 1.0 / context.getConfiguration().getLong(NODES, 1);
+		}
+
+		public void map(LongWritable offset, Text line, Context context) throws IOException, InterruptedException {
+			String[] fields = line.toString().split(TAB, -1);
+			node.set(fields[0]);
+			double rank = Double.parseDouble(fields[1]);
+			// a rank is never 0 once computed, (1-d)/N being its least value
+			if (rank == 0) {
+				rank = initialRank;
+			}
+			String outLinks = fields.length > 2 ? fields[2] : "";
+			links.set(outLinks);
+			context.write(node, vertex.setStructure(rank, links));
+			if (outLinks.isEmpty()) {
+				return;
+			}
+			String[] targets = outLinks.split(String.valueOf(LINK_SEPARATOR));
+			vertex.setMessage(rank / targets.length);
+			for (String to : targets) {
+				target.set(to);
+				context.write(target, vertex);
+			}
+		}
+	}
+
+	/**
+	 * Sums the rank sent to a node and writes it back with its structure.
+	 */
+	public static class RankReduce extends Reducer<Text, VertexWritable, Text, Text> {
+		private double base;
+		private Text links = new Text();
+		private Text value = new Text();
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			Configuration conf = context.getConfiguration();
+			long nodes = conf.getLong(NODES, 1);
+			double dangling = Double.parseDouble(conf.get(DANGLING_MASS, "0"));
+			base = (1 - DAMPING_FACTOR) / nodes + DAMPING_FACTOR * dangling / nodes;
+		}
+
+		public void reduce(Text node, Iterable<VertexWritable> values, Context context) throws IOException,
+				InterruptedException {
+			double previous = 0;
+			double sum = 0;
+			links.clear();
+			// every node, target or not, has its structure from the graph job
+			for (VertexWritable vertex : values) {
+				if (vertex.isStructure()) {
+					previous = vertex.getRank();
+					links.set(vertex.getLinks());
+				} else {
+					sum += vertex.getRank();
+				}
+			}
+			update(context, node, base + DAMPING_FACTOR * sum, previous, links, value);
+		}
+	}
+
+	/**
+	 * Schimmy mapper: sends the out-links of a node their share of its rank,
+	 * but not its structure.
+	 */
+	public static class SchimmyMap extends Mapper<LongWritable, Text, Text, DoubleWritable> {
+		private double initialRank;
+		private Text target = new Text();
+		private DoubleWritable share = new DoubleWritable();
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			initialRank = 1.0 / context.getConfiguration().getLong(NODES, 1);
+		}
+
+		public void map(LongWritable offset, Text line, Context context) throws IOException, InterruptedException {
+			String[] fields = line.toString().split(TAB, -1);
+			if (fields.length < 3 || fields[2].isEmpty()) {
+				return;
+			}
+			double rank = Double.parseDouble(fields[1]);
+			if (rank == 0) {
+				rank = initialRank;
+			}
+			String[] targets = fields[2].split(String.valueOf(LINK_SEPARATOR));
+			share.set(rank / targets.length);
+			for (String to : targets) {
+				target.set(to);
+				context.write(target, share);
+			}
+		}
+	}
+
+	/**
+	 * Schimmy reducer: merges the sorted shares it receives with the lines of
+	 * the previous iteration written by the reducer of the same partition,
+	 * read from the file system. Nodes that received nothing are written with
+	 * the base rank. <br>
+	 * The merge only holds if the part is the one of its partition: the task
+	 * fails with an IOException unless the previous iteration has one part
+	 * per reducer, the keys are hash partitioned and sorted in the bytes
+	 * order of {@link Text}, and every node of the part hashes to the
+	 * partition and comes after the one before it.
+	 */
+	public static class SchimmyReduce extends Reducer<Text, DoubleWritable, Text, Text> {
+		private double base;
+		private double initialRank;
+		private Path part;
+		private LineReader structure;
+		private boolean pending;
+		private int partition;
+		private int reducers;
+		private HashPartitioner<Text, Object> partitioner = new HashPartitioner<Text, Object>();
+		private Text line = new Text();
+		private Text node = new Text();
+		private Text lastNode = new Text();
+		private boolean first = true;
+		private double previous;
+		private Text links = new Text();
+		private Text value = new Text();
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			Configuration conf = context.getConfiguration();
+			long nodes = conf.getLong(NODES, 1);
+			double dangling = Double.parseDouble(conf.get(DANGLING_MASS, "0"));
+			base = (1 - DAMPING_FACTOR) / nodes + DAMPING_FACTOR * dangling / nodes;
+			initialRank = 1.0 / nodes;
+			// same partitioner and number of reducers as the job that wrote it
+			partition = context.getTaskAttemptID().getTaskID().getId();
+			reducers = context.getNumReduceTasks();
+			Path folder = new Path(conf.get(STRUCTURE));
+			FileSystem fs = folder.getFileSystem(conf);
+			int parts = fs.globStatus(new Path(folder, "part-r-*")).length;
+			if (parts != reducers) {
+				throw new IOException(folder + " was written by " + parts + " reducers, not " + reducers);
+			}
+			try {
+				if (!HashPartitioner.class.equals(context.getPartitionerClass())) {
+					throw new IOException("Partitioned by " + context.getPartitionerClass().getName()
+							+ " instead of the HashPartitioner of the structure");
+				}
+			} catch (ClassNotFoundException e) {
+				throw new IOException("Partitioner not found", e);
+			}
+			// the keys have to come in the order of Text.compareTo, the one
+			// of the merge with the structure
+			if (!(context.getSortComparator() instanceof Text.Comparator)) {
+				throw new IOException("Keys sorted by " + context.getSortComparator().getClass().getName()
+						+ " instead of the bytes order of the structure");
+			}
+			part = new Path(folder, String.format("part-r-%05d", partition));
+			structure = new LineReader(fs.open(part), conf);
+			pending = readNode();
+		}
+
+		public void reduce(Text key, Iterable<DoubleWritable> shares, Context context) throws IOException,
+				InterruptedException {
+			while (pending && node.compareTo(key) < 0) {
+				update(context, node, base, previous, links, value);
+				pending = readNode();
+			}
+			if (!pending || node.compareTo(key) != 0) {
+				throw new IOException("No structure for " + key + " in " + part);
+			}
+			double sum = 0;
+			for (DoubleWritable share : shares) {
+				sum += share.get();
+			}
+			update(context, node, base + DAMPING_FACTOR * sum, previous, links, value);
+			pending = readNode();
+		}
+
+		@Override
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			try {
+				while (pending) {
+					update(context, node, base, previous, links, value);
+					pending = readNode();
+				}
+			} finally {
+				structure.close();
+			}
+		}
+
+		/**
+		 * Reads the next line of the structure into the node, its rank and
+		 * its out-links.
+		 *
+		 * @return false at the end of the partition
+		 */
+		private boolean readNode() throws IOException {
+			if (structure.readLine(line) == 0) {
+				return false;
+			}
+			byte[] bytes = line.getBytes();
+			int length = line.getLength();
+			int tab = find(bytes, 0, length);
+			int end = find(bytes, tab + 1, length);
+			node.set(bytes, 0, tab);
+			if (!first && node.compareTo(lastNode) <= 0) {
+				throw new IOException(part + " is not sorted: " + node + " after " + lastNode);
+			}
+			if (partitioner.getPartition(node, null, reducers) != partition) {
+				throw new IOException(node + " of " + part + " is not in partition " + partition);
+			}
+			lastNode.set(node);
+			first = false;
+			previous = Double.parseDouble(Text.decode(bytes, tab + 1, (end < 0 ? length : end) - tab - 1));
+			if (previous == 0) {
+				previous = initialRank;
+			}
+			if (end < 0) {
+				links.clear();
+			} else {
+				links.set(bytes, end + 1, length - end - 1);
+			}
+			return true;
+		}
+
+		private static int find(byte[] bytes, int start, int end) {
+			for (int i = start; i < end; i++) {
+				if (bytes[i] == '\t') {
+					return i;
+				}
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * Writes the node with its new rank and adds to the {@link Counters}.
+	 */
+	private static void update(TaskInputOutputContext<?, ?, Text, Text> context, Text node, double rank,
+			double previous, Text links, Text value) throws IOException, InterruptedException {
+		context.getCounter(Counters.RESIDUAL).increment(Math.round(Math.abs(rank - previous) * COUNTER_SCALE));
+		if (links.getLength() == 0) {
+			context.getCounter(Counters.DANGLING_MASS).increment(Math.round(rank * COUNTER_SCALE));
+		}
+		value.set(rank + TAB_CHAR + links);
+		context.write(node, value);
+	}
+
+	/**
+	 * Keeps the node and the rank of the lines.
+	 */
+	public static class OutputMap extends Mapper<LongWritable, Text, Text, Text> {
+		private Text node = new Text();
+		private Text rank = new Text();
+
+		public void map(LongWritable offset, Text line, Context context) throws IOException, InterruptedException {
+			String[] fields = line.toString().split(TAB, -1);
+			node.set(fields[0]);
+			rank.set(fields[1]);
+			context.write(node, rank);
+		}
+	}
+
+	public int run(String[] args) throws Exception {
+		Configuration conf = new Configuration(getConf());
+		int reducers = 1;
+		boolean schimmy = false;
+		List<String> other_args = new ArrayList<String>();
+		for (int i = 0; i < args.length; ++i) {
+			try {
+				if (REDUCER_PARAM.equals(args[i])) {
+					reducers = Integer.parseInt(args[++i]);
+				} else if (ITERATIONS_PARAM.equals(args[i])) {
+					conf.setInt(MAX_ITERATIONS, Integer.parseInt(args[++i]));
+				} else if (TOLERANCE_PARAM.equals(args[i])) {
+					conf.setFloat(TOLERANCE, Float.parseFloat(args[++i]));
+				} else if (SCHIMMY_PARAM.equals(args[i])) {
+					schimmy = true;
+				} else {
+					other_args.add(args[i]);
+				}
+			} catch (NumberFormatException except) {
+				System.out.println("ERROR: Number expected instead of " + args[i]);
+				return printUsage();
+			} catch (ArrayIndexOutOfBoundsException except) {
+				System.out.println("ERROR: Required parameter missing from " + args[i - 1]);
+				return printUsage();
+			}
+		}
+		// Make sure there are exactly 2 parameters left.
+		if (other_args.size() != 2) {
+			System.out.println("ERROR: Wrong number of parameters: " + other_args.size() + " instead of 2.");
+			return printUsage();
+		}
+		double tolerance = conf.getFloat(TOLERANCE, TOLERANCE_DEFAULT_VALUE);
+		int maxIterations = conf.getInt(MAX_ITERATIONS, MAX_ITERATIONS_DEFAULT_VALUE);
+
+		Path in = new Path(other_args.get(0));
+		Path out = new Path(other_args.get(1));
+		FileSystem fs = FileSystem.get(conf);
+		fs.delete(out, true);
+		Path folder = fs.makeQualified(new Path(conf.get("hadoop.tmp.dir"), "pagerank-" + System.currentTimeMillis()));
+		try {
+			// 1. adjacency lists with the initial ranks
+			Path ranks = new Path(folder, "iteration-0");
+			@SuppressWarnings("deprecation")
+			Job graph = new Job(conf, "Coursework 2 - PageRank graph");
+			graph.setJarByClass(IterativePageRank.class);
+			graph.setMapperClass(GraphMap.class);
+			graph.setReducerClass(GraphReduce.class);
+			// the partitioning the schimmy reducers rely on
+			graph.setPartitionerClass(HashPartitioner.class);
+			graph.setNumReduceTasks(reducers);
+			graph.setOutputKeyClass(Text.class);
+			graph.setOutputValueClass(Text.class);
+			FileInputFormat.setInputPaths(graph, in);
+			FileOutputFormat.setOutputPath(graph, ranks);
+			if (!graph.waitForCompletion(true)) {
+				return 1;
+			}
+			long nodes = graph.getCounters().findCounter(Counters.NODES).getValue();
+			long danglingNodes = graph.getCounters().findCounter(Counters.DANGLING_NODES).getValue();
+			double danglingMass = (double) danglingNodes / nodes;
+			conf.setLong(NODES, nodes);
+			_log.info("Graph of " + nodes + " nodes, " + danglingNodes + " without out-links");
+
+			// 2. one job per iteration, until the residual is below the
+			// tolerance
+			for (int iteration = 1; iteration <= maxIterations; iteration++) {
+				conf.set(DANGLING_MASS, Double.toString(danglingMass));
+				conf.set(STRUCTURE, ranks.toString());
+				Path next = new Path(folder, "iteration-" + iteration);
+				@SuppressWarnings("deprecation")
+				Job job = new Job(conf, "Coursework 2 - PageRank iteration " + iteration);
+				job.setJarByClass(IterativePageRank.class);
+				if (schimmy) {
+					job.setMapperClass(SchimmyMap.class);
+					job.setCombinerClass(PageRank.Combine.class);
+					job.setReducerClass(SchimmyReduce.class);
+					job.setMapOutputValueClass(DoubleWritable.class);
+				} else {
+					job.setMapperClass(RankMap.class);
+					job.setReducerClass(RankReduce.class);
+					job.setMapOutputValueClass(VertexWritable.class);
+				}
+				job.setPartitionerClass(HashPartitioner.class);
+				job.setNumReduceTasks(reducers);
+				job.setMapOutputKeyClass(Text.class);
+				job.setOutputKeyClass(Text.class);
+				job.setOutputValueClass(Text.class);
+				FileInputFormat.setInputPaths(job, ranks);
+				FileOutputFormat.setOutputPath(job, next);
+				long start = System.currentTimeMillis();
+				if (!job.waitForCompletion(true)) {
+					return 1;
+				}
+				long time = System.currentTimeMillis() - start;
+				double residual = job.getCounters().findCounter(Counters.RESIDUAL).getValue() / COUNTER_SCALE;
+				danglingMass = job.getCounters().findCounter(Counters.DANGLING_MASS).getValue() / COUNTER_SCALE;
+				long shuffled = job.getCounters().findCounter(TASK_COUNTERS, "MAP_OUTPUT_MATERIALIZED_BYTES").getValue();
+				_log.info(String.format("Iteration %d: %d ms, %d bytes shuffled, residual %.3e, dangling mass %.6f",
+						iteration, time, shuffled, residual, danglingMass));
+				fs.delete(ranks, true);
+				ranks = next;
+				if (residual < tolerance) {
+					_log.info("Converged after " + iteration + " iterations");
+					break;
+				}
+			}
+
+			// 3. node and rank of the last iteration
+			@SuppressWarnings("deprecation")
+			Job output = new Job(conf, "Coursework 2 - PageRank output");
+			output.setJarByClass(IterativePageRank.class);
+			output.setMapperClass(OutputMap.class);
+			output.setNumReduceTasks(0);
+			output.setOutputKeyClass(Text.class);
+			output.setOutputValueClass(Text.class);
+			FileInputFormat.setInputPaths(output, ranks);
+			FileOutputFormat.setOutputPath(output, out);
+			return output.waitForCompletion(true) ? 0 : 1;
+		} finally {
+			fs.delete(folder, true);
+		}
+	}
+
+	private static int printUsage() {
+		System.out.println("iterativePageRank [-r <reduces>] [-i <max iterations>] [-t <tolerance>] [-s] <input> <output>");
+		ToolRunner.printGenericCommandUsage(System.out);
+		return -1;
+	}
+
+	public static void main(String[] args) throws Exception {
+		String[] parameters = { "assets/epinions_social_network/input", "assets/epinions_social_network/output" };
+		if (args != null && args.length >= 2) {
+			parameters = args;
+		}
+		int res = ToolRunner.run(new Configuration(), new IterativePageRank(), parameters);
+		System.exit(res);
+	}
+}
@@ -0,0 +1,439 @@
+package com.hadoop.coursework2;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.VLongWritable;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.reduce.IntSumReducer;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+import com.hadoop.corpus.EncodeCorpus;
+import com.hadoop.corpus.TermDictionary;
+import com.hadoop.coursework2.IterativePageRank.Counters;
+import com.hadoop.coursework2.model.NumericVertexWritable;
+import com.hadoop.coursework2.util.VLongComparator;
+
+/**
+ * {@link IterativePageRank} over numeric node ids: the ids of the edge list
+ * are parsed once, by the graph job, and every job after it keys the nodes by
+ * {@link VLongWritable}, sorted on their bytes by the {@link VLongComparator},
+ * and carries their out-links as VLongs in {@link NumericVertexWritable}
+ * values. The iterations read and write SequenceFiles, so no rank or link is
+ * parsed from text again. <br>
+ * <br>
+ * Ids have to be non-negative longs, as in the SNAP edge lists. With
+ * <b>-d</b> any name is accepted: a first job counts the links of each node
+ * and the driver numbers them by decreasing count into a
+ * {@link TermDictionary}, so the most linked nodes have the shortest VLongs;
+ * the ranks are written with the names back. <br>
+ * Each iteration logs its time and its shuffled bytes, to be compared with
+ * the ones of {@link IterativePageRank}. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class NumericPageRank extends Configured implements Tool {
+
+	private static final String REDUCER_PARAM = "-r";
+	private static final String ITERATIONS_PARAM = "-i";
+	private static final String TOLERANCE_PARAM = "-t";
+	private static final String DICTIONARY_PARAM = "-d";
+	/** value of the graph job standing for no link */
+	private static final long NONE = -1;
+
+	private static Logger _log = Logger.getLogger(NumericPageRank.class.getName());
+
+	/**
+	 * Reads the ids of the edge list as numbers, or through the dictionary
+	 * when there is one.
+	 */
+	static abstract class EdgeMap<K, V> extends Mapper<LongWritable, Text, K, V> {
+		private TermDictionary dictionary;
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			if (context.getConfiguration().get(TermDictionary.DICTIONARY) != null) {
+				dictionary = TermDictionary.load(context.getConfiguration());
+			}
+		}
+
+		/**
+		 * @return the id of the node of the bytes
+		 */
+		protected long id(byte[] bytes, int start, int end) {
+			if (dictionary != null) {
+				return dictionary.getId(bytes, start, end - start);
+			}
+			if (start == end) {
+				throw new NumberFormatException("Empty node id");
+			}
+			long id = 0;
+			for (int i = start; i < end; i++) {
+				int digit = bytes[i] - '0';
+				if (digit < 0 || digit > 9) {
+					throw new NumberFormatException("Node id " + new String(bytes, start, end - start)
+							+ " is not numeric, use " + DICTIONARY_PARAM);
+				}
+				id = id * 10 + digit;
+			}
+			return id;
+		}
+	}
+
+	/**
+	 * Sends each node of the edges a one, to number them by their links.
+	 */
+	public static class NameMap extends Mapper<LongWritable, Text, Text, IntWritable> {
+		private Text node = new Text();
+		private IntWritable one = new IntWritable(1);
+
+		public void map(LongWritable offset, Text line, Context context) throws IOException, InterruptedException {
+			byte[] bytes = line.getBytes();
+			int length = line.getLength();
+			if (length == 0 || bytes[0] == '#') {
+				return;
+			}
+			int tab = find(bytes, 0, length);
+			int end = find(bytes, tab + 1, length);
+			node.set(bytes, 0, tab);
+			context.write(node, one);
+			node.set(bytes, tab + 1, (end < 0 ? length : end) - tab - 1);
+			context.write(node, one);
+		}
+	}
+
+	/**
+	 * Sends each edge to its source, and its target to itself so that nodes
+	 * without out-links are not lost.
+	 */
+	public static class GraphMap extends EdgeMap<VLongWritable, VLongWritable> {
+		private VLongWritable from = new VLongWritable();
+		private VLongWritable to = new VLongWritable();
+		private VLongWritable none = new VLongWritable(NONE);
+
+		public void map(LongWritable offset, Text line, Context context) throws IOException, InterruptedException {
+			byte[] bytes = line.getBytes();
+			int length = line.getLength();
+			if (length == 0 || bytes[0] == '#') {
+				return;
+			}
+			int tab = find(bytes, 0, length);
+			int end = find(bytes, tab + 1, length);
+			from.set(id(bytes, 0, tab));
+			to.set(id(bytes, tab + 1, end < 0 ? length : end));
+			context.write(from, to);
+			context.write(to, none);
+		}
+	}
+
+	/**
+	 * Writes a node with the initial rank, 0, and its out-links.
+	 */
+	public static class GraphReduce extends
+			Reducer<VLongWritable, VLongWritable, VLongWritable, NumericVertexWritable> {
+		private NumericVertexWritable vertex = new NumericVertexWritable();
+
+		public void reduce(VLongWritable node, Iterable<VLongWritable> targets, Context context) throws IOException,
+				InterruptedException {
+			vertex.setStructure(0);
+			for (VLongWritable target : targets) {
+				if (target.get() != NONE) {
+					vertex.addLink(target.get());
+				}
+			}
+			context.getCounter(Counters.NODES).increment(1);
+			if (vertex.getSize() == 0) {
+				context.getCounter(Counters.DANGLING_NODES).increment(1);
+			}
+			context.write(node, vertex);
+		}
+	}
+
+	/**
+	 * Sends a node its structure and its out-links their share of its rank.
+	 */
+	public static class RankMap extends
+			Mapper<VLongWritable, NumericVertexWritable, VLongWritable, NumericVertexWritable> {
+		private double initialRank;
+		private VLongWritable target = new VLongWritable();
+		private NumericVertexWritable message = new NumericVertexWritable();
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			initialRank = 1.0 / context.getConfiguration().getLong(IterativePageRank.NODES, 1);
+		}
+
+		public void map(VLongWritable node, NumericVertexWritable vertex, Context context) throws IOException,
+				InterruptedException {
+			double rank = vertex.getRank();
+			// a rank is never 0 once computed, (1-d)/N being its least value
+			if (rank == 0) {
+				rank = initialRank;
+				vertex.setRank(rank);
+			}
+			context.write(node, vertex);
+			int links = vertex.getSize();
+			if (links == 0) {
+				return;
+			}
+			message.setMessage(rank / links);
+			for (int i = 0; i < links; i++) {
+				target.set(vertex.getLink(i));
+				context.write(target, message);
+			}
+		}
+	}
+
+	/**
+	 * Sums the rank sent to a node and writes it back with its structure.
+	 */
+	public static class RankReduce extends
+			Reducer<VLongWritable, NumericVertexWritable, VLongWritable, NumericVertexWritable> {
+		private double base;
+		private NumericVertexWritable structure = new NumericVertexWritable();
+		private NumericVertexWritable vertex = new NumericVertexWritable();
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			Configuration conf = context.getConfiguration();
+			long nodes = conf.getLong(IterativePageRank.NODES, 1);
+			double dangling = Double.parseDouble(conf.get(IterativePageRank.DANGLING_MASS, "0"));
+			base = (1 - IterativePageRank.DAMPING_FACTOR) / nodes + IterativePageRank.DAMPING_FACTOR * dangling
+					/ nodes;
+		}
+
+		public void reduce(VLongWritable node, Iterable<NumericVertexWritable> values, Context context)
+				throws IOException, InterruptedException {
+			double sum = 0;
+			structure.setStructure(0);
+			// every node, target or not, has its structure from the graph job
+			for (NumericVertexWritable value : values) {
+				if (value.isStructure()) {
+					structure.setStructure(value.getRank(), value);
+				} else {
+					sum += value.getRank();
+				}
+			}
+			double rank = base + IterativePageRank.DAMPING_FACTOR * sum;
+			context.getCounter(Counters.RESIDUAL).increment(
+					Math.round(Math.abs(rank - structure.getRank()) * IterativePageRank.COUNTER_SCALE));
+			if (structure.getSize() == 0) {
+				context.getCounter(Counters.DANGLING_MASS).increment(
+						Math.round(rank * IterativePageRank.COUNTER_SCALE));
+			}
+			context.write(node, vertex.setStructure(rank, structure));
+		}
+	}
+
+	/**
+	 * Writes the node, by name when there is a dictionary, and its rank.
+	 */
+	public static class OutputMap extends Mapper<VLongWritable, NumericVertexWritable, Text, Text> {
+		private TermDictionary dictionary;
+		private Text name = new Text();
+		private Text rank = new Text();
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			if (context.getConfiguration().get(TermDictionary.DICTIONARY) != null) {
+				dictionary = TermDictionary.load(context.getConfiguration());
+			}
+		}
+
+		public void map(VLongWritable node, NumericVertexWritable vertex, Context context) throws IOException,
+				InterruptedException {
+			if (dictionary != null) {
+				dictionary.getTerm((int) node.get(), name);
+			} else {
+				name.set(Long.toString(node.get()));
+			}
+			rank.set(Double.toString(vertex.getRank()));
+			context.write(name, rank);
+		}
+	}
+
+	private static int find(byte[] bytes, int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (bytes[i] == '\t') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public int run(String[] args) throws Exception {
+		Configuration conf = new Configuration(getConf());
+		int reducers = 1;
+		boolean names = false;
+		List<String> other_args = new ArrayList<String>();
+		for (int i = 0; i < args.length; ++i) {
+			try {
+				if (REDUCER_PARAM.equals(args[i])) {
+					reducers = Integer.parseInt(args[++i]);
+				} else if (ITERATIONS_PARAM.equals(args[i])) {
+					conf.setInt(IterativePageRank.MAX_ITERATIONS, Integer.parseInt(args[++i]));
+				} else if (TOLERANCE_PARAM.equals(args[i])) {
+					conf.setFloat(IterativePageRank.TOLERANCE, Float.parseFloat(args[++i]));
+				} else if (DICTIONARY_PARAM.equals(args[i])) {
+					names = true;
+				} else {
+					other_args.add(args[i]);
+				}
+			} catch (NumberFormatException except) {
+				System.out.println("ERROR: Number expected instead of " + args[i]);
+				return printUsage();
+			} catch (ArrayIndexOutOfBoundsException except) {
+				System.out.println("ERROR: Required parameter missing from " + args[i - 1]);
+				return printUsage();
+			}
+		}
+		// Make sure there are exactly 2 parameters left.
+		if (other_args.size() != 2) {
+			System.out.println("ERROR: Wrong number of parameters: " + other_args.size() + " instead of 2.");
+			return printUsage();
+		}
+		double tolerance = conf.getFloat(IterativePageRank.TOLERANCE, IterativePageRank.TOLERANCE_DEFAULT_VALUE);
+		int maxIterations = conf.getInt(IterativePageRank.MAX_ITERATIONS,
+				IterativePageRank.MAX_ITERATIONS_DEFAULT_VALUE);
+
+		Path in = new Path(other_args.get(0));
+		Path out = new Path(other_args.get(1));
+		FileSystem fs = FileSystem.get(conf);
+		fs.delete(out, true);
+		Path folder = fs.makeQualified(new Path(conf.get("hadoop.tmp.dir"), "numeric-pagerank-"
+				+ System.currentTimeMillis()));
+		try {
+			// 0. node names numbered by their links
+			if (names) {
+				@SuppressWarnings("deprecation")
+				Job count = new Job(conf, "Coursework 2 - PageRank node names");
+				count.setJarByClass(NumericPageRank.class);
+				count.setMapperClass(NameMap.class);
+				count.setCombinerClass(IntSumReducer.class);
+				count.setReducerClass(IntSumReducer.class);
+				count.setNumReduceTasks(reducers);
+				count.setOutputKeyClass(Text.class);
+				count.setOutputValueClass(IntWritable.class);
+				count.setOutputFormatClass(SequenceFileOutputFormat.class);
+				FileInputFormat.setInputPaths(count, in);
+				FileOutputFormat.setOutputPath(count, new Path(folder, "names"));
+				if (!count.waitForCompletion(true)) {
+					return 1;
+				}
+				Path dictionary = new Path(folder, "dictionary");
+				EncodeCorpus.writeDictionary(conf, fs, new Path(folder, "names"), dictionary);
+				TermDictionary.setDictionary(conf, dictionary);
+			}
+
+			// 1. adjacency lists with the initial ranks
+			Path ranks = new Path(folder, "iteration-0");
+			@SuppressWarnings("deprecation")
+			Job graph = new Job(conf, "Coursework 2 - PageRank numeric graph");
+			graph.setJarByClass(NumericPageRank.class);
+			graph.setMapperClass(GraphMap.class);
+			graph.setReducerClass(GraphReduce.class);
+			graph.setNumReduceTasks(reducers);
+			graph.setSortComparatorClass(VLongComparator.class);
+			graph.setMapOutputKeyClass(VLongWritable.class);
+			graph.setMapOutputValueClass(VLongWritable.class);
+			graph.setOutputKeyClass(VLongWritable.class);
+			graph.setOutputValueClass(NumericVertexWritable.class);
+			graph.setOutputFormatClass(SequenceFileOutputFormat.class);
+			FileInputFormat.setInputPaths(graph, in);
+			FileOutputFormat.setOutputPath(graph, ranks);
+			if (!graph.waitForCompletion(true)) {
+				return 1;
+			}
+			long nodes = graph.getCounters().findCounter(Counters.NODES).getValue();
+			long danglingNodes = graph.getCounters().findCounter(Counters.DANGLING_NODES).getValue();
+			double danglingMass = (double) danglingNodes / nodes;
+			conf.setLong(IterativePageRank.NODES, nodes);
+			_log.info("Graph of " + nodes + " nodes, " + danglingNodes + " without out-links");
+
+			// 2. one job per iteration, until the residual is below the
+			// tolerance
+			for (int iteration = 1; iteration <= maxIterations; iteration++) {
+				conf.set(IterativePageRank.DANGLING_MASS, Double.toString(danglingMass));
+				Path next = new Path(folder, "iteration-" + iteration);
+				@SuppressWarnings("deprecation")
+				Job job = new Job(conf, "Coursework 2 - PageRank numeric iteration " + iteration);
+				job.setJarByClass(NumericPageRank.class);
+				job.setInputFormatClass(SequenceFileInputFormat.class);
+				job.setMapperClass(RankMap.class);
+				job.setReducerClass(RankReduce.class);
+				job.setNumReduceTasks(reducers);
+				job.setSortComparatorClass(VLongComparator.class);
+				job.setOutputKeyClass(VLongWritable.class);
+				job.setOutputValueClass(NumericVertexWritable.class);
+				job.setOutputFormatClass(SequenceFileOutputFormat.class);
+				FileInputFormat.setInputPaths(job, ranks);
+				FileOutputFormat.setOutputPath(job, next);
+				long start = System.currentTimeMillis();
+				if (!job.waitForCompletion(true)) {
+					return 1;
+				}
+				long time = System.currentTimeMillis() - start;
+				org.apache.hadoop.mapreduce.Counters counters = job.getCounters();
+				double residual = counters.findCounter(Counters.RESIDUAL).getValue() / IterativePageRank.COUNTER_SCALE;
+				danglingMass = counters.findCounter(Counters.DANGLING_MASS).getValue() / IterativePageRank.COUNTER_SCALE;
+				long shuffled = counters.findCounter(IterativePageRank.TASK_COUNTERS, "MAP_OUTPUT_MATERIALIZED_BYTES")
+						.getValue();
+				_log.info(String.format("Iteration %d: %d ms, %d bytes shuffled, residual %.3e, dangling mass %.6f",
+						iteration, time, shuffled, residual, danglingMass));
+				fs.delete(ranks, true);
+				ranks = next;
+				if (residual < tolerance) {
+					_log.info("Converged after " + iteration + " iterations");
+					break;
+				}
+			}
+
+			// 3. node and rank of the last iteration
+			@SuppressWarnings("deprecation")
+			Job output = new Job(conf, "Coursework 2 - PageRank numeric output");
+			output.setJarByClass(NumericPageRank.class);
+			output.setInputFormatClass(SequenceFileInputFormat.class);
+			output.setMapperClass(OutputMap.class);
+			output.setNumReduceTasks(0);
+			output.setOutputKeyClass(Text.class);
+			output.setOutputValueClass(Text.class);
+			FileInputFormat.setInputPaths(output, ranks);
+			FileOutputFormat.setOutputPath(output, out);
+			return output.waitForCompletion(true) ? 0 : 1;
+		} finally {
+			fs.delete(folder, true);
+		}
+	}
+
+	private static int printUsage() {
+		System.out.println("numericPageRank [-r <reduces>] [-i <max iterations>] [-t <tolerance>] [-d] <input> <output>");
+		ToolRunner.printGenericCommandUsage(System.out);
+		return -1;
+	}
+
+	public static void main(String[] args) throws Exception {
+		String[] parameters = { "assets/epinions_social_network/input", "assets/epinions_social_network/output" };
+		if (args != null && args.length >= 2) {
+			parameters = args;
+		}
+		int res = ToolRunner.run(new Configuration(), new NumericPageRank(), parameters);
+		System.exit(res);
+	}
+}
@@ -6,9 +6,7 @@ import static com.hadoop.coursework2.util.MultiLineRecordReader.WITH_VALUE;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.Queue;
 
@@ -19,6 +17,7 @@ import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.DoubleWritable;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Counters;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
@@ -35,6 +34,11 @@ import com.hadoop.coursework2.util.MultiLineInputFormat;
 /**
  * Cloud Computing Cousework 2 - Implementation of PageRank<br>
  * <br>
+ * The mapper sends each target the rank of its source divided by the links
+ * of the source, as a single double, and the combiner sums them by target on
+ * the map side (<b>-nc</b> turns it off). The shuffle counters of the job are
+ * logged at the end. <br>
+ * <br>
  * 
  * @author pmonteiro
  *
@@ -42,11 +46,18 @@ import com.hadoop.coursework2.util.MultiLineInputFormat;
 public class PageRank extends Configured implements Tool {
 
 	private static final String REDUCER_PARAM = "-r";
-	
-	public static class MapClass extends Mapper<LongWritable, Text, Text, NodeWritable> {
+	private static final String NO_COMBINER_PARAM = "-nc";
+	private static final String TASK_COUNTERS = "org.apache.hadoop.mapred.Task$Counter";
+	private static final String[] SHUFFLE_COUNTERS = { "MAP_OUTPUT_RECORDS", "MAP_OUTPUT_BYTES",
+			"COMBINE_OUTPUT_RECORDS", "MAP_OUTPUT_MATERIALIZED_BYTES", "REDUCE_INPUT_RECORDS" };
+
+	private static Logger _log = Logger.getLogger(PageRank.class.getName());
+
+	public static class MapClass extends Mapper<LongWritable, Text, Text, DoubleWritable> {
 
 		private static Logger _log = Logger.getLogger(MapClass.class.getName());
 		Text key = new Text();
+		DoubleWritable contribution = new DoubleWritable();
 
 		public void map(LongWritable lineNumber, Text multiLine, Context context) throws IOException,
 				InterruptedException {
@@ -55,34 +66,51 @@ public class PageRank extends Configured implements Tool {
 				String[] nodes = line.toString().split(TAB);
 				NodeWritable fromNode = new NodeWritable(nodes[0], nodes[1], lines.length);
 				key.set(fromNode.getTo());
-				_log.debug("Emiting: " + key + WITH_VALUE + fromNode);
-				context.write(key, fromNode);
+				contribution.set(fromNode.getPageRank());
+				_log.debug("Emiting: " + key + WITH_VALUE + contribution);
+				context.write(key, contribution);
 			}
 		}
 	}
 
-	public static class Reduce extends Reducer<Text, NodeWritable, Text, DoubleWritable> {
+	/**
+	 * Sums the contributions of the map to each target, so that a node sends
+	 * a single value per map whatever its number of in-links.
+	 */
+	public static class Combine extends Reducer<Text, DoubleWritable, Text, DoubleWritable> {
+
+		private DoubleWritable sum = new DoubleWritable();
+
+		public void reduce(Text key, Iterable<DoubleWritable> values, Context context) throws IOException,
+				InterruptedException {
+			double contributions = 0;
+			for (DoubleWritable value : values) {
+				contributions += value.get();
+			}
+			sum.set(contributions);
+			context.write(key, sum);
+		}
+	}
+
+	public static class Reduce extends Reducer<Text, DoubleWritable, Text, DoubleWritable> {
 
 		private static Logger _log = Logger.getLogger(Reduce.class.getName());
-		private Map<Text, Node> nodesMap = new HashMap<>();
 		private List<Node> nodesMap2 = new ArrayList<>();
 		private Text key = new Text();
 		private DoubleWritable value = new DoubleWritable(0);
 		private Queue<Node> priorityQueue = new PriorityQueue<>();
 		private Integer totalNodes = 0;
 
-		public void reduce(Text key, Iterable<NodeWritable> values, Context context) throws IOException,
+		public void reduce(Text key, Iterable<DoubleWritable> values, Context context) throws IOException,
 				InterruptedException {
 
 			totalNodes++;
 
-			List<NodeWritable> nodes = new ArrayList<>();
-			for (NodeWritable node : values) {
-				nodes.add(new NodeWritable(node.getFrom(), node.getTo(), node.getTotalLinks(), node
-						.getPreviousPageRank()));
+			Node node = new Node(key.toString());
+			for (DoubleWritable contribution : values) {
+				node.addContribution(contribution.get());
 			}
-//			nodesMap.put(new Text(key), new Node(key.toString(), nodes));
-			nodesMap2.add(new Node(key.toString(), nodes));
+			nodesMap2.add(node);
 
 		}
 
@@ -94,42 +122,7 @@ public class PageRank extends Configured implements Tool {
 				_log.debug("Converging: " + node);
 			}
 			
-//			convergePageRank();
-			
 			emitPageRank(context);
-//			for (Text key : nodesMap.keySet()) {
-////				value.set(nodesMap.get(key).calculateCompletePageRank(totalNodes));
-//				value.set(nodesMap.get(key).calculateSimplePageRank(totalNodes));
-//				_log.debug("Emiting: " + key + " => " + value);
-//				context.write(key, value);
-//			}
-		}
-
-		private void convergePageRank() {
-			boolean hasConverged = true;
-			do {
-				hasConverged = true;
-				for (Node node : nodesMap2) {
-					for (Node node2 : nodesMap2) {
-						if (!node.equals(node2)) {
-							for(NodeWritable nw : node2.getNodes()) {
-								if (node.getName().equals(nw.getFrom())) {
-									nw.setPreviousPageRank(node.getRank());
-									node.setPreviousRank(node.getRank());
-								}
-							}
-						}
-					}
-				}
-				
-				for (Node node : nodesMap2) {
-					node.calculateCompletePageRank(totalNodes);
-					 if ( !node.isConverged() ) {
-						 hasConverged = false;
-					 }
-					_log.debug("Converging: " + node);
-				}
-			} while (!hasConverged);
 		}
 
 		private void emitPageRank(Context context) throws IOException, InterruptedException {
@@ -147,22 +140,25 @@ public class PageRank extends Configured implements Tool {
 	}
 
 	public int run(String[] args) throws Exception {
-		Configuration conf = new Configuration();
+		Configuration conf = new Configuration(getConf());
 		Job job = new Job(conf, "Coursework 2 - PageRank");
 		job.setInputFormatClass(MultiLineInputFormat.class);
 		job.setJarByClass(PageRank.class);
 
 		job.setMapperClass(MapClass.class);
+		job.setCombinerClass(Combine.class);
 		job.setReducerClass(Reduce.class);
 
 		job.setMapOutputKeyClass(Text.class);
-		job.setMapOutputValueClass(NodeWritable.class);
+		job.setMapOutputValueClass(DoubleWritable.class);
 
 		List<String> other_args = new ArrayList<String>();
 		for (int i = 0; i < args.length; ++i) {
 			try {
 				if (REDUCER_PARAM.equals(args[i])) {
 					job.setNumReduceTasks(Integer.parseInt(args[++i]));
+				} else if (NO_COMBINER_PARAM.equals(args[i])) {
+					job.setCombinerClass(null);
 				} else {
 					other_args.add(args[i]);
 				}
@@ -181,20 +177,27 @@ public class PageRank extends Configured implements Tool {
 		}
 		
 		
-		Path in = new Path(args[0]);
+		Path in = new Path(other_args.get(0));
 		FileInputFormat.setInputPaths(job, in);
 
-		Path out = new Path(args[1]);
+		Path out = new Path(other_args.get(1));
 		FileSystem fs = FileSystem.get(conf);
 		fs.delete(out, true);
 		FileOutputFormat.setOutputPath(job, out);
 
-		System.exit(job.waitForCompletion(true) ? 0 : 1);
-		return 0;
+		boolean success = job.waitForCompletion(true);
+		Counters counters = job.getCounters();
+		StringBuilder shuffle = new StringBuilder("Shuffle:");
+		for (String counter : SHUFFLE_COUNTERS) {
+			shuffle.append(' ').append(counter).append('=')
+					.append(counters.findCounter(TASK_COUNTERS, counter).getValue());
+		}
+		_log.info(shuffle);
+		return success ? 0 : 1;
 	}
 
 	private static int printUsage() {
-		System.out.println("stripesApproach [-r <reduces>] <input> <output>");
+		System.out.println("pageRank [-r <reduces>] [-nc] <input> <output>");
 		ToolRunner.printGenericCommandUsage(System.out);
 		return -1;
 	}
@@ -0,0 +1,174 @@
+package com.hadoop.coursework2;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+import com.hadoop.coursework2.util.CsrGraph;
+
+/**
+ * Runs the {@link IterativePageRank} jobs and the {@link InMemoryPageRank}
+ * engine over the same graph and compares them. <br>
+ * <br>
+ * Each one runs <b>-n</b> times (3 by default) and the best wall time is
+ * reported; the engine is timed on one thread and, on a machine of several
+ * cores, on a pool of all of them, its load apart from its iterations, after
+ * a first untimed run to warm up the JIT. The ranks of the engine are
+ * checked against the ones of the jobs, node by node, to be within <b>-t</b>
+ * (1e-6 by default) in L1 distance. <br>
+ * The time of the jobs includes the wait of the job client, which checks on
+ * a job once a second. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class PageRankBenchmark extends Configured implements Tool {
+
+	private static final String RUNS_PARAM = "-n";
+	private static final String TOLERANCE_PARAM = "-t";
+
+	private static Logger _log = Logger.getLogger(PageRankBenchmark.class.getName());
+
+	public int run(String[] args) throws Exception {
+		int runs = 3;
+		float tolerance = IterativePageRank.TOLERANCE_DEFAULT_VALUE;
+		List<String> other_args = new ArrayList<String>();
+		for (int i = 0; i < args.length; ++i) {
+			try {
+				if (RUNS_PARAM.equals(args[i])) {
+					runs = Integer.parseInt(args[++i]);
+				} else if (TOLERANCE_PARAM.equals(args[i])) {
+					tolerance = Float.parseFloat(args[++i]);
+				} else {
+					other_args.add(args[i]);
+				}
+			} catch (NumberFormatException except) {
+				System.out.println("ERROR: Number expected instead of " + args[i]);
+				return printUsage();
+			} catch (ArrayIndexOutOfBoundsException except) {
+				System.out.println("ERROR: Required parameter missing from " + args[i - 1]);
+				return printUsage();
+			}
+		}
+		if (other_args.size() != 2) {
+			System.out.println("ERROR: Wrong number of parameters: " + other_args.size() + " instead of 2.");
+			return printUsage();
+		}
+
+		Path in = new Path(other_args.get(0));
+		Path out = new Path(other_args.get(1));
+		Path jobOutput = new Path(out, "mapreduce");
+		Path engineOutput = new Path(out, "in-memory");
+		String[] jobArgs = { TOLERANCE_PARAM, Float.toString(tolerance), in.toString(),
+				jobOutput.toString() };
+		long bestJob = Long.MAX_VALUE;
+		for (int run = 0; run < runs; run++) {
+			long start = System.currentTimeMillis();
+			if (ToolRunner.run(new Configuration(getConf()), new IterativePageRank(), jobArgs) != 0) {
+				_log.error("IterativePageRank failed on " + in);
+				return 1;
+			}
+			bestJob = Math.min(bestJob, System.currentTimeMillis() - start);
+		}
+
+		FileSystem fs = in.getFileSystem(getConf());
+		long bestLoad = Long.MAX_VALUE;
+		CsrGraph graph = null;
+		for (int run = 0; run < runs; run++) {
+			long start = System.currentTimeMillis();
+			graph = CsrGraph.load(fs, in);
+			bestLoad = Math.min(bestLoad, System.currentTimeMillis() - start);
+		}
+		StringBuilder report = new StringBuilder(String.format("%n%d nodes, %d edges%n%-24s %10s %10s", graph
+				.getNodes(), graph.getEdges(), "engine", "best (ms)", "iterations"));
+		report.append(String.format("%n%-24s %10d %10s", "mapreduce", bestJob, "-"));
+		report.append(String.format("%n%-24s %10d %10s", "in-memory load", bestLoad, "-"));
+		InMemoryPageRank engine = new InMemoryPageRank();
+		double[] ranks = null;
+		int cores = Runtime.getRuntime().availableProcessors();
+		// a second pool of a single core would only time the JIT warming up
+		for (int threads : cores > 1 ? new int[] { 1, cores } : new int[] { 1 }) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			try {
+				engine.rank(graph, pool, tolerance, IterativePageRank.MAX_ITERATIONS_DEFAULT_VALUE);
+				long best = Long.MAX_VALUE;
+				for (int run = 0; run < runs; run++) {
+					long start = System.nanoTime();
+					ranks = engine.rank(graph, pool, tolerance, IterativePageRank.MAX_ITERATIONS_DEFAULT_VALUE);
+					best = Math.min(best, System.nanoTime() - start);
+				}
+				report.append(String.format("%n%-24s %10.1f %10d", "in-memory " + threads + " thread(s)", best / 1e6,
+						engine.getIterations()));
+			} finally {
+				pool.shutdown();
+			}
+		}
+		FileSystem outFs = out.getFileSystem(getConf());
+		outFs.delete(engineOutput, true);
+		InMemoryPageRank.write(outFs, engineOutput, graph, ranks);
+
+		Map<String, Double> expected = readRanks(outFs, jobOutput);
+		double distance = 0;
+		int missing = 0;
+		for (int v = 0; v < graph.getNodes(); v++) {
+			Double rank = expected.get(graph.getName(v));
+			if (rank == null) {
+				missing++;
+			} else {
+				distance += Math.abs(rank - ranks[v]);
+			}
+		}
+		report.append(String.format("%nL1 distance to the MapReduce ranks: %.3e, %d nodes missing", distance,
+				missing + Math.abs(expected.size() - graph.getNodes())));
+		System.out.println(report);
+		return missing == 0 && expected.size() == graph.getNodes() && distance < tolerance ? 0 : 1;
+	}
+
+	/**
+	 * @return the ranks of the part files of the output
+	 */
+	private static Map<String, Double> readRanks(FileSystem fs, Path output) throws IOException {
+		Map<String, Double> ranks = new HashMap<>();
+		for (FileStatus part : fs.globStatus(new Path(output, "part-*"))) {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(fs.open(part.getPath()), "UTF-8"));
+			try {
+				for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+					int tab = line.indexOf('\t');
+					ranks.put(line.substring(0, tab), Double.parseDouble(line.substring(tab + 1)));
+				}
+			} finally {
+				reader.close();
+			}
+		}
+		return ranks;
+	}
+
+	private static int printUsage() {
+		System.out.println("pageRankBenchmark [-n <runs>] [-t <tolerance>] <input> <output>");
+		ToolRunner.printGenericCommandUsage(System.out);
+		return -1;
+	}
+
+	public static void main(String[] args) throws Exception {
+		String[] parameters = { "assets/epinions_social_network/input", "assets/benchmark/pagerank" };
+		if (args != null && args.length >= 2) {
+			parameters = args;
+		}
+		int res = ToolRunner.run(new Configuration(), new PageRankBenchmark(), parameters);
+		System.exit(res);
+	}
+}
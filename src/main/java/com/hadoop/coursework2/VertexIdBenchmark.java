@@ -0,0 +1,162 @@
+package com.hadoop.coursework2;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.VLongWritable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+import com.hadoop.coursework2.util.CsrGraph;
+import com.hadoop.coursework2.util.VLongComparator;
+
+/**
+ * Compares the keys and the structure of {@link IterativePageRank} with the
+ * ones of {@link NumericPageRank} on a graph with numeric ids. <br>
+ * <br>
+ * The map output keys of an iteration, one per edge and one per node, are
+ * serialized as {@link Text} and as {@link VLongWritable} into a buffer and
+ * sorted <b>-n</b> times (3 by default) on their bytes, with the raw
+ * comparator of each job, as the map side sort does; the best time is
+ * reported with the bytes of the keys. The bytes of the out-links of every
+ * node, comma separated text against VLongs, are reported too. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class VertexIdBenchmark extends Configured implements Tool {
+
+	private static final String RUNS_PARAM = "-n";
+
+	public int run(String[] args) throws Exception {
+		int runs = 3;
+		List<String> other_args = new ArrayList<String>();
+		for (int i = 0; i < args.length; ++i) {
+			try {
+				if (RUNS_PARAM.equals(args[i])) {
+					runs = Integer.parseInt(args[++i]);
+				} else {
+					other_args.add(args[i]);
+				}
+			} catch (NumberFormatException except) {
+				System.out.println("ERROR: Integer expected instead of " + args[i]);
+				return printUsage();
+			} catch (ArrayIndexOutOfBoundsException except) {
+				System.out.println("ERROR: Required parameter missing from " + args[i - 1]);
+				return printUsage();
+			}
+		}
+		if (other_args.size() != 1) {
+			System.out.println("ERROR: Wrong number of parameters: " + other_args.size() + " instead of 1.");
+			return printUsage();
+		}
+
+		Path in = new Path(other_args.get(0));
+		FileSystem fs = in.getFileSystem(getConf());
+		CsrGraph graph = CsrGraph.load(fs, in);
+		long[] ids = new long[graph.getNodes()];
+		for (int v = 0; v < ids.length; v++) {
+			ids[v] = Long.parseLong(graph.getName(v));
+		}
+
+		StringBuilder report = new StringBuilder(String.format("%n%d nodes, %d edges%n%-8s %12s %12s %10s",
+				graph.getNodes(), graph.getEdges(), "keys", "records", "bytes", "sort (ms)"));
+		report.append(sort("text", graph, ids, false, new Text.Comparator(), runs));
+		report.append(sort("vlong", graph, ids, true, new VLongComparator(), runs));
+
+		// Text of comma separated names against a VInt count and VLongs
+		int[] sources = graph.getSources();
+		long[] textLengths = new long[ids.length];
+		long vlongLinks = 0;
+		for (int v = 0; v < ids.length; v++) {
+			// v is an out-link of each of its sources
+			for (int e = graph.getOffset(v); e < graph.getOffset(v + 1); e++) {
+				textLengths[sources[e]] += graph.getName(v).length() + 1;
+				vlongLinks += WritableUtils.getVIntSize(ids[v]);
+			}
+		}
+		long textLinks = 0;
+		for (int v = 0; v < ids.length; v++) {
+			long length = Math.max(0, textLengths[v] - 1);
+			textLinks += WritableUtils.getVIntSize(length) + length;
+			vlongLinks += WritableUtils.getVIntSize(graph.getOutDegree(v));
+		}
+		report.append(String.format("%nOut-links of the structure: %d bytes as text, %d bytes as VLongs", textLinks,
+				vlongLinks));
+		System.out.println(report);
+		return 0;
+	}
+
+	/**
+	 * Serializes the keys of an iteration, the target of each edge and each
+	 * node, and sorts them with the comparator.
+	 */
+	private static String sort(String name, CsrGraph graph, long[] ids, boolean numeric,
+			final RawComparator<?> comparator, int runs) throws IOException {
+		int records = graph.getNodes() + graph.getEdges();
+		final DataOutputBuffer buffer = new DataOutputBuffer();
+		final int[] offsets = new int[records + 1];
+		Text text = new Text();
+		VLongWritable vlong = new VLongWritable();
+		int record = 0;
+		for (int v = 0; v < graph.getNodes(); v++) {
+			for (int e = graph.getOffset(v); e <= graph.getOffset(v + 1); e++) {
+				offsets[record++] = buffer.getLength();
+				if (numeric) {
+					vlong.set(ids[v]);
+					vlong.write(buffer);
+				} else {
+					text.set(graph.getName(v));
+					text.write(buffer);
+				}
+			}
+		}
+		offsets[records] = buffer.getLength();
+
+		long best = Long.MAX_VALUE;
+		Integer[] order = new Integer[records];
+		for (int run = 0; run < runs; run++) {
+			// scrambled, the same way for every run and both keys
+			for (int i = 0; i < records; i++) {
+				order[i] = (int) ((i * 0x9E3779B1L) % records);
+			}
+			long start = System.nanoTime();
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					byte[] bytes = buffer.getData();
+					return comparator.compare(bytes, offsets[a], offsets[a + 1] - offsets[a], bytes, offsets[b],
+							offsets[b + 1] - offsets[b]);
+				}
+			});
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return String.format("%n%-8s %12d %12d %10.1f", name, records, buffer.getLength(), best / 1e6);
+	}
+
+	private static int printUsage() {
+		System.out.println("vertexIdBenchmark [-n <runs>] <input>");
+		ToolRunner.printGenericCommandUsage(System.out);
+		return -1;
+	}
+
+	public static void main(String[] args) throws Exception {
+		String[] parameters = { "assets/epinions_social_network/input" };
+		if (args != null && args.length >= 1) {
+			parameters = args;
+		}
+		int res = ToolRunner.run(new Configuration(), new VertexIdBenchmark(), parameters);
+		System.exit(res);
+	}
+}
@@ -17,6 +17,7 @@ public @Data class Node implements Comparable<Node> {
 	private double rank;
 	private double previousRank;
 	private boolean converged;
+	private double contributions;
 	private List<NodeWritable> nodes = new ArrayList<NodeWritable>();
 
 	public Node() {
@@ -32,6 +33,21 @@ public @Data class Node implements Comparable<Node> {
 		this.nodes = nodes;
 	}
 	
+	/**
+	 * Adds an incoming share of rank: the rank of a source node divided by
+	 * its number of out-links, or the sum of several such shares when the
+	 * combiner already added them up. <br>
+	 * {@link #calculateSimplePageRank(int)} adds the shares received this way
+	 * to the ranks of {@link #getNodes()}.
+	 *
+	 * @param contribution
+	 * @return this node
+	 */
+	public Node addContribution(double contribution) {
+		contributions += contribution;
+		return this;
+	}
+
 	/**
 	 * Calculates the simplified <b>PageRank</b> for a given node
 	 * 
@@ -39,7 +55,7 @@ public @Data class Node implements Comparable<Node> {
 	 * @return PageRank
 	 */
 	public double calculateSimplePageRank(int totalNodes) {
-		double pageRank = 0.0;
+		double pageRank = contributions;
 		for (NodeWritable node : nodes) {
 			pageRank += node.getPageRank();
 		}
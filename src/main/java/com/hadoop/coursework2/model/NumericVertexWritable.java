@@ -0,0 +1,110 @@
+package com.hadoop.coursework2.model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import lombok.Getter;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * {@link VertexWritable} of numeric node ids: either the structure of a node,
+ * its rank and the VLong ids of its out-links, or the rank mass sent through
+ * one of its in-links. The links are kept in a reused <b>long</b> array.
+ *
+ * @author pmonteiro
+ *
+ */
+public class NumericVertexWritable implements Writable {
+
+	private @Getter boolean structure;
+	private @Getter double rank;
+	private long[] links = new long[16];
+	private @Getter int size;
+
+	/**
+	 * Sets the structure of a node without out-links, see
+	 * {@link #addLink(long)}.
+	 */
+	public NumericVertexWritable setStructure(double rank) {
+		this.structure = true;
+		this.rank = rank;
+		this.size = 0;
+		return this;
+	}
+
+	/**
+	 * Sets the structure of a node with the out-links of the given one.
+	 */
+	public NumericVertexWritable setStructure(double rank, NumericVertexWritable other) {
+		setStructure(rank);
+		for (int i = 0; i < other.size; i++) {
+			addLink(other.links[i]);
+		}
+		return this;
+	}
+
+	public NumericVertexWritable setRank(double rank) {
+		this.rank = rank;
+		return this;
+	}
+
+	public NumericVertexWritable addLink(long link) {
+		if (size == links.length) {
+			links = Arrays.copyOf(links, size * 2);
+		}
+		links[size++] = link;
+		return this;
+	}
+
+	public NumericVertexWritable setMessage(double rank) {
+		this.structure = false;
+		this.rank = rank;
+		this.size = 0;
+		return this;
+	}
+
+	public long getLink(int i) {
+		return links[i];
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		structure = in.readBoolean();
+		rank = in.readDouble();
+		size = 0;
+		if (structure) {
+			int links = WritableUtils.readVInt(in);
+			for (int i = 0; i < links; i++) {
+				addLink(WritableUtils.readVLong(in));
+			}
+		}
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		out.writeBoolean(structure);
+		out.writeDouble(rank);
+		if (structure) {
+			WritableUtils.writeVInt(out, size);
+			for (int i = 0; i < size; i++) {
+				WritableUtils.writeVLong(out, links[i]);
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(String.valueOf(rank));
+		if (structure) {
+			sb.append('\t');
+			for (int i = 0; i < size; i++) {
+				sb.append(i == 0 ? "" : ",").append(links[i]);
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,64 @@
+package com.hadoop.coursework2.model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import lombok.Getter;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+
+/**
+ * Value of the iterations of the PageRank driver: either the structure of a
+ * node, its rank and its comma separated out-links, or the rank mass sent
+ * through one of its in-links.
+ *
+ * @author pmonteiro
+ *
+ */
+public class VertexWritable implements Writable {
+
+	private @Getter boolean structure;
+	private @Getter double rank;
+	private @Getter Text links = new Text();
+
+	public VertexWritable setStructure(double rank, Text links) {
+		this.structure = true;
+		this.rank = rank;
+		this.links.set(links);
+		return this;
+	}
+
+	public VertexWritable setMessage(double rank) {
+		this.structure = false;
+		this.rank = rank;
+		this.links.clear();
+		return this;
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		structure = in.readBoolean();
+		rank = in.readDouble();
+		if (structure) {
+			links.readFields(in);
+		} else {
+			links.clear();
+		}
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		out.writeBoolean(structure);
+		out.writeDouble(rank);
+		if (structure) {
+			links.write(out);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return structure ? rank + "\t" + links : String.valueOf(rank);
+	}
+}
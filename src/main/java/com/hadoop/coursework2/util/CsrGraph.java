@@ -0,0 +1,141 @@
+package com.hadoop.coursework2.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Edge list (<i>from \t to</i>) held in compressed sparse row arrays of the
+ * in-links: the sources of the links into node v are
+ * <i>sources[offsets[v]]</i> to <i>sources[offsets[v + 1] - 1]</i>. Nodes are
+ * numbered from 0 in the order they are first read and keep their names for
+ * the output. <br>
+ * As in the MapReduce jobs, every line is a link, repeated ones included.
+ * <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class CsrGraph {
+
+	private static final int INITIAL_CAPACITY = 1 << 16;
+
+	private String[] names;
+	private int[] offsets;
+	private int[] sources;
+	private int[] outDegrees;
+
+	/**
+	 * Reads the files of the path, a file or a folder whose files starting
+	 * with '_' or '.' are skipped.
+	 */
+	public static CsrGraph load(FileSystem fs, Path path) throws IOException {
+		Map<String, Integer> ids = new HashMap<>();
+		List<String> names = new ArrayList<>();
+		int[] from = new int[INITIAL_CAPACITY];
+		int[] to = new int[INITIAL_CAPACITY];
+		int edges = 0;
+		for (FileStatus file : fs.listStatus(path)) {
+			String name = file.getPath().getName();
+			if (file.isDir() || name.startsWith("_") || name.startsWith(".")) {
+				continue;
+			}
+			BufferedReader reader = new BufferedReader(new InputStreamReader(fs.open(file.getPath()), "UTF-8"));
+			try {
+				for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+					if (line.isEmpty() || line.startsWith("#")) {
+						continue;
+					}
+					int tab = line.indexOf('\t');
+					int end = line.indexOf('\t', tab + 1);
+					if (edges == from.length) {
+						from = Arrays.copyOf(from, edges * 2);
+						to = Arrays.copyOf(to, edges * 2);
+					}
+					from[edges] = id(ids, names, line.substring(0, tab));
+					to[edges] = id(ids, names, end < 0 ? line.substring(tab + 1) : line.substring(tab + 1, end));
+					edges++;
+				}
+			} finally {
+				reader.close();
+			}
+		}
+
+		int nodes = names.size();
+		CsrGraph graph = new CsrGraph();
+		graph.names = names.toArray(new String[nodes]);
+		graph.outDegrees = new int[nodes];
+		graph.offsets = new int[nodes + 1];
+		for (int i = 0; i < edges; i++) {
+			graph.outDegrees[from[i]]++;
+			graph.offsets[to[i] + 1]++;
+		}
+		for (int v = 0; v < nodes; v++) {
+			graph.offsets[v + 1] += graph.offsets[v];
+		}
+		graph.sources = new int[edges];
+		int[] next = Arrays.copyOf(graph.offsets, nodes);
+		for (int i = 0; i < edges; i++) {
+			graph.sources[next[to[i]]++] = from[i];
+		}
+		return graph;
+	}
+
+	/**
+	 * @return the number of the node, the next one if it is new
+	 */
+	private static int id(Map<String, Integer> ids, List<String> names, String name) {
+		Integer id = ids.get(name);
+		if (id == null) {
+			id = names.size();
+			ids.put(name, id);
+			names.add(name);
+		}
+		return id;
+	}
+
+	public int getNodes() {
+		return names.length;
+	}
+
+	public int getEdges() {
+		return sources.length;
+	}
+
+	public String getName(int node) {
+		return names[node];
+	}
+
+	public int getOutDegree(int node) {
+		return outDegrees[node];
+	}
+
+	/**
+	 * @return the position in {@link #getSources()} of the first in-link of
+	 *         the node, or the number of edges for the node after the last
+	 */
+	public int getOffset(int node) {
+		return offsets[node];
+	}
+
+	public int[] getOffsets() {
+		return offsets;
+	}
+
+	public int[] getSources() {
+		return sources;
+	}
+
+	public int[] getOutDegrees() {
+		return outDegrees;
+	}
+}
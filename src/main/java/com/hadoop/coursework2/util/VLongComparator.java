@@ -0,0 +1,38 @@
+package com.hadoop.coursework2.util;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.VLongWritable;
+import org.apache.hadoop.io.WritableComparator;
+
+/**
+ * Sorts {@link VLongWritable} keys on their serialized bytes: the two VLongs
+ * are decoded in place, so no key is deserialized during the shuffle sort.
+ * Hadoop has no raw comparator of its own for them, so loading this class
+ * registers it as the one {@link WritableComparator#get(Class)} returns for
+ * {@link VLongWritable}. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class VLongComparator extends WritableComparator {
+
+	static {
+		define(VLongWritable.class, new VLongComparator());
+	}
+
+	public VLongComparator() {
+		super(VLongWritable.class);
+	}
+
+	@Override
+	public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+		try {
+			long v1 = readVLong(b1, s1);
+			long v2 = readVLong(b2, s2);
+			return v1 < v2 ? -1 : (v1 == v2 ? 0 : 1);
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Malformed VLong key", e);
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package com.hadoop.designpatterns;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+import com.hadoop.corpus.EncodeCorpus;
+import com.hadoop.corpus.EncodedCorpusInputFormat;
+import com.hadoop.corpus.TermDictionary;
+import com.hadoop.corpus.TermIdPair;
+import com.hadoop.corpus.TermIdsWritable;
+
+/**
+ * {@link Pairs} over a corpus encoded by {@link EncodeCorpus} with the
+ * <i>alphabetic</i> tokenizer (and <b>-l</b> to get the same lines)<br>
+ * <br>
+ * <b>The mapper</b> emits the ids of each co-occurring word pair packed in a
+ * long ({@link TermIdPair}), so the shuffle sorts 8 byte keys with no string
+ * in them. <b>The reducer</b> decodes the pair from the dictionary when
+ * writing it. The output is ordered by term id. <br>
+ * 
+ * @author pmonteiro
+ *
+ */
+public class EncodedPairs extends Configured implements Tool {
+
+	private static final String NEIGHBOURS = "neighbours";
+	private static final int NEIGHBOURS_DEFAULT_VALUE = 1;
+
+	public static class MapClass extends Mapper<LongWritable, TermIdsWritable, LongWritable, IntWritable> {
+
+		private final LongWritable pair = new LongWritable();
+		private final IntWritable one = new IntWritable(1);
+
+		public void map(LongWritable lineNumber, TermIdsWritable line, Context context) throws IOException,
+				InterruptedException {
+
+			int neighbours = context.getConfiguration().getInt(NEIGHBOURS, NEIGHBOURS_DEFAULT_VALUE);
+			int words = line.size();
+
+			for (int i = 0; i < words; i++) {
+
+				for (int j = i - neighbours; j < i + neighbours + 1; j++) {
+
+					if (j >= words) {
+						break;
+					}
+
+					if (j == i || j < 0) {
+						continue;
+					}
+
+					pair.set(TermIdPair.pack(line.get(i), line.get(j)));
+					context.write(pair, one);
+				}
+			}
+		}
+	}
+
+	public static class Reduce extends Reducer<LongWritable, IntWritable, Text, IntWritable> {
+		private static final byte[] SEPARATOR = { ' ' };
+
+		private TermDictionary dictionary;
+		private Text pair = new Text();
+		private IntWritable counter = new IntWritable(0);
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			dictionary = TermDictionary.load(context.getConfiguration());
+		}
+
+		public void reduce(LongWritable key, Iterable<IntWritable> values, Context context) throws IOException,
+				InterruptedException {
+			int count = 0;
+			for (IntWritable val : values) {
+				count += val.get();
+			}
+			dictionary.getTerm(TermIdPair.term(key.get()), pair);
+			pair.append(SEPARATOR, 0, SEPARATOR.length);
+			dictionary.appendTerm(TermIdPair.word(key.get()), pair);
+			counter.set(count);
+			context.write(pair, counter);
+		}
+	}
+
+	public int run(String[] args) throws Exception {
+		Configuration conf = new Configuration();
+		Job job = new Job(conf, "EncodedPairs");
+		if (args.length == 3) {
+			job.getConfiguration().set(NEIGHBOURS, args[2]);
+		}
+		job.setJarByClass(EncodedPairs.class);
+
+		job.setMapperClass(MapClass.class);
+		job.setReducerClass(Reduce.class);
+
+		job.setMapOutputKeyClass(LongWritable.class);
+		job.setMapOutputValueClass(IntWritable.class);
+		job.setOutputKeyClass(Text.class);
+		job.setOutputValueClass(IntWritable.class);
+
+		EncodedCorpusInputFormat.setInput(job, new Path(args[0]));
+
+		Path out = new Path(args[1]);
+		FileSystem fs = FileSystem.get(conf);
+		fs.delete(out, true);
+		FileOutputFormat.setOutputPath(job, out);
+
+		System.exit(job.waitForCompletion(true) ? 0 : 1);
+		return 0;
+	}
+
+	public static void main(String[] args) throws Exception {
+
+		String[] parameters = { "assets/mlk_speech/encoded", "assets/mlk_speech/output", "2" };
+		if (args != null && (args.length == 2 || args.length == 3)) {
+			parameters = args;
+		}
+		int res = ToolRunner.run(new Configuration(), new EncodedPairs(), parameters);
+		System.exit(res);
+	}
+}
@@ -0,0 +1,147 @@
+package com.hadoop.designpatterns;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+import com.hadoop.corpus.EncodeCorpus;
+import com.hadoop.corpus.EncodedCorpusInputFormat;
+import com.hadoop.corpus.TermDictionary;
+import com.hadoop.corpus.TermIdsWritable;
+import com.hadoop.util.IdCountMap;
+
+/**
+ * <b>{@link Stripes} over a corpus encoded by {@link EncodeCorpus}</b> with
+ * the <i>alphabetic</i> tokenizer (and <b>-l</b> to get the same lines)<br>
+ * <br>
+ * <b>The mapper</b> emits the id of each word as key and the associative
+ * array of the ids of its neighbours as value ({@link IdCountMap}, written
+ * with delta encoded ids). <b>The reducer</b> sums them and decodes the words
+ * of the final associative array only, written as <i>word:count</i> entries
+ * in id order. The output is ordered by term id. <br>
+ * 
+ * @author pmonteiro
+ *
+ */
+public class EncodedStripes extends Configured implements Tool {
+
+	private static final String NEIGHBOURS = "neighbours";
+	private static final int NEIGHBOURS_DEFAULT_VALUE = 1;
+
+	public static class MapClass extends Mapper<LongWritable, TermIdsWritable, IntWritable, IdCountMap> {
+
+		private IntWritable term = new IntWritable();
+		private IdCountMap associativeMap = new IdCountMap();
+
+		public void map(LongWritable lineNumber, TermIdsWritable line, Context context) throws IOException,
+				InterruptedException {
+
+			int neighbours = context.getConfiguration().getInt(NEIGHBOURS, NEIGHBOURS_DEFAULT_VALUE);
+			int words = line.size();
+
+			for (int i = 0; i < words; i++) {
+
+				for (int j = i - neighbours; j < i + neighbours + 1; j++) {
+
+					if (j >= words) {
+						break;
+					}
+
+					if (j == i || j < 0) {
+						continue;
+					}
+					associativeMap.increment(line.get(j), 1);
+				}
+				term.set(line.get(i));
+				context.write(term, associativeMap);
+				associativeMap.clear();
+			}
+		}
+	}
+
+	public static class Reduce extends Reducer<IntWritable, IdCountMap, Text, Text> {
+		private static final byte[] COUNT_SEPARATOR = { ':' };
+		private static final byte[] SEPARATOR = { ' ' };
+
+		private TermDictionary dictionary;
+		private IdCountMap associativeResult = new IdCountMap();
+		private Text term = new Text();
+		private Text stripe = new Text();
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			dictionary = TermDictionary.load(context.getConfiguration());
+		}
+
+		public void reduce(IntWritable id, Iterable<IdCountMap> associativeMaps, Context context)
+				throws IOException, InterruptedException {
+
+			associativeResult.clear();
+			for (IdCountMap associativeMap : associativeMaps) {
+				associativeResult.merge(associativeMap);
+			}
+
+			dictionary.getTerm(id.get(), term);
+			stripe.clear();
+			int[] sorted = associativeResult.sort();
+			for (int i = 0; i < associativeResult.size(); i++) {
+				int entry = sorted[i];
+				dictionary.appendTerm((int) associativeResult.getId(entry), stripe);
+				stripe.append(COUNT_SEPARATOR, 0, COUNT_SEPARATOR.length);
+				byte[] count = Integer.toString(associativeResult.getCount(entry)).getBytes();
+				stripe.append(count, 0, count.length);
+				stripe.append(SEPARATOR, 0, SEPARATOR.length);
+			}
+			context.write(term, stripe);
+		}
+	}
+
+	public int run(String[] args) throws Exception {
+		Configuration conf = new Configuration();
+		Job job = new Job(conf, "EncodedStripes");
+		if (args.length == 3) {
+			job.getConfiguration().set(NEIGHBOURS, args[2]);
+		}
+		job.setJarByClass(EncodedStripes.class);
+
+		job.setMapperClass(MapClass.class);
+		job.setReducerClass(Reduce.class);
+
+		job.setMapOutputKeyClass(IntWritable.class);
+		job.setMapOutputValueClass(IdCountMap.class);
+		job.setOutputKeyClass(Text.class);
+		job.setOutputValueClass(Text.class);
+
+		EncodedCorpusInputFormat.setInput(job, new Path(args[0]));
+
+		Path out = new Path(args[1]);
+		FileSystem fs = FileSystem.get(conf);
+		fs.delete(out, true);
+		FileOutputFormat.setOutputPath(job, out);
+
+		System.exit(job.waitForCompletion(true) ? 0 : 1);
+		return 0;
+	}
+
+	public static void main(String[] args) throws Exception {
+
+		String[] parameters = { "assets/mlk_speech/encoded", "assets/mlk_speech/output", "2" };
+		if (args != null && (args.length == 2 || args.length == 3)) {
+			parameters = args;
+		}
+		int res = ToolRunner.run(new Configuration(), new EncodedStripes(), parameters);
+		System.exit(res);
+	}
+}
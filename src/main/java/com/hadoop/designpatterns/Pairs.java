@@ -17,6 +17,8 @@ import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 
+import com.hadoop.util.TextTokenizer;
+
 /**
  * Implementation of the Hadoop Pairs design pattern<br>
  * <br>
@@ -39,23 +41,23 @@ public class Pairs extends Configured implements Tool {
 
 	public static class MapClass extends Mapper<LongWritable, Text, Text, IntWritable> {
 
+		private static final byte[] SEPARATOR = { ' ' };
+
+		private final TextTokenizer tokenizer = TextTokenizer.alphabetic();
 		private final Text pair = new Text();
 		private final IntWritable one = new IntWritable(1);
 
 		public void map(LongWritable lineNumber, Text line, Context context) throws IOException, InterruptedException {
 
 			int neighbours = context.getConfiguration().getInt(NEIGHBOURS, NEIGHBOURS_DEFAULT_VALUE);
-			String[] words = line.toString().toLowerCase().replaceAll("[^a-zA-Z ]", "").split("\\s+");
+			int words = tokenizer.tokenize(line);
+			byte[] bytes = tokenizer.getBytes();
 
-			for (int i = 0; i < words.length; i++) {
-
-				if (words[i].length() == 0) {
-					continue;
-				}
+			for (int i = 0; i < words; i++) {
 
 				for (int j = i - neighbours; j < i + neighbours + 1; j++) {
 
-					if (j >= words.length) {
+					if (j >= words) {
 						break;
 					}
 
@@ -63,7 +65,9 @@ public class Pairs extends Configured implements Tool {
 						continue;
 					}
 
-					pair.set(words[i] + " " + words[j]);
+					tokenizer.get(i, pair);
+					pair.append(SEPARATOR, 0, SEPARATOR.length);
+					pair.append(bytes, tokenizer.getStart(j), tokenizer.getLength(j));
 					context.write(pair, one);
 				}
 			}
@@ -0,0 +1,344 @@
+package com.hadoop.designpatterns;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Partitioner;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.LazyOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+import com.hadoop.examples.wordcount.WordCountMapper;
+import com.hadoop.examples.wordcount.WordCountReducer;
+import com.hadoop.util.TextTokenizer;
+
+/**
+ * The word count ({@link WordCountMapper}, {@link WordCountReducer}), the
+ * {@link Pairs} and the {@link Stripes} jobs in a single scan of the input.
+ * <br>
+ * <br>
+ * <b>The mapper</b> reads each record once and emits the records of the three
+ * analyses, their keys tagged by a leading byte ({@link #WORDCOUNT},
+ * {@link #PAIRS}, {@link #STRIPES}) and their values wrapped in a
+ * {@link TaggedValue}. The record is tokenized by the tokenizer of each
+ * analysis: the word count splits on delimiters, the pairs and stripes keep
+ * letters only and share their tokens. <br>
+ * <b>The combiner</b> sums the counts and merges the stripes of each tagged
+ * key, which the separate jobs do not do. <br>
+ * <b>The partitioner</b> hashes the key without its tag, so a key goes to the
+ * reducer it goes to in its own job, and as the tag sorts first each reducer
+ * sees the keys of an analysis in the order of that job. <br>
+ * <b>The reducer</b> applies the reduce of the analysis and writes to its named
+ * output, <i>wordcount-r-NNNNN</i>, <i>pairs-r-NNNNN</i> and
+ * <i>stripes-r-NNNNN</i> being the part files of the separate jobs run with
+ * as many reducers. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class SharedScan extends Configured implements Tool {
+
+	private static final String REDUCER_PARAM = "-r";
+	private static final String NEIGHBOURS = "neighbours";
+	private static final int NEIGHBOURS_DEFAULT_VALUE = 1;
+	public static final byte WORDCOUNT = 0;
+	public static final byte PAIRS = 1;
+	public static final byte STRIPES = 2;
+	private static final String[] OUTPUTS = { "wordcount", "pairs", "stripes" };
+
+	/**
+	 * Value of any of the analyses: an <b>int</b> count or a
+	 * {@link StripesMapWritable}, after a byte telling which one. Both are
+	 * reused from one record to the next, where a GenericWritable would
+	 * create a new instance for each value read.
+	 */
+	public static class TaggedValue implements Writable {
+		private boolean stripe;
+		private int count;
+		private StripesMapWritable associativeMap = new StripesMapWritable();
+
+		public boolean isStripe() {
+			return stripe;
+		}
+
+		public int getCount() {
+			return count;
+		}
+
+		public void setCount(int count) {
+			this.stripe = false;
+			this.count = count;
+		}
+
+		/**
+		 * @return the stripe, to fill in place after {@link #setStripe()}
+		 */
+		public StripesMapWritable getStripe() {
+			return associativeMap;
+		}
+
+		public void setStripe() {
+			this.stripe = true;
+		}
+
+		@Override
+		public void write(DataOutput out) throws IOException {
+			out.writeBoolean(stripe);
+			if (stripe) {
+				associativeMap.write(out);
+			} else {
+				WritableUtils.writeVInt(out, count);
+			}
+		}
+
+		@Override
+		public void readFields(DataInput in) throws IOException {
+			stripe = in.readBoolean();
+			if (stripe) {
+				associativeMap.readFields(in);
+			} else {
+				count = WritableUtils.readVInt(in);
+			}
+		}
+	}
+
+	public static class MapClass extends Mapper<LongWritable, Text, Text, TaggedValue> {
+
+		private static final byte[] SEPARATOR = { ' ' };
+
+		private final TextTokenizer words = TextTokenizer.delimited(WordCountMapper.DELIMITERS);
+		private final TextTokenizer letters = TextTokenizer.alphabetic();
+		private final Text key = new Text();
+		private final TaggedValue count = new TaggedValue();
+		private final TaggedValue stripe = new TaggedValue();
+		private final StripesMapWritable associativeMap = stripe.getStripe();
+		private final byte[] tag = new byte[1];
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			count.setCount(1);
+			stripe.setStripe();
+		}
+
+		public void map(LongWritable lineNumber, Text line, Context context) throws IOException, InterruptedException {
+			int size = words.tokenize(line);
+			for (int i = 0; i < size; i++) {
+				tag(WORDCOUNT, words.getBytes(), words.getStart(i), words.getLength(i));
+				context.write(key, count);
+			}
+
+			int neighbours = context.getConfiguration().getInt(NEIGHBOURS, NEIGHBOURS_DEFAULT_VALUE);
+			size = letters.tokenize(line);
+			byte[] bytes = letters.getBytes();
+			for (int i = 0; i < size; i++) {
+				for (int j = i - neighbours; j < i + neighbours + 1; j++) {
+					if (j >= size) {
+						break;
+					}
+					if (j == i || j < 0) {
+						continue;
+					}
+					tag(PAIRS, bytes, letters.getStart(i), letters.getLength(i));
+					key.append(SEPARATOR, 0, SEPARATOR.length);
+					key.append(bytes, letters.getStart(j), letters.getLength(j));
+					context.write(key, count);
+					associativeMap.increment(bytes, letters.getStart(j), letters.getLength(j), 1);
+				}
+				tag(STRIPES, bytes, letters.getStart(i), letters.getLength(i));
+				context.write(key, stripe);
+				associativeMap.clear();
+			}
+		}
+
+		private void tag(byte analysis, byte[] b, int s, int l) {
+			tag[0] = analysis;
+			key.set(tag, 0, 1);
+			key.append(b, s, l);
+		}
+	}
+
+	/**
+	 * Sums the counts and merges the stripes of a tagged key.
+	 */
+	public static class Combine extends Reducer<Text, TaggedValue, Text, TaggedValue> {
+		private final TaggedValue value = new TaggedValue();
+
+		public void reduce(Text key, Iterable<TaggedValue> values, Context context) throws IOException,
+				InterruptedException {
+			if (key.getBytes()[0] == STRIPES) {
+				value.setStripe();
+				value.getStripe().clear();
+				for (TaggedValue associativeMap : values) {
+					value.getStripe().merge(associativeMap.getStripe());
+				}
+			} else {
+				int sum = 0;
+				for (TaggedValue val : values) {
+					sum += val.getCount();
+				}
+				value.setCount(sum);
+			}
+			context.write(key, value);
+		}
+	}
+
+	/**
+	 * Reduces each analysis the way its own job does, into its named output.
+	 */
+	public static class Reduce extends Reducer<Text, TaggedValue, Text, Writable> {
+		/** word count threshold of the {@link WordCountReducer} */
+		private static final int MIN_WORD_COUNT = 5;
+
+		private final Text term = new Text();
+		private final IntWritable count = new IntWritable();
+		private StripeAccumulator accumulator;
+		private MultipleOutputs<Text, Writable> outputs;
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			accumulator = new StripeAccumulator(context.getConfiguration());
+			outputs = new MultipleOutputs<Text, Writable>(context);
+		}
+
+		@Override
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			outputs.close();
+		}
+
+		public void reduce(Text key, Iterable<TaggedValue> values, Context context) throws IOException,
+				InterruptedException {
+			byte analysis = key.getBytes()[0];
+			term.set(key.getBytes(), 1, key.getLength() - 1);
+			if (analysis == STRIPES) {
+				reduceStripes(values);
+				return;
+			}
+			int sum = 0;
+			for (TaggedValue val : values) {
+				sum += val.getCount();
+			}
+			if (analysis == PAIRS || sum > MIN_WORD_COUNT) {
+				count.set(sum);
+				outputs.write(OUTPUTS[analysis], term, count);
+			}
+		}
+
+		/**
+		 * Same as {@link Stripes.Reduce}.
+		 */
+		private void reduceStripes(Iterable<TaggedValue> values) throws IOException, InterruptedException {
+			for (TaggedValue associativeMap : values) {
+				accumulator.add(associativeMap.getStripe());
+			}
+			while (accumulator.next()) {
+				outputs.write(OUTPUTS[STRIPES], term, accumulator.getStripe());
+			}
+		}
+	}
+
+	/**
+	 * Partitions on the key without its tag, as the HashPartitioner of each
+	 * separate job does.
+	 */
+	public static class UntaggedPartitioner extends Partitioner<Text, TaggedValue> {
+
+		@Override
+		public int getPartition(Text key, TaggedValue value, int numReduceTasks) {
+			int hash = WritableComparator.hashBytes(key.getBytes(), 1, key.getLength() - 1);
+			return (hash & Integer.MAX_VALUE) % numReduceTasks;
+		}
+	}
+
+	public int run(String[] args) throws Exception {
+		Configuration conf = getConf();
+		@SuppressWarnings("deprecation")
+		Job job = new Job(conf, "Shared scan - word count, pairs and stripes");
+		job.setJarByClass(SharedScan.class);
+
+		job.setMapperClass(MapClass.class);
+		job.setCombinerClass(Combine.class);
+		job.setReducerClass(Reduce.class);
+		job.setPartitionerClass(UntaggedPartitioner.class);
+
+		job.setMapOutputKeyClass(Text.class);
+		job.setMapOutputValueClass(TaggedValue.class);
+		job.setOutputKeyClass(Text.class);
+		job.setOutputValueClass(IntWritable.class);
+		MultipleOutputs.addNamedOutput(job, OUTPUTS[WORDCOUNT], TextOutputFormat.class, Text.class,
+				IntWritable.class);
+		MultipleOutputs.addNamedOutput(job, OUTPUTS[PAIRS], TextOutputFormat.class, Text.class, IntWritable.class);
+		MultipleOutputs.addNamedOutput(job, OUTPUTS[STRIPES], TextOutputFormat.class, Text.class,
+				StripesMapWritable.class);
+		// everything goes to the named outputs
+		LazyOutputFormat.setOutputFormatClass(job, TextOutputFormat.class);
+
+		List<String> other_args = new ArrayList<String>();
+		for (int i = 0; i < args.length; ++i) {
+			try {
+				if (REDUCER_PARAM.equals(args[i])) {
+					job.setNumReduceTasks(Integer.parseInt(args[++i]));
+				} else {
+					other_args.add(args[i]);
+				}
+			} catch (NumberFormatException except) {
+				System.out.println("ERROR: Integer expected instead of " + args[i]);
+				return printUsage();
+			} catch (ArrayIndexOutOfBoundsException except) {
+				System.out.println("ERROR: Required parameter missing from " + args[i - 1]);
+				return printUsage();
+			}
+		}
+		if (other_args.size() != 2 && other_args.size() != 3) {
+			System.out.println("ERROR: Wrong number of parameters: " + other_args.size() + " instead of 2 or 3.");
+			return printUsage();
+		}
+		if (other_args.size() == 3) {
+			job.getConfiguration().set(NEIGHBOURS, other_args.get(2));
+		}
+
+		Path in = new Path(other_args.get(0));
+		FileInputFormat.setInputPaths(job, in);
+
+		Path out = new Path(other_args.get(1));
+		FileSystem fs = FileSystem.get(conf);
+		fs.delete(out, true);
+		FileOutputFormat.setOutputPath(job, out);
+
+		return job.waitForCompletion(true) ? 0 : 1;
+	}
+
+	private static int printUsage() {
+		System.out.println("sharedScan [-r <reduces>] <input> <output> [<neighbours>]");
+		ToolRunner.printGenericCommandUsage(System.out);
+		return -1;
+	}
+
+	public static void main(String[] args) throws Exception {
+		String[] parameters = { "assets/mlk_speech/input", "assets/mlk_speech/output", "2" };
+		if (args != null && args.length >= 2) {
+			parameters = args;
+		}
+		int res = ToolRunner.run(new Configuration(), new SharedScan(), parameters);
+		System.exit(res);
+	}
+}
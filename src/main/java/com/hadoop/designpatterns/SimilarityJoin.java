@@ -0,0 +1,773 @@
+package com.hadoop.designpatterns;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.filecache.DistributedCache;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.reduce.IntSumReducer;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+import com.hadoop.util.WordCountMap;
+
+/**
+ * Pairs of terms whose context vectors, the stripes written by
+ * {@link Stripes}, have a cosine similarity of at least
+ * <b>similarity.threshold</b> (0.7 by default), without comparing every pair.
+ * <br>
+ * <br>
+ * <b>Prefix filtering</b>: the context words (the dimensions) are ranked by
+ * the number of stripes they are in, the rarest first, and every vector is
+ * scaled to unit length and sorted on that order. The prefix of a vector is
+ * what is left once its longest suffix whose norm is below the threshold is
+ * taken off: two vectors sharing no dimension of their prefixes have a dot
+ * product below the threshold, as all their common dimensions are in the
+ * suffix of one of them. <br>
+ * <b>Jobs</b>: the first counts the stripes of each dimension, the driver
+ * ranks them into a file of the distributed cache; the second builds the unit
+ * vector of each term and writes it once for each dimension of its prefix;
+ * the third receives the vectors of a dimension and compares them. A pair is
+ * only compared by the reducer of the first dimension its prefixes share, and
+ * only if the <b>length bound</b> min(max(x) |y|1, max(y) |x|1) of its dot
+ * product and its <b>positional bound</b>, the product of the weights of the
+ * dimension plus the one of the norms left after it, reach the threshold.
+ * <br>
+ * Each pair found is written as <i>term term</i> and its similarity. The
+ * {@link Counters} give the pairs of the posting lists visited and skipped,
+ * the ones pruned by the bounds, the ones met before, the ones verified and
+ * the ones similar, and the driver logs them next to the number of pairs of
+ * the vocabulary. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class SimilarityJoin extends Configured implements Tool {
+
+	public static final String THRESHOLD = "similarity.threshold";
+	public static final float THRESHOLD_DEFAULT_VALUE = 0.7f;
+	private static final String DIMENSIONS = "similarity.dimensions";
+	private static final String REDUCER_PARAM = "-r";
+	private static final String THRESHOLD_PARAM = "-t";
+	private static final char TAB = '\t';
+	private static final char SEPARATOR = ':';
+
+	private static Logger _log = Logger.getLogger(SimilarityJoin.class.getName());
+
+	public static enum Counters {
+		/** terms with a vector */
+		VECTORS,
+		/** vectors written for the dimensions of their prefixes */
+		PREFIX_ENTRIES,
+		/** pairs of a posting list looked at */
+		VISITED,
+		/** pairs of a posting list left out, their suffix norms too small */
+		SKIPPED,
+		/** pairs visited whose length or positional bound is below the threshold */
+		PRUNED,
+		/** pairs within the bounds already met under a previous dimension */
+		DUPLICATES,
+		/** pairs whose dot product was computed */
+		VERIFIED,
+		/** pairs written */
+		SIMILAR
+	}
+
+	/**
+	 * Unit vector of a term: its dimensions (ranks) in ascending order with
+	 * their weights, and the number of them in its prefix.
+	 */
+	public static class TermVector implements Writable {
+		private Text term = new Text();
+		private int size;
+		private int prefix;
+		private int[] dimensions = new int[16];
+		private float[] weights = new float[16];
+		private float maxWeight;
+		private float l1;
+		private double[] suffixNorms = new double[17];
+
+		public Text getTerm() {
+			return term;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public int getPrefix() {
+			return prefix;
+		}
+
+		public int getDimension(int i) {
+			return dimensions[i];
+		}
+
+		/**
+		 * Sets the vector, scaled to unit length and sorted, and its prefix
+		 * for the threshold.
+		 */
+		void set(Text term, int[] dimensions, float[] weights, int size, float threshold) {
+			this.term.set(term);
+			ensure(size);
+			Integer[] order = new Integer[size];
+			for (int i = 0; i < size; i++) {
+				order[i] = i;
+			}
+			final int[] ranks = dimensions;
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					return ranks[a] < ranks[b] ? -1 : (ranks[a] == ranks[b] ? 0 : 1);
+				}
+			});
+			double norm = 0;
+			for (int i = 0; i < size; i++) {
+				norm += (double) weights[i] * weights[i];
+			}
+			norm = Math.sqrt(norm);
+			for (int i = 0; i < size; i++) {
+				this.dimensions[i] = dimensions[order[i]];
+				this.weights[i] = (float) (weights[order[i]] / norm);
+			}
+			this.size = size;
+
+			// the longest suffix with a norm below the threshold
+			double suffix = 0;
+			double squaredThreshold = (double) threshold * threshold;
+			prefix = size;
+			while (prefix > 0 && suffix + (double) this.weights[prefix - 1] * this.weights[prefix - 1] < squaredThreshold) {
+				prefix--;
+				suffix += (double) this.weights[prefix] * this.weights[prefix];
+			}
+			norms();
+		}
+
+		/**
+		 * @return the position of the dimension in the prefix, -1 if it is
+		 *         not there
+		 */
+		int position(int dimension) {
+			int position = Arrays.binarySearch(dimensions, 0, prefix, dimension);
+			return position < 0 ? -1 : position;
+		}
+
+		/**
+		 * @return the dot product with the other vector from the positions
+		 *         given of each vector on, or a value below the threshold as
+		 *         soon as what is left of the vectors cannot take it there
+		 */
+		double dot(TermVector other, int i, int j, float threshold) {
+			double dot = 0;
+			while (i < size && j < other.size) {
+				if (dot + suffixNorms[i] * other.suffixNorms[j] < threshold) {
+					return dot;
+				}
+				if (dimensions[i] < other.dimensions[j]) {
+					i++;
+				} else if (dimensions[i] > other.dimensions[j]) {
+					j++;
+				} else {
+					dot += (double) weights[i++] * other.weights[j++];
+				}
+			}
+			return dot;
+		}
+
+		/**
+		 * @return the norm of the vector from the position on
+		 */
+		double suffixNorm(int position) {
+			return suffixNorms[position];
+		}
+
+		/**
+		 * @return the most the dot product with the other vector can be when
+		 *         the positions given hold the first dimension they share:
+		 *         the smallest of the length bound and of the product of
+		 *         their weights there plus the product of the norms left after
+		 *         them
+		 */
+		double bound(TermVector other, int i, int j) {
+			return Math.min(Math.min((double) maxWeight * other.l1, (double) other.maxWeight * l1), (double) weights[i]
+					* other.weights[j] + suffixNorms[i + 1] * other.suffixNorms[j + 1]);
+		}
+
+		TermVector copy() {
+			TermVector copy = new TermVector();
+			copy.term.set(term);
+			copy.size = size;
+			copy.prefix = prefix;
+			copy.dimensions = Arrays.copyOf(dimensions, size);
+			copy.weights = Arrays.copyOf(weights, size);
+			copy.maxWeight = maxWeight;
+			copy.l1 = l1;
+			copy.suffixNorms = Arrays.copyOf(suffixNorms, size + 1);
+			return copy;
+		}
+
+		private void norms() {
+			maxWeight = 0;
+			l1 = 0;
+			for (int i = 0; i < size; i++) {
+				maxWeight = Math.max(maxWeight, weights[i]);
+				l1 += weights[i];
+			}
+			if (suffixNorms.length < size + 1) {
+				suffixNorms = new double[size + 1];
+			}
+			double squares = 0;
+			suffixNorms[size] = 0;
+			for (int i = size - 1; i >= 0; i--) {
+				squares += (double) weights[i] * weights[i];
+				suffixNorms[i] = Math.sqrt(squares);
+			}
+		}
+
+		private void ensure(int capacity) {
+			if (dimensions.length < capacity) {
+				dimensions = new int[capacity];
+				weights = new float[capacity];
+			}
+		}
+
+		@Override
+		public void write(DataOutput out) throws IOException {
+			term.write(out);
+			WritableUtils.writeVInt(out, size);
+			WritableUtils.writeVInt(out, prefix);
+			int previous = 0;
+			for (int i = 0; i < size; i++) {
+				WritableUtils.writeVInt(out, dimensions[i] - previous);
+				out.writeFloat(weights[i]);
+				previous = dimensions[i];
+			}
+		}
+
+		@Override
+		public void readFields(DataInput in) throws IOException {
+			term.readFields(in);
+			size = WritableUtils.readVInt(in);
+			prefix = WritableUtils.readVInt(in);
+			ensure(size);
+			int dimension = 0;
+			for (int i = 0; i < size; i++) {
+				dimension += WritableUtils.readVInt(in);
+				dimensions[i] = dimension;
+				weights[i] = in.readFloat();
+			}
+			norms();
+		}
+
+		@Override
+		public String toString() {
+			return term + " " + size + "/" + prefix;
+		}
+	}
+
+	/**
+	 * Counts the stripes of each context word of the lines <i>term \t
+	 * word:count word:count...</i>.
+	 */
+	public static class DimensionMap extends Mapper<LongWritable, Text, Text, IntWritable> {
+		private Text word = new Text();
+		private IntWritable one = new IntWritable(1);
+
+		public void map(LongWritable offset, Text line, Context context) throws IOException, InterruptedException {
+			byte[] bytes = line.getBytes();
+			int end = line.getLength();
+			int start = find(bytes, 0, end, TAB) + 1;
+			while (start > 0 && start < end) {
+				int separator = find(bytes, start, end, ' ');
+				int next = separator < 0 ? end : separator;
+				int colon = lastIndexOf(bytes, start, next, SEPARATOR);
+				word.set(bytes, start, colon - start);
+				context.write(word, one);
+				start = next + 1;
+			}
+		}
+	}
+
+	/**
+	 * Reads the partial stripes of the lines into dimension ranks and counts,
+	 * keyed by term.
+	 */
+	public static class VectorMap extends Mapper<LongWritable, Text, Text, TermVector> {
+		private WordCountMap ranks;
+		private Text term = new Text();
+		private TermVector vector = new TermVector();
+		private int[] dimensions = new int[64];
+		private float[] weights = new float[64];
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			ranks = loadRanks(context.getConfiguration());
+		}
+
+		public void map(LongWritable offset, Text line, Context context) throws IOException, InterruptedException {
+			byte[] bytes = line.getBytes();
+			int end = line.getLength();
+			int tab = find(bytes, 0, end, TAB);
+			if (tab < 0) {
+				return;
+			}
+			term.set(bytes, 0, tab);
+			int size = 0;
+			int start = tab + 1;
+			while (start < end) {
+				int separator = find(bytes, start, end, ' ');
+				int next = separator < 0 ? end : separator;
+				int colon = lastIndexOf(bytes, start, next, SEPARATOR);
+				if (size == dimensions.length) {
+					dimensions = Arrays.copyOf(dimensions, size * 2);
+					weights = Arrays.copyOf(weights, size * 2);
+				}
+				// ranks are stored plus one, 0 is a missing word
+				dimensions[size] = ranks.get(bytes, start, colon - start) - 1;
+				weights[size] = parseInt(bytes, colon + 1, next);
+				size++;
+				start = next + 1;
+			}
+			// raw counts, scaled by the reducer
+			vector.getTerm().set(term);
+			vector.ensure(size);
+			System.arraycopy(dimensions, 0, vector.dimensions, 0, size);
+			System.arraycopy(weights, 0, vector.weights, 0, size);
+			vector.size = size;
+			vector.prefix = size;
+			context.write(term, vector);
+		}
+	}
+
+	/**
+	 * Merges the partial stripes of a term into its unit vector and writes it
+	 * for each dimension of its prefix.
+	 */
+	public static class VectorReduce extends Reducer<Text, TermVector, IntWritable, TermVector> {
+		private float threshold;
+		private TermVector vector = new TermVector();
+		private IntWritable dimension = new IntWritable();
+		private int[] dimensions = new int[64];
+		private float[] weights = new float[64];
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			threshold = context.getConfiguration().getFloat(THRESHOLD, THRESHOLD_DEFAULT_VALUE);
+		}
+
+		public void reduce(Text term, Iterable<TermVector> partials, Context context) throws IOException,
+				InterruptedException {
+			// the words of the lines of a spilled term are distinct
+			int size = 0;
+			for (TermVector partial : partials) {
+				if (size + partial.size > dimensions.length) {
+					dimensions = Arrays.copyOf(dimensions, (size + partial.size) * 2);
+					weights = Arrays.copyOf(weights, (size + partial.size) * 2);
+				}
+				System.arraycopy(partial.dimensions, 0, dimensions, size, partial.size);
+				System.arraycopy(partial.weights, 0, weights, size, partial.size);
+				size += partial.size;
+			}
+			if (size == 0) {
+				return;
+			}
+			vector.set(term, dimensions, weights, size, threshold);
+			context.getCounter(Counters.VECTORS).increment(1);
+			context.getCounter(Counters.PREFIX_ENTRIES).increment(vector.getPrefix());
+			for (int i = 0; i < vector.getPrefix(); i++) {
+				dimension.set(vector.getDimension(i));
+				context.write(dimension, vector);
+			}
+		}
+	}
+
+	/**
+	 * Compares the vectors sharing a dimension of their prefixes. <br>
+	 * The vectors are sorted by their norm from the dimension on, the largest
+	 * first, so the partners of a vector are only looked at while the product
+	 * of the two norms, which bounds their dot product, reaches the threshold.
+	 * The bounds are checked before the pair is looked for under a previous
+	 * dimension, as a pair out of them is left out either way. The prefix
+	 * dimensions of a vector before this one are stamped in an array indexed
+	 * by dimension, so each partner is checked against them in a single pass
+	 * over its own.
+	 */
+	public static class JoinReduce extends Reducer<IntWritable, TermVector, Text, DoubleWritable> {
+		private float threshold;
+		private List<TermVector> vectors = new ArrayList<TermVector>();
+		private int[] positions = new int[64];
+		private double[] norms = new double[64];
+		/** stamp of the last vector having each dimension before this one */
+		private int[] stamps = new int[1024];
+		private int stamp;
+		private Text pair = new Text();
+		private DoubleWritable similarity = new DoubleWritable();
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			threshold = context.getConfiguration().getFloat(THRESHOLD, THRESHOLD_DEFAULT_VALUE);
+		}
+
+		public void reduce(IntWritable dimension, Iterable<TermVector> postings, Context context)
+				throws IOException, InterruptedException {
+			vectors.clear();
+			int size = 0;
+			for (TermVector vector : postings) {
+				if (size == positions.length) {
+					positions = Arrays.copyOf(positions, size * 2);
+					norms = Arrays.copyOf(norms, size * 2);
+				}
+				positions[size] = vector.position(dimension.get());
+				norms[size] = vector.suffixNorm(positions[size]);
+				vectors.add(vector.copy());
+				size++;
+			}
+			Integer[] order = new Integer[size];
+			for (int i = 0; i < size; i++) {
+				order[i] = i;
+			}
+			final double[] suffixNorms = norms;
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					return Double.compare(suffixNorms[b], suffixNorms[a]);
+				}
+			});
+
+			long visited = 0;
+			long skipped = 0;
+			long pruned = 0;
+			long duplicates = 0;
+			long verified = 0;
+			long similar = 0;
+			for (int i = 0; i < size; i++) {
+				TermVector x = vectors.get(order[i]);
+				int px = positions[order[i]];
+				double nx = norms[order[i]];
+				stamp(x, px);
+				for (int j = i + 1; j < size; j++) {
+					if (nx * norms[order[j]] < threshold) {
+						// and so are the ones after
+						skipped += size - j;
+						break;
+					}
+					visited++;
+					TermVector y = vectors.get(order[j]);
+					int py = positions[order[j]];
+					if (x.bound(y, px, py) < threshold) {
+						pruned++;
+						continue;
+					}
+					// compared under the first dimension the prefixes share
+					if (stamped(y, py)) {
+						duplicates++;
+						continue;
+					}
+					verified++;
+					// no dimension before this one is shared
+					double dot = x.dot(y, px, py, threshold);
+					if (dot >= threshold) {
+						similar++;
+						write(x.getTerm(), y.getTerm(), dot, context);
+					}
+				}
+			}
+			context.getCounter(Counters.VISITED).increment(visited);
+			context.getCounter(Counters.SKIPPED).increment(skipped);
+			context.getCounter(Counters.PRUNED).increment(pruned);
+			context.getCounter(Counters.DUPLICATES).increment(duplicates);
+			context.getCounter(Counters.VERIFIED).increment(verified);
+			context.getCounter(Counters.SIMILAR).increment(similar);
+		}
+
+		/**
+		 * Stamps the dimensions of the vector before the position.
+		 */
+		private void stamp(TermVector x, int end) {
+			stamp++;
+			for (int k = 0; k < end; k++) {
+				int dimension = x.getDimension(k);
+				if (dimension >= stamps.length) {
+					stamps = Arrays.copyOf(stamps, Math.max(stamps.length * 2, dimension + 1));
+				}
+				stamps[dimension] = stamp;
+			}
+		}
+
+		/**
+		 * @return true if a dimension of the vector before the position is
+		 *         stamped
+		 */
+		private boolean stamped(TermVector y, int end) {
+			for (int k = 0; k < end; k++) {
+				int dimension = y.getDimension(k);
+				if (dimension < stamps.length && stamps[dimension] == stamp) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private void write(Text x, Text y, double dot, Context context) throws IOException, InterruptedException {
+			if (x.compareTo(y) > 0) {
+				Text swap = x;
+				x = y;
+				y = swap;
+			}
+			pair.set(x.toString() + ' ' + y.toString());
+			// rounding errors of the unit vectors may go past 1
+			similarity.set(Math.min(1, dot));
+			context.write(pair, similarity);
+		}
+	}
+
+	/**
+	 * Ranks the context words by their number of stripes, the rarest first,
+	 * and writes them in that order.
+	 */
+	private static void writeRanks(Configuration conf, FileSystem fs, Path counts, Path path) throws IOException {
+		final WordCountMap words = new WordCountMap();
+		Text word = new Text();
+		IntWritable count = new IntWritable();
+		for (FileStatus part : fs.globStatus(new Path(counts, "part-r-*"))) {
+			SequenceFile.Reader reader = new SequenceFile.Reader(fs, part.getPath(), conf);
+			try {
+				while (reader.next(word, count)) {
+					words.increment(word.getBytes(), 0, word.getLength(), count.get());
+				}
+			} finally {
+				reader.close();
+			}
+		}
+		List<Integer> order = new ArrayList<Integer>(words.size());
+		for (int i = 0; i < words.size(); i++) {
+			order.add(i);
+		}
+		Collections.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				int result = words.getCount(a) < words.getCount(b) ? -1 : (words.getCount(a) == words.getCount(b) ? 0 : 1);
+				return result != 0 ? result : words.getWord(a).compareTo(words.getWord(b));
+			}
+		});
+		FSDataOutputStream out = fs.create(path, true);
+		try {
+			WritableUtils.writeVInt(out, order.size());
+			for (int i : order) {
+				Text.writeString(out, words.getWord(i));
+			}
+		} finally {
+			out.close();
+		}
+		_log.info("Ranked " + order.size() + " dimensions");
+	}
+
+	/**
+	 * Loads the ranked dimensions from the distributed cache.
+	 *
+	 * @return the rank plus one of each context word
+	 */
+	private static WordCountMap loadRanks(Configuration conf) throws IOException {
+		Path path = new Path(conf.get(DIMENSIONS));
+		FileSystem fs = path.getFileSystem(conf);
+		Path[] cached = DistributedCache.getLocalCacheFiles(conf);
+		if (cached != null) {
+			for (Path file : cached) {
+				if (file.getName().equals(path.getName())) {
+					path = file;
+					fs = FileSystem.getLocal(conf);
+					break;
+				}
+			}
+		}
+		WordCountMap ranks = new WordCountMap();
+		DataInputStream in = fs.open(path);
+		try {
+			int size = WritableUtils.readVInt(in);
+			for (int rank = 1; rank <= size; rank++) {
+				ranks.put(Text.readString(in), rank);
+			}
+		} finally {
+			in.close();
+		}
+		return ranks;
+	}
+
+	private static int find(byte[] bytes, int start, int end, char c) {
+		for (int i = start; i < end; i++) {
+			if (bytes[i] == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static int lastIndexOf(byte[] bytes, int start, int end, char c) {
+		for (int i = end - 1; i >= start; i--) {
+			if (bytes[i] == c) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("No " + c + " in the entry at " + start);
+	}
+
+	private static int parseInt(byte[] bytes, int start, int end) {
+		int value = 0;
+		for (int i = start; i < end; i++) {
+			value = value * 10 + (bytes[i] - '0');
+		}
+		return value;
+	}
+
+	public int run(String[] args) throws Exception {
+		Configuration conf = new Configuration(getConf());
+		int reducers = 1;
+		List<String> other_args = new ArrayList<String>();
+		for (int i = 0; i < args.length; ++i) {
+			try {
+				if (REDUCER_PARAM.equals(args[i])) {
+					reducers = Integer.parseInt(args[++i]);
+				} else if (THRESHOLD_PARAM.equals(args[i])) {
+					conf.setFloat(THRESHOLD, Float.parseFloat(args[++i]));
+				} else {
+					other_args.add(args[i]);
+				}
+			} catch (NumberFormatException except) {
+				System.out.println("ERROR: Number expected instead of " + args[i]);
+				return printUsage();
+			} catch (ArrayIndexOutOfBoundsException except) {
+				System.out.println("ERROR: Required parameter missing from " + args[i - 1]);
+				return printUsage();
+			}
+		}
+		// Make sure there are exactly 2 parameters left.
+		if (other_args.size() != 2) {
+			System.out.println("ERROR: Wrong number of parameters: " + other_args.size() + " instead of 2.");
+			return printUsage();
+		}
+		float threshold = conf.getFloat(THRESHOLD, THRESHOLD_DEFAULT_VALUE);
+		if (threshold <= 0 || threshold > 1) {
+			System.out.println("ERROR: Threshold out of (0, 1]: " + threshold);
+			return printUsage();
+		}
+
+		Path in = new Path(other_args.get(0));
+		Path out = new Path(other_args.get(1));
+		FileSystem fs = FileSystem.get(conf);
+		fs.delete(out, true);
+		Path folder = fs.makeQualified(new Path(conf.get("hadoop.tmp.dir"), "similarity-"
+				+ System.currentTimeMillis()));
+		try {
+			// 1. stripes of each context word, ranked by the driver
+			@SuppressWarnings("deprecation")
+			Job count = new Job(conf, "Similarity Join - dimensions");
+			count.setJarByClass(SimilarityJoin.class);
+			count.setMapperClass(DimensionMap.class);
+			count.setCombinerClass(IntSumReducer.class);
+			count.setReducerClass(IntSumReducer.class);
+			count.setNumReduceTasks(reducers);
+			count.setOutputKeyClass(Text.class);
+			count.setOutputValueClass(IntWritable.class);
+			count.setOutputFormatClass(SequenceFileOutputFormat.class);
+			FileInputFormat.setInputPaths(count, in);
+			FileOutputFormat.setOutputPath(count, new Path(folder, "counts"));
+			if (!count.waitForCompletion(true)) {
+				return 1;
+			}
+			Path dimensions = new Path(folder, "dimensions");
+			writeRanks(conf, fs, new Path(folder, "counts"), dimensions);
+			conf.set(DIMENSIONS, dimensions.toString());
+			DistributedCache.addCacheFile(dimensions.toUri(), conf);
+
+			// 2. unit vectors, written for each dimension of their prefix
+			@SuppressWarnings("deprecation")
+			Job index = new Job(conf, "Similarity Join - prefixes");
+			index.setJarByClass(SimilarityJoin.class);
+			index.setMapperClass(VectorMap.class);
+			index.setReducerClass(VectorReduce.class);
+			index.setNumReduceTasks(reducers);
+			index.setMapOutputKeyClass(Text.class);
+			index.setMapOutputValueClass(TermVector.class);
+			index.setOutputKeyClass(IntWritable.class);
+			index.setOutputValueClass(TermVector.class);
+			index.setOutputFormatClass(SequenceFileOutputFormat.class);
+			FileInputFormat.setInputPaths(index, in);
+			FileOutputFormat.setOutputPath(index, new Path(folder, "prefixes"));
+			if (!index.waitForCompletion(true)) {
+				return 1;
+			}
+
+			// 3. comparison of the vectors of each dimension
+			@SuppressWarnings("deprecation")
+			Job join = new Job(conf, "Similarity Join - join");
+			join.setJarByClass(SimilarityJoin.class);
+			join.setInputFormatClass(SequenceFileInputFormat.class);
+			join.setReducerClass(JoinReduce.class);
+			join.setNumReduceTasks(reducers);
+			join.setMapOutputKeyClass(IntWritable.class);
+			join.setMapOutputValueClass(TermVector.class);
+			join.setOutputKeyClass(Text.class);
+			join.setOutputValueClass(DoubleWritable.class);
+			FileInputFormat.setInputPaths(join, new Path(folder, "prefixes"));
+			FileOutputFormat.setOutputPath(join, out);
+			if (!join.waitForCompletion(true)) {
+				return 1;
+			}
+
+			long vectors = index.getCounters().findCounter(Counters.VECTORS).getValue();
+			org.apache.hadoop.mapreduce.Counters counters = join.getCounters();
+			_log.info(String.format("Threshold %.2f: %d vectors, %d pairs, %d visited in the posting lists "
+					+ "(%d skipped), %d pruned by the bounds, %d duplicates, %d verified, %d similar", threshold,
+					vectors, vectors * (vectors - 1) / 2, counters.findCounter(Counters.VISITED).getValue(),
+					counters.findCounter(Counters.SKIPPED).getValue(), counters.findCounter(Counters.PRUNED)
+							.getValue(), counters.findCounter(Counters.DUPLICATES).getValue(), counters
+							.findCounter(Counters.VERIFIED).getValue(), counters.findCounter(Counters.SIMILAR)
+							.getValue()));
+			return 0;
+		} finally {
+			fs.delete(folder, true);
+		}
+	}
+
+	private static int printUsage() {
+		System.out.println("similarityJoin [-r <reduces>] [-t <threshold>] <stripes output> <output>");
+		ToolRunner.printGenericCommandUsage(System.out);
+		return -1;
+	}
+
+	public static void main(String[] args) throws Exception {
+		String[] parameters = { "assets/mlk_speech/output", "assets/mlk_speech/similarity" };
+		if (args != null && args.length >= 2) {
+			parameters = args;
+		}
+		int res = ToolRunner.run(new Configuration(), new SimilarityJoin(), parameters);
+		System.exit(res);
+	}
+}
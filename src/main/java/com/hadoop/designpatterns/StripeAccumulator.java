@@ -0,0 +1,99 @@
+package com.hadoop.designpatterns;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+
+import com.hadoop.util.SpillableStripe;
+
+/**
+ * Sums the stripes of a term for the reducers of {@link Stripes} and
+ * {@link SharedScan}, in about <b>stripe.spill.memory</b> bytes. <br>
+ * <br>
+ * The stripes given to {@link #add(StripesMapWritable)} are merged on the
+ * heap, in a {@link StripesMapWritable}, until it holds more entries than
+ * half of the memory allows. They are then added to a {@link SpillableStripe},
+ * given the other half, which spills to disk when full. <br>
+ * The sum is read with {@link #next()} and {@link #getStripe()}, <b>in word
+ * order</b> (of the UTF-8 bytes), so the two jobs write the same lines
+ * whatever the order of the values: a single stripe when the heap map was
+ * never spilled, otherwise consecutive stripes of at most that many entries
+ * each. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class StripeAccumulator {
+
+	/** rough heap bytes of an entry of the map */
+	private static final int ENTRY_FOOTPRINT = 64;
+
+	private final StripesMapWritable merged = new StripesMapWritable();
+	private final StripesMapWritable result = new StripesMapWritable();
+	private final SpillableStripe spillable;
+	private final int maxEntries;
+	private boolean reading;
+	private boolean spilling;
+
+	public StripeAccumulator(Configuration conf) {
+		long memory = conf.getLong(SpillableStripe.MEMORY, SpillableStripe.MEMORY_DEFAULT_VALUE);
+		maxEntries = (int) Math.max(1, Math.min(Integer.MAX_VALUE, memory / 2 / ENTRY_FOOTPRINT));
+		spillable = new SpillableStripe(conf, memory / 2);
+	}
+
+	/**
+	 * Adds the counts of a stripe of the current term.
+	 */
+	public void add(StripesMapWritable stripe) throws IOException {
+		merged.merge(stripe);
+		if (merged.size() > maxEntries) {
+			merged.addTo(spillable);
+			merged.clear();
+		}
+	}
+
+	/**
+	 * Moves to the next stripe of the sum. Once it returned false the
+	 * accumulator is empty, ready for the stripes of the next term.
+	 *
+	 * @return false when the whole sum was read
+	 */
+	public boolean next() throws IOException {
+		if (!reading) {
+			reading = true;
+			spilling = !spillable.isEmpty();
+			if (!spilling) {
+				result.copySorted(merged);
+				merged.clear();
+				return true;
+			}
+			merged.addTo(spillable);
+			merged.clear();
+			spillable.finish();
+		} else if (!spilling) {
+			reading = false;
+			return false;
+		}
+		result.clear();
+		while (spillable.next()) {
+			result.increment(spillable.getBytes(), 0, spillable.getLength(), spillable.getCount());
+			if (result.size() == maxEntries) {
+				return true;
+			}
+		}
+		if (result.size() > 0) {
+			return true;
+		}
+		spillable.clear();
+		reading = false;
+		return false;
+	}
+
+	/**
+	 * @return the current stripe, valid until the next call to
+	 *         {@link #next()}
+	 */
+	public StripesMapWritable getStripe() {
+		return result;
+	}
+}
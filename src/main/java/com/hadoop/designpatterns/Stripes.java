@@ -1,16 +1,12 @@
 package com.hadoop.designpatterns;
 
 import java.io.IOException;
-import java.util.Set;
-
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.conf.Configured;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
-import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
@@ -20,6 +16,8 @@ import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.log4j.Logger;
 
+import com.hadoop.util.TextTokenizer;
+
 /**
  * <b>Implementation of the Hadoop 'Stripes' design pattern</b><br>
  * <br>
@@ -47,82 +45,65 @@ public class Stripes extends Configured implements Tool {
 
 	public static class MapClass extends Mapper<LongWritable, Text, Text, StripesMapWritable> {
 
+		private TextTokenizer tokenizer = TextTokenizer.alphabetic();
 		private Text term = new Text();
-		private IntWritable neighbourCount = new IntWritable(0);
 		private StripesMapWritable associativeMap = new StripesMapWritable();
-		private IntWritable one = new IntWritable(1);
 
 		public void map(LongWritable lineNumber, Text line, Context context) throws IOException, InterruptedException {
 
 			int neighbours = context.getConfiguration().getInt(NEIGHBOURS, NEIGHBOURS_DEFAULT_VALUE);
-			String[] words = line.toString().toLowerCase().replaceAll("[^a-zA-Z ]", "").split("\\s+");
+			int words = tokenizer.tokenize(line);
+			byte[] bytes = tokenizer.getBytes();
 
-			for (int i = 0; i < words.length; i++) {
-
-				if (words[i].length() == 0) {
-					continue;
-				}
+			for (int i = 0; i < words; i++) {
 
 				for (int j = i - neighbours; j < i + neighbours + 1; j++) {
 
-					if (j >= words.length) {
+					if (j >= words) {
 						break;
 					}
 
 					if (j == i || j < 0) {
 						continue;
 					}
-					Text neighbour = new Text();
-					neighbour.set(words[j]);
-
-					if (associativeMap.containsKey(neighbour)) {
-						IntWritable count = (IntWritable) associativeMap.get(neighbour);
-						neighbourCount.set(count.get() + 1);
-						associativeMap.put(neighbour, neighbourCount);
-					} else {
-						associativeMap.put(neighbour, one);
-					}
+					associativeMap.increment(bytes, tokenizer.getStart(j), tokenizer.getLength(j), 1);
 				}
-				term.set(words[i]);
+				tokenizer.get(i, term);
 				context.write(term, associativeMap);
 				associativeMap.clear();
 			}
 		}
 	}
 
+	/**
+	 * Sums the maps of a term with a {@link StripeAccumulator} and writes its
+	 * neighbours in word order: on a single line, or on several lines of at
+	 * most <b>stripe.spill.memory</b> / 2 worth of entries when the sum had to
+	 * be spilled.
+	 */
 	public static class Reduce extends Reducer<Text, StripesMapWritable, Text, StripesMapWritable> {
-		private StripesMapWritable associativeResult = new StripesMapWritable();
+
+		private StripeAccumulator accumulator;
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			accumulator = new StripeAccumulator(context.getConfiguration());
+		}
 
 		public void reduce(Text term, Iterable<StripesMapWritable> associativeMaps, Context context)
 				throws IOException, InterruptedException {
 
-			associativeResult.clear();
 			for (StripesMapWritable associativeMap : associativeMaps) {
-				sumKeyValues(term, associativeMap);
+				accumulator.add(associativeMap);
 			}
-
-			context.write(term, associativeResult);
-
-		}
-
-		private void sumKeyValues(Text term, StripesMapWritable associativeMap) {
-			Set<Writable> keys = associativeMap.keySet();
-			for (Writable key : keys) {
-				IntWritable count = (IntWritable) associativeMap.get(key);
-
-				if (associativeResult.containsKey(key)) {
-					IntWritable incCount = (IntWritable) associativeResult.get(key);
-					incCount.set(incCount.get() + count.get());
-					associativeResult.put(key, incCount);
-				} else {
-					associativeResult.put(key, count);
-				}
+			while (accumulator.next()) {
+				context.write(term, accumulator.getStripe());
 			}
 		}
 	}
 
 	public int run(String[] args) throws Exception {
-		Configuration conf = new Configuration();
+		Configuration conf = getConf();
 		Job job = new Job(conf, "CitationsGroups");
 		if (args.length == 3) {
 			job.getConfiguration().set(NEIGHBOURS, args[2]);
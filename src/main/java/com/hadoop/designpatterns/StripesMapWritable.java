@@ -1,29 +1,95 @@
 package com.hadoop.designpatterns;
 
-import java.util.Iterator;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
-import org.apache.hadoop.io.MapWritable;
 import org.apache.hadoop.io.Writable;
 
+import com.hadoop.util.SpillableStripe;
+import com.hadoop.util.WordCountMap;
+
 /**
- * Wrapper class to the MapWritable. Overriding the toString() method in order
- * to print into the file.
- * 
+ * Associative array of the neighbours of a term and their counts, backed by a
+ * {@link WordCountMap}: words are written as UTF-8 bytes and counts as VInts,
+ * with no class ids or <b>IntWritable</b> objects per entry. <br>
+ * Overriding the toString() method in order to print into the file.
+ *
  * @author pmonteiro
  *
  */
-public class StripesMapWritable extends MapWritable implements Writable {
+public class StripesMapWritable implements Writable {
+
+	private WordCountMap stripe = new WordCountMap();
+
+	public StripesMapWritable increment(byte[] b, int s, int l, int count) {
+		stripe.increment(b, s, l, count);
+		return this;
+	}
+
+	public StripesMapWritable increment(String word, int count) {
+		stripe.increment(word, count);
+		return this;
+	}
+
+	/**
+	 * Adds all the counts of the other map into this one, in place.
+	 */
+	public StripesMapWritable merge(StripesMapWritable other) {
+		stripe.merge(other.stripe);
+		return this;
+	}
+
+	/**
+	 * Adds all the counts of this map to the accumulator.
+	 */
+	public void addTo(SpillableStripe accumulator) throws IOException {
+		accumulator.add(stripe);
+	}
+
+	/**
+	 * Sets this map to the entries of the other one, in the order of the
+	 * bytes of their words.
+	 */
+	public void copySorted(StripesMapWritable other) {
+		stripe.clear();
+		int[] sorted = other.stripe.sort();
+		byte[] bytes = other.stripe.getBytes();
+		for (int i = 0; i < other.size(); i++) {
+			int entry = sorted[i];
+			stripe.increment(bytes, other.stripe.getOffset(entry), other.stripe.getLength(entry),
+					other.stripe.getCount(entry));
+		}
+	}
+
+	public int get(String word) {
+		return stripe.get(word);
+	}
+
+	public boolean containsKey(String word) {
+		return stripe.containsKey(word);
+	}
+
+	public int size() {
+		return stripe.size();
+	}
+
+	public void clear() {
+		stripe.clear();
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		stripe.readFields(in);
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		stripe.write(out);
+	}
 
 	@Override
 	public String toString() {
-		StringBuilder sb = new StringBuilder();
-		Iterator<Writable> keys = this.keySet().iterator();
-		Iterator<Writable> values = this.values().iterator();
-		while (keys.hasNext()) {
-			Writable key = keys.next();
-			Writable value = values.next();
-			sb.append(key + ":" + value + " ");
-		}
-		return sb.toString();
+		return stripe.toString();
 	}
 }
@@ -0,0 +1,59 @@
+package com.hadoop.examples.wordcount;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+import com.hadoop.corpus.EncodeCorpus;
+import com.hadoop.corpus.EncodedCorpusInputFormat;
+
+/**
+ * {@link WordCount} over a corpus encoded by {@link EncodeCorpus} with the
+ * <i>wordcount</i> tokenizer: terms are counted, and shuffled, as int ids and
+ * only the words written are decoded. <br>
+ * The output is ordered by term id (by decreasing count) instead of by word.
+ * <br>
+ * 
+ * To run from within Eclipse in a stand-alone mode, provide the following
+ * arguments: <br>
+ * assets/mlk_speech/encoded assets/mlk_speech/output <br>
+ * 
+ * @author pmonteiro
+ *
+ */
+public class EncodedWordCount {
+
+	public static void main(String[] args) throws Exception {
+
+		String[] parameters = { "assets/mlk_speech/encoded", "assets/mlk_speech/output" };
+		if (args != null && args.length == 2) {
+			parameters = args;
+		}
+
+		Configuration conf = new Configuration();
+		String[] folders = new GenericOptionsParser(conf, parameters).getRemainingArgs();
+		Job job = new Job(conf, "EncodedWordCount");
+		job.setJarByClass(EncodedWordCount.class);
+
+		job.setMapperClass(EncodedWordCountMapper.class);
+		job.setReducerClass(EncodedWordCountReducer.class);
+
+		job.setMapOutputKeyClass(IntWritable.class);
+		job.setMapOutputValueClass(IntWritable.class);
+		job.setOutputKeyClass(Text.class);
+		job.setOutputValueClass(IntWritable.class);
+
+		EncodedCorpusInputFormat.setInput(job, new Path(folders[0]));
+		FileSystem fs = FileSystem.get(conf);
+		fs.delete(new Path(parameters[1]), true);
+		FileOutputFormat.setOutputPath(job, new Path(folders[1]));
+
+		if (!job.waitForCompletion(true))
+			return;
+	}
+}
@@ -0,0 +1,30 @@
+package com.hadoop.examples.wordcount;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.Mapper;
+
+import com.hadoop.corpus.TermIdsWritable;
+
+/**
+ * {@link WordCountMapper} over an encoded corpus: emits the id of each token,
+ * the tokenizing was done once when encoding.
+ * 
+ * @author pmonteiro
+ *
+ */
+public class EncodedWordCountMapper extends Mapper<LongWritable, TermIdsWritable, IntWritable, IntWritable> {
+
+	private final static IntWritable one = new IntWritable(1);
+	private IntWritable term = new IntWritable();
+
+	public void map(LongWritable key, TermIdsWritable value, Context context) throws IOException,
+			InterruptedException {
+		for (int i = 0; i < value.size(); i++) {
+			term.set(value.get(i));
+			context.write(term, one);
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package com.hadoop.examples.wordcount;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Reducer;
+
+import com.hadoop.corpus.TermDictionary;
+
+/**
+ * {@link WordCountReducer} over term ids: only count words with more than 5
+ * repetitions, decoding the word of the ones written.
+ * 
+ * @author pmonteiro
+ *
+ */
+public class EncodedWordCountReducer extends Reducer<IntWritable, IntWritable, Text, IntWritable> {
+
+	private TermDictionary dictionary;
+	private Text word = new Text();
+	private IntWritable result = new IntWritable();
+
+	@Override
+	protected void setup(Context context) throws IOException, InterruptedException {
+		dictionary = TermDictionary.load(context.getConfiguration());
+	}
+
+	public void reduce(IntWritable key, Iterable<IntWritable> values, Context context) throws IOException,
+			InterruptedException {
+		int sum = 0;
+		for (IntWritable val : values) {
+			sum += val.get();
+		}
+
+		if (sum > 5) {
+			dictionary.getTerm(key.get(), word);
+			result.set(sum);
+			context.write(word, result);
+		}
+	}
+}
@@ -1,13 +1,14 @@
 package com.hadoop.examples.wordcount;
 
 import java.io.IOException;
-import java.util.StringTokenizer;
 
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Mapper;
 
+import com.hadoop.util.TextTokenizer;
+
 /**
  * An improved WordCount mapper example: </br>
  * * ignores standard punctuation marks </br>
@@ -18,15 +19,18 @@ import org.apache.hadoop.mapreduce.Mapper;
  */
 public class WordCountMapper extends Mapper<LongWritable, Text, Text, IntWritable> {
 
+	/** word delimiters, also used to encode a corpus for {@link EncodedWordCount} */
+	public static final String DELIMITERS = " \"\t\n\r\f,.:;?![]`";
+
 	private final static IntWritable one = new IntWritable(1);
+	private TextTokenizer tokenizer = TextTokenizer.delimited(DELIMITERS);
 	private Text word = new Text();
 	  
 	public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
-		String line = value.toString();
-		StringTokenizer itr = new StringTokenizer(line, " \"\t\n\r\f,.:;?![]`");
+		int words = tokenizer.tokenize(value);
 	    
-	    while (itr.hasMoreTokens()) {
-	       word.set(itr.nextToken().toLowerCase());
+	    for (int i = 0; i < words; i++) {
+	       tokenizer.get(i, word);
 	       context.write(word, one);
 	    }
 	}
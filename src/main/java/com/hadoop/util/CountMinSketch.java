@@ -0,0 +1,227 @@
+package com.hadoop.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.util.hash.Hash;
+import org.apache.hadoop.util.hash.MurmurHash;
+
+/**
+ * Count-Min sketch of byte string counts in a fixed <b>depth</b> x
+ * <b>width</b> table of counters. <br>
+ * <br>
+ * An item is counted in one cell of each row, picked from two murmur hashes
+ * of its bytes (h1 + row * h2). Its count is estimated by the smallest of its
+ * cells, which is never below the true count and, with a probability of at
+ * least 1 - e^-depth, above it by at most e / width times the total of the
+ * sketch ({@link #getErrorBound()}). {@link #estimateMeanMin(byte[], int)}
+ * takes the noise of the other items out of each cell first (Count-Mean-Min),
+ * closer for the light items at the cost of the one sided guarantee. <br>
+ * Sketches of the same size are merged by adding their cells. Only the cells
+ * in use are written, as the VInt gap from the previous one and the VLong
+ * count, so a sparse sketch is smaller than the table. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class CountMinSketch implements Writable {
+
+	private static final int SEED = 0x5f3759df;
+	/** bytes of a long cell */
+	private static final int CELL_BYTES = 8;
+	private static final Hash HASH = MurmurHash.getInstance();
+
+	private int depth;
+	private int width;
+	private long[] cells;
+	private long total;
+
+	/**
+	 * Empty sketch, sized by {@link #readFields(DataInput)}.
+	 */
+	public CountMinSketch() {
+		this.cells = new long[0];
+	}
+
+	public CountMinSketch(int depth, int width) {
+		if (depth < 1 || width < 2) {
+			throw new IllegalArgumentException("Sketch too small: " + depth + " x " + width);
+		}
+		this.depth = depth;
+		this.width = width;
+		this.cells = new long[depth * width];
+	}
+
+	/**
+	 * Counts the first <b>length</b> bytes.
+	 */
+	public void add(byte[] bytes, int length, long count) {
+		int h1 = HASH.hash(bytes, length, SEED);
+		int h2 = HASH.hash(bytes, length, h1);
+		for (int row = 0; row < depth; row++) {
+			cells[row * width + cell(h1, h2, row)] += count;
+		}
+		total += count;
+	}
+
+	/**
+	 * @return the Count-Min estimate of the count of the first <b>length</b>
+	 *         bytes, never below it
+	 */
+	public long estimate(byte[] bytes, int length) {
+		int h1 = HASH.hash(bytes, length, SEED);
+		int h2 = HASH.hash(bytes, length, h1);
+		long estimate = Long.MAX_VALUE;
+		for (int row = 0; row < depth; row++) {
+			estimate = Math.min(estimate, cells[row * width + cell(h1, h2, row)]);
+		}
+		return estimate;
+	}
+
+	/**
+	 * @return the Count-Mean-Min estimate: the median of the cells less the
+	 *         mean count the other items add to a cell, capped by the
+	 *         {@link #estimate(byte[], int)}
+	 */
+	public long estimateMeanMin(byte[] bytes, int length) {
+		int h1 = HASH.hash(bytes, length, SEED);
+		int h2 = HASH.hash(bytes, length, h1);
+		long min = Long.MAX_VALUE;
+		double[] estimates = new double[depth];
+		for (int row = 0; row < depth; row++) {
+			long count = cells[row * width + cell(h1, h2, row)];
+			min = Math.min(min, count);
+			estimates[row] = count - (total - count) / (double) (width - 1);
+		}
+		Arrays.sort(estimates);
+		double median = depth % 2 == 1 ? estimates[depth / 2]
+				: (estimates[depth / 2 - 1] + estimates[depth / 2]) / 2;
+		return Math.max(0, Math.min(min, Math.round(median)));
+	}
+
+	private int cell(int h1, int h2, int row) {
+		return ((h1 + row * h2) & Integer.MAX_VALUE) % width;
+	}
+
+	/**
+	 * Adds the cells of a sketch of the same size.
+	 */
+	public void merge(CountMinSketch other) {
+		if (other.depth != depth || other.width != width) {
+			throw new IllegalArgumentException("Sketch of " + other.depth + " x " + other.width
+					+ " merged into one of " + depth + " x " + width);
+		}
+		for (int i = 0; i < cells.length; i++) {
+			cells[i] += other.cells[i];
+		}
+		total += other.total;
+	}
+
+	/**
+	 * @return e / width, the error of the estimates relative to the total
+	 */
+	public double getError() {
+		return Math.E / width;
+	}
+
+	/**
+	 * @return 1 - e^-depth, the probability of an estimate within the
+	 *         {@link #getErrorBound()}
+	 */
+	public double getConfidence() {
+		return 1 - Math.exp(-depth);
+	}
+
+	/**
+	 * @return the most an estimate is above the true count, with
+	 *         {@link #getConfidence()}
+	 */
+	public long getErrorBound() {
+		return (long) Math.ceil(getError() * total);
+	}
+
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * @return bytes of the table of cells of a sketch of the given size
+	 */
+	public static long getTableBytes(int depth, int width) {
+		return (long) depth * width * CELL_BYTES;
+	}
+
+	/**
+	 * @return bytes of the table of cells of this sketch
+	 */
+	public long getTableBytes() {
+		return getTableBytes(depth, width);
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public boolean isEmpty() {
+		return total == 0;
+	}
+
+	public void clear() {
+		Arrays.fill(cells, 0);
+		total = 0;
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		WritableUtils.writeVInt(out, depth);
+		WritableUtils.writeVInt(out, width);
+		WritableUtils.writeVLong(out, total);
+		int used = 0;
+		for (long cell : cells) {
+			if (cell != 0) {
+				used++;
+			}
+		}
+		WritableUtils.writeVInt(out, used);
+		int previous = -1;
+		for (int i = 0; i < cells.length; i++) {
+			if (cells[i] != 0) {
+				WritableUtils.writeVInt(out, i - previous);
+				WritableUtils.writeVLong(out, cells[i]);
+				previous = i;
+			}
+		}
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		depth = WritableUtils.readVInt(in);
+		width = WritableUtils.readVInt(in);
+		total = WritableUtils.readVLong(in);
+		if (cells.length != depth * width) {
+			cells = new long[depth * width];
+		} else {
+			Arrays.fill(cells, 0);
+		}
+		int used = WritableUtils.readVInt(in);
+		int cell = -1;
+		for (int i = 0; i < used; i++) {
+			cell += WritableUtils.readVInt(in);
+			cells[cell] = WritableUtils.readVLong(in);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return depth + " x " + width + " sketch of " + total + " (+" + getErrorBound() + " at "
+				+ getConfidence() + ")";
+	}
+}
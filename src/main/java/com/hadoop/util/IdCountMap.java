@@ -0,0 +1,232 @@
+package com.hadoop.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Open addressing hash map of <b>long</b> ids to <b>int</b> counts, the
+ * numeric counterpart of {@link WordCountMap} for dictionary encoded terms
+ * (see {@link com.hadoop.corpus.TermDictionary}). <br>
+ * Ids and counts are kept in primitive arrays, so adding an id never boxes and,
+ * once the arrays have grown, clearing and refilling the map does not
+ * allocate. Entries are kept in insertion order and can be walked by index.
+ * <br>
+ * <br>
+ * The serialized form is a VInt size followed by the entries <b>ordered by
+ * id</b>, each one being the VLong difference with the previous id and the
+ * VInt count: the ids of a stripe usually take a byte each. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class IdCountMap implements Writable {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private long[] ids = new long[INITIAL_CAPACITY];
+	private int[] counts = new int[INITIAL_CAPACITY];
+	private int size;
+
+	/** slot to entry index + 1, 0 is an empty slot */
+	private int[] table = new int[INITIAL_CAPACITY * 2];
+
+	private int[] sorted = new int[INITIAL_CAPACITY];
+	private int[] sortBuffer = new int[INITIAL_CAPACITY];
+
+	/**
+	 * Adds the count to the id, inserting it if needed.
+	 *
+	 * @return the new count of the id
+	 */
+	public int increment(long id, int count) {
+		int entry = findOrInsert(id);
+		counts[entry] += count;
+		return counts[entry];
+	}
+
+	/**
+	 * @return the count of the id or 0 when the id is not in the map
+	 */
+	public int get(long id) {
+		int entry = find(id, hash(id));
+		return entry < 0 ? 0 : counts[entry];
+	}
+
+	/**
+	 * Adds all the counts of the other map into this one, in place.
+	 *
+	 * @return the sum of the counts added
+	 */
+	public long merge(IdCountMap other) {
+		long total = 0;
+		for (int i = 0; i < other.size; i++) {
+			increment(other.ids[i], other.counts[i]);
+			total += other.counts[i];
+		}
+		return total;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Empties the map, keeping the arrays for reuse.
+	 */
+	public void clear() {
+		if (size * 8 < table.length) {
+			// a few entries left in a table grown by a large stripe
+			int mask = table.length - 1;
+			for (int i = 0; i < size; i++) {
+				int slot = hash(ids[i]) & mask;
+				while (table[slot] != i + 1) {
+					slot = (slot + 1) & mask;
+				}
+				table[slot] = 0;
+			}
+		} else if (size > 0) {
+			Arrays.fill(table, 0);
+		}
+		size = 0;
+	}
+
+	public long getId(int entry) {
+		return ids[entry];
+	}
+
+	public int getCount(int entry) {
+		return counts[entry];
+	}
+
+	/**
+	 * Orders the entries by id. The map itself keeps its insertion order.
+	 *
+	 * @return the entry indexes in id order, valid until the map changes
+	 */
+	public int[] sort() {
+		if (sorted.length < size) {
+			sorted = new int[counts.length];
+			sortBuffer = new int[counts.length];
+		}
+		for (int i = 0; i < size; i++) {
+			sorted[i] = i;
+		}
+		mergeSort(sorted, sortBuffer, 0, size);
+		return sorted;
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		WritableUtils.writeVInt(out, size);
+		int[] order = sort();
+		long previous = 0;
+		for (int i = 0; i < size; i++) {
+			int entry = order[i];
+			WritableUtils.writeVLong(out, ids[entry] - previous);
+			WritableUtils.writeVInt(out, counts[entry]);
+			previous = ids[entry];
+		}
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		clear();
+		int entries = WritableUtils.readVInt(in);
+		long id = 0;
+		for (int i = 0; i < entries; i++) {
+			id += WritableUtils.readVLong(in);
+			increment(id, WritableUtils.readVInt(in));
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < size; i++) {
+			sb.append(ids[i]).append(":").append(counts[i]).append(" ");
+		}
+		return sb.toString();
+	}
+
+	private void mergeSort(int[] entries, int[] buffer, int from, int to) {
+		if (to - from < 2) {
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		mergeSort(entries, buffer, from, middle);
+		mergeSort(entries, buffer, middle, to);
+		if (ids[entries[middle - 1]] <= ids[entries[middle]]) {
+			return;
+		}
+		System.arraycopy(entries, from, buffer, from, to - from);
+		for (int i = from, left = from, right = middle; i < to; i++) {
+			if (right >= to || (left < middle && ids[buffer[left]] <= ids[buffer[right]])) {
+				entries[i] = buffer[left++];
+			} else {
+				entries[i] = buffer[right++];
+			}
+		}
+	}
+
+	private int findOrInsert(long id) {
+		int hash = hash(id);
+		int entry = find(id, hash);
+		if (entry >= 0) {
+			return entry;
+		}
+
+		if (size == counts.length) {
+			grow();
+		}
+		entry = size++;
+		ids[entry] = id;
+		counts[entry] = 0;
+		insertSlot(entry, hash);
+		return entry;
+	}
+
+	private int find(long id, int hash) {
+		int mask = table.length - 1;
+		for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+			int entry = table[slot] - 1;
+			if (entry < 0 || ids[entry] == id) {
+				return entry;
+			}
+		}
+	}
+
+	private void insertSlot(int entry, int hash) {
+		int mask = table.length - 1;
+		int slot = hash & mask;
+		while (table[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		table[slot] = entry + 1;
+	}
+
+	private void grow() {
+		int capacity = counts.length * 2;
+		ids = Arrays.copyOf(ids, capacity);
+		counts = Arrays.copyOf(counts, capacity);
+		// keeps the load factor at or below 0.5
+		table = new int[capacity * 2];
+		for (int i = 0; i < size; i++) {
+			insertSlot(i, hash(ids[i]));
+		}
+	}
+
+	private static int hash(long id) {
+		// ids are small and dense, so they are scattered over the whole table
+		long hash = id * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32));
+	}
+}
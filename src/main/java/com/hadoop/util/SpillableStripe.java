@@ -0,0 +1,472 @@
+package com.hadoop.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.LocalDirAllocator;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.log4j.Logger;
+
+/**
+ * Word/count accumulator for a stripe of any size in bounded memory. <br>
+ * <br>
+ * The counts are summed in an open addressing hash table kept <b>off the
+ * heap</b>, in two direct buffers allocated on the first add: the entries
+ * (hash, count, length and UTF-8 bytes of the word) and the slots pointing at
+ * them. When either one is full the entries are sorted by word bytes (the
+ * slots buffer is reused for the sort) and <b>spilled</b> as a run to a local
+ * directory of the task (<b>mapred.local.dir</b>), and the table starts over.
+ * <br>
+ * {@link #finish()} spills what is left and merges the runs, at most
+ * <b>io.sort.factor</b> at a time, into a single pass where the counts of a
+ * word are summed across the runs. The entries are then read in word order
+ * with {@link #next()}. When nothing was spilled the table is only sorted and
+ * read in place. <br>
+ * The memory budget is given to the constructor, see
+ * <b>stripe.spill.memory</b> for the reducers using it. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class SpillableStripe {
+
+	/** off-heap bytes of the stripe reducers, shared by their buffers */
+	public static final String MEMORY = "stripe.spill.memory";
+	public static final long MEMORY_DEFAULT_VALUE = 64 << 20;
+
+	private static final String LOCAL_DIR = "mapred.local.dir";
+	private static final String MERGE_FACTOR = "io.sort.factor";
+	private static final int MERGE_FACTOR_DEFAULT_VALUE = 10;
+	/** entry header: hash, count and word length */
+	private static final int HEADER = 12;
+	private static final int MIN_BUDGET = 1 << 12;
+
+	private static Logger _log = Logger.getLogger(SpillableStripe.class.getName());
+
+	private final Configuration conf;
+	private final LocalDirAllocator localDirs = new LocalDirAllocator(LOCAL_DIR);
+	private final long budget;
+	private final int mergeFactor;
+
+	private ByteBuffer entries;
+	/** view of the entries for the bulk reads of their words */
+	private ByteBuffer reader;
+	/** slots of the hash table, entry offset + 1, 0 is an empty slot */
+	private ByteBuffer slots;
+	private int slotMask;
+	private int maxEntries;
+	private int size;
+
+	private List<File> runs = new ArrayList<File>();
+	private int spills;
+
+	/** iteration state, see {@link #finish()} */
+	private boolean finished;
+	private int position;
+	private PriorityQueue<Run> merging;
+	private byte[] word = new byte[64];
+	private int wordLength;
+	private int count;
+
+	/**
+	 * @param budget
+	 *            off-heap bytes of the table, split between its entries (3/4)
+	 *            and its slots (1/4)
+	 */
+	public SpillableStripe(Configuration conf, long budget) {
+		this.conf = conf;
+		this.budget = Math.max(MIN_BUDGET, budget);
+		this.mergeFactor = Math.max(2, conf.getInt(MERGE_FACTOR, MERGE_FACTOR_DEFAULT_VALUE));
+	}
+
+	/**
+	 * Adds the count to the word, spilling the table first when it is full.
+	 */
+	public void add(byte[] b, int s, int l, int count) throws IOException {
+		if (finished) {
+			throw new IllegalStateException("Stripe already finished");
+		}
+		if (entries == null) {
+			allocate();
+		}
+		int hash = WritableComparator.hashBytes(b, s, l);
+		hash ^= hash >>> 16;
+		int slot = find(b, s, l, hash);
+		int entry = slots.getInt(slot << 2) - 1;
+		if (entry >= 0) {
+			entries.putInt(entry + 4, entries.getInt(entry + 4) + count);
+			return;
+		}
+		if (size == maxEntries || entries.position() + HEADER + l > entries.capacity()) {
+			spill();
+			slot = find(b, s, l, hash);
+		}
+		entry = entries.position();
+		entries.putInt(hash).putInt(count).putInt(l).put(b, s, l);
+		slots.putInt(slot << 2, entry + 1);
+		size++;
+	}
+
+	/**
+	 * Adds all the counts of the map.
+	 */
+	public void add(WordCountMap map) throws IOException {
+		byte[] bytes = map.getBytes();
+		for (int i = 0; i < map.size(); i++) {
+			add(bytes, map.getOffset(i), map.getLength(i), map.getCount(i));
+		}
+	}
+
+	/**
+	 * @return true when nothing was added since the last {@link #clear()}
+	 */
+	public boolean isEmpty() {
+		return size == 0 && runs.isEmpty();
+	}
+
+	/**
+	 * @return true when some entries were spilled to disk
+	 */
+	public boolean hasSpilled() {
+		return !runs.isEmpty();
+	}
+
+	/**
+	 * Ends the adds and prepares the reading of the entries in word order.
+	 */
+	public void finish() throws IOException {
+		finished = true;
+		position = 0;
+		if (runs.isEmpty()) {
+			sort();
+			return;
+		}
+		if (size > 0) {
+			spill();
+		}
+		while (runs.size() > mergeFactor) {
+			List<File> batch = new ArrayList<File>(runs.subList(0, mergeFactor));
+			runs.subList(0, mergeFactor).clear();
+			runs.add(mergeRuns(batch));
+		}
+		merging = open(runs);
+	}
+
+	/**
+	 * Moves to the next word, in word order, with its count summed over all
+	 * the adds.
+	 *
+	 * @return false when there are no more words
+	 */
+	public boolean next() throws IOException {
+		if (merging == null) {
+			if (position >= size) {
+				return false;
+			}
+			int entry = slots.getInt(position++ << 2);
+			count = entries.getInt(entry + 4);
+			wordLength = entries.getInt(entry + 8);
+			ensureWord(wordLength);
+			reader.position(entry + HEADER);
+			reader.get(word, 0, wordLength);
+			return true;
+		}
+		return nextMerged(merging);
+	}
+
+	/**
+	 * @return the buffer of the UTF-8 bytes of the current word, from 0 to
+	 *         {@link #getLength()}
+	 */
+	public byte[] getBytes() {
+		return word;
+	}
+
+	public int getLength() {
+		return wordLength;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public String getWord() throws IOException {
+		return Text.decode(word, 0, wordLength);
+	}
+
+	/**
+	 * Empties the stripe and deletes its runs, keeping the buffers for reuse.
+	 */
+	public void clear() throws IOException {
+		if (merging != null) {
+			for (Run run : merging) {
+				run.close();
+			}
+			merging = null;
+		}
+		for (File run : runs) {
+			run.delete();
+		}
+		runs.clear();
+		if (slots != null) {
+			resetTable();
+		}
+		finished = false;
+	}
+
+	private void allocate() {
+		int slotCount = Integer.highestOneBit((int) Math.min(Integer.MAX_VALUE, budget / 4 / 4));
+		slots = ByteBuffer.allocateDirect(slotCount << 2);
+		slotMask = slotCount - 1;
+		// keeps the load factor at or below 0.5, and room to sort the entries
+		maxEntries = slotCount / 2;
+		entries = ByteBuffer.allocateDirect((int) Math.min(Integer.MAX_VALUE, budget - (slotCount << 2)));
+		reader = entries.duplicate();
+	}
+
+	private int find(byte[] b, int s, int l, int hash) {
+		for (int slot = hash & slotMask;; slot = (slot + 1) & slotMask) {
+			int entry = slots.getInt(slot << 2) - 1;
+			if (entry < 0 || (entries.getInt(entry) == hash && equals(entry, b, s, l))) {
+				return slot;
+			}
+		}
+	}
+
+	private boolean equals(int entry, byte[] b, int s, int l) {
+		if (entries.getInt(entry + 8) != l) {
+			return false;
+		}
+		int start = entry + HEADER;
+		for (int i = 0; i < l; i++) {
+			if (entries.get(start + i) != b[s + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Sorts the entries by word into the first {@link #size} ints of the
+	 * slots, the hash table is lost.
+	 */
+	private void sort() {
+		if (slots == null) {
+			return;
+		}
+		for (int entry = 0, i = 0; i < size; i++) {
+			slots.putInt(i << 2, entry);
+			entry += HEADER + entries.getInt(entry + 8);
+		}
+		// the second half of the slots is the merge buffer
+		mergeSort(0, size, maxEntries);
+	}
+
+	private void mergeSort(int from, int to, int buffer) {
+		if (to - from < 2) {
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		mergeSort(from, middle, buffer);
+		mergeSort(middle, to, buffer);
+		if (compare(slots.getInt((middle - 1) << 2), slots.getInt(middle << 2)) <= 0) {
+			return;
+		}
+		for (int i = from; i < to; i++) {
+			slots.putInt((buffer + i) << 2, slots.getInt(i << 2));
+		}
+		for (int i = from, left = from, right = middle; i < to; i++) {
+			int leftEntry = left < middle ? slots.getInt((buffer + left) << 2) : -1;
+			int rightEntry = right < to ? slots.getInt((buffer + right) << 2) : -1;
+			if (rightEntry < 0 || (leftEntry >= 0 && compare(leftEntry, rightEntry) <= 0)) {
+				slots.putInt(i << 2, leftEntry);
+				left++;
+			} else {
+				slots.putInt(i << 2, rightEntry);
+				right++;
+			}
+		}
+	}
+
+	private int compare(int entry1, int entry2) {
+		int length1 = entries.getInt(entry1 + 8);
+		int length2 = entries.getInt(entry2 + 8);
+		int start1 = entry1 + HEADER;
+		int start2 = entry2 + HEADER;
+		for (int i = 0; i < Math.min(length1, length2); i++) {
+			int a = entries.get(start1 + i) & 0xff;
+			int b = entries.get(start2 + i) & 0xff;
+			if (a != b) {
+				return a - b;
+			}
+		}
+		return length1 - length2;
+	}
+
+	/**
+	 * Writes the entries in word order to a new run and empties the table.
+	 */
+	private void spill() throws IOException {
+		sort();
+		File run = newRun();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 1 << 16));
+		try {
+			byte[] bytes = new byte[256];
+			for (int i = 0; i < size; i++) {
+				int entry = slots.getInt(i << 2);
+				int length = entries.getInt(entry + 8);
+				if (bytes.length < length) {
+					bytes = new byte[length * 2];
+				}
+				reader.position(entry + HEADER);
+				reader.get(bytes, 0, length);
+				write(out, bytes, length, entries.getInt(entry + 4));
+			}
+		} finally {
+			out.close();
+		}
+		_log.info("Spilled " + size + " entries (" + entries.position() + " bytes) to " + run);
+		runs.add(run);
+		resetTable();
+	}
+
+	private void resetTable() {
+		for (int i = 0; i < slots.capacity(); i += 8) {
+			slots.putLong(i, 0L);
+		}
+		entries.clear();
+		size = 0;
+	}
+
+	/**
+	 * Merges the runs into a new one and deletes them.
+	 */
+	private File mergeRuns(List<File> batch) throws IOException {
+		PriorityQueue<Run> queue = open(batch);
+		File run = newRun();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 1 << 16));
+		try {
+			while (nextMerged(queue)) {
+				write(out, word, wordLength, count);
+			}
+		} finally {
+			out.close();
+			for (File file : batch) {
+				file.delete();
+			}
+		}
+		return run;
+	}
+
+	private PriorityQueue<Run> open(List<File> files) throws IOException {
+		PriorityQueue<Run> queue = new PriorityQueue<Run>(files.size());
+		for (File file : files) {
+			Run run = new Run(file);
+			if (run.next()) {
+				queue.add(run);
+			} else {
+				run.close();
+			}
+		}
+		return queue;
+	}
+
+	/**
+	 * Pops the smallest word of the runs and sums its counts.
+	 */
+	private boolean nextMerged(PriorityQueue<Run> queue) throws IOException {
+		Run run = queue.poll();
+		if (run == null) {
+			return false;
+		}
+		ensureWord(run.length);
+		System.arraycopy(run.word, 0, word, 0, run.length);
+		wordLength = run.length;
+		count = 0;
+		while (run != null) {
+			count += run.count;
+			if (run.next()) {
+				queue.add(run);
+			} else {
+				run.close();
+			}
+			run = queue.peek();
+			if (run != null && WritableComparator.compareBytes(run.word, 0, run.length, word, 0, wordLength) == 0) {
+				queue.poll();
+			} else {
+				run = null;
+			}
+		}
+		return true;
+	}
+
+	private File newRun() throws IOException {
+		File run = new File(localDirs.getLocalPathForWrite("stripe-" + System.nanoTime() + "-" + (spills++), conf)
+				.toUri().getPath());
+		run.getParentFile().mkdirs();
+		return run;
+	}
+
+	private static void write(DataOutputStream out, byte[] bytes, int length, int count) throws IOException {
+		WritableUtils.writeVInt(out, length);
+		out.write(bytes, 0, length);
+		WritableUtils.writeVInt(out, count);
+	}
+
+	private void ensureWord(int length) {
+		if (word.length < length) {
+			word = new byte[length * 2];
+		}
+	}
+
+	/**
+	 * Cursor on a spilled run.
+	 */
+	private static class Run implements Comparable<Run> {
+		private final DataInputStream in;
+		private byte[] word = new byte[64];
+		private int length;
+		private int count;
+
+		Run(File file) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+		}
+
+		boolean next() throws IOException {
+			try {
+				length = WritableUtils.readVInt(in);
+			} catch (EOFException e) {
+				return false;
+			}
+			if (word.length < length) {
+				word = new byte[length * 2];
+			}
+			in.readFully(word, 0, length);
+			count = WritableUtils.readVInt(in);
+			return true;
+		}
+
+		void close() throws IOException {
+			in.close();
+		}
+
+		@Override
+		public int compareTo(Run other) {
+			return WritableComparator.compareBytes(word, 0, length, other.word, 0, other.length);
+		}
+	}
+}
@@ -0,0 +1,238 @@
+package com.hadoop.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Text;
+
+/**
+ * Reusable tokenizer walking the UTF-8 bytes of a {@link Text} directly. <br>
+ * In a single pass it lower-cases ASCII letters, drops the characters that are
+ * not part of a word and splits on the separators, copying the tokens into an
+ * internal buffer that is reused from one record to the next. Tokens are handed
+ * out as byte slices ({@link #getBytes()}, {@link #getStart(int)},
+ * {@link #getLength(int)}) or copied into a {@link Text}. <br>
+ * <br>
+ * The factory methods give the same tokens as the regular expressions the
+ * mappers used to run on <code>line.toString().toLowerCase()</code>, without
+ * the empty tokens <code>split("\\s+")</code> leaves when a line starts with
+ * whitespace. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class TextTokenizer {
+
+	private static final byte DROP = 0;
+	private static final byte TOKEN = 1;
+	private static final byte SEPARATOR = 2;
+
+	private static final int INITIAL_TOKENS = 64;
+	private static final int INITIAL_BYTES = 1024;
+
+	private final byte[] ascii = new byte[128];
+	private final boolean keepNonAscii;
+
+	private byte[] bytes = new byte[INITIAL_BYTES];
+	private int[] starts = new int[INITIAL_TOKENS];
+	private int[] lengths = new int[INITIAL_TOKENS];
+	private int size;
+
+	private TextTokenizer(boolean keepNonAscii) {
+		this.keepNonAscii = keepNonAscii;
+	}
+
+	/**
+	 * Letters and digits, split on spaces and hyphens. Same as
+	 * <code>replaceAll("[^a-zA-Z0-9 \\-]", "").replaceAll("-", " ").split("\\s+")</code>
+	 * .
+	 */
+	public static TextTokenizer alphanumeric() {
+		TextTokenizer tokenizer = new TextTokenizer(false);
+		tokenizer.set('a', 'z', TOKEN).set('A', 'Z', TOKEN).set('0', '9', TOKEN);
+		tokenizer.set(' ', ' ', SEPARATOR).set('-', '-', SEPARATOR);
+		return tokenizer;
+	}
+
+	/**
+	 * Letters only, split on spaces. Same as
+	 * <code>replaceAll("[^a-zA-Z ]", "").split("\\s+")</code>.
+	 */
+	public static TextTokenizer alphabetic() {
+		TextTokenizer tokenizer = new TextTokenizer(false);
+		tokenizer.set('a', 'z', TOKEN).set('A', 'Z', TOKEN);
+		tokenizer.set(' ', ' ', SEPARATOR);
+		return tokenizer;
+	}
+
+	/**
+	 * Every character but the delimiters, as a
+	 * {@link java.util.StringTokenizer} with the given delimiters followed by
+	 * <code>toLowerCase()</code>. Tokens with non ASCII characters are lower
+	 * cased through a String.
+	 *
+	 * @param delimiters
+	 *            ASCII delimiter characters
+	 */
+	public static TextTokenizer delimited(String delimiters) {
+		TextTokenizer tokenizer = new TextTokenizer(true);
+		tokenizer.set((char) 0, (char) 127, TOKEN);
+		for (int i = 0; i < delimiters.length(); i++) {
+			tokenizer.set(delimiters.charAt(i), delimiters.charAt(i), SEPARATOR);
+		}
+		return tokenizer;
+	}
+
+	/**
+	 * Splits the text into tokens, replacing the ones of the previous call.
+	 *
+	 * @return number of tokens
+	 */
+	public int tokenize(Text text) {
+		return tokenize(text.getBytes(), 0, text.getLength());
+	}
+
+	public int tokenize(byte[] b, int s, int l) {
+		size = 0;
+		ensureBytes(l);
+		int length = 0;
+		int start = -1;
+		boolean nonAscii = false;
+		int end = s + l;
+		for (int p = s; p < end; p++) {
+			int c = b[p] & 0xff;
+			byte type;
+			if (c < 0x80) {
+				type = ascii[c];
+				if (c >= 'A' && c <= 'Z') {
+					c += 'a' - 'A';
+				}
+			} else if (keepNonAscii) {
+				type = TOKEN;
+				nonAscii = true;
+			} else if (c == 0xC4 && p + 1 < end && (b[p + 1] & 0xff) == 0xB0) {
+				// the only non ASCII characters whose lower case keeps an
+				// ASCII letter: capital I with dot above and the Kelvin sign
+				type = TOKEN;
+				c = 'i';
+				p++;
+			} else if (c == 0xE2 && p + 2 < end && (b[p + 1] & 0xff) == 0x84 && (b[p + 2] & 0xff) == 0xAA) {
+				type = TOKEN;
+				c = 'k';
+				p += 2;
+			} else {
+				type = DROP;
+			}
+
+			if (type == TOKEN) {
+				if (start < 0) {
+					start = length;
+				}
+				if (length == bytes.length) {
+					// lower casing non ASCII tokens may have grown them
+					bytes = Arrays.copyOf(bytes, length * 2);
+				}
+				bytes[length++] = (byte) c;
+			} else if (type == SEPARATOR && start >= 0) {
+				length = add(start, length, nonAscii);
+				start = -1;
+				nonAscii = false;
+			}
+		}
+		if (start >= 0) {
+			add(start, length, nonAscii);
+		}
+		return size;
+	}
+
+	/**
+	 * @return number of tokens of the last call to tokenize
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the buffer holding all the tokens, see {@link #getStart(int)}
+	 *         and {@link #getLength(int)}
+	 */
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	public int getStart(int token) {
+		return starts[token];
+	}
+
+	public int getLength(int token) {
+		return lengths[token];
+	}
+
+	/**
+	 * Copies the token into the given text.
+	 */
+	public void get(int token, Text text) {
+		text.set(bytes, starts[token], lengths[token]);
+	}
+
+	public String getString(int token) {
+		try {
+			return Text.decode(bytes, starts[token], lengths[token]);
+		} catch (CharacterCodingException e) {
+			throw new IllegalStateException("Malformed token", e);
+		}
+	}
+
+	private TextTokenizer set(char from, char to, byte type) {
+		for (char c = from; c <= to; c++) {
+			ascii[c] = type;
+		}
+		return this;
+	}
+
+	/**
+	 * Records the token ending at the given length.
+	 *
+	 * @return the length of the buffer after the token
+	 */
+	private int add(int start, int length, boolean nonAscii) {
+		if (nonAscii) {
+			length = start + lowerCase(start, length - start);
+		}
+		if (size == starts.length) {
+			starts = Arrays.copyOf(starts, size * 2);
+			lengths = Arrays.copyOf(lengths, size * 2);
+		}
+		starts[size] = start;
+		lengths[size] = length - start;
+		size++;
+		return length;
+	}
+
+	/**
+	 * Lower cases a token with non ASCII characters in place.
+	 *
+	 * @return the new length of the token
+	 */
+	private int lowerCase(int start, int length) {
+		try {
+			String token = Text.decode(bytes, start, length, true).toLowerCase();
+			ByteBuffer encoded = Text.encode(token);
+			int encodedLength = encoded.limit();
+			if (start + encodedLength > bytes.length) {
+				bytes = Arrays.copyOf(bytes, (start + encodedLength) * 2);
+			}
+			encoded.get(bytes, start, encodedLength);
+			return encodedLength;
+		} catch (CharacterCodingException e) {
+			throw new IllegalStateException("Malformed token", e);
+		}
+	}
+
+	private void ensureBytes(int length) {
+		if (bytes.length < length) {
+			bytes = new byte[Math.max(length, bytes.length * 2)];
+		}
+	}
+}
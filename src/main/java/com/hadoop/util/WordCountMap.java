@@ -0,0 +1,340 @@
+package com.hadoop.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Open addressing hash map of words to <b>int</b> counts. <br>
+ * The words are kept as UTF-8 bytes in a single buffer and the counts in a
+ * primitive array, so adding a word never boxes a count and, once the buffers
+ * have grown, clearing and refilling the map does not allocate. <br>
+ * Entries are kept in insertion order and can be walked by index:
+ * <code>for (int i = 0; i &lt; map.size(); i++)</code>. <br>
+ * <br>
+ * The serialized form is a VInt size followed by, for each entry, the VInt
+ * length of the word, its UTF-8 bytes and the VInt count. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class WordCountMap {
+
+	private static final int INITIAL_CAPACITY = 16;
+	private static final int INITIAL_BYTES = 128;
+
+	private byte[] bytes = new byte[INITIAL_BYTES];
+	private int bytesLength;
+
+	private int[] offsets = new int[INITIAL_CAPACITY];
+	private int[] lengths = new int[INITIAL_CAPACITY];
+	private int[] hashes = new int[INITIAL_CAPACITY];
+	private int[] counts = new int[INITIAL_CAPACITY];
+	private int size;
+
+	/** slot to entry index + 1, 0 is an empty slot */
+	private int[] table = new int[INITIAL_CAPACITY * 2];
+
+	private byte[] scratch = new byte[INITIAL_BYTES];
+	private int[] sorted = new int[INITIAL_CAPACITY];
+	private int[] sortBuffer = new int[INITIAL_CAPACITY];
+
+	/**
+	 * Adds the count to the word, inserting it if needed.
+	 *
+	 * @return the new count of the word
+	 */
+	public int increment(byte[] b, int s, int l, int count) {
+		int entry = findOrInsert(b, s, l);
+		counts[entry] += count;
+		return counts[entry];
+	}
+
+	public int increment(String word, int count) {
+		int length = encode(word);
+		return increment(scratch, 0, length, count);
+	}
+
+	/**
+	 * Sets the count of the word, inserting it if needed.
+	 */
+	public void put(String word, int count) {
+		int length = encode(word);
+		int entry = findOrInsert(scratch, 0, length);
+		counts[entry] = count;
+	}
+
+	/**
+	 * @return the count of the word or 0 when the word is not in the map
+	 */
+	public int get(byte[] b, int s, int l) {
+		int entry = find(b, s, l, hash(b, s, l));
+		return entry < 0 ? 0 : counts[entry];
+	}
+
+	public int get(String word) {
+		int length = encode(word);
+		return get(scratch, 0, length);
+	}
+
+	public boolean containsKey(String word) {
+		int length = encode(word);
+		return find(scratch, 0, length, hash(scratch, 0, length)) >= 0;
+	}
+
+	/**
+	 * Adds all the counts of the other map into this one, in place.
+	 *
+	 * @return the sum of the counts added
+	 */
+	public long merge(WordCountMap other) {
+		long total = 0;
+		for (int i = 0; i < other.size; i++) {
+			increment(other.bytes, other.offsets[i], other.lengths[i], other.counts[i]);
+			total += other.counts[i];
+		}
+		return total;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Empties the map, keeping the buffers for reuse.
+	 */
+	public void clear() {
+		if (size * 8 < table.length) {
+			// a few entries left in a table grown by a large stripe
+			int mask = table.length - 1;
+			for (int i = 0; i < size; i++) {
+				int slot = hashes[i] & mask;
+				while (table[slot] != i + 1) {
+					slot = (slot + 1) & mask;
+				}
+				table[slot] = 0;
+			}
+		} else if (size > 0) {
+			Arrays.fill(table, 0);
+		}
+		size = 0;
+		bytesLength = 0;
+	}
+
+	public int getCount(int entry) {
+		return counts[entry];
+	}
+
+	public String getWord(int entry) {
+		try {
+			return Text.decode(bytes, offsets[entry], lengths[entry]);
+		} catch (IOException e) {
+			throw new IllegalStateException("Malformed word in map", e);
+		}
+	}
+
+	/**
+	 * @return the buffer holding the word bytes of all entries, see
+	 *         {@link #getOffset(int)} and {@link #getLength(int)}
+	 */
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	public int getOffset(int entry) {
+		return offsets[entry];
+	}
+
+	public int getLength(int entry) {
+		return lengths[entry];
+	}
+
+	/**
+	 * Orders the entries by the bytes of their words, which is the order of
+	 * the words for the ASCII ones. The map itself keeps its insertion order.
+	 *
+	 * @return the entry indexes in word order, valid until the map changes
+	 */
+	public int[] sort() {
+		if (sorted.length < size) {
+			sorted = new int[counts.length];
+			sortBuffer = new int[counts.length];
+		}
+		for (int i = 0; i < size; i++) {
+			sorted[i] = i;
+		}
+		mergeSort(sorted, sortBuffer, 0, size);
+		return sorted;
+	}
+
+	public void write(DataOutput out) throws IOException {
+		WritableUtils.writeVInt(out, size);
+		for (int i = 0; i < size; i++) {
+			WritableUtils.writeVInt(out, lengths[i]);
+			out.write(bytes, offsets[i], lengths[i]);
+			WritableUtils.writeVInt(out, counts[i]);
+		}
+	}
+
+	public void readFields(DataInput in) throws IOException {
+		clear();
+		int entries = WritableUtils.readVInt(in);
+		for (int i = 0; i < entries; i++) {
+			int length = WritableUtils.readVInt(in);
+			ensureBytes(length);
+			in.readFully(bytes, bytesLength, length);
+			int count = WritableUtils.readVInt(in);
+			int entry = findOrInsert(bytes, bytesLength, length);
+			counts[entry] += count;
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < size; i++) {
+			sb.append(getWord(i)).append(":").append(counts[i]).append(" ");
+		}
+		return sb.toString();
+	}
+
+	private void mergeSort(int[] entries, int[] buffer, int from, int to) {
+		if (to - from < 2) {
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		mergeSort(entries, buffer, from, middle);
+		mergeSort(entries, buffer, middle, to);
+		if (compare(entries[middle - 1], entries[middle]) <= 0) {
+			return;
+		}
+		System.arraycopy(entries, from, buffer, from, to - from);
+		for (int i = from, left = from, right = middle; i < to; i++) {
+			if (right >= to || (left < middle && compare(buffer[left], buffer[right]) <= 0)) {
+				entries[i] = buffer[left++];
+			} else {
+				entries[i] = buffer[right++];
+			}
+		}
+	}
+
+	private int compare(int entry1, int entry2) {
+		return WritableComparator.compareBytes(bytes, offsets[entry1], lengths[entry1], bytes, offsets[entry2],
+				lengths[entry2]);
+	}
+
+	private int findOrInsert(byte[] b, int s, int l) {
+		int hash = hash(b, s, l);
+		int entry = find(b, s, l, hash);
+		if (entry >= 0) {
+			return entry;
+		}
+
+		if (size == counts.length) {
+			grow();
+		}
+		// the word may already be at the end of the buffer (readFields)
+		if (b != bytes || s != bytesLength) {
+			ensureBytes(l);
+			System.arraycopy(b, s, bytes, bytesLength, l);
+		}
+		entry = size++;
+		offsets[entry] = bytesLength;
+		lengths[entry] = l;
+		hashes[entry] = hash;
+		counts[entry] = 0;
+		bytesLength += l;
+		insertSlot(entry);
+		return entry;
+	}
+
+	private int find(byte[] b, int s, int l, int hash) {
+		int mask = table.length - 1;
+		for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+			int entry = table[slot] - 1;
+			if (entry < 0) {
+				return -1;
+			}
+			if (hashes[entry] == hash
+					&& WritableComparator.compareBytes(bytes, offsets[entry], lengths[entry], b, s, l) == 0) {
+				return entry;
+			}
+		}
+	}
+
+	private void insertSlot(int entry) {
+		int mask = table.length - 1;
+		int slot = hashes[entry] & mask;
+		while (table[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		table[slot] = entry + 1;
+	}
+
+	private void grow() {
+		int capacity = counts.length * 2;
+		offsets = Arrays.copyOf(offsets, capacity);
+		lengths = Arrays.copyOf(lengths, capacity);
+		hashes = Arrays.copyOf(hashes, capacity);
+		counts = Arrays.copyOf(counts, capacity);
+		// keeps the load factor at or below 0.5
+		table = new int[capacity * 2];
+		for (int i = 0; i < size; i++) {
+			insertSlot(i);
+		}
+	}
+
+	private void ensureBytes(int length) {
+		if (bytesLength + length > bytes.length) {
+			bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, bytesLength + length));
+		}
+	}
+
+	/**
+	 * Encodes the word as UTF-8 into the scratch buffer.
+	 *
+	 * @return the number of bytes written
+	 */
+	private int encode(String word) {
+		if (scratch.length < word.length() * 3) {
+			scratch = new byte[word.length() * 3];
+		}
+		int length = 0;
+		for (int i = 0; i < word.length(); i++) {
+			char c = word.charAt(i);
+			if (c < 0x80) {
+				scratch[length++] = (byte) c;
+			} else if (c < 0x800) {
+				scratch[length++] = (byte) (0xC0 | (c >> 6));
+				scratch[length++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < word.length()
+					&& Character.isLowSurrogate(word.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, word.charAt(++i));
+				scratch[length++] = (byte) (0xF0 | (codePoint >> 18));
+				scratch[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+				scratch[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+				scratch[length++] = (byte) (0x80 | (codePoint & 0x3F));
+			} else {
+				scratch[length++] = (byte) (0xE0 | (c >> 12));
+				scratch[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				scratch[length++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+		return length;
+	}
+
+	private static int hash(byte[] b, int s, int l) {
+		int hash = WritableComparator.hashBytes(b, s, l);
+		// spreads the low bits used to pick the slot
+		return hash ^ (hash >>> 16);
+	}
+}
@@ -0,0 +1,140 @@
+package com.hadoop.coursework1.pairs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.WritableComparator;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hadoop.coursework1.Pair;
+
+/**
+ * Checks that {@link PairSortComparator}, {@link PairGroupingComparator} and
+ * {@link PairPartitioner} give on the serialized {@link Pair} the same
+ * answers as on the objects: the order of {@link Pair#getWordPair()}, the
+ * order of the terms and a hash of the serialized term. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class PairComparatorsTest {
+
+	private static final String[] TERMS = { "*", "a", "ab", "abc", "ab!", "ab\u001f", "b", "caf", "café",
+			"cafe", "naïve", "straße", "日本", "日本語", "ünïcödé" };
+	private static final String[] WORDS = { Pair.TOTAL, "a", "ab", "abc", "z", "é", "日本" };
+
+	private List<Pair> pairs;
+	private List<byte[]> serialized;
+
+	@Before
+	public void setUp() throws IOException {
+		pairs = new ArrayList<Pair>();
+		serialized = new ArrayList<byte[]>();
+		int count = 1;
+		for (String term : TERMS) {
+			for (String word : WORDS) {
+				Pair pair = new Pair(term, count * 7, word, count++);
+				pairs.add(pair);
+				serialized.add(serialize(pair));
+			}
+		}
+	}
+
+	@Test
+	public void testSortMatchesWordPairOrder() {
+		PairSortComparator comparator = new PairSortComparator();
+		for (int i = 0; i < pairs.size(); i++) {
+			for (int j = 0; j < pairs.size(); j++) {
+				Pair p1 = pairs.get(i);
+				Pair p2 = pairs.get(j);
+				int expected = Integer.signum(p1.getWordPair().compareTo(p2.getWordPair()));
+				assertEquals(p1 + " vs " + p2, expected, Integer.signum(compare(comparator, i, j)));
+				assertEquals(p1 + " vs " + p2, expected, Integer.signum(comparator.compare(p1, p2)));
+			}
+		}
+	}
+
+	@Test
+	public void testSortPutsMarginalFirst() {
+		PairSortComparator comparator = new PairSortComparator();
+		for (int i = 0; i < pairs.size(); i++) {
+			for (int j = 0; j < pairs.size(); j++) {
+				Pair p1 = pairs.get(i);
+				Pair p2 = pairs.get(j);
+				if (p1.getTerm().equals(p2.getTerm()) && Pair.TOTAL.equals(p1.getWord())
+						&& !Pair.TOTAL.equals(p2.getWord())) {
+					assertTrue(p1 + " vs " + p2, compare(comparator, i, j) < 0);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testSortIgnoresCounts() throws IOException {
+		PairSortComparator comparator = new PairSortComparator();
+		byte[] b1 = serialize(new Pair("café", 1, "日本", 2));
+		byte[] b2 = serialize(new Pair("café", 300, "日本", 400));
+		assertEquals(0, comparator.compare(b1, 0, b1.length, b2, 0, b2.length));
+	}
+
+	@Test
+	public void testGroupingMatchesTermOrder() {
+		PairGroupingComparator comparator = new PairGroupingComparator();
+		for (int i = 0; i < pairs.size(); i++) {
+			for (int j = 0; j < pairs.size(); j++) {
+				Pair p1 = pairs.get(i);
+				Pair p2 = pairs.get(j);
+				int expected = Integer.signum(p1.getTerm().compareTo(p2.getTerm()));
+				assertEquals(p1 + " vs " + p2, expected, Integer.signum(compare(comparator, i, j)));
+				assertEquals(p1 + " vs " + p2, expected, Integer.signum(comparator.compare(p1, p2)));
+			}
+		}
+	}
+
+	@Test
+	public void testHashMatchesSerializedTerm() throws IOException {
+		for (String term : TERMS) {
+			DataOutputBuffer out = new DataOutputBuffer();
+			out.writeUTF(term);
+			// skip the 2 bytes of the UTF length
+			int expected = WritableComparator.hashBytes(out.getData(), 2, out.getLength() - 2);
+			assertEquals(term, expected, PairPartitioner.hashTerm(term));
+		}
+	}
+
+	@Test
+	public void testPartitionOnTermOnly() {
+		PairPartitioner partitioner = new PairPartitioner();
+		for (int reducers : new int[] { 1, 2, 3, 7, 16 }) {
+			for (Pair p1 : pairs) {
+				int partition = partitioner.getPartition(p1, null, reducers);
+				assertTrue(p1 + " in " + partition, partition >= 0 && partition < reducers);
+				for (Pair p2 : pairs) {
+					if (p1.getTerm().equals(p2.getTerm())) {
+						assertEquals(p1 + " vs " + p2, partition, partitioner.getPartition(p2, null, reducers));
+					}
+				}
+			}
+		}
+	}
+
+	private int compare(WritableComparator comparator, int i, int j) {
+		byte[] b1 = serialized.get(i);
+		byte[] b2 = serialized.get(j);
+		return comparator.compare(b1, 0, b1.length, b2, 0, b2.length);
+	}
+
+	private static byte[] serialize(Pair pair) throws IOException {
+		DataOutputBuffer out = new DataOutputBuffer();
+		pair.write(out);
+		byte[] bytes = new byte[out.getLength()];
+		System.arraycopy(out.getData(), 0, bytes, 0, bytes.length);
+		return bytes;
+	}
+}
@@ -0,0 +1,189 @@
+package com.hadoop.coursework1.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that the {@link ParagraphRecordReader} reads every paragraph of a
+ * file exactly once, with the offset of its first line as key, however the
+ * file is split: in two at every offset, in three with a middle split of up
+ * to 16 bytes, within or across paragraphs, at every offset, and in splits
+ * of a single byte. <br>
+ * The paragraphs expected are found line by line on the whole file. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class ParagraphRecordReaderTest {
+
+	private static final String TEXT = "It is a truth universally acknowledged, that a single man\n"
+			+ "in possession of a good fortune, must be in want of a wife.\n" + "\n"
+			+ "  However little known the feelings\n" + "or views of such a man may be.\n" + "\n" + " \t \n"
+			+ "\n" + "\"My dear Mr. Bennet,\" said his lady\n" + "\n" + "x\n" + "\n" + "Mr. Bennet replied that he had not.\n"
+			+ "  \n" + "café naïve — 日本語\n" + "But it is,\" returned she;\n" + "\n" + "\"for Mrs. Long has just been here";
+
+	/** longest middle split when splitting in three */
+	private static final int MIDDLE_SPLIT = 16;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private TaskAttemptContext context = new TaskAttemptContext(new Configuration(), new TaskAttemptID());
+
+	@Test
+	public void testLastParagraphWithoutBlankLine() throws IOException, InterruptedException {
+		checkAllSplits(TEXT);
+	}
+
+	@Test
+	public void testLastParagraphWithBlankLine() throws IOException, InterruptedException {
+		checkAllSplits(TEXT + "\n\n");
+	}
+
+	@Test
+	public void testLeadingBlankLines() throws IOException, InterruptedException {
+		checkAllSplits("\n \n\nfirst paragraph\nafter blank lines\n\nsecond\n");
+	}
+
+	@Test
+	public void testCrLf() throws IOException, InterruptedException {
+		checkAllSplits(TEXT.replace("\n", "\r\n"));
+	}
+
+	@Test
+	public void testCr() throws IOException, InterruptedException {
+		checkAllSplits(TEXT.replace("\n", "\r"));
+	}
+
+	@Test
+	public void testSingleLine() throws IOException, InterruptedException {
+		checkAllSplits("one line only");
+	}
+
+	@Test
+	public void testBlankOnly() throws IOException, InterruptedException {
+		checkAllSplits("\n  \n\t\n");
+	}
+
+	private void checkAllSplits(String text) throws IOException, InterruptedException {
+		byte[] bytes = text.getBytes("UTF-8");
+		File file = folder.newFile("paragraphs.txt");
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(bytes);
+		} finally {
+			out.close();
+		}
+		Path path = new Path(file.toURI());
+		List<String> expected = paragraphs(bytes);
+		int length = bytes.length;
+
+		assertEquals(expected, read(path, 0, length));
+		for (int k = 1; k < length; k++) {
+			assertEquals("split at " + k, expected, read(path, 0, k, length));
+			for (int j = k + 1; j < Math.min(length, k + MIDDLE_SPLIT); j++) {
+				assertEquals("splits at " + k + ", " + j, expected, read(path, 0, k, j, length));
+			}
+		}
+		long[] bounds = new long[length + 1];
+		for (int k = 0; k <= length; k++) {
+			bounds[k] = k;
+		}
+		assertEquals("1 byte splits", expected, read(path, bounds));
+	}
+
+	/**
+	 * @return the paragraphs of the splits between the bounds, as
+	 *         <i>key:value</i>
+	 */
+	private List<String> read(Path path, long... bounds) throws IOException, InterruptedException {
+		List<String> paragraphs = new ArrayList<String>();
+		for (int i = 0; i + 1 < bounds.length; i++) {
+			ParagraphRecordReader reader = new ParagraphRecordReader();
+			reader.initialize(new FileSplit(path, bounds[i], bounds[i + 1] - bounds[i], null), context);
+			try {
+				while (reader.nextKeyValue()) {
+					paragraphs.add(reader.getCurrentKey().get() + ":" + reader.getCurrentValue());
+				}
+			} finally {
+				reader.close();
+			}
+		}
+		return paragraphs;
+	}
+
+	/**
+	 * @return the paragraphs of the whole file, as <i>key:value</i>, found
+	 *         line by line
+	 */
+	private static List<String> paragraphs(byte[] bytes) throws IOException {
+		List<String> paragraphs = new ArrayList<String>();
+		List<String> lines = new ArrayList<String>();
+		long key = -1;
+		int lineStart = 0;
+		while (lineStart < bytes.length) {
+			int lineEnd = lineStart;
+			while (lineEnd < bytes.length && bytes[lineEnd] != '\n' && bytes[lineEnd] != '\r') {
+				lineEnd++;
+			}
+			String line = Text.decode(bytes, lineStart, lineEnd - lineStart, true);
+			if (isBlank(line)) {
+				if (key >= 0) {
+					paragraphs.add(key + ":" + join(lines));
+				}
+				key = -1;
+				lines.clear();
+			} else {
+				if (key < 0) {
+					key = lineStart;
+				}
+				lines.add(line);
+			}
+			lineStart = lineEnd + 1;
+			if (lineEnd + 1 < bytes.length && bytes[lineEnd] == '\r' && bytes[lineEnd + 1] == '\n') {
+				lineStart++;
+			}
+		}
+		if (key >= 0) {
+			paragraphs.add(key + ":" + join(lines));
+		}
+		return paragraphs;
+	}
+
+	private static boolean isBlank(String line) {
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (c != ' ' && (c < 0x09 || c > 0x0D) && (c < 0x1C || c > 0x1F)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static String join(List<String> lines) {
+		StringBuilder sb = new StringBuilder();
+		for (String line : lines) {
+			if (sb.length() > 0) {
+				sb.append(' ');
+			}
+			sb.append(line);
+		}
+		return sb.toString();
+	}
+}
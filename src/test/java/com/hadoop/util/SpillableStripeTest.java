@@ -0,0 +1,135 @@
+package com.hadoop.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that the {@link SpillableStripe} gives the counts a {@link HashMap}
+ * sums, in word order, with and without spills, and that its runs are
+ * deleted by {@link SpillableStripe#clear()}. <br>
+ * The budget is the smallest one, of 4KB, so that a few thousand words
+ * spill tens of runs, and <b>io.sort.factor</b> is 2 so that they are merged
+ * over several passes. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class SpillableStripeTest {
+
+	private static final String[] WORDS = { "a", "ab", "abc", "b", "café", "cafe", "naïve", "straße", "日本",
+			"日本語", "ünïcödé", "" };
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Configuration conf;
+
+	@Before
+	public void setUp() {
+		conf = new Configuration();
+		conf.set("mapred.local.dir", folder.getRoot().getPath());
+		conf.setInt("io.sort.factor", 2);
+	}
+
+	@Test
+	public void testWithoutSpill() throws IOException {
+		SpillableStripe stripe = new SpillableStripe(conf, 1 << 20);
+		Map<String, Integer> expected = new HashMap<String, Integer>();
+		for (int i = 0; i < WORDS.length * 3; i++) {
+			String word = WORDS[i % WORDS.length];
+			add(stripe, expected, word, i + 1);
+		}
+		stripe.finish();
+		assertFalse(stripe.hasSpilled());
+		assertEquals(expected, read(stripe));
+	}
+
+	@Test
+	public void testSpillAndMerge() throws IOException {
+		SpillableStripe stripe = new SpillableStripe(conf, 0);
+		Map<String, Integer> expected = new HashMap<String, Integer>();
+		Random random = new Random(42);
+		for (int i = 0; i < 50000; i++) {
+			String word = "w" + random.nextInt(5000) + WORDS[random.nextInt(WORDS.length)];
+			add(stripe, expected, word, 1 + random.nextInt(3));
+		}
+		assertTrue(stripe.hasSpilled());
+		stripe.finish();
+		assertEquals(expected, read(stripe));
+		stripe.clear();
+		assertEquals(0, countRuns(folder.getRoot()));
+	}
+
+	@Test
+	public void testReusedAfterClear() throws IOException {
+		SpillableStripe stripe = new SpillableStripe(conf, 0);
+		Random random = new Random(7);
+		for (int round = 0; round < 3; round++) {
+			Map<String, Integer> expected = new HashMap<String, Integer>();
+			// a spilling round between two rounds that fit in the table
+			int words = round == 1 ? 3000 : 20;
+			for (int i = 0; i < words * 4; i++) {
+				add(stripe, expected, "r" + round + "w" + random.nextInt(words), 1);
+			}
+			assertEquals(round == 1, stripe.hasSpilled());
+			stripe.finish();
+			assertEquals(expected, read(stripe));
+			stripe.clear();
+			assertTrue(stripe.isEmpty());
+			assertEquals(0, countRuns(folder.getRoot()));
+		}
+	}
+
+	private static void add(SpillableStripe stripe, Map<String, Integer> expected, String word, int count)
+			throws IOException {
+		Text text = new Text(word);
+		stripe.add(text.getBytes(), 0, text.getLength(), count);
+		Integer sum = expected.get(word);
+		expected.put(word, sum == null ? count : sum + count);
+	}
+
+	/**
+	 * @return the counts read from the stripe, checked to be in word order
+	 */
+	private static Map<String, Integer> read(SpillableStripe stripe) throws IOException {
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		byte[] previous = null;
+		while (stripe.next()) {
+			byte[] word = new byte[stripe.getLength()];
+			System.arraycopy(stripe.getBytes(), 0, word, 0, word.length);
+			if (previous != null) {
+				assertTrue(stripe.getWord(),
+						WritableComparator.compareBytes(previous, 0, previous.length, word, 0, word.length) < 0);
+			}
+			previous = word;
+			counts.put(stripe.getWord(), stripe.getCount());
+		}
+		return counts;
+	}
+
+	private static int countRuns(File dir) {
+		int runs = 0;
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				runs += file.isDirectory() ? countRuns(file) : (file.getName().startsWith("stripe-") ? 1 : 0);
+			}
+		}
+		return runs;
+	}
+}
@@ -0,0 +1,144 @@
+package com.hadoop.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+
+import com.hadoop.examples.wordcount.WordCountMapper;
+
+/**
+ * Checks that the {@link TextTokenizer} factories give the tokens of the
+ * String chains the mappers used to run, less the empty tokens of
+ * <code>split("\\s+")</code>. <br>
+ *
+ * @author pmonteiro
+ *
+ */
+public class TextTokenizerTest {
+
+	private static final String[] LINES = { "", " ", "   \t  ", "It is a truth universally acknowledged",
+			"  leading and trailing whitespace  ", "well-known, self-evident -- and - dashed-", "-leading-hyphen",
+			"Chapter 12, in 1811: 3rd of 4", "MR. DARCY and Mr. Bingley", "tabs\tinside\tthe\tline",
+			"\"Quoted,\" she said; [bracketed] `ticked`?!", "café naïve façade rôle ÉLAN", "ünïcödé STRAßE",
+			"“Curly quotes” and ‘single’ ones — em dash", "İstanbul and the \u212A kelvin sign", "日本語 text",
+			"mixed日本words", "a\u00a0non-breaking space", "x", "--", "- - -", "a  b   c" };
+
+	private static final String JANE_AUSTEN = "assets/jane_austen/input";
+
+	@Test
+	public void testAlphanumeric() throws IOException {
+		TextTokenizer tokenizer = TextTokenizer.alphanumeric();
+		for (String line : LINES) {
+			assertEquals(line, alphanumeric(line), tokenize(tokenizer, new Text(line)));
+		}
+	}
+
+	@Test
+	public void testAlphabetic() throws IOException {
+		TextTokenizer tokenizer = TextTokenizer.alphabetic();
+		for (String line : LINES) {
+			assertEquals(line, alphabetic(line), tokenize(tokenizer, new Text(line)));
+		}
+	}
+
+	@Test
+	public void testDelimited() throws IOException {
+		TextTokenizer tokenizer = TextTokenizer.delimited(WordCountMapper.DELIMITERS);
+		for (String line : LINES) {
+			assertEquals(line, delimited(line), tokenize(tokenizer, new Text(line)));
+		}
+	}
+
+	@Test
+	public void testMalformedBytes() throws IOException {
+		// Latin-1 bytes, not UTF-8: decoded as replacement characters
+		Text text = new Text();
+		byte[] bytes = { 'C', 'a', 'f', (byte) 0xE9, ' ', 'N', 'a', (byte) 0xEF, 'v', 'e', ' ', (byte) 0xFF };
+		text.set(bytes);
+		String line = text.toString();
+		assertEquals(alphanumeric(line), tokenize(TextTokenizer.alphanumeric(), text));
+		assertEquals(alphabetic(line), tokenize(TextTokenizer.alphabetic(), text));
+		assertEquals(delimited(line), tokenize(TextTokenizer.delimited(WordCountMapper.DELIMITERS), text));
+	}
+
+	@Test
+	public void testReusedAcrossLines() throws IOException {
+		TextTokenizer tokenizer = TextTokenizer.alphanumeric();
+		Text text = new Text();
+		for (int i = LINES.length - 1; i >= 0; i--) {
+			text.set(LINES[i]);
+			assertEquals(LINES[i], alphanumeric(LINES[i]), tokenize(tokenizer, text));
+		}
+	}
+
+	@Test
+	public void testJaneAusten() throws IOException {
+		File[] books = new File(JANE_AUSTEN).listFiles();
+		if (books == null) {
+			return;
+		}
+		TextTokenizer alphanumeric = TextTokenizer.alphanumeric();
+		TextTokenizer alphabetic = TextTokenizer.alphabetic();
+		TextTokenizer delimited = TextTokenizer.delimited(WordCountMapper.DELIMITERS);
+		Text text = new Text();
+		for (File book : books) {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(book), "UTF-8"));
+			try {
+				for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+					text.set(line);
+					assertEquals(line, alphanumeric(line), tokenize(alphanumeric, text));
+					assertEquals(line, alphabetic(line), tokenize(alphabetic, text));
+					assertEquals(line, delimited(line), tokenize(delimited, text));
+				}
+			} finally {
+				reader.close();
+			}
+		}
+	}
+
+	private static List<String> tokenize(TextTokenizer tokenizer, Text text) {
+		List<String> tokens = new ArrayList<String>();
+		int size = tokenizer.tokenize(text);
+		for (int i = 0; i < size; i++) {
+			tokens.add(tokenizer.getString(i));
+		}
+		return tokens;
+	}
+
+	private static List<String> alphanumeric(String line) {
+		return nonEmpty(line.toLowerCase().replaceAll("[^a-zA-Z0-9 \\-]", "").replaceAll("-", " ").split("\\s+"));
+	}
+
+	private static List<String> alphabetic(String line) {
+		return nonEmpty(line.toLowerCase().replaceAll("[^a-zA-Z ]", "").split("\\s+"));
+	}
+
+	private static List<String> delimited(String line) {
+		List<String> tokens = new ArrayList<String>();
+		StringTokenizer itr = new StringTokenizer(line, WordCountMapper.DELIMITERS);
+		while (itr.hasMoreTokens()) {
+			tokens.add(itr.nextToken().toLowerCase());
+		}
+		return tokens;
+	}
+
+	private static List<String> nonEmpty(String[] words) {
+		List<String> tokens = new ArrayList<String>();
+		for (String word : words) {
+			if (word.length() > 0) {
+				tokens.add(word);
+			}
+		}
+		return tokens;
+	}
+}